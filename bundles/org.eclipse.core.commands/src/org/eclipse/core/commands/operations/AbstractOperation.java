@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2008 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -36,6 +36,11 @@ import org.eclipse.core.runtime.IStatus;
 public abstract class AbstractOperation implements IUndoableOperation {
 	List contexts = new ArrayList();
 
+	/**
+	 * the history that indexes the operation by its contexts, if any
+	 */
+	volatile IndexedHistory history;
+
 	private String label = ""; //$NON-NLS-1$
 
 	/**
@@ -60,6 +65,17 @@ public abstract class AbstractOperation implements IUndoableOperation {
 	public void addContext(IUndoContext context) {
 		if (!contexts.contains(context)) {
 			contexts.add(context);
+			contextsChanged();
+		}
+	}
+
+	/*
+	 * Tell the history that indexes the operation that its contexts changed.
+	 */
+	void contextsChanged() {
+		IndexedHistory indexedHistory = history;
+		if (indexedHistory != null) {
+			indexedHistory.contextsChanged(this);
 		}
 	}
 
@@ -181,7 +197,9 @@ public abstract class AbstractOperation implements IUndoableOperation {
 	 */
 
 	public void removeContext(IUndoContext context) {
-		contexts.remove(context);
+		if (contexts.remove(context)) {
+			contextsChanged();
+		}
 	}
 
 	/*
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2010 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,8 +15,6 @@ package org.eclipse.core.commands.operations;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 
 import org.eclipse.core.commands.ExecutionException;
@@ -52,7 +50,10 @@ import org.eclipse.core.runtime.Status;
  * <p>
  * The data structures used by the DefaultOperationHistory are synchronized, and
  * entry points that modify the undo and redo history concurrently are also
- * synchronized. This means that the DefaultOperationHistory is relatively
+ * synchronized. The undo and redo history index their operations by undo
+ * context, so that requests for the history of one context do not depend on
+ * the size of the whole history, and do not wait for concurrent changes to the
+ * other history. This means that the DefaultOperationHistory is relatively
  * "thread-friendly" in its implementation. Outbound notifications or operation
  * approval requests will occur on the thread that initiated the request.
  * Clients may use DefaultOperationHistory API from any thread; however,
@@ -129,16 +130,17 @@ public final class DefaultOperationHistory implements IOperationHistory {
 	/**
 	 * the list of operations available for redo, LIFO
 	 */
-	private List redoList = Collections.synchronizedList(new ArrayList());
+	private IndexedHistory redoList = new IndexedHistory();
 
 	/**
 	 * the list of operations available for undo, LIFO
 	 */
-	private List undoList = Collections.synchronizedList(new ArrayList());
+	private IndexedHistory undoList = new IndexedHistory();
 
 	/**
-	 * a lock that is used to synchronize access between the undo and redo
-	 * history
+	 * a lock that is used to synchronize changes between the undo and redo
+	 * history. Each history synchronizes the requests for its operations on
+	 * itself.
 	 */
 	final Object undoRedoHistoryLock = new Object();
 
@@ -539,34 +541,6 @@ public final class DefaultOperationHistory implements IOperationHistory {
 		return status;
 	}
 
-	/*
-	 * Filter the specified list to include only the specified undo context.
-	 */
-	private IUndoableOperation[] filter(List list, IUndoContext context) {
-		/*
-		 * This method is used whenever there is a need to filter the undo or
-		 * redo history on a particular context. Currently there are no caches
-		 * kept to optimize repeated requests for the same filter. If benchmarks
-		 * show this to be a common pattern that causes performances problems,
-		 * we could implement a filtered cache here that is nullified whenever
-		 * the global history changes.
-		 */
-
-		List filtered = new ArrayList();
-		synchronized (undoRedoHistoryLock) {
-			Iterator iterator = list.iterator();
-			while (iterator.hasNext()) {
-				IUndoableOperation operation = (IUndoableOperation) iterator
-						.next();
-				if (operation.hasContext(context)) {
-					filtered.add(operation);
-				}
-			}
-		}
-		return (IUndoableOperation[]) filtered
-				.toArray(new IUndoableOperation[filtered.size()]);
-	}
-
 	/*
 	 * Flush the redo stack of all operations that have the given context.
 	 */
@@ -578,7 +552,7 @@ public final class DefaultOperationHistory implements IOperationHistory {
 
 		synchronized (undoRedoHistoryLock) {
 			
-			Object[] filtered = filter(redoList, context);
+			Object[] filtered = redoList.filter(context);
 			for (int i = 0; i < filtered.length; i++) {
 				IUndoableOperation operation = (IUndoableOperation) filtered[i];
 				if (context == GLOBAL_UNDO_CONTEXT
@@ -620,7 +594,7 @@ public final class DefaultOperationHistory implements IOperationHistory {
 		synchronized (undoRedoHistoryLock) {
 			
 			// Get all operations that have the context (or one that matches)
-			Object[] filtered = filter(undoList, context);
+			Object[] filtered = undoList.filter(context);
 			for (int i = 0; i < filtered.length; i++) {
 				IUndoableOperation operation = (IUndoableOperation) filtered[i];
 				if (context == GLOBAL_UNDO_CONTEXT
@@ -680,7 +654,10 @@ public final class DefaultOperationHistory implements IOperationHistory {
 	 */
 	private void forceRedoLimit(IUndoContext context, int max) {
 		synchronized (undoRedoHistoryLock) {
-			Object[] filtered = filter(redoList, context);
+			if (redoList.count(context) <= max) {
+				return;
+			}
+			Object[] filtered = redoList.filter(context);
 			int size = filtered.length;
 			if (size > 0) {
 				int index = 0;
@@ -715,7 +692,10 @@ public final class DefaultOperationHistory implements IOperationHistory {
 	 */
 	private void forceUndoLimit(IUndoContext context, int max) {
 		synchronized (undoRedoHistoryLock) {
-			Object[] filtered = filter(undoList, context);
+			if (undoList.count(context) <= max) {
+				return;
+			}
+			Object[] filtered = undoList.filter(context);
 			int size = filtered.length;
 			if (size > 0) {
 				int index = 0;
@@ -788,7 +768,7 @@ public final class DefaultOperationHistory implements IOperationHistory {
 	 */
 	public IUndoableOperation[] getRedoHistory(IUndoContext context) {
 		Assert.isNotNull(context);
-		return filter(redoList, context);
+		return redoList.filter(context);
 	}
 
 	/*
@@ -798,16 +778,7 @@ public final class DefaultOperationHistory implements IOperationHistory {
 	 */
 	public IUndoableOperation getRedoOperation(IUndoContext context) {
 		Assert.isNotNull(context);
-		synchronized (undoRedoHistoryLock) {
-			for (int i = redoList.size() - 1; i >= 0; i--) {
-				IUndoableOperation operation = (IUndoableOperation) redoList
-						.get(i);
-				if (operation.hasContext(context)) {
-					return operation;
-				}
-			}
-		}
-		return null;
+		return redoList.getLast(context);
 	}
 
 	/*
@@ -842,7 +813,7 @@ public final class DefaultOperationHistory implements IOperationHistory {
 	 */
 	public IUndoableOperation[] getUndoHistory(IUndoContext context) {
 		Assert.isNotNull(context);
-		return filter(undoList, context);
+		return undoList.filter(context);
 	}
 
 	/*
@@ -852,16 +823,7 @@ public final class DefaultOperationHistory implements IOperationHistory {
 	 */
 	public IUndoableOperation getUndoOperation(IUndoContext context) {
 		Assert.isNotNull(context);
-		synchronized (undoRedoHistoryLock) {
-			for (int i = undoList.size() - 1; i >= 0; i--) {
-				IUndoableOperation operation = (IUndoableOperation) undoList
-						.get(i);
-				if (operation.hasContext(context)) {
-					return operation;
-				}
-			}
-		}
-		return null;
+		return undoList.getLast(context);
 	}
 
 	/*
@@ -1165,10 +1127,8 @@ public final class DefaultOperationHistory implements IOperationHistory {
 		// check the undo history first.
 		boolean inUndo = false;
 		synchronized (undoRedoHistoryLock) {
-			int index = undoList.indexOf(operation);
-			if (index > -1) {
+			if (undoList.replace(operation, replacements)) {
 				inUndo = true;
-				undoList.remove(operation);
 				// notify listeners after the lock on undoList is released
 				ArrayList allContexts = new ArrayList(replacements.length);
 				for (int i = 0; i < replacements.length; i++) {
@@ -1176,9 +1136,6 @@ public final class DefaultOperationHistory implements IOperationHistory {
 					for (int j = 0; j < opContexts.length; j++) {
 						allContexts.add(opContexts[j]);
 					}
-					undoList.add(index, replacements[i]);
-					// notify listeners after the lock on the history is
-					// released
 				}
 				// recheck all the limits. We do this at the end so the index
 				// doesn't change during replacement
@@ -1200,20 +1157,16 @@ public final class DefaultOperationHistory implements IOperationHistory {
 		// operation was not in the undo history. Check the redo history.
 
 		synchronized (undoRedoHistoryLock) {
-			int index = redoList.indexOf(operation);
-			if (index == -1) {
+			if (!redoList.replace(operation, replacements)) {
 				return;
 			}
-			ArrayList allContexts = new ArrayList(replacements.length);
-			redoList.remove(operation);
 			// notify listeners after we release the lock on redoList
+			ArrayList allContexts = new ArrayList(replacements.length);
 			for (int i = 0; i < replacements.length; i++) {
 				IUndoContext[] opContexts = replacements[i].getContexts();
 				for (int j = 0; j < opContexts.length; j++) {
 					allContexts.add(opContexts[j]);
 				}
-				redoList.add(index, replacements[i]);
-				// notify listeners after we release the lock on redoList
 			}
 			// recheck all the limits. We do this at the end so the index
 			// doesn't change during replacement
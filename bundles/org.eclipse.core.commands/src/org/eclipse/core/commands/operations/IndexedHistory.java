@@ -0,0 +1,412 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.commands.operations;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * <p>
+ * The undo or the redo history of a {@link DefaultOperationHistory}. Besides
+ * the operations in the order they were added, the history keeps the
+ * operations of each undo context, so that the operations of a context are
+ * found without looking at the operations of all other contexts.
+ * </p>
+ * <p>
+ * Operations are indexed by the contexts they had when they were added. An
+ * {@link AbstractOperation} tells the history when its contexts change. Other
+ * implementations of {@link IUndoableOperation}, and subclasses that do not
+ * use the context methods of AbstractOperation, may match contexts in their
+ * own way and are checked with
+ * {@link IUndoableOperation#hasContext(IUndoContext)} on every request.
+ * </p>
+ * <p>
+ * The history is synchronized on itself, so that requests for the operations
+ * of a context do not wait for changes to the other history.
+ * </p>
+ */
+final class IndexedHistory {
+
+	/**
+	 * An operation in the history. The order is increasing with the position
+	 * in the history, so that the lists of the contexts stay sorted.
+	 */
+	private static final class Entry {
+		final IUndoableOperation operation;
+
+		long order;
+
+		/**
+		 * the contexts the operation is indexed with, <code>null</code> if it
+		 * is not indexed
+		 */
+		IUndoContext[] contexts;
+
+		Entry(IUndoableOperation operation) {
+			this.operation = operation;
+		}
+	}
+
+	/**
+	 * Identifies an undo context by identity, the way
+	 * {@link IUndoContext#matches(IUndoContext)} does by default.
+	 */
+	private static final class ContextKey {
+		final IUndoContext context;
+
+		ContextKey(IUndoContext context) {
+			this.context = context;
+		}
+
+		public boolean equals(Object obj) {
+			return obj instanceof ContextKey
+					&& ((ContextKey) obj).context == context;
+		}
+
+		public int hashCode() {
+			return System.identityHashCode(context);
+		}
+	}
+
+	private static final Comparator ORDER = new Comparator() {
+		public int compare(Object o1, Object o2) {
+			long order1 = ((Entry) o1).order;
+			long order2 = ((Entry) o2).order;
+			return order1 < order2 ? -1 : (order1 == order2 ? 0 : 1);
+		}
+	};
+
+	/**
+	 * the entries of all operations, oldest first
+	 */
+	private final List entries = new ArrayList();
+
+	/**
+	 * maps an operation to its entry
+	 */
+	private final Map entryMap = new HashMap();
+
+	/**
+	 * maps the key of an undo context to the entries of its operations, oldest
+	 * first
+	 */
+	private final Map contextMap = new HashMap();
+
+	/**
+	 * the entries of operations that are not indexed, oldest first
+	 */
+	private final List unindexed = new ArrayList();
+
+	private long nextOrder;
+
+	/**
+	 * maps an operation class to {@link Boolean#TRUE} if its operations can be
+	 * indexed
+	 */
+	private static final Map indexableClasses = new WeakHashMap();
+
+	/**
+	 * Adds the operation as the most recent operation of the history.
+	 */
+	synchronized void add(IUndoableOperation operation) {
+		if (entryMap.containsKey(operation)) {
+			return;
+		}
+		Entry entry = new Entry(operation);
+		entry.order = nextOrder++;
+		entries.add(entry);
+		entryMap.put(operation, entry);
+		index(entry);
+	}
+
+	/**
+	 * Removes the operation from the history. Returns whether the operation
+	 * was in the history.
+	 */
+	synchronized boolean remove(IUndoableOperation operation) {
+		Entry entry = (Entry) entryMap.remove(operation);
+		if (entry == null) {
+			return false;
+		}
+		entries.remove(search(entries, entry.order));
+		unindex(entry);
+		return true;
+	}
+
+	/**
+	 * Replaces the operation with the replacements at its position in the
+	 * history. Returns whether the operation was in the history.
+	 */
+	synchronized boolean replace(IUndoableOperation operation,
+			IUndoableOperation[] replacements) {
+		Entry entry = (Entry) entryMap.remove(operation);
+		if (entry == null) {
+			return false;
+		}
+		int index = search(entries, entry.order);
+		entries.remove(index);
+		unindex(entry);
+
+		List added = new ArrayList(replacements.length);
+		for (int i = 0; i < replacements.length; i++) {
+			if (!entryMap.containsKey(replacements[i])) {
+				Entry replacement = new Entry(replacements[i]);
+				entryMap.put(replacements[i], replacement);
+				added.add(replacement);
+			}
+		}
+		entries.addAll(index, added);
+
+		// renumbering keeps the order of the entries in the context lists
+		for (int i = 0; i < entries.size(); i++) {
+			((Entry) entries.get(i)).order = i;
+		}
+		nextOrder = entries.size();
+		for (int i = 0; i < added.size(); i++) {
+			index((Entry) added.get(i));
+		}
+		return true;
+	}
+
+	synchronized boolean contains(IUndoableOperation operation) {
+		return entryMap.containsKey(operation);
+	}
+
+	/**
+	 * Updates the index after the contexts of the operation changed.
+	 */
+	synchronized void contextsChanged(IUndoableOperation operation) {
+		Entry entry = (Entry) entryMap.get(operation);
+		if (entry != null) {
+			unindex(entry);
+			index(entry);
+		}
+	}
+
+	/**
+	 * Returns the operations that have the context, oldest first.
+	 */
+	synchronized IUndoableOperation[] filter(IUndoContext context) {
+		List lists = getMatchingLists(context);
+		List matching;
+		if (lists.size() == 1) {
+			matching = (List) lists.get(0);
+		} else {
+			Set seen = new HashSet();
+			matching = new ArrayList();
+			for (int i = 0; i < lists.size(); i++) {
+				List list = (List) lists.get(i);
+				for (int j = 0; j < list.size(); j++) {
+					Object entry = list.get(j);
+					if (seen.add(entry)) {
+						matching.add(entry);
+					}
+				}
+			}
+			Collections.sort(matching, ORDER);
+		}
+		IUndoableOperation[] operations = new IUndoableOperation[matching
+				.size()];
+		for (int i = 0; i < operations.length; i++) {
+			operations[i] = ((Entry) matching.get(i)).operation;
+		}
+		return operations;
+	}
+
+	/**
+	 * Returns the number of operations that have the context.
+	 */
+	synchronized int count(IUndoContext context) {
+		List lists = getMatchingLists(context);
+		if (lists.size() == 1) {
+			return ((List) lists.get(0)).size();
+		}
+		return filter(context).length;
+	}
+
+	/**
+	 * Returns the most recent operation that has the context, or
+	 * <code>null</code> if there is none.
+	 */
+	synchronized IUndoableOperation getLast(IUndoContext context) {
+		Entry last = null;
+		for (Iterator i = contextMap.entrySet().iterator(); i.hasNext();) {
+			Map.Entry mapEntry = (Map.Entry) i.next();
+			IUndoContext other = ((ContextKey) mapEntry.getKey()).context;
+			if (matches(context, other)) {
+				List list = (List) mapEntry.getValue();
+				Entry entry = (Entry) list.get(list.size() - 1);
+				if (last == null || entry.order > last.order) {
+					last = entry;
+				}
+			}
+		}
+		for (int i = unindexed.size() - 1; i >= 0; i--) {
+			Entry entry = (Entry) unindexed.get(i);
+			if (last != null && entry.order < last.order) {
+				break;
+			}
+			if (entry.operation.hasContext(context)) {
+				last = entry;
+				break;
+			}
+		}
+		return last == null ? null : last.operation;
+	}
+
+	/*
+	 * Returns the context lists and the unindexed entries that have the
+	 * context.
+	 */
+	private List getMatchingLists(IUndoContext context) {
+		List lists = new ArrayList();
+		for (Iterator i = contextMap.entrySet().iterator(); i.hasNext();) {
+			Map.Entry mapEntry = (Map.Entry) i.next();
+			if (matches(context, ((ContextKey) mapEntry.getKey()).context)) {
+				lists.add(mapEntry.getValue());
+			}
+		}
+		if (!unindexed.isEmpty()) {
+			List matching = new ArrayList();
+			for (int i = 0; i < unindexed.size(); i++) {
+				Entry entry = (Entry) unindexed.get(i);
+				if (entry.operation.hasContext(context)) {
+					matching.add(entry);
+				}
+			}
+			if (!matching.isEmpty()) {
+				lists.add(matching);
+			}
+		}
+		if (lists.isEmpty()) {
+			lists.add(Collections.EMPTY_LIST);
+		}
+		return lists;
+	}
+
+	/*
+	 * The matching rule of AbstractOperation#hasContext(IUndoContext).
+	 */
+	private static boolean matches(IUndoContext context, IUndoContext other) {
+		return context.matches(other) || other.matches(context);
+	}
+
+	/*
+	 * Returns whether the operation matches contexts with the rule of
+	 * AbstractOperation and tells the history when its contexts change.
+	 */
+	private static boolean isIndexable(IUndoableOperation operation) {
+		if (!(operation instanceof AbstractOperation)) {
+			return false;
+		}
+		Class operationClass = operation.getClass();
+		synchronized (indexableClasses) {
+			Boolean indexable = (Boolean) indexableClasses.get(operationClass);
+			if (indexable == null) {
+				indexable = isDeclaredByAbstractOperation(operationClass,
+						"hasContext", new Class[] { IUndoContext.class }) //$NON-NLS-1$
+						&& isDeclaredByAbstractOperation(operationClass,
+								"getContexts", new Class[0]) ? Boolean.TRUE //$NON-NLS-1$
+						: Boolean.FALSE;
+				indexableClasses.put(operationClass, indexable);
+			}
+			return indexable.booleanValue();
+		}
+	}
+
+	private static boolean isDeclaredByAbstractOperation(Class operationClass,
+			String name, Class[] parameterTypes) {
+		try {
+			return operationClass.getMethod(name, parameterTypes)
+					.getDeclaringClass() == AbstractOperation.class;
+		} catch (NoSuchMethodException e) {
+			return false;
+		} catch (SecurityException e) {
+			return false;
+		}
+	}
+
+	private void index(Entry entry) {
+		if (!isIndexable(entry.operation)) {
+			unindexed.add(-search(unindexed, entry.order) - 1, entry);
+			return;
+		}
+		((AbstractOperation) entry.operation).history = this;
+		entry.contexts = entry.operation.getContexts();
+		for (int i = 0; i < entry.contexts.length; i++) {
+			ContextKey key = new ContextKey(entry.contexts[i]);
+			List list = (List) contextMap.get(key);
+			if (list == null) {
+				list = new ArrayList();
+				contextMap.put(key, list);
+			}
+			int index = search(list, entry.order);
+			if (index < 0) {
+				list.add(-index - 1, entry);
+			}
+		}
+	}
+
+	private void unindex(Entry entry) {
+		if (entry.contexts == null) {
+			unindexed.remove(search(unindexed, entry.order));
+			return;
+		}
+		AbstractOperation operation = (AbstractOperation) entry.operation;
+		if (operation.history == this) {
+			operation.history = null;
+		}
+		for (int i = 0; i < entry.contexts.length; i++) {
+			ContextKey key = new ContextKey(entry.contexts[i]);
+			List list = (List) contextMap.get(key);
+			if (list != null) {
+				int index = search(list, entry.order);
+				if (index >= 0) {
+					list.remove(index);
+				}
+				if (list.isEmpty()) {
+					// do not keep disposed contexts
+					contextMap.remove(key);
+				}
+			}
+		}
+		entry.contexts = null;
+	}
+
+	/*
+	 * Binary search for the entry with the order in a list of entries sorted
+	 * by order.
+	 */
+	private static int search(List list, long order) {
+		int low = 0;
+		int high = list.size() - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			long middleOrder = ((Entry) list.get(middle)).order;
+			if (middleOrder < order) {
+				low = middle + 1;
+			} else if (middleOrder > order) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+}
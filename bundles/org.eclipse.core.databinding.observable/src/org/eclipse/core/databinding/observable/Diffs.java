@@ -27,6 +27,7 @@ import org.eclipse.core.databinding.observable.list.ListDiffEntry;
 import org.eclipse.core.databinding.observable.map.MapDiff;
 import org.eclipse.core.databinding.observable.set.SetDiff;
 import org.eclipse.core.databinding.observable.value.ValueDiff;
+import org.eclipse.core.internal.databinding.observable.MinimalListDiffer;
 import org.eclipse.core.internal.databinding.observable.Util;
 
 /**
@@ -53,6 +54,32 @@ public class Diffs {
 		return listDiff;
 	}
 
+	/**
+	 * Returns a {@link ListDiff} describing the change between the specified
+	 * old and new list states, containing the minimal number of additions and
+	 * removals. Elements which are both removed and added are reported as
+	 * moves, i.e. as a remove entry immediately followed by an add entry of
+	 * the same element.
+	 * <p>
+	 * Unlike {@link #computeListDiff(List, List)}, whose running time is
+	 * quadratic in the size of the lists, this method runs in O(n log n) time
+	 * for lists of distinct elements. The resulting entries may differ from
+	 * those computed by {@link #computeListDiff(List, List)}.
+	 * 
+	 * @param oldList
+	 *            the old list state
+	 * @param newList
+	 *            the new list state
+	 * @return the differences between oldList and newList
+	 * @since 1.5
+	 */
+	public static ListDiff computeMinimalListDiff(List oldList, List newList) {
+		List diffEntries = new ArrayList();
+		MinimalListDiffer.createListDiffs(oldList, newList, diffEntries);
+		return createListDiff((ListDiffEntry[]) diffEntries
+				.toArray(new ListDiffEntry[diffEntries.size()]));
+	}
+
 	/**
 	 * Returns a lazily computed {@link ListDiff} describing the change between
 	 * the specified old and new list states.
@@ -0,0 +1,372 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.internal.databinding.observable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.databinding.observable.Diffs;
+
+/**
+ * Computes a minimal list diff between two list states. The elements common
+ * to both lists are found with the Hunt-Szymanski longest common subsequence
+ * algorithm, which runs in O((n + r) log n) time where r is the number of
+ * matching element pairs; for lists of distinct elements this is O(n log n).
+ * <p>
+ * Every element that is not part of the common subsequence is either removed,
+ * added, or -- if an equal element is both removed and added -- moved. Moves
+ * are reported as a remove entry immediately followed by an add entry of the
+ * same element, so that
+ * {@link org.eclipse.core.databinding.observable.list.ListDiff#accept(org.eclipse.core.databinding.observable.list.ListDiffVisitor)}
+ * reports them as moves.
+ */
+public class MinimalListDiffer {
+
+	private static final int KEEP = 0;
+	private static final int CHANGE = 1;
+	private static final int PUSH = 2;
+	private static final int PULL = 3;
+
+	private final List oldList;
+	private final List newList;
+	private final List listDiffs;
+
+	/** old index -> matching new index, or -1 */
+	private int[] oldMatch;
+	/** new index -> matching old index, or -1 */
+	private int[] newMatch;
+	/** old/new index -> index of the gap between kept elements */
+	private int[] oldGap;
+	private int[] newGap;
+	/** old/new index -> position in the tail ordering */
+	private int[] oldSlot;
+	private int[] newSlot;
+	/** old index -> new index of the moved element, or -1 */
+	private int[] oldMove;
+	/** new index -> old index of the moved element, or -1 */
+	private int[] newMove;
+
+	/** Fenwick tree over the tail slots which are currently in the list */
+	private int[] tree;
+
+	/**
+	 * Appends the {@link org.eclipse.core.databinding.observable.list.ListDiffEntry}s
+	 * describing the change between the given list states to
+	 * <code>listDiffs</code>.
+	 *
+	 * @param oldList
+	 *            the old list state
+	 * @param newList
+	 *            the new list state
+	 * @param listDiffs
+	 *            the list receiving the diff entries
+	 */
+	public static void createListDiffs(List oldList, List newList,
+			List listDiffs) {
+		new MinimalListDiffer(oldList, newList, listDiffs).compute();
+	}
+
+	private MinimalListDiffer(List oldList, List newList, List listDiffs) {
+		this.oldList = oldList;
+		this.newList = newList;
+		this.listDiffs = listDiffs;
+	}
+
+	private void compute() {
+		int oldSize = oldList.size();
+		int newSize = newList.size();
+		oldMatch = new int[oldSize];
+		newMatch = new int[newSize];
+		fill(oldMatch, -1);
+		fill(newMatch, -1);
+
+		matchCommonSubsequence();
+		pairMoves();
+		assignSlots();
+		emitEntries();
+	}
+
+	/**
+	 * Fills oldMatch and newMatch with a longest common subsequence. Common
+	 * prefixes and suffixes are matched directly, the remainder with the
+	 * Hunt-Szymanski algorithm.
+	 */
+	private void matchCommonSubsequence() {
+		int oldEnd = oldList.size();
+		int newEnd = newList.size();
+		int start = 0;
+		while (start < oldEnd && start < newEnd
+				&& Util.equals(oldList.get(start), newList.get(start))) {
+			match(start, start);
+			start++;
+		}
+		while (oldEnd > start && newEnd > start
+				&& Util.equals(oldList.get(oldEnd - 1), newList.get(newEnd - 1))) {
+			oldEnd--;
+			newEnd--;
+			match(oldEnd, newEnd);
+		}
+		if (start == oldEnd || start == newEnd)
+			return;
+
+		// element -> ascending old indices
+		Map oldIndices = new HashMap();
+		for (int i = start; i < oldEnd; i++) {
+			Object element = oldList.get(i);
+			IntList indices = (IntList) oldIndices.get(element);
+			if (indices == null) {
+				indices = new IntList();
+				oldIndices.put(element, indices);
+			}
+			indices.add(i);
+		}
+
+		// thresholds[k] is the smallest old index ending a common subsequence
+		// of length k + 1; links[k] is the node describing that subsequence
+		int[] thresholds = new int[Math.min(oldEnd, newEnd) - start];
+		int[] links = new int[thresholds.length];
+		int length = 0;
+		IntList nodeOld = new IntList();
+		IntList nodeNew = new IntList();
+		IntList nodePrevious = new IntList();
+
+		for (int j = start; j < newEnd; j++) {
+			IntList indices = (IntList) oldIndices.get(newList.get(j));
+			if (indices == null)
+				continue;
+			// descending, so that one new element extends at most one chain
+			for (int n = indices.size - 1; n >= 0; n--) {
+				int i = indices.values[n];
+				int k = ceiling(thresholds, length, i);
+				if (k < length && thresholds[k] == i)
+					continue;
+				thresholds[k] = i;
+				links[k] = nodeOld.size;
+				nodeOld.add(i);
+				nodeNew.add(j);
+				nodePrevious.add(k == 0 ? -1 : links[k - 1]);
+				if (k == length)
+					length++;
+			}
+		}
+
+		for (int node = length == 0 ? -1 : links[length - 1]; node != -1; node = nodePrevious.values[node]) {
+			match(nodeOld.values[node], nodeNew.values[node]);
+		}
+	}
+
+	private void match(int oldIndex, int newIndex) {
+		oldMatch[oldIndex] = newIndex;
+		newMatch[newIndex] = oldIndex;
+	}
+
+	/**
+	 * Computes the gaps between kept elements and pairs every removed element
+	 * with an equal added element, if there is one.
+	 */
+	private void pairMoves() {
+		int oldSize = oldList.size();
+		int newSize = newList.size();
+		oldGap = new int[oldSize];
+		newGap = new int[newSize];
+		oldMove = new int[oldSize];
+		newMove = new int[newSize];
+		fill(oldMove, -1);
+		fill(newMove, -1);
+
+		Map removed = new HashMap();
+		int gap = 0;
+		for (int i = 0; i < oldSize; i++) {
+			oldGap[i] = gap;
+			if (oldMatch[i] != -1) {
+				gap++;
+			} else {
+				Object element = oldList.get(i);
+				IntList indices = (IntList) removed.get(element);
+				if (indices == null) {
+					indices = new IntList();
+					removed.put(element, indices);
+				}
+				indices.add(i);
+			}
+		}
+
+		gap = 0;
+		for (int j = 0; j < newSize; j++) {
+			newGap[j] = gap;
+			if (newMatch[j] != -1) {
+				gap++;
+				continue;
+			}
+			IntList indices = (IntList) removed.get(newList.get(j));
+			if (indices != null && indices.first < indices.size) {
+				int i = indices.values[indices.first++];
+				oldMove[i] = j;
+				newMove[j] = i;
+			}
+		}
+	}
+
+	private int kind(int oldIndex, int newIndex) {
+		if (oldIndex == -1 || newIndex == -1)
+			return CHANGE;
+		if (oldMatch[oldIndex] == newIndex)
+			return KEEP;
+		// gaps are processed in order, removals before additions; an element
+		// moving to a later gap is pushed there when its removal is processed,
+		// an element moving to an earlier gap is pulled there when its addition
+		// is processed.
+		return oldGap[oldIndex] < newGap[newIndex] ? PUSH : PULL;
+	}
+
+	/**
+	 * Orders the elements which are not yet part of the new list ("tail") as
+	 * they will appear in the list while the entries are emitted: per gap, the
+	 * old elements of the gap, then the elements pushed into the gap, then
+	 * the kept element ending the gap.
+	 */
+	private void assignSlots() {
+		int oldSize = oldList.size();
+		int newSize = newList.size();
+		oldSlot = new int[oldSize];
+		newSlot = new int[newSize];
+		int slot = 0;
+		int i = 0;
+		int j = 0;
+		while (i < oldSize || j < newSize) {
+			while (i < oldSize && oldMatch[i] == -1)
+				oldSlot[i++] = slot++;
+			while (j < newSize && newMatch[j] == -1) {
+				if (kind(newMove[j], j) == PUSH)
+					newSlot[j] = slot++;
+				j++;
+			}
+			if (i < oldSize) {
+				// kept element ending the gap
+				oldSlot[i++] = slot++;
+				j++;
+			}
+		}
+
+		tree = new int[slot + 1];
+		for (i = 0; i < oldSize; i++)
+			update(oldSlot[i], 1);
+	}
+
+	private void emitEntries() {
+		int oldSize = oldList.size();
+		int newSize = newList.size();
+		int position = 0;
+		int i = 0;
+		int j = 0;
+		while (i < oldSize || j < newSize) {
+			for (; i < oldSize && oldMatch[i] == -1; i++) {
+				int kind = kind(i, oldMove[i]);
+				if (kind == PULL)
+					continue; // already moved to an earlier gap
+				Object element = oldList.get(i);
+				remove(position + prefix(oldSlot[i]), element, oldSlot[i]);
+				if (kind == PUSH) {
+					int target = newSlot[oldMove[i]];
+					update(target, 1);
+					add(position + prefix(target), element);
+				}
+			}
+			for (; j < newSize && newMatch[j] == -1; j++) {
+				int kind = kind(newMove[j], j);
+				Object element = newList.get(j);
+				if (kind == PUSH) {
+					// already in place at the head of the tail
+					update(newSlot[j], -1);
+				} else {
+					if (kind == PULL) {
+						int slot = oldSlot[newMove[j]];
+						remove(position + prefix(slot), element, slot);
+					}
+					add(position, element);
+				}
+				position++;
+			}
+			if (i < oldSize) {
+				// kept element at the head of the tail
+				update(oldSlot[i], -1);
+				position++;
+				i++;
+				j++;
+			}
+		}
+	}
+
+	private void remove(int position, Object element, int slot) {
+		update(slot, -1);
+		listDiffs.add(Diffs.createListDiffEntry(position, false, element));
+	}
+
+	private void add(int position, Object element) {
+		listDiffs.add(Diffs.createListDiffEntry(position, true, element));
+	}
+
+	/**
+	 * Returns the number of slots before <code>slot</code> which are currently
+	 * in the list.
+	 */
+	private int prefix(int slot) {
+		int sum = 0;
+		for (int n = slot; n > 0; n -= n & -n)
+			sum += tree[n];
+		return sum;
+	}
+
+	private void update(int slot, int delta) {
+		for (int n = slot + 1; n < tree.length; n += n & -n)
+			tree[n] += delta;
+	}
+
+	/**
+	 * Returns the smallest k < length with values[k] >= key, or length.
+	 */
+	private static int ceiling(int[] values, int length, int key) {
+		int low = 0;
+		int high = length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (values[mid] < key)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	private static void fill(int[] values, int value) {
+		for (int i = 0; i < values.length; i++)
+			values[i] = value;
+	}
+
+	/**
+	 * Growable list of ints, consumed from <code>first</code>.
+	 */
+	private static class IntList {
+		int[] values = new int[4];
+		int size;
+		int first;
+
+		void add(int value) {
+			if (size == values.length) {
+				int[] grown = new int[size * 2];
+				System.arraycopy(values, 0, grown, 0, size);
+				values = grown;
+			}
+			values[size++] = value;
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2011 IBM Corporation and others.
+ * Copyright (c) 2009, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,7 +11,13 @@
 
 package org.eclipse.e4.core.commands.internal;
 
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import javax.inject.Inject;
 import org.eclipse.core.commands.Command;
@@ -20,6 +26,7 @@ import org.eclipse.e4.core.commands.EHandlerService;
 import org.eclipse.e4.core.contexts.ContextInjectionFactory;
 import org.eclipse.e4.core.contexts.EclipseContextFactory;
 import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.di.InjectionException;
 import org.eclipse.e4.core.di.annotations.CanExecute;
 import org.eclipse.e4.core.di.annotations.Execute;
 import org.eclipse.e4.core.di.annotations.Optional;
@@ -45,6 +52,36 @@ public class HandlerServiceImpl implements EHandlerService {
 		return context.getActiveLeaf().get(H_ID + commandId);
 	}
 
+	/**
+	 * The {@link CanExecute} or {@link Execute} method of a handler class.
+	 */
+	private static class HandlerMethod {
+		/** whether the class or a superclass has a method with the annotation */
+		final boolean declared;
+		/** the method, if it is the only one and has no parameters */
+		final Method method;
+
+		HandlerMethod(boolean declared, Method method) {
+			this.declared = declared;
+			this.method = method;
+		}
+	}
+
+	private static final Object[] NO_ARGUMENTS = new Object[0];
+	private static final int MAX_POOLED_CONTEXTS = 4;
+
+	/**
+	 * The resolved {@link CanExecute} methods per handler class. The cache lives as long as the
+	 * service, it is not shared so that the handler classes can be unloaded with their contexts.
+	 */
+	private final Map<Class<?>, HandlerMethod> canExecuteMethods = new HashMap<Class<?>, HandlerMethod>();
+
+	/** the resolved {@link Execute} methods per handler class */
+	private final Map<Class<?>, HandlerMethod> executeMethods = new HashMap<Class<?>, HandlerMethod>();
+
+	/** static contexts for {@link #canExecute(ParameterizedCommand)}, reused when released */
+	private final List<IEclipseContext> staticContexts = new ArrayList<IEclipseContext>();
+
 	private IEclipseContext context;
 
 	@Inject
@@ -88,11 +125,30 @@ public class HandlerServiceImpl implements EHandlerService {
 	 * ParameterizedCommand)
 	 */
 	public boolean canExecute(ParameterizedCommand command) {
-		final IEclipseContext staticContext = EclipseContextFactory.create(TMP_STATIC_CONTEXT);
+		// handlers that need no injection are checked without a static context
+		Object handler = lookUpHandler(context, command.getId());
+		if (handler == null) {
+			return false;
+		}
+		HandlerMethod canExecute = getCanExecuteMethod(handler.getClass());
+		if (!canExecute.declared) {
+			return true;
+		}
+		if (canExecute.method != null) {
+			try {
+				Boolean result = (Boolean) canExecute.method.invoke(handler, NO_ARGUMENTS);
+				return result.booleanValue();
+			} catch (Exception e) {
+				trace(handler, command.getId(), e);
+				return false;
+			}
+		}
+
+		final IEclipseContext staticContext = acquireStaticContext();
 		try {
 			return canExecute(command, staticContext);
 		} finally {
-			staticContext.dispose();
+			releaseStaticContext(command, staticContext);
 		}
 	}
 
@@ -103,26 +159,118 @@ public class HandlerServiceImpl implements EHandlerService {
 			return false;
 		}
 
-		final IEclipseContext executionContext = getExecutionContext();
 		addParms(command, staticContext);
+		if (!getCanExecuteMethod(handler.getClass()).declared) {
+			staticContext.set(CAN_EXECUTE, Boolean.TRUE);
+			return true;
+		}
 
+		final IEclipseContext executionContext = getExecutionContext();
 		try {
 			Boolean result = ((Boolean) ContextInjectionFactory.invoke(handler, CanExecute.class,
 					executionContext, staticContext, Boolean.TRUE));
 			staticContext.set(CAN_EXECUTE, result);
 			return result.booleanValue();
 		} catch (Exception e) {
-			if (Command.DEBUG_HANDLERS && logger != null) {
-				StringBuilder message = new StringBuilder();
-				message.append("Handler (").append(handler).append(") "); //$NON-NLS-1$ //$NON-NLS-2$
-				message.append(" for command (").append(commandId).append(") "); //$NON-NLS-1$ //$NON-NLS-2$
-				message.append("threw unexpected exception"); //$NON-NLS-1$
-				logger.trace(e, message.toString());
-			}
+			trace(handler, commandId, e);
 			return false;
 		}
 	}
 
+	private void trace(Object handler, String commandId, Exception e) {
+		if (Command.DEBUG_HANDLERS && logger != null) {
+			StringBuilder message = new StringBuilder();
+			message.append("Handler (").append(handler).append(") "); //$NON-NLS-1$ //$NON-NLS-2$
+			message.append(" for command (").append(commandId).append(") "); //$NON-NLS-1$ //$NON-NLS-2$
+			message.append("threw unexpected exception"); //$NON-NLS-1$
+			logger.trace(e, message.toString());
+		}
+	}
+
+	/**
+	 * Returns the {@link CanExecute} method of the handler class.
+	 */
+	private HandlerMethod getCanExecuteMethod(Class<?> handlerClass) {
+		return getHandlerMethod(canExecuteMethods, handlerClass, CanExecute.class, true);
+	}
+
+	/**
+	 * Returns the {@link Execute} method of the handler class.
+	 */
+	private HandlerMethod getExecuteMethod(Class<?> handlerClass) {
+		return getHandlerMethod(executeMethods, handlerClass, Execute.class, false);
+	}
+
+	/**
+	 * Returns the method of the handler class with the annotation. A method can be called directly
+	 * if it is the only one of the class hierarchy and has no parameters, so that
+	 * {@link ContextInjectionFactory#invoke(Object, Class, IEclipseContext, IEclipseContext, Object)}
+	 * would call it regardless of the contexts.
+	 */
+	private HandlerMethod getHandlerMethod(Map<Class<?>, HandlerMethod> cache,
+			Class<?> handlerClass, Class<? extends Annotation> annotation, boolean returnsBoolean) {
+		synchronized (cache) {
+			HandlerMethod handlerMethod = cache.get(handlerClass);
+			if (handlerMethod != null)
+				return handlerMethod;
+
+			List<Method> methods = new ArrayList<Method>();
+			for (Class<?> c = handlerClass; c != null && c != Object.class; c = c.getSuperclass()) {
+				for (Method method : c.getDeclaredMethods()) {
+					if (method.isAnnotationPresent(annotation))
+						methods.add(method);
+				}
+			}
+
+			Method direct = null;
+			if (methods.size() == 1) {
+				Method method = methods.get(0);
+				Class<?> returnType = method.getReturnType();
+				if (method.getParameterTypes().length == 0
+						&& (!returnsBoolean || returnType == boolean.class || returnType == Boolean.class)) {
+					try {
+						method.setAccessible(true);
+						direct = method;
+					} catch (SecurityException e) {
+						// invoked through injection
+					}
+				}
+			}
+			handlerMethod = new HandlerMethod(!methods.isEmpty(), direct);
+			cache.put(handlerClass, handlerMethod);
+			return handlerMethod;
+		}
+	}
+
+	private IEclipseContext acquireStaticContext() {
+		synchronized (staticContexts) {
+			if (!staticContexts.isEmpty())
+				return staticContexts.remove(staticContexts.size() - 1);
+		}
+		return EclipseContextFactory.create(TMP_STATIC_CONTEXT);
+	}
+
+	/**
+	 * Removes the values {@link #canExecute(ParameterizedCommand, IEclipseContext)} put into the
+	 * static context and keeps it for the next check.
+	 */
+	private void releaseStaticContext(ParameterizedCommand command, IEclipseContext staticContext) {
+		Iterator<?> i = command.getParameterMap().keySet().iterator();
+		while (i.hasNext()) {
+			staticContext.remove((String) i.next());
+		}
+		staticContext.remove(PARM_MAP);
+		staticContext.remove(ParameterizedCommand.class);
+		staticContext.remove(CAN_EXECUTE);
+		synchronized (staticContexts) {
+			if (staticContexts.size() < MAX_POOLED_CONTEXTS) {
+				staticContexts.add(staticContext);
+				return;
+			}
+		}
+		staticContext.dispose();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -163,11 +311,29 @@ public class HandlerServiceImpl implements EHandlerService {
 		}
 		staticContext.remove(NOT_HANDLED);
 
-		Object rc = ContextInjectionFactory.invoke(handler, CanExecute.class, executionContext,
-				staticContext, Boolean.TRUE);
+		Object rc = Boolean.TRUE;
+		if (getCanExecuteMethod(handler.getClass()).declared) {
+			rc = ContextInjectionFactory.invoke(handler, CanExecute.class, executionContext,
+					staticContext, Boolean.TRUE);
+		}
 		staticContext.set(CAN_EXECUTE, rc);
 		if (Boolean.FALSE.equals(rc))
 			return null;
+		HandlerMethod execute = getExecuteMethod(handler.getClass());
+		if (!execute.declared) {
+			return null;
+		}
+		if (execute.method != null) {
+			try {
+				return execute.method.invoke(handler, NO_ARGUMENTS);
+			} catch (InvocationTargetException e) {
+				// report failures of the handler as the injector does
+				Throwable cause = e.getCause();
+				throw new InjectionException(cause != null ? cause : e);
+			} catch (IllegalAccessException e) {
+				throw new InjectionException(e);
+			}
+		}
 		return ContextInjectionFactory.invoke(handler, Execute.class, executionContext,
 				staticContext, null);
 	}
@@ -49,6 +49,18 @@ public interface EBindingService {
 
 	TriggerSequence getBestSequenceFor(ParameterizedCommand command);
 
+	/**
+	 * Return the formatted best sequence of a command, as shown in menus and
+	 * tool tips. The text is cached until the bindings change.
+	 * 
+	 * @param command
+	 *            the command
+	 * @return the formatted {@link #getBestSequenceFor(ParameterizedCommand)},
+	 *         or <code>null</code> if the command has no binding
+	 * @since 0.11
+	 */
+	String getBestSequenceText(ParameterizedCommand command);
+
 	Collection<TriggerSequence> getSequencesFor(ParameterizedCommand command);
 
 	Collection<Binding> getPartialMatches(TriggerSequence sequence);
@@ -173,6 +173,16 @@ public class BindingServiceImpl implements EBindingService {
 		return binding == null ? null : binding.getTriggerSequence();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.e4.ui.bindings.EBindingService#getBestSequenceText(org.eclipse.core.commands.
+	 * ParameterizedCommand)
+	 */
+	public String getBestSequenceText(ParameterizedCommand command) {
+		return manager.getBestSequenceText(contextSet, command);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
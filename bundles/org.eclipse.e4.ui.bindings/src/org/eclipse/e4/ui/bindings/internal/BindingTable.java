@@ -52,6 +52,7 @@ public class BindingTable {
 
 		public void setActiveSchemes(String[] activeSchemeIds) {
 			this.activeSchemeIds = activeSchemeIds;
+			generation++;
 		}
 
 		public int compare(Binding o1, Binding o2) {
@@ -115,6 +116,20 @@ public class BindingTable {
 
 	public static final BindingComparator BEST_SEQUENCE = new BindingComparator();
 
+	/**
+	 * Incremented on every change of any table or of the active schemes, so
+	 * that results computed from the tables can be cached.
+	 */
+	private static volatile int generation = 0;
+
+	/**
+	 * @return a number that changes whenever a binding is added to or removed
+	 *         from any table, or the active schemes change
+	 */
+	static int getGeneration() {
+		return generation;
+	}
+
 	private Context tableId;
 	private ArrayList<Binding> bindings = new ArrayList<Binding>();
 	private Map<TriggerSequence, Binding> bindingsByTrigger = new HashMap<TriggerSequence, Binding>();
@@ -158,6 +173,7 @@ public class BindingTable {
 			throw new IllegalArgumentException("Binding context " + binding.getContextId() //$NON-NLS-1$
 					+ " does not match " + getId()); //$NON-NLS-1$
 		}
+		generation++;
 
 		Binding conflict;
 		ArrayList<Binding> conflictsList;
@@ -215,6 +231,7 @@ public class BindingTable {
 			throw new IllegalArgumentException("Binding context " + binding.getContextId() //$NON-NLS-1$
 					+ " does not match " + getId()); //$NON-NLS-1$
 		}
+		generation++;
 		ArrayList<Binding> conflictBindings = conflicts.get(binding.getTriggerSequence());
 
 		// if this binding is in the conflicts map, then remove it
@@ -14,8 +14,10 @@ package org.eclipse.e4.ui.bindings.internal;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import javax.inject.Inject;
 import org.eclipse.core.commands.ParameterizedCommand;
 import org.eclipse.core.commands.contexts.Context;
@@ -36,6 +38,27 @@ public class BindingTableManager {
 
 	private String[] activeSchemeIds;
 
+	/**
+	 * The lookup results of one context set. The entries are filled the first
+	 * time a trigger or command is looked up, and dropped with the whole index
+	 * when a table or the active schemes change.
+	 */
+	private static class ResolvedBindings {
+		final Map<TriggerSequence, Binding> perfectMatches = new HashMap<TriggerSequence, Binding>();
+		final Map<TriggerSequence, Boolean> isPartialMatch = new HashMap<TriggerSequence, Boolean>();
+		final Map<TriggerSequence, ArrayList<Binding>> partialMatches = new HashMap<TriggerSequence, ArrayList<Binding>>();
+		final Map<ParameterizedCommand, ArrayList<Binding>> sequences = new HashMap<ParameterizedCommand, ArrayList<Binding>>();
+		final Map<ParameterizedCommand, String> sequenceTexts = new HashMap<ParameterizedCommand, String>();
+	}
+
+	private Map<List<Context>, ResolvedBindings> resolved = new HashMap<List<Context>, ResolvedBindings>();
+
+	private int resolvedGeneration = -1;
+
+	private ContextSet lastContextSet;
+
+	private ResolvedBindings lastResolved;
+
 	public void addTable(BindingTable table) {
 		String contextId = getTableId(table.getId());
 		if (eclipseContext.containsKey(contextId)) {
@@ -43,6 +66,7 @@ public class BindingTableManager {
 			//			throw new IllegalArgumentException("Already contains table " + contextId); //$NON-NLS-1$
 		}
 		eclipseContext.set(contextId, table);
+		invalidateResolved();
 		final List<Context> contexts = definedTables.getContexts();
 		if (!contexts.contains(table.getTableId())) {
 			// this is only valid because I'm throwing away the old definedTables contextSet
@@ -55,12 +79,43 @@ public class BindingTableManager {
 		return BINDING_TABLE_PREFIX + id;
 	}
 
+	private void invalidateResolved() {
+		resolved.clear();
+		lastContextSet = null;
+		lastResolved = null;
+	}
+
+	/**
+	 * Return the lookup index of a context set, dropping all the indexes if a
+	 * table changed since they were filled.
+	 */
+	private ResolvedBindings getResolved(ContextSet contextSet) {
+		int generation = BindingTable.getGeneration();
+		if (generation != resolvedGeneration) {
+			invalidateResolved();
+			resolvedGeneration = generation;
+		}
+		if (contextSet == lastContextSet) {
+			return lastResolved;
+		}
+		ResolvedBindings result = resolved.get(contextSet.getContexts());
+		if (result == null) {
+			result = new ResolvedBindings();
+			// copy the key, the list of a context set can be modified
+			resolved.put(new ArrayList<Context>(contextSet.getContexts()), result);
+		}
+		lastContextSet = contextSet;
+		lastResolved = result;
+		return result;
+	}
+
 	public void removeTable(BindingTable table) {
 		String contextId = getTableId(table.getId());
 		if (!eclipseContext.containsKey(contextId)) {
 			throw new IllegalArgumentException("Does not contains table " + contextId); //$NON-NLS-1$
 		}
 		eclipseContext.remove(contextId);
+		invalidateResolved();
 		final List<Context> contexts = definedTables.getContexts();
 		if (contexts.contains(table.getTableId())) {
 			// this is only valid because I'm throwing away the old definedTables contextSet
@@ -120,6 +175,16 @@ public class BindingTableManager {
 	}
 
 	public Binding getPerfectMatch(ContextSet contextSet, TriggerSequence triggerSequence) {
+		ResolvedBindings index = getResolved(contextSet);
+		Binding result = index.perfectMatches.get(triggerSequence);
+		if (result == null && !index.perfectMatches.containsKey(triggerSequence)) {
+			result = findPerfectMatch(contextSet, triggerSequence);
+			index.perfectMatches.put(triggerSequence, result);
+		}
+		return result;
+	}
+
+	private Binding findPerfectMatch(ContextSet contextSet, TriggerSequence triggerSequence) {
 		Binding result = null;
 		Binding currentResult = null;
 		List<Context> contexts = contextSet.getContexts();
@@ -161,8 +226,7 @@ public class BindingTableManager {
 
 	public Binding getBestSequenceFor(ContextSet contextSet,
 			ParameterizedCommand parameterizedCommand) {
-		ArrayList<Binding> bindings = (ArrayList<Binding>) getSequencesFor(contextSet,
-				parameterizedCommand);
+		ArrayList<Binding> bindings = getSortedSequences(contextSet, parameterizedCommand);
 		if (bindings.size() == 0) {
 			return null;
 		}
@@ -171,6 +235,43 @@ public class BindingTableManager {
 
 	public Collection<Binding> getSequencesFor(ContextSet contextSet,
 			ParameterizedCommand parameterizedCommand) {
+		return new ArrayList<Binding>(getSortedSequences(contextSet, parameterizedCommand));
+	}
+
+	/**
+	 * @return the formatted trigger sequence of the best binding, or
+	 *         <code>null</code> if the command has no binding
+	 */
+	public String getBestSequenceText(ContextSet contextSet,
+			ParameterizedCommand parameterizedCommand) {
+		ResolvedBindings index = getResolved(contextSet);
+		String text = index.sequenceTexts.get(parameterizedCommand);
+		if (text == null && !index.sequenceTexts.containsKey(parameterizedCommand)) {
+			Binding binding = getBestSequenceFor(contextSet, parameterizedCommand);
+			if (binding != null) {
+				text = binding.getTriggerSequence().format();
+			}
+			index.sequenceTexts.put(parameterizedCommand, text);
+		}
+		return text;
+	}
+
+	/**
+	 * @return the sorted bindings of the command, must not be modified
+	 */
+	private ArrayList<Binding> getSortedSequences(ContextSet contextSet,
+			ParameterizedCommand parameterizedCommand) {
+		ResolvedBindings index = getResolved(contextSet);
+		ArrayList<Binding> bindings = index.sequences.get(parameterizedCommand);
+		if (bindings == null) {
+			bindings = findSequences(contextSet, parameterizedCommand);
+			index.sequences.put(parameterizedCommand, bindings);
+		}
+		return bindings;
+	}
+
+	private ArrayList<Binding> findSequences(ContextSet contextSet,
+			ParameterizedCommand parameterizedCommand) {
 		ArrayList<Binding> bindings = new ArrayList<Binding>();
 		List<Context> contexts = contextSet.getContexts();
 		ListIterator<Context> it = contexts.listIterator(contexts.size());
@@ -203,6 +304,16 @@ public class BindingTableManager {
 	}
 
 	public boolean isPartialMatch(ContextSet contextSet, TriggerSequence sequence) {
+		ResolvedBindings index = getResolved(contextSet);
+		Boolean result = index.isPartialMatch.get(sequence);
+		if (result == null) {
+			result = Boolean.valueOf(findPartialMatch(contextSet, sequence));
+			index.isPartialMatch.put(sequence, result);
+		}
+		return result.booleanValue();
+	}
+
+	private boolean findPartialMatch(ContextSet contextSet, TriggerSequence sequence) {
 		List<Context> contexts = contextSet.getContexts();
 		ListIterator<Context> it = contexts.listIterator(contexts.size());
 		while (it.hasPrevious()) {
@@ -218,6 +329,24 @@ public class BindingTableManager {
 	}
 
 	public Collection<Binding> getPartialMatches(ContextSet contextSet, TriggerSequence sequence) {
+		return new ArrayList<Binding>(getResolvedPartialMatches(contextSet, sequence));
+	}
+
+	/**
+	 * @return the bindings the sequence is a prefix of, must not be modified
+	 */
+	private ArrayList<Binding> getResolvedPartialMatches(ContextSet contextSet,
+			TriggerSequence sequence) {
+		ResolvedBindings index = getResolved(contextSet);
+		ArrayList<Binding> bindings = index.partialMatches.get(sequence);
+		if (bindings == null) {
+			bindings = findPartialMatches(contextSet, sequence);
+			index.partialMatches.put(sequence, bindings);
+		}
+		return bindings;
+	}
+
+	private ArrayList<Binding> findPartialMatches(ContextSet contextSet, TriggerSequence sequence) {
 		ArrayList<Binding> bindings = new ArrayList<Binding>();
 		List<Context> contexts = contextSet.getContexts();
 		ListIterator<Context> it = contexts.listIterator(contexts.size());
@@ -22,6 +22,8 @@ import org.w3c.dom.css.CSSRuleList;
 public class CSSRuleListImpl implements CSSRuleList, Serializable {
 
 	private List<CSSRule> ruleList;
+
+	private int modificationCount = 0;
 	
 	public CSSRuleListImpl() {
 		super();
@@ -53,6 +55,7 @@ public class CSSRuleListImpl implements CSSRuleList, Serializable {
 	 */	
 	public void add(CSSRule rule) {
 		ruleList.add(rule);
+		modificationCount++;
 	}
 
 	/**
@@ -60,5 +63,14 @@ public class CSSRuleListImpl implements CSSRuleList, Serializable {
 	 */	
 	public void remove(int position) {
 		ruleList.remove(position);
+		modificationCount++;
+	}
+
+	/**
+	 * @return a counter incremented on every change of the list, used to
+	 *         detect stale rule indexes
+	 */
+	int getModificationCount() {
+		return modificationCount;
 	}
 }
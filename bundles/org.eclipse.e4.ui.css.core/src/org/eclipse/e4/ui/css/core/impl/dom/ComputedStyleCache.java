@@ -0,0 +1,410 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.ui.css.core.impl.dom;
+
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.e4.ui.css.core.dom.CSSStylableElement;
+import org.eclipse.e4.ui.css.core.dom.ExtendedCSSRule;
+import org.eclipse.e4.ui.css.core.impl.sac.ExtendedCondition;
+import org.w3c.css.sac.AttributeCondition;
+import org.w3c.css.sac.CombinatorCondition;
+import org.w3c.css.sac.Condition;
+import org.w3c.css.sac.ConditionalSelector;
+import org.w3c.css.sac.DescendantSelector;
+import org.w3c.css.sac.ElementSelector;
+import org.w3c.css.sac.Selector;
+import org.w3c.css.sac.SelectorList;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.css.CSSRule;
+import org.w3c.dom.css.CSSRuleList;
+import org.w3c.dom.css.CSSStyleDeclaration;
+import org.w3c.dom.css.CSSStyleSheet;
+import org.w3c.dom.css.DocumentCSS;
+import org.w3c.dom.css.ViewCSS;
+import org.w3c.dom.stylesheets.StyleSheetList;
+
+/**
+ * Shares computed styles between elements which cannot be told apart by the
+ * selectors of the current stylesheets.
+ * <p>
+ * The stylesheets are scanned for the attributes and pseudo classes their
+ * selectors test, and whether they use descendant or child selectors. The
+ * signature of an element is built from its name, id, CSS classes, the value
+ * of those attributes, the state of those pseudo classes and, only when
+ * needed, the signature of its parent. Elements with the same signature match
+ * the same selectors, so the style computed for the first one is reused.
+ * </p>
+ * <p>
+ * Stylesheets with selectors the signature cannot describe (sibling
+ * selectors, positional conditions, ...) disable the cache. The cache is
+ * dropped whenever the stylesheets of the document change.
+ * </p>
+ */
+public final class ComputedStyleCache {
+
+	/**
+	 * Marks elements which match no rule at all.
+	 */
+	private static final Object NO_STYLE = new Object();
+
+	/**
+	 * Bound of the number of cached styles and signatures; elements with
+	 * generated ids or classes would otherwise grow the cache without limit.
+	 * The least recently used entries are dropped first.
+	 */
+	private static final int MAX_SIZE = 4096;
+
+	private final DocumentCSS documentCSS;
+
+	private final ViewCSS viewCSS;
+
+	/**
+	 * The rule lists the cache was built from, with their modification count
+	 * (or length) at that time.
+	 */
+	private CSSRuleList[] ruleLists;
+
+	private int[] ruleListStamps;
+
+	private boolean cacheable;
+
+	private boolean useAncestors;
+
+	private String[] attributes;
+
+	private String[] pseudoClasses;
+
+	private final Map<String, Object> styles = new LruMap<String, Object>();
+
+	/**
+	 * Full signatures interned to small numbers, so that the signature of a
+	 * child only refers to its parent through that number.
+	 */
+	private final Map<String, Integer> signatureIds = new LruMap<String, Integer>();
+
+	/**
+	 * The number given to the next new signature. Numbers are never reused
+	 * until the cache is invalidated: a signature dropped from
+	 * {@link #signatureIds} gets a new number, so that the styles still cached
+	 * under the old one cannot be served for another signature.
+	 */
+	private int nextSignatureId = 0;
+
+	/**
+	 * Element to signature number, only kept during a styling pass since the
+	 * elements can change between passes.
+	 */
+	private Map<Element, Integer> passSignatures;
+
+	private int passDepth = 0;
+
+	private int hits = 0;
+
+	private int misses = 0;
+
+	public ComputedStyleCache(DocumentCSS documentCSS, ViewCSS viewCSS) {
+		this.documentCSS = documentCSS;
+		this.viewCSS = viewCSS;
+	}
+
+	/**
+	 * Return the computed style of an element, reusing the style computed for
+	 * an element with the same signature when possible.
+	 *
+	 * @param elt
+	 *            the element
+	 * @param pseudoElt
+	 *            the pseudo instance, may be <code>null</code>
+	 * @return the computed style, or <code>null</code> if no rule matches
+	 */
+	public CSSStyleDeclaration getComputedStyle(Element elt, String pseudoElt) {
+		validate();
+		if (!cacheable || !(elt instanceof CSSStylableElement)) {
+			return viewCSS.getComputedStyle(elt, pseudoElt);
+		}
+		String key = getSignatureId(elt) + (pseudoElt == null ? "" : ":" + pseudoElt); //$NON-NLS-1$ //$NON-NLS-2$
+		Object style = styles.get(key);
+		if (style != null) {
+			hits++;
+			return style == NO_STYLE ? null : (CSSStyleDeclaration) style;
+		}
+		misses++;
+		CSSStyleDeclaration computed = viewCSS.getComputedStyle(elt, pseudoElt);
+		styles.put(key, computed == null ? NO_STYLE : computed);
+		return computed;
+	}
+
+	/**
+	 * Start a styling pass. While a pass is running the signatures of the
+	 * elements are remembered, so that the signature of the parent is not
+	 * recomputed for each child. Passes can be nested.
+	 */
+	public void beginPass() {
+		if (passDepth++ == 0) {
+			passSignatures = new IdentityHashMap<Element, Integer>();
+		}
+	}
+
+	/**
+	 * End a styling pass started with {@link #beginPass()}.
+	 */
+	public void endPass() {
+		if (passDepth > 0 && --passDepth == 0) {
+			passSignatures = null;
+		}
+	}
+
+	/**
+	 * Drop all cached styles.
+	 */
+	public void invalidate() {
+		ruleLists = null;
+		ruleListStamps = null;
+		styles.clear();
+		signatureIds.clear();
+		nextSignatureId = 0;
+		if (passSignatures != null) {
+			passSignatures.clear();
+		}
+	}
+
+	/**
+	 * @return the number of styles served from the cache
+	 */
+	public int getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of styles which had to be computed
+	 */
+	public int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Reset the hit and miss counters.
+	 */
+	public void resetCounters() {
+		hits = 0;
+		misses = 0;
+	}
+
+	private void validate() {
+		StyleSheetList styleSheetList = documentCSS.getStyleSheets();
+		int l = styleSheetList.getLength();
+		if (ruleLists != null && ruleLists.length == l) {
+			boolean valid = true;
+			for (int i = 0; i < l && valid; i++) {
+				CSSRuleList ruleList = ((CSSStyleSheet) styleSheetList.item(i))
+						.getCssRules();
+				valid = ruleList == ruleLists[i]
+						&& ruleListStamps[i] == getStamp(ruleList);
+			}
+			if (valid) {
+				return;
+			}
+		}
+		invalidate();
+		ruleLists = new CSSRuleList[l];
+		ruleListStamps = new int[l];
+		cacheable = true;
+		useAncestors = false;
+		Set<String> attributeSet = new HashSet<String>();
+		Set<String> pseudoClassSet = new HashSet<String>();
+		for (int i = 0; i < l; i++) {
+			CSSRuleList ruleList = ((CSSStyleSheet) styleSheetList.item(i))
+					.getCssRules();
+			ruleLists[i] = ruleList;
+			ruleListStamps[i] = getStamp(ruleList);
+			scan(ruleList, attributeSet, pseudoClassSet);
+		}
+		// the id and classes are always part of the signature
+		attributeSet.remove("id"); //$NON-NLS-1$
+		attributeSet.remove("class"); //$NON-NLS-1$
+		attributes = attributeSet.toArray(new String[attributeSet.size()]);
+		pseudoClasses = pseudoClassSet.toArray(new String[pseudoClassSet
+				.size()]);
+	}
+
+	private static int getStamp(CSSRuleList ruleList) {
+		return ruleList instanceof CSSRuleListImpl ? ((CSSRuleListImpl) ruleList)
+				.getModificationCount() : ruleList.getLength();
+	}
+
+	private void scan(CSSRuleList ruleList, Set<String> attributeSet,
+			Set<String> pseudoClassSet) {
+		int length = ruleList.getLength();
+		for (int i = 0; i < length; i++) {
+			CSSRule rule = ruleList.item(i);
+			if (rule.getType() != CSSRule.STYLE_RULE) {
+				continue;
+			}
+			if (!(rule instanceof ExtendedCSSRule)) {
+				cacheable = false;
+				return;
+			}
+			SelectorList selectorList = ((ExtendedCSSRule) rule)
+					.getSelectorList();
+			for (int j = 0; j < selectorList.getLength(); j++) {
+				scan(selectorList.item(j), attributeSet, pseudoClassSet);
+			}
+		}
+	}
+
+	private void scan(Selector selector, Set<String> attributeSet,
+			Set<String> pseudoClassSet) {
+		switch (selector.getSelectorType()) {
+		case Selector.SAC_ELEMENT_NODE_SELECTOR:
+		case Selector.SAC_PSEUDO_ELEMENT_SELECTOR:
+		case Selector.SAC_ANY_NODE_SELECTOR:
+			if (!(selector instanceof ElementSelector)) {
+				cacheable = false;
+			}
+			return;
+		case Selector.SAC_CONDITIONAL_SELECTOR:
+			ConditionalSelector conditional = (ConditionalSelector) selector;
+			scan(conditional.getSimpleSelector(), attributeSet, pseudoClassSet);
+			scan(conditional.getCondition(), attributeSet, pseudoClassSet);
+			return;
+		case Selector.SAC_DESCENDANT_SELECTOR:
+		case Selector.SAC_CHILD_SELECTOR:
+			DescendantSelector descendant = (DescendantSelector) selector;
+			useAncestors = true;
+			scan(descendant.getAncestorSelector(), attributeSet, pseudoClassSet);
+			scan(descendant.getSimpleSelector(), attributeSet, pseudoClassSet);
+			return;
+		default:
+			// sibling selectors, ...: the signature does not describe the
+			// siblings of an element
+			cacheable = false;
+		}
+	}
+
+	private void scan(Condition condition, Set<String> attributeSet,
+			Set<String> pseudoClassSet) {
+		switch (condition.getConditionType()) {
+		case Condition.SAC_AND_CONDITION:
+		case Condition.SAC_OR_CONDITION:
+			CombinatorCondition combinator = (CombinatorCondition) condition;
+			scan(combinator.getFirstCondition(), attributeSet, pseudoClassSet);
+			scan(combinator.getSecondCondition(), attributeSet, pseudoClassSet);
+			return;
+		case Condition.SAC_PSEUDO_CLASS_CONDITION:
+			pseudoClassSet.add(((AttributeCondition) condition).getValue());
+			return;
+		case Condition.SAC_ATTRIBUTE_CONDITION:
+		case Condition.SAC_ID_CONDITION:
+		case Condition.SAC_CLASS_CONDITION:
+		case Condition.SAC_ONE_OF_ATTRIBUTE_CONDITION:
+		case Condition.SAC_BEGIN_HYPHEN_ATTRIBUTE_CONDITION:
+		case Condition.SAC_LANG_CONDITION:
+			if (condition instanceof ExtendedCondition) {
+				((ExtendedCondition) condition).fillAttributeSet(attributeSet);
+			} else {
+				cacheable = false;
+			}
+			return;
+		default:
+			// positional conditions, ...
+			cacheable = false;
+		}
+	}
+
+	private int getSignatureId(Element elt) {
+		Integer id = passSignatures == null ? null : passSignatures.get(elt);
+		if (id == null) {
+			String signature = getSignature(elt);
+			id = signatureIds.get(signature);
+			if (id == null) {
+				id = Integer.valueOf(nextSignatureId++);
+				signatureIds.put(signature, id);
+			}
+			if (passSignatures != null) {
+				passSignatures.put(elt, id);
+			}
+		}
+		return id.intValue();
+	}
+
+	private String getSignature(Element elt) {
+		StringBuffer signature = new StringBuffer();
+		signature.append(elt.getNamespaceURI()).append('|');
+		signature.append(elt.getPrefix() == null ? elt.getNodeName() : elt
+				.getLocalName());
+		if (elt instanceof CSSStylableElement) {
+			CSSStylableElement stylableElement = (CSSStylableElement) elt;
+			append(signature, '#', stylableElement.getCSSId());
+			append(signature, '.', stylableElement.getCSSClass());
+			for (int i = 0; i < pseudoClasses.length; i++) {
+				String pseudoClass = pseudoClasses[i];
+				signature.append(':');
+				if (stylableElement.isPseudoInstanceOf(pseudoClass)) {
+					signature.append(stylableElement
+							.isStaticPseudoInstance(pseudoClass) ? 's' : 'y');
+				} else {
+					signature.append('n');
+				}
+			}
+		} else {
+			append(signature, '#', elt.getAttribute("id")); //$NON-NLS-1$
+			append(signature, '.', elt.getAttribute("class")); //$NON-NLS-1$
+		}
+		for (int i = 0; i < attributes.length; i++) {
+			append(signature, '[', elt.getAttribute(attributes[i]));
+		}
+		if (useAncestors) {
+			Node parent = elt.getParentNode();
+			while (parent != null && parent.getNodeType() != Node.ELEMENT_NODE) {
+				parent = parent.getParentNode();
+			}
+			signature.append('<').append(
+					parent == null ? -1 : getSignatureId((Element) parent));
+		}
+		return signature.toString();
+	}
+
+	/**
+	 * Append a value prefixed with its length: values can contain any
+	 * character, so separators alone would be ambiguous.
+	 */
+	private static void append(StringBuffer signature, char tag, String value) {
+		signature.append(tag);
+		if (value == null) {
+			signature.append('-');
+		} else {
+			signature.append(value.length()).append('=').append(value);
+		}
+	}
+
+	/**
+	 * A map holding at most {@link ComputedStyleCache#MAX_SIZE} entries,
+	 * dropping the least recently accessed one when full.
+	 */
+	private static final class LruMap<K, V> extends LinkedHashMap<K, V> {
+
+		private static final long serialVersionUID = 1L;
+
+		LruMap() {
+			super(16, 0.75f, true);
+		}
+
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+			return size() > MAX_SIZE;
+		}
+	}
+}
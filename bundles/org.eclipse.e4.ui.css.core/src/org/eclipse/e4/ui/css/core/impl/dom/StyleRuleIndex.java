@@ -0,0 +1,283 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.ui.css.core.impl.dom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.e4.ui.css.core.dom.CSSStylableElement;
+import org.eclipse.e4.ui.css.core.dom.ExtendedCSSRule;
+import org.eclipse.e4.ui.css.core.impl.sac.CSSClassConditionImpl;
+import org.eclipse.e4.ui.css.core.impl.sac.ExtendedSelector;
+import org.w3c.css.sac.AttributeCondition;
+import org.w3c.css.sac.CombinatorCondition;
+import org.w3c.css.sac.Condition;
+import org.w3c.css.sac.ConditionalSelector;
+import org.w3c.css.sac.DescendantSelector;
+import org.w3c.css.sac.ElementSelector;
+import org.w3c.css.sac.Selector;
+import org.w3c.css.sac.SelectorList;
+import org.w3c.css.sac.SiblingSelector;
+import org.w3c.dom.Element;
+import org.w3c.dom.css.CSSRule;
+import org.w3c.dom.css.CSSRuleList;
+import org.w3c.dom.css.CSSStyleDeclaration;
+import org.w3c.dom.css.CSSStyleRule;
+
+/**
+ * Index of the style rules of one stylesheet, bucketing every selector by
+ * the most selective part of its rightmost compound selector: the id, else a
+ * CSS class, else the element name. Selectors without any of those (universal
+ * selectors, pseudo elements, ...) are always candidates.
+ * <p>
+ * Only the candidates of an element's id, classes and name need to be
+ * matched, instead of every selector of the stylesheet.
+ * </p>
+ */
+final class StyleRuleIndex {
+
+	/**
+	 * An indexed selector. The order is the position of the selector in the
+	 * stylesheet and is used to keep the cascade order between buckets.
+	 */
+	static final class Entry {
+		final ExtendedSelector selector;
+		final CSSStyleDeclaration style;
+		final int order;
+
+		Entry(ExtendedSelector selector, CSSStyleDeclaration style, int order) {
+			this.selector = selector;
+			this.style = style;
+			this.order = order;
+		}
+	}
+
+	private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+		public int compare(Entry e1, Entry e2) {
+			return e1.order < e2.order ? -1 : (e1.order == e2.order ? 0 : 1);
+		}
+	};
+
+	private static final Entry[] NO_ENTRIES = new Entry[0];
+
+	private final int length;
+
+	private final int modificationCount;
+
+	private final Map<String, List<Entry>> byId = new HashMap<String, List<Entry>>();
+
+	private final Map<String, List<Entry>> byClass = new HashMap<String, List<Entry>>();
+
+	private final Map<String, List<Entry>> byName = new HashMap<String, List<Entry>>();
+
+	private final List<Entry> universal = new ArrayList<Entry>();
+
+	StyleRuleIndex(CSSRuleList ruleList) {
+		this.length = ruleList.getLength();
+		this.modificationCount = getModificationCount(ruleList);
+		int order = 0;
+		for (int i = 0; i < length; i++) {
+			CSSRule rule = ruleList.item(i);
+			if (rule.getType() != CSSRule.STYLE_RULE
+					|| !(rule instanceof ExtendedCSSRule)) {
+				continue;
+			}
+			CSSStyleDeclaration style = ((CSSStyleRule) rule).getStyle();
+			SelectorList selectorList = ((ExtendedCSSRule) rule)
+					.getSelectorList();
+			int l = selectorList.getLength();
+			for (int j = 0; j < l; j++) {
+				Selector selector = selectorList.item(j);
+				if (selector instanceof ExtendedSelector) {
+					add(new Entry((ExtendedSelector) selector, style, order++));
+				}
+			}
+		}
+	}
+
+	private static int getModificationCount(CSSRuleList ruleList) {
+		return ruleList instanceof CSSRuleListImpl ? ((CSSRuleListImpl) ruleList)
+				.getModificationCount() : 0;
+	}
+
+	/**
+	 * @param ruleList
+	 *            the rule list this index was built from; it is not kept to
+	 *            allow caching indexes in weak maps keyed by the list
+	 * @return <code>true</code> if this index still reflects the rule list
+	 */
+	boolean isValid(CSSRuleList ruleList) {
+		return length == ruleList.getLength()
+				&& modificationCount == getModificationCount(ruleList);
+	}
+
+	private void add(Entry entry) {
+		Selector rightmost = getRightmost(entry.selector);
+		Condition condition = null;
+		String name = null;
+		if (rightmost instanceof ConditionalSelector) {
+			condition = ((ConditionalSelector) rightmost).getCondition();
+			Selector simple = ((ConditionalSelector) rightmost)
+					.getSimpleSelector();
+			if (simple instanceof ElementSelector
+					&& simple.getSelectorType() == Selector.SAC_ELEMENT_NODE_SELECTOR) {
+				name = ((ElementSelector) simple).getLocalName();
+			}
+		} else if (rightmost instanceof ElementSelector
+				&& rightmost.getSelectorType() == Selector.SAC_ELEMENT_NODE_SELECTOR) {
+			name = ((ElementSelector) rightmost).getLocalName();
+		}
+		String id = findCondition(condition, false);
+		if (id != null) {
+			bucket(byId, id).add(entry);
+			return;
+		}
+		String cssClass = findCondition(condition, true);
+		if (cssClass != null) {
+			bucket(byClass, cssClass).add(entry);
+			return;
+		}
+		if (name != null) {
+			bucket(byName, name).add(entry);
+			return;
+		}
+		universal.add(entry);
+	}
+
+	private static Selector getRightmost(Selector selector) {
+		while (true) {
+			if (selector instanceof DescendantSelector) {
+				selector = ((DescendantSelector) selector).getSimpleSelector();
+			} else if (selector instanceof SiblingSelector) {
+				selector = ((SiblingSelector) selector).getSiblingSelector();
+			} else {
+				return selector;
+			}
+		}
+	}
+
+	/**
+	 * Find the value of an id or class condition, looking into <code>AND</code>
+	 * conditions. Class conditions are recognized by their implementation: like
+	 * batik, they report themselves as plain attribute conditions.
+	 */
+	private static String findCondition(Condition condition, boolean cssClass) {
+		if (condition == null) {
+			return null;
+		}
+		if (cssClass ? condition instanceof CSSClassConditionImpl : condition
+				.getConditionType() == Condition.SAC_ID_CONDITION) {
+			return ((AttributeCondition) condition).getValue();
+		}
+		if (condition.getConditionType() == Condition.SAC_AND_CONDITION) {
+			CombinatorCondition and = (CombinatorCondition) condition;
+			String value = findCondition(and.getFirstCondition(), cssClass);
+			return value != null ? value : findCondition(
+					and.getSecondCondition(), cssClass);
+		}
+		return null;
+	}
+
+	private static List<Entry> bucket(Map<String, List<Entry>> map, String key) {
+		List<Entry> list = map.get(key);
+		if (list == null) {
+			list = new ArrayList<Entry>(2);
+			map.put(key, list);
+		}
+		return list;
+	}
+
+	/**
+	 * Return the selectors that may match the element, in stylesheet order.
+	 *
+	 * @param elt
+	 *            the element
+	 * @return the candidate entries
+	 */
+	Entry[] getCandidates(Element elt) {
+		List<Entry> candidates = new ArrayList<Entry>(universal);
+		int buckets = universal.isEmpty() ? 0 : 1;
+
+		String id;
+		String cssClass;
+		if (elt instanceof CSSStylableElement) {
+			id = ((CSSStylableElement) elt).getCSSId();
+			cssClass = ((CSSStylableElement) elt).getCSSClass();
+		} else {
+			id = elt.getAttribute("id");
+			cssClass = elt.getAttribute("class");
+		}
+		if (id != null && !byId.isEmpty()) {
+			buckets += addAll(candidates, byId.get(id));
+		}
+		if (cssClass != null && cssClass.length() > 0 && !byClass.isEmpty()) {
+			buckets += addClasses(candidates, cssClass);
+		}
+		String name = elt.getPrefix() == null ? elt.getNodeName() : elt
+				.getLocalName();
+		if (name != null) {
+			buckets += addAll(candidates, byName.get(name));
+		}
+
+		if (candidates.isEmpty()) {
+			return NO_ENTRIES;
+		}
+		if (buckets > 1) {
+			Collections.sort(candidates, ORDER);
+		}
+		return candidates.toArray(new Entry[candidates.size()]);
+	}
+
+	private int addClasses(List<Entry> candidates, String cssClass) {
+		// split on the same separators CSSClassConditionImpl matches with
+		int buckets = 0;
+		List<String> seen = null;
+		int length = cssClass.length();
+		int start = 0;
+		while (start < length) {
+			while (start < length
+					&& Character.isSpaceChar(cssClass.charAt(start))) {
+				start++;
+			}
+			int end = start;
+			while (end < length && !Character.isSpaceChar(cssClass.charAt(end))) {
+				end++;
+			}
+			if (end > start) {
+				String token = cssClass.substring(start, end);
+				List<Entry> bucket = byClass.get(token);
+				if (bucket != null) {
+					if (seen == null) {
+						seen = new ArrayList<String>(2);
+					}
+					if (!seen.contains(token)) {
+						seen.add(token);
+						buckets += addAll(candidates, bucket);
+					}
+				}
+			}
+			start = end;
+		}
+		return buckets;
+	}
+
+	private static int addAll(List<Entry> candidates, List<Entry> bucket) {
+		if (bucket == null) {
+			return 0;
+		}
+		candidates.addAll(bucket);
+		return 1;
+	}
+}
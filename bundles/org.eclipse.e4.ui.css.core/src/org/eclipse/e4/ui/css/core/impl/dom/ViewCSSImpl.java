@@ -13,16 +13,12 @@ package org.eclipse.e4.ui.css.core.impl.dom;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
-import org.eclipse.e4.ui.css.core.dom.ExtendedCSSRule;
-import org.eclipse.e4.ui.css.core.impl.sac.ExtendedSelector;
-import org.w3c.css.sac.Selector;
-import org.w3c.css.sac.SelectorList;
 import org.w3c.dom.Element;
-import org.w3c.dom.css.CSSRule;
 import org.w3c.dom.css.CSSRuleList;
 import org.w3c.dom.css.CSSStyleDeclaration;
-import org.w3c.dom.css.CSSStyleRule;
 import org.w3c.dom.css.CSSStyleSheet;
 import org.w3c.dom.css.DocumentCSS;
 import org.w3c.dom.css.ViewCSS;
@@ -37,6 +33,8 @@ public class ViewCSSImpl implements ViewCSS {
 
 	protected DocumentCSS documentCSS;
 
+	private Map<CSSRuleList, StyleRuleIndex> ruleIndexes = new WeakHashMap<CSSRuleList, StyleRuleIndex>();
+
 	/**
 	 * Creates a new ViewCSS.
 	 */
@@ -74,54 +72,27 @@ public class ViewCSSImpl implements ViewCSS {
 			Element elt, String pseudoElt) {
 		List styleDeclarations = null;
 		StyleWrapper firstStyleDeclaration = null;
-		CSSRuleList ruleList = styleSheet.getCssRules();
-		int length = ruleList.getLength();
-		int position = 0;
-		for (int i = 0; i < length; i++) {
-			CSSRule rule = ruleList.item(i);
-			switch (rule.getType()) {
-			case CSSRule.STYLE_RULE: {
-				CSSStyleRule styleRule = (CSSStyleRule) rule;
-				if (rule instanceof ExtendedCSSRule) {
-					ExtendedCSSRule r = (ExtendedCSSRule) rule;
-					SelectorList selectorList = r.getSelectorList();
-					// Loop for SelectorList
-					int l = selectorList.getLength();
-					for (int j = 0; j < l; j++) {
-						Selector selector = (Selector) selectorList.item(j);
-						if (selector instanceof ExtendedSelector) {
-							ExtendedSelector extendedSelector = (ExtendedSelector) selector;
-							if (extendedSelector.match(elt, pseudoElt)) {
-								CSSStyleDeclaration style = styleRule
-										.getStyle();
-								int specificity = extendedSelector
-										.getSpecificity();
-								StyleWrapper wrapper = new StyleWrapper(style,
-										specificity, position++);
-								if (firstStyleDeclaration == null) {
-									firstStyleDeclaration = wrapper;
-								} else {
-									// There is several Style Declarations which
-									// match the current element
-									if (styleDeclarations == null) {
-										styleDeclarations = new ArrayList();
-										styleDeclarations
-												.add(firstStyleDeclaration);
-									}
-									styleDeclarations.add(wrapper);
-								}
-							}
-						} else {
-							// TODO : selector is not batik ExtendedSelector,
-							// Manage this case...
-						}
-					}
+		// Only test the selectors whose rightmost id, class or element name
+		// can match the element
+		StyleRuleIndex.Entry[] candidates = getRuleIndex(styleSheet)
+				.getCandidates(elt);
+		for (int i = 0; i < candidates.length; i++) {
+			StyleRuleIndex.Entry entry = candidates[i];
+			if (entry.selector.match(elt, pseudoElt)) {
+				StyleWrapper wrapper = new StyleWrapper(entry.style,
+						entry.selector.getSpecificity(), entry.order);
+				if (firstStyleDeclaration == null) {
+					firstStyleDeclaration = wrapper;
 				} else {
-					// TODO : CSS rule is not ExtendedCSSRule,
-					// Manage this case...
+					// There is several Style Declarations which
+					// match the current element
+					if (styleDeclarations == null) {
+						styleDeclarations = new ArrayList();
+						styleDeclarations.add(firstStyleDeclaration);
+					}
+					styleDeclarations.add(wrapper);
 				}
 			}
-			}
 		}
 		if (styleDeclarations != null) {
 			// There is several Style Declarations wich match
@@ -133,4 +104,14 @@ public class ViewCSSImpl implements ViewCSS {
 		}
 		return null;
 	}
+
+	private StyleRuleIndex getRuleIndex(CSSStyleSheet styleSheet) {
+		CSSRuleList ruleList = styleSheet.getCssRules();
+		StyleRuleIndex index = ruleIndexes.get(ruleList);
+		if (index == null || !index.isValid(ruleList)) {
+			index = new StyleRuleIndex(ruleList);
+			ruleIndexes.put(ruleList, index);
+		}
+		return index;
+	}
 }
@@ -45,6 +45,7 @@ import org.eclipse.e4.ui.css.core.engine.CSSErrorHandler;
 import org.eclipse.e4.ui.css.core.exceptions.UnsupportedPropertyException;
 import org.eclipse.e4.ui.css.core.impl.dom.CSSRuleListImpl;
 import org.eclipse.e4.ui.css.core.impl.dom.CSSStyleSheetImpl;
+import org.eclipse.e4.ui.css.core.impl.dom.ComputedStyleCache;
 import org.eclipse.e4.ui.css.core.impl.dom.DocumentCSSImpl;
 import org.eclipse.e4.ui.css.core.impl.dom.ViewCSSImpl;
 import org.eclipse.e4.ui.css.core.impl.sac.ExtendedSelector;
@@ -91,6 +92,14 @@ public abstract class AbstractCSSEngine implements CSSEngine {
 	 */
 	private final static IResourcesLocatorManager defaultResourcesLocatorManager = ResourcesLocatorManager.INSTANCE;
 
+	/**
+	 * System property which enables skipping the properties whose value is
+	 * the one already applied to the widget.
+	 * 
+	 * @see #setSkipUnchangedProperties(boolean)
+	 */
+	public static final String SKIP_UNCHANGED_PROPERTIES_PROPERTY = "org.eclipse.e4.ui.css.core.skipUnchangedProperties"; //$NON-NLS-1$
+
 	/**
 	 * w3c {@link DocumentCSS}.
 	 */
@@ -134,6 +143,18 @@ public abstract class AbstractCSSEngine implements CSSEngine {
 	protected HashMap widgetsMap = new HashMap();
 	
 	private boolean parseImport;
+
+	/**
+	 * Computed styles shared between elements with the same signature.
+	 */
+	private ComputedStyleCache styleCache;
+
+	private boolean skipUnchangedProperties = Boolean
+			.getBoolean(SKIP_UNCHANGED_PROPERTIES_PROPERTY);
+
+	private int appliedProperties = 0;
+
+	private int skippedProperties = 0;
 	
 	public AbstractCSSEngine() {
 		this(new DocumentCSSImpl());
@@ -142,6 +163,7 @@ public abstract class AbstractCSSEngine implements CSSEngine {
 	public AbstractCSSEngine(ExtendedDocumentCSS documentCSS) {
 		this.documentCSS = documentCSS;
 		this.viewCSS = new ViewCSSImpl(documentCSS);
+		this.styleCache = new ComputedStyleCache(documentCSS, viewCSS);
 	}
 
 	/*--------------- Parse style sheet -----------------*/
@@ -413,12 +435,24 @@ public abstract class AbstractCSSEngine implements CSSEngine {
 	 */
 	public void applyStyles(Object element, boolean applyStylesToChildNodes,
 			boolean computeDefaultStyle) {
+		// remember the element signatures while the tree is styled
+		styleCache.beginPass();
+		try {
+			doApplyStyles(element, applyStylesToChildNodes, computeDefaultStyle);
+		} finally {
+			styleCache.endPass();
+		}
+	}
+
+	private void doApplyStyles(Object element,
+			boolean applyStylesToChildNodes, boolean computeDefaultStyle) {
 		Element elt = getElement(element);
 		if (elt != null) {
 			/*
-			 * Compute new Style to apply.
+			 * Compute new Style to apply, shared with the elements which
+			 * match the same selectors.
 			 */
-			CSSStyleDeclaration style = viewCSS.getComputedStyle(elt, null);
+			CSSStyleDeclaration style = styleCache.getComputedStyle(elt, null);
 			if (computeDefaultStyle) {
 				if (applyStylesToChildNodes)
 					this.computeDefaultStyle = computeDefaultStyle;
@@ -437,7 +471,7 @@ public abstract class AbstractCSSEngine implements CSSEngine {
 				// apply styles for each pseudo instance.
 				for (int i = 0; i < pseudoInstances.length; i++) {
 					String pseudoInstance = pseudoInstances[i];
-					CSSStyleDeclaration styleWithPseudoInstance = viewCSS
+					CSSStyleDeclaration styleWithPseudoInstance = styleCache
 							.getComputedStyle(elt, pseudoInstance);
 					if (computeDefaultStyle) {
 						/*
@@ -768,6 +802,20 @@ public abstract class AbstractCSSEngine implements CSSEngine {
 		}
 
 		element = getElement(element); // in case we're passed a node
+		AppliedValuesElementContext elementContext = null;
+		if (skipUnchangedProperties) {
+			CSSElementContext context = getCSSElementContext(element);
+			if (context instanceof AppliedValuesElementContext) {
+				elementContext = (AppliedValuesElementContext) context;
+			}
+		}
+		if (elementContext != null
+				&& isSameValue(elementContext.getAppliedValue(property, pseudo),
+						value)) {
+			// the widget already has this value, don't set it again
+			skippedProperties++;
+			return null;
+		}
 		for (ICSSPropertyHandlerProvider provider : propertyHandlerProviders) {
 			Collection<ICSSPropertyHandler> handlers = provider
 					.getCSSPropertyHandlers(element, property);
@@ -785,6 +833,11 @@ public abstract class AbstractCSSEngine implements CSSEngine {
 						if (currentCSSPropertiesApplyed != null) {
 							currentCSSPropertiesApplyed.put(property, property);
 						}
+						appliedProperties++;
+						if (elementContext != null) {
+							elementContext.setAppliedValue(property, pseudo,
+									value);
+						}
 						return handler;
 					}
 				} catch (Exception e) {
@@ -798,6 +851,28 @@ public abstract class AbstractCSSEngine implements CSSEngine {
 		return null;
 	}
 
+	/**
+	 * Compare a value with the value last applied for a property. Values which
+	 * depend on other elements (<code>inherit</code>) or which cannot be
+	 * printed are never considered the same.
+	 */
+	private static boolean isSameValue(CSSValue applied, CSSValue value) {
+		if (applied == null || value == null) {
+			return false;
+		}
+		if (applied.getCssValueType() != value.getCssValueType()
+				|| value.getCssValueType() == CSSValue.CSS_INHERIT) {
+			return false;
+		}
+		try {
+			String text = value.getCssText();
+			return text != null && !"inherit".equals(text) //$NON-NLS-1$
+					&& text.equals(applied.getCssText());
+		} catch (RuntimeException e) {
+			return false;
+		}
+	}
+
 	public String retrieveCSSProperty(Object element, String property,
 			String pseudo) {
 		try {
@@ -1062,6 +1137,108 @@ public abstract class AbstractCSSEngine implements CSSEngine {
 	public void reset() {
 		// Remove All Style Sheets
 		((ExtendedDocumentCSS) documentCSS).removeAllStyleSheets();
+		styleCache.invalidate();
+		// the new style sheets are applied to every property again
+		clearAppliedValues();
+	}
+
+	/**
+	 * Set whether the properties whose value is the one last applied to the
+	 * widget are skipped. The engine cannot tell when a widget is changed
+	 * outside of it, so this is only safe when the widgets are styled by the
+	 * engine alone, or when the code changing them calls
+	 * {@link #clearAppliedValues(Object)}. Off unless the
+	 * {@link #SKIP_UNCHANGED_PROPERTIES_PROPERTY} system property is set.
+	 * 
+	 * @param skip
+	 */
+	public void setSkipUnchangedProperties(boolean skip) {
+		if (skipUnchangedProperties && !skip) {
+			clearAppliedValues();
+		}
+		skipUnchangedProperties = skip;
+	}
+
+	/**
+	 * @return <code>true</code> if the properties whose value is the one last
+	 *         applied to the widget are skipped
+	 */
+	public boolean isSkipUnchangedProperties() {
+		return skipUnchangedProperties;
+	}
+
+	/**
+	 * Forget the values applied to a widget, so that the next styling applies
+	 * all its properties again. To be called when the widget is changed
+	 * outside of the engine.
+	 * 
+	 * @param element
+	 *            the widget or its element
+	 */
+	public void clearAppliedValues(Object element) {
+		CSSElementContext context = getCSSElementContext(element);
+		if (context instanceof AppliedValuesElementContext) {
+			((AppliedValuesElementContext) context).clearAppliedValues();
+		}
+	}
+
+	private void clearAppliedValues() {
+		if (elementsContext != null) {
+			for (CSSElementContext context : elementsContext.values()) {
+				if (context instanceof AppliedValuesElementContext) {
+					((AppliedValuesElementContext) context)
+							.clearAppliedValues();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number of element styles reused from an element with the
+	 *         same signature since the last {@link #resetStyleCacheCounters()}
+	 */
+	public int getStyleCacheHits() {
+		return styleCache.getHits();
+	}
+
+	/**
+	 * @return the number of element styles computed since the last
+	 *         {@link #resetStyleCacheCounters()}
+	 */
+	public int getStyleCacheMisses() {
+		return styleCache.getMisses();
+	}
+
+	/**
+	 * Reset the computed style cache hit and miss counters.
+	 */
+	public void resetStyleCacheCounters() {
+		styleCache.resetCounters();
+	}
+
+	/**
+	 * @return the number of properties passed to a property handler since the
+	 *         last {@link #resetPropertyCounters()}
+	 */
+	public int getAppliedPropertiesCount() {
+		return appliedProperties;
+	}
+
+	/**
+	 * @return the number of properties not passed to their handler since the
+	 *         last {@link #resetPropertyCounters()}, because the widget already
+	 *         had their value
+	 */
+	public int getSkippedPropertiesCount() {
+		return skippedProperties;
+	}
+
+	/**
+	 * Reset the applied and skipped properties counters.
+	 */
+	public void resetPropertyCounters() {
+		appliedProperties = 0;
+		skippedProperties = 0;
 	}
 
 	/*--------------- Resources Registry -----------------*/
@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.ui.css.core.impl.engine;
+
+import org.eclipse.e4.ui.css.core.engine.CSSElementContext;
+import org.w3c.dom.css.CSSValue;
+
+/**
+ * Element context which records the values applied to the native widget, so
+ * that the engine can skip the properties whose value did not change.
+ *
+ * @see AbstractCSSEngine#setSkipUnchangedProperties(boolean)
+ */
+public interface AppliedValuesElementContext extends CSSElementContext {
+
+	/**
+	 * Return the value last applied to the native widget for a CSS property.
+	 *
+	 * @param property
+	 * @param pseudo
+	 *            the pseudo instance, may be <code>null</code>
+	 * @return the applied value, or <code>null</code> if none was recorded
+	 */
+	public CSSValue getAppliedValue(String property, String pseudo);
+
+	/**
+	 * Record the value applied to the native widget for a CSS property.
+	 *
+	 * @param property
+	 * @param pseudo
+	 *            the pseudo instance, may be <code>null</code>
+	 * @param value
+	 */
+	public void setAppliedValue(String property, String pseudo, CSSValue value);
+
+	/**
+	 * Forget all the applied values, so that the next styling applies every
+	 * property again.
+	 */
+	public void clearAppliedValues();
+}
@@ -15,10 +15,10 @@ import java.util.Map;
 
 import org.eclipse.e4.ui.css.core.dom.CSSStylableElement;
 import org.eclipse.e4.ui.css.core.dom.IElementProvider;
-import org.eclipse.e4.ui.css.core.engine.CSSElementContext;
 import org.w3c.dom.Element;
+import org.w3c.dom.css.CSSValue;
 
-public class CSSElementContextImpl implements CSSElementContext {
+public class CSSElementContextImpl implements AppliedValuesElementContext {
 
 	private Element element;
 
@@ -26,6 +26,8 @@ public class CSSElementContextImpl implements CSSElementContext {
 
 	private IElementProvider elementProvider;
 
+	private Map<String, CSSValue> appliedValues = null;
+
 	public CSSElementContextImpl() {
 
 	}
@@ -64,4 +66,24 @@ public class CSSElementContextImpl implements CSSElementContext {
 	public void setElementProvider(IElementProvider elementProvider) {
 		this.elementProvider = elementProvider;
 	}
+
+	public CSSValue getAppliedValue(String property, String pseudo) {
+		if (appliedValues == null)
+			return null;
+		return appliedValues.get(getAppliedValueKey(property, pseudo));
+	}
+
+	public void setAppliedValue(String property, String pseudo, CSSValue value) {
+		if (appliedValues == null)
+			appliedValues = new HashMap<String, CSSValue>();
+		appliedValues.put(getAppliedValueKey(property, pseudo), value);
+	}
+
+	public void clearAppliedValues() {
+		appliedValues = null;
+	}
+
+	private static String getAppliedValueKey(String property, String pseudo) {
+		return pseudo == null ? property : property + ':' + pseudo;
+	}
 }
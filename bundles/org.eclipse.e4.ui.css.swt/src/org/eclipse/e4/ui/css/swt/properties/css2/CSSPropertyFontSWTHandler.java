@@ -15,8 +15,10 @@ import org.eclipse.e4.ui.css.core.dom.properties.ICSSPropertyHandler2;
 import org.eclipse.e4.ui.css.core.dom.properties.css2.AbstractCSSPropertyFontHandler;
 import org.eclipse.e4.ui.css.core.dom.properties.css2.CSS2FontProperties;
 import org.eclipse.e4.ui.css.core.dom.properties.css2.ICSSPropertyFontHandler;
+import org.eclipse.e4.ui.css.core.engine.CSSElementContext;
 import org.eclipse.e4.ui.css.core.engine.CSSEngine;
 import org.eclipse.e4.ui.css.core.exceptions.UnsupportedPropertyException;
+import org.eclipse.e4.ui.css.core.impl.engine.AppliedValuesElementContext;
 import org.eclipse.e4.ui.css.swt.dom.ItemElement;
 import org.eclipse.e4.ui.css.swt.helpers.CSSSWTFontHelper;
 import org.eclipse.e4.ui.css.swt.helpers.SWTElementHelpers;
@@ -270,13 +272,19 @@ public class CSSPropertyFontSWTHandler extends AbstractCSSPropertyFontHandler
 		private void applyStyles(CSSStyleDeclaration styleDeclaration,
 				String pseudo, Item item) {
 			// retrieve the css font properties pertaining to the item
+			CSSElementContext context = engine.getCSSElementContext(item);
 			CSS2FontProperties fontProperties = CSSSWTFontHelper
-					.getCSS2FontProperties(item, engine
-							.getCSSElementContext(item));
+					.getCSS2FontProperties(item, context);
 			ItemElement itemElement = new ItemElement(item, engine);
 			if (fontProperties != null) {
 				// reset ourselves to prevent the stacking of properties
 				reset(fontProperties);
+				// the font is changed behind the engine's back, so the values
+				// it recorded as applied no longer describe the item
+				if (context instanceof AppliedValuesElementContext) {
+					((AppliedValuesElementContext) context)
+							.clearAppliedValues();
+				}
 
 				for (int j = 0; j < fontAttributes.length; j++) {
 					CSSValue value = styleDeclaration
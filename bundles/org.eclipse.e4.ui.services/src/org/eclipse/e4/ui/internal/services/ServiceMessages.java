@@ -1,5 +1,5 @@
 /**********************************************************************
- * Copyright (c) 2005, 2006 IBM Corporation and others. All rights reserved.   This
+ * Copyright (c) 2005, 2012 IBM Corporation and others. All rights reserved.   This
  * program and the accompanying materials are made available under the terms of
  * the Eclipse Public License v1.0 which accompanies this distribution, and is
  * available at http://www.eclipse.org/legal/epl-v10.html
@@ -18,6 +18,8 @@ public class ServiceMessages extends NLS {
 	// Event broker
 	public static String NO_EVENT_ADMIN;
 	public static String NO_BUNDLE_CONTEXT;
+	public static String INVALID_EVENT_FILTER;
+	public static String EVENT_HANDLER_FAILED;
 	
 	static {
 		// load message values from bundle file
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.ui.services.internal.events;
+
+import java.util.Dictionary;
+import java.util.Hashtable;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+
+/**
+ * Delivers the events sent or posted straight to the EventAdmin, rather than
+ * through an event broker, to the in-process subscribers of a
+ * {@link TopicTree}. It is registered as an {@link EventHandler} of all topics
+ * once the broker dispatches in-process.
+ * <p>
+ * Events that a broker forwards to the EventAdmin itself carry the
+ * {@link #FORWARDED} property; they were dispatched in-process already and
+ * are left out.
+ * </p>
+ */
+public class EventAdminBridge implements EventHandler {
+
+	/**
+	 * Property of the events that a broker has dispatched in-process and then
+	 * forwarded to the EventAdmin.
+	 */
+	public static final String FORWARDED = "org.eclipse.e4.ui.services.events.forwarded"; //$NON-NLS-1$
+
+	private final TopicTree topicTree;
+
+	/**
+	 * @param topicTree
+	 *            the subscriptions to deliver the events to
+	 */
+	public EventAdminBridge(TopicTree topicTree) {
+		this.topicTree = topicTree;
+	}
+
+	/**
+	 * Register the receiver for the events of all topics that were not
+	 * forwarded by a broker.
+	 *
+	 * @param bundleContext
+	 *            the context to register the handler service with
+	 * @return the registration of the handler service
+	 */
+	public ServiceRegistration<?> register(BundleContext bundleContext) {
+		Dictionary<String, Object> d = new Hashtable<String, Object>();
+		d.put(EventConstants.EVENT_TOPIC, new String[] { "*" }); //$NON-NLS-1$
+		d.put(EventConstants.EVENT_FILTER, "(!(" + FORWARDED + "=*))"); //$NON-NLS-1$ //$NON-NLS-2$
+		return bundleContext.registerService(EventHandler.class.getName(), this, d);
+	}
+
+	/**
+	 * Return a copy of the event marked as forwarded.
+	 *
+	 * @param event
+	 *            an event that was dispatched in-process
+	 * @return the event to pass to the EventAdmin
+	 */
+	public static Event forwarded(Event event) {
+		String[] names = event.getPropertyNames();
+		Dictionary<String, Object> d = new Hashtable<String, Object>(names.length + 1);
+		for (String name : names) {
+			Object value = event.getProperty(name);
+			if (value != null)
+				d.put(name, value);
+		}
+		d.put(FORWARDED, Boolean.TRUE);
+		return new Event(event.getTopic(), d);
+	}
+
+	public void handleEvent(Event event) {
+		// the filter of the registration already leaves them out
+		if (event.getProperty(FORWARDED) != null)
+			return;
+		// failures are rethrown for the EventAdmin to log
+		topicTree.dispatch(event, null);
+	}
+}
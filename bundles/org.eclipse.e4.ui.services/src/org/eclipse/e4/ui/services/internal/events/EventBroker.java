@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2010 IBM Corporation and others.
+ * Copyright (c) 2009, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,6 +16,9 @@ import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import org.eclipse.e4.core.di.annotations.Optional;
@@ -28,6 +31,9 @@ import org.eclipse.osgi.util.NLS;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleException;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventAdmin;
@@ -35,10 +41,40 @@ import org.osgi.service.event.EventConstants;
 import org.osgi.service.event.EventHandler;
 
 public class EventBroker implements IEventBroker {
-	
+
+	/**
+	 * System property that switches the broker to in-process dispatching:
+	 * subscriptions are kept in a {@link TopicTree} shared by all brokers and
+	 * events are delivered without going through the OSGi service registry
+	 * and the EventAdmin.
+	 */
+	public static final String IN_PROCESS_PROPERTY = "org.eclipse.e4.ui.services.events.inProcess"; //$NON-NLS-1$
+
+	/**
+	 * System property that, in in-process mode, also forwards every event to
+	 * the EventAdmin so that plain OSGi {@link EventHandler} services still
+	 * receive them. The events sent straight to the EventAdmin reach the
+	 * in-process subscribers in either case, through an {@link EventAdminBridge}.
+	 */
+	public static final String BRIDGE_PROPERTY = "org.eclipse.e4.ui.services.events.bridgeEventAdmin"; //$NON-NLS-1$
+
+	private static final boolean IN_PROCESS = Boolean.getBoolean(IN_PROCESS_PROPERTY);
+
+	private static final boolean BRIDGE = Boolean.getBoolean(BRIDGE_PROPERTY);
+
+	// shared so that events sent from one broker reach subscribers of another
+	private static final TopicTree topicTree = new TopicTree();
+
+	private static ExecutorService asyncDispatcher;
+
+	private static ServiceRegistration<?> bridgeRegistration;
+
 	// TBD synchronization
 	private Map<EventHandler, Collection<ServiceRegistration<?>>> registrations = new HashMap<EventHandler, Collection<ServiceRegistration<?>>>();
 
+	// the in-process subscriptions, guarded by synchronizing on the map
+	private final Map<EventHandler, Collection<TopicTree.Subscription>> subscriptions = new HashMap<EventHandler, Collection<TopicTree.Subscription>>();
+
 	@Inject
 	Logger logger;
 	
@@ -70,25 +106,47 @@ public class EventBroker implements IEventBroker {
 		// placeholder
 	}
 
+	/**
+	 * @return <code>true</code> if events are dispatched in-process instead of
+	 *         through the EventAdmin
+	 */
+	public static boolean isInProcess() {
+		return IN_PROCESS;
+	}
+
 	public boolean send(String topic, Object data) {
 		Event event = constructEvent(topic, data);
+		if (IN_PROCESS) {
+			topicTree.dispatch(event, logger);
+			if (!BRIDGE)
+				return true;
+		}
 		EventAdmin eventAdmin = Activator.getDefault().getEventAdmin();
 		if (eventAdmin == null) {
 			logger.error(NLS.bind(ServiceMessages.NO_EVENT_ADMIN, event.toString()));
 			return false;
 		}
-		eventAdmin.sendEvent(event);
+		eventAdmin.sendEvent(IN_PROCESS ? EventAdminBridge.forwarded(event) : event);
 		return true;
 	}
 
 	public boolean post(String topic, Object data) {
-		Event event = constructEvent(topic, data);
+		final Event event = constructEvent(topic, data);
+		if (IN_PROCESS) {
+			getAsyncDispatcher().execute(new Runnable() {
+				public void run() {
+					topicTree.dispatch(event, logger);
+				}
+			});
+			if (!BRIDGE)
+				return true;
+		}
 		EventAdmin eventAdmin = Activator.getDefault().getEventAdmin();
 		if (eventAdmin == null) {
 			logger.error(NLS.bind(ServiceMessages.NO_EVENT_ADMIN, event.toString()));
 			return false;
 		}
-		eventAdmin.postEvent(event);
+		eventAdmin.postEvent(IN_PROCESS ? EventAdminBridge.forwarded(event) : event);
 		return true;
 	}
 
@@ -114,6 +172,9 @@ public class EventBroker implements IEventBroker {
 	}
 	
 	public boolean subscribe(String topic, String filter, EventHandler eventHandler, boolean headless) {
+		if (IN_PROCESS) {
+			return subscribeInProcess(topic, filter, eventHandler, headless);
+		}
 		BundleContext bundleContext = Activator.getDefault().getBundleContext();
 		if (bundleContext == null) {
 			logger.error(NLS.bind(ServiceMessages.NO_BUNDLE_CONTEXT, topic));
@@ -137,7 +198,69 @@ public class EventBroker implements IEventBroker {
 		return true;
 	}
 
+	private boolean subscribeInProcess(String topic, String filter, EventHandler eventHandler,
+			boolean headless) {
+		Filter parsedFilter = null;
+		if (filter != null) {
+			try {
+				parsedFilter = FrameworkUtil.createFilter(filter);
+			} catch (InvalidSyntaxException e) {
+				logger.error(e, NLS.bind(ServiceMessages.INVALID_EVENT_FILTER, topic, filter));
+				return false;
+			}
+		}
+		registerBridge();
+		EventHandler wrappedHandler = new UIEventHandler(eventHandler, headless ? null : uiSync);
+		TopicTree.Subscription subscription = new TopicTree.Subscription(topic, parsedFilter,
+				wrappedHandler);
+		synchronized (subscriptions) {
+			topicTree.add(subscription);
+			Collection<TopicTree.Subscription> handled = subscriptions.get(eventHandler);
+			if (handled == null) {
+				subscriptions.put(eventHandler,
+						handled = new ArrayList<TopicTree.Subscription>());
+			}
+			handled.add(subscription);
+		}
+		return true;
+	}
+
+	/*
+	 * Once, have the events posted straight to the EventAdmin delivered to the
+	 * in-process subscribers as well.
+	 */
+	private static synchronized void registerBridge() {
+		if (bridgeRegistration != null)
+			return;
+		BundleContext bundleContext = Activator.getDefault().getBundleContext();
+		if (bundleContext != null)
+			bridgeRegistration = new EventAdminBridge(topicTree).register(bundleContext);
+	}
+
+	private static synchronized ExecutorService getAsyncDispatcher() {
+		if (asyncDispatcher == null) {
+			// a single thread keeps posted events in order, as EventAdmin does
+			asyncDispatcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "EventBroker Async Dispatcher"); //$NON-NLS-1$
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return asyncDispatcher;
+	}
+
 	public boolean unsubscribe(EventHandler eventHandler) {
+		synchronized (subscriptions) {
+			Collection<TopicTree.Subscription> subscribed = subscriptions.remove(eventHandler);
+			if (subscribed != null && !subscribed.isEmpty()) {
+				for (TopicTree.Subscription subscription : subscribed) {
+					topicTree.remove(subscription);
+				}
+				return true;
+			}
+		}
 		Collection<ServiceRegistration<?>> handled = registrations
 				.remove(eventHandler);
 		if (handled == null || handled.isEmpty())
@@ -150,6 +273,14 @@ public class EventBroker implements IEventBroker {
 	
 	@PreDestroy
 	void dispose() {
+		synchronized (subscriptions) {
+			for (Collection<TopicTree.Subscription> subscribed : subscriptions.values()) {
+				for (TopicTree.Subscription subscription : subscribed) {
+					topicTree.remove(subscription);
+				}
+			}
+			subscriptions.clear();
+		}
 		Collection<Collection<ServiceRegistration<?>>> values = new ArrayList<Collection<ServiceRegistration<?>>>(
 				registrations.values());
 		registrations.clear();
@@ -0,0 +1,340 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.ui.services.internal.events;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.eclipse.e4.core.services.log.Logger;
+import org.eclipse.e4.ui.internal.services.ServiceMessages;
+import org.eclipse.osgi.util.NLS;
+import org.osgi.framework.Filter;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
+
+/**
+ * Keeps event subscriptions in a trie keyed by topic segment so that the
+ * subscribers of a topic can be found without going through the OSGi service
+ * registry.
+ * <p>
+ * Topics follow the EventAdmin syntax: segments are separated by
+ * <code>'/'</code>, and a subscription topic may end with a <code>'*'</code>
+ * segment that matches any number of trailing segments (<code>"*"</code> on
+ * its own matches every topic).
+ * </p>
+ * <p>
+ * The subscribers resolved for a topic are cached until the next
+ * subscription change; model events use a small, fixed set of topics so
+ * dispatching is normally a single map lookup. The cache keeps the most
+ * recently used {@link #MAX_RESOLVED} topics.
+ * </p>
+ */
+public class TopicTree {
+
+	private static final String WILDCARD = "*"; //$NON-NLS-1$
+
+	private static final char SEPARATOR = '/';
+
+	private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+
+	/**
+	 * The maximum number of topics whose subscribers are cached.
+	 */
+	static final int MAX_RESOLVED = 512;
+
+	/**
+	 * A registered handler.
+	 */
+	public static class Subscription {
+		final String topic;
+		final Filter filter;
+		final EventHandler handler;
+
+		/**
+		 * @param topic
+		 *            the subscribed topic, may end with a wildcard
+		 * @param filter
+		 *            an optional filter, may be <code>null</code>
+		 * @param handler
+		 *            the handler to notify
+		 */
+		public Subscription(String topic, Filter filter, EventHandler handler) {
+			this.topic = topic;
+			this.filter = filter;
+			this.handler = handler;
+		}
+
+		/**
+		 * @return the subscribed topic
+		 */
+		public String getTopic() {
+			return topic;
+		}
+
+		/**
+		 * @return the handler to notify
+		 */
+		public EventHandler getHandler() {
+			return handler;
+		}
+	}
+
+	private static class Node {
+		Map<String, Node> children;
+		Subscription[] exact = NO_SUBSCRIPTIONS;
+		Subscription[] wildcard = NO_SUBSCRIPTIONS;
+
+		Node child(String segment, boolean create) {
+			Node child = children == null ? null : children.get(segment);
+			if (child == null && create) {
+				if (children == null) {
+					children = new HashMap<String, Node>(4);
+				}
+				child = new Node();
+				children.put(segment, child);
+			}
+			return child;
+		}
+
+		boolean isEmpty() {
+			return exact.length == 0 && wildcard.length == 0
+					&& (children == null || children.isEmpty());
+		}
+	}
+
+	private final Node root = new Node();
+
+	private final Map<String, Subscription[]> resolved = new LinkedHashMap<String, Subscription[]>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Subscription[]> eldest) {
+			return size() > MAX_RESOLVED;
+		}
+	};
+
+	private int size = 0;
+
+	/**
+	 * Add a subscription.
+	 *
+	 * @param subscription
+	 *            the subscription to add
+	 */
+	public synchronized void add(Subscription subscription) {
+		String topic = subscription.topic;
+		Node node = root;
+		boolean wildcard = false;
+		int start = 0;
+		while (start <= topic.length()) {
+			int end = topic.indexOf(SEPARATOR, start);
+			if (end == -1) {
+				end = topic.length();
+			}
+			String segment = topic.substring(start, end);
+			if (end == topic.length() && WILDCARD.equals(segment)) {
+				wildcard = true;
+				break;
+			}
+			node = node.child(segment, true);
+			start = end + 1;
+		}
+		if (wildcard) {
+			node.wildcard = append(node.wildcard, subscription);
+		} else {
+			node.exact = append(node.exact, subscription);
+		}
+		size++;
+		resolved.clear();
+	}
+
+	/**
+	 * Remove a subscription previously added with {@link #add(Subscription)}.
+	 *
+	 * @param subscription
+	 *            the subscription to remove
+	 * @return <code>true</code> if the subscription was found
+	 */
+	public synchronized boolean remove(Subscription subscription) {
+		if (!remove(root, subscription, 0)) {
+			return false;
+		}
+		size--;
+		resolved.clear();
+		return true;
+	}
+
+	private boolean remove(Node node, Subscription subscription, int start) {
+		String topic = subscription.topic;
+		int end = topic.indexOf(SEPARATOR, start);
+		if (end == -1) {
+			end = topic.length();
+		}
+		String segment = topic.substring(start, end);
+		if (end == topic.length() && WILDCARD.equals(segment)) {
+			Subscription[] removed = without(node.wildcard, subscription);
+			if (removed == node.wildcard) {
+				return false;
+			}
+			node.wildcard = removed;
+			return true;
+		}
+		Node child = node.child(segment, false);
+		if (child == null) {
+			return false;
+		}
+		boolean found;
+		if (end == topic.length()) {
+			Subscription[] removed = without(child.exact, subscription);
+			found = removed != child.exact;
+			child.exact = removed;
+		} else {
+			found = remove(child, subscription, end + 1);
+		}
+		if (found && child.isEmpty()) {
+			node.children.remove(segment);
+		}
+		return found;
+	}
+
+	/**
+	 * @return the number of subscriptions
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Remove all subscriptions.
+	 */
+	public synchronized void clear() {
+		root.children = null;
+		root.exact = NO_SUBSCRIPTIONS;
+		root.wildcard = NO_SUBSCRIPTIONS;
+		size = 0;
+		resolved.clear();
+	}
+
+	/**
+	 * Return the subscriptions whose topic matches the given topic. Filters
+	 * are not evaluated.
+	 *
+	 * @param topic
+	 *            an event topic, without wildcards
+	 * @return the matching subscriptions, must not be modified
+	 */
+	public synchronized Subscription[] match(String topic) {
+		Subscription[] result = resolved.get(topic);
+		if (result == null) {
+			result = collect(topic);
+			resolved.put(topic, result);
+		}
+		return result;
+	}
+
+	private Subscription[] collect(String topic) {
+		List<Subscription> matches = new ArrayList<Subscription>();
+		addAll(matches, root.wildcard);
+		Node node = root;
+		int start = 0;
+		while (node != null) {
+			int end = topic.indexOf(SEPARATOR, start);
+			boolean last = end == -1;
+			if (last) {
+				end = topic.length();
+			}
+			node = node.child(topic.substring(start, end), false);
+			if (node == null) {
+				break;
+			}
+			if (last) {
+				addAll(matches, node.exact);
+				break;
+			}
+			addAll(matches, node.wildcard);
+			start = end + 1;
+		}
+		return matches.isEmpty() ? NO_SUBSCRIPTIONS : matches
+				.toArray(new Subscription[matches.size()]);
+	}
+
+	/**
+	 * Synchronously deliver an event to all matching subscriptions, in the
+	 * calling thread. As with the EventAdmin, a handler that fails does not
+	 * keep the event from the other handlers.
+	 *
+	 * @param event
+	 *            the event to deliver
+	 * @param logger
+	 *            the logger for failing handlers, or <code>null</code> to
+	 *            rethrow the first failure once all handlers were notified
+	 * @return the number of handlers notified
+	 */
+	public int dispatch(Event event, Logger logger) {
+		Subscription[] subscriptions = match(event.getTopic());
+		int notified = 0;
+		RuntimeException firstFailure = null;
+		for (Subscription subscription : subscriptions) {
+			if (subscription.filter == null
+					|| event.matches(subscription.filter)) {
+				notified++;
+				try {
+					subscription.handler.handleEvent(event);
+				} catch (RuntimeException e) {
+					if (logger != null) {
+						logger.error(e, NLS.bind(ServiceMessages.EVENT_HANDLER_FAILED,
+								event.getTopic()));
+					} else if (firstFailure == null) {
+						firstFailure = e;
+					}
+				}
+			}
+		}
+		if (firstFailure != null) {
+			throw firstFailure;
+		}
+		return notified;
+	}
+
+	private static void addAll(List<Subscription> list, Subscription[] array) {
+		for (Subscription subscription : array) {
+			list.add(subscription);
+		}
+	}
+
+	private static Subscription[] append(Subscription[] array,
+			Subscription subscription) {
+		Subscription[] result = new Subscription[array.length + 1];
+		System.arraycopy(array, 0, result, 0, array.length);
+		result[array.length] = subscription;
+		return result;
+	}
+
+	private static Subscription[] without(Subscription[] array,
+			Subscription subscription) {
+		for (int i = 0; i < array.length; i++) {
+			if (array[i] == subscription) {
+				if (array.length == 1) {
+					return NO_SUBSCRIPTIONS;
+				}
+				Subscription[] result = new Subscription[array.length - 1];
+				System.arraycopy(array, 0, result, 0, i);
+				System.arraycopy(array, i + 1, result, i, array.length - i
+						- 1);
+				return result;
+			}
+		}
+		return array;
+	}
+}
@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.e4.ui.internal.workbench.renderers.swt;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.core.commands.Command;
+import org.eclipse.core.commands.CommandEvent;
+import org.eclipse.core.commands.ICommandListener;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.contexts.RunAndTrack;
+import org.eclipse.e4.ui.model.application.ui.MUIElement;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Event driven enablement for handled items.
+ * <p>
+ * Each tracked item evaluates its enablement inside a {@link RunAndTrack}, so
+ * the context recording captures every context variable the handler lookup
+ * and the <code>@CanExecute</code> method read (the active leaf, the
+ * <code>handler::</code> activation slot, the selection, ...). The item is
+ * re-evaluated as soon as one of those inputs changes, or when the command
+ * reports an enablement or handled state change for handlers that fire
+ * handler events instead of reading the context.
+ * </p>
+ * <p>
+ * A <code>@CanExecute</code> method may also read state that is neither in
+ * the context nor reported through handler events, like the dirty state of a
+ * part or a field of the handler. Such changes cannot be tracked; the items
+ * of those handlers are tagged with {@link #POLL_ENABLEMENT_TAG} and polled as
+ * well: see {@link #isPolled(MUIElement)}.
+ * </p>
+ */
+public class ItemEnablementEngine {
+
+	/**
+	 * System property that turns on the timer based enablement polling of all
+	 * the handled tool items, for applications whose handlers do not report
+	 * their enablement through the context or handler events. Off unless the
+	 * property is set to <code>true</code>.
+	 */
+	public static final String POLLING_PROPERTY = "org.eclipse.e4.ui.workbench.renderers.swt.pollEnablement"; //$NON-NLS-1$
+
+	/**
+	 * Tag an item can carry when its handler cannot report its enablement
+	 * dependencies. Only tagged items are polled unless polling is turned on
+	 * for all of them.
+	 */
+	public static final String POLL_ENABLEMENT_TAG = "PollEnablement"; //$NON-NLS-1$
+
+	private static final boolean POLLING = Boolean
+			.getBoolean(POLLING_PROPERTY);
+
+	/**
+	 * The callbacks used by the engine to evaluate and apply the enablement
+	 * of one item.
+	 */
+	public interface IEnablementItem {
+		/**
+		 * @return <code>true</code> if the item no longer needs to be tracked
+		 */
+		public boolean isDisposed();
+
+		/**
+		 * Compute the enablement. Every context access made from this method
+		 * is recorded as a dependency of the item.
+		 *
+		 * @return the new enablement
+		 */
+		public boolean computeEnablement();
+
+		/**
+		 * Push the computed enablement to the model and widget. Called on the
+		 * UI thread, outside of the dependency recording.
+		 *
+		 * @param enabled
+		 *            the enablement returned by {@link #computeEnablement()}
+		 */
+		public void applyEnablement(boolean enabled);
+	}
+
+	/**
+	 * @return <code>true</code> if every handled item should be polled in
+	 *         addition to being tracked
+	 */
+	public static boolean isPollingEnabled() {
+		return POLLING;
+	}
+
+	/**
+	 * @param element
+	 *            a handled item
+	 * @return <code>true</code> if the item should be polled in addition to
+	 *         being tracked
+	 */
+	public static boolean isPolled(MUIElement element) {
+		return POLLING || element.getTags().contains(POLL_ENABLEMENT_TAG);
+	}
+
+	/**
+	 * Start tracking the enablement of an item. The item is evaluated once
+	 * immediately.
+	 *
+	 * @param context
+	 *            the context the item is evaluated in
+	 * @param command
+	 *            the command of the item, may be <code>null</code>
+	 * @param item
+	 *            the item callbacks
+	 * @return a runnable that stops the tracking
+	 */
+	public static Runnable track(IEclipseContext context, Command command,
+			IEnablementItem item) {
+		final Tracker tracker = new Tracker(Display.getCurrent(), command, item);
+		if (command != null) {
+			command.addCommandListener(tracker);
+		}
+		context.runAndTrack(tracker);
+		return new Runnable() {
+			public void run() {
+				tracker.dispose();
+			}
+		};
+	}
+
+	static class Tracker extends RunAndTrack implements ICommandListener {
+		private final Display display;
+		private final IEnablementItem item;
+		private Command command;
+		private volatile boolean disposed = false;
+		// set while the calling thread evaluates the item
+		private final ThreadLocal<Boolean> evaluating = new ThreadLocal<Boolean>();
+		// numbers the evaluations, so that a late one cannot overwrite the
+		// result of an evaluation started after it
+		private final AtomicInteger evaluations = new AtomicInteger();
+		// guarded by this
+		private int storedEvaluation = 0;
+		private final AtomicBoolean applyPending = new AtomicBoolean();
+		private volatile boolean enabled;
+
+		Tracker(Display display, Command command, IEnablementItem item) {
+			this.display = display;
+			this.command = command;
+			this.item = item;
+		}
+
+		synchronized void dispose() {
+			disposed = true;
+			if (command != null) {
+				command.removeCommandListener(this);
+				command = null;
+			}
+		}
+
+		private boolean isAlive() {
+			if (disposed) {
+				return false;
+			}
+			if (item.isDisposed()) {
+				dispose();
+				return false;
+			}
+			return true;
+		}
+
+		public boolean changed(IEclipseContext context) {
+			if (!isAlive()) {
+				return false;
+			}
+			if (!evaluate()) {
+				// the evaluation itself touched one of its inputs
+				return true;
+			}
+			runExternalCode(new Runnable() {
+				public void run() {
+					scheduleApply();
+				}
+			});
+			return true;
+		}
+
+		public void commandChanged(CommandEvent commandEvent) {
+			if (!commandEvent.isEnabledChanged()
+					&& !commandEvent.isHandledChanged()) {
+				return;
+			}
+			// the handler reported the change itself, the recorded context
+			// dependencies are still valid so an untracked evaluation will do
+			if (isAlive() && evaluate()) {
+				scheduleApply();
+			}
+		}
+
+		/**
+		 * Compute the enablement. No lock is held while the handler runs, so
+		 * several threads may evaluate the item at once; the result of the
+		 * latest evaluation is kept.
+		 *
+		 * @return <code>false</code> if the item is already being evaluated
+		 *         by the calling thread
+		 */
+		boolean evaluate() {
+			if (evaluating.get() != null) {
+				return false;
+			}
+			int evaluation = evaluations.incrementAndGet();
+			boolean result;
+			evaluating.set(Boolean.TRUE);
+			try {
+				result = item.computeEnablement();
+			} finally {
+				evaluating.remove();
+			}
+			synchronized (this) {
+				if (evaluation > storedEvaluation) {
+					storedEvaluation = evaluation;
+					enabled = result;
+				}
+			}
+			return true;
+		}
+
+		void scheduleApply() {
+			if (display == null || display.isDisposed()) {
+				return;
+			}
+			if (Display.getCurrent() == display) {
+				apply();
+			} else if (applyPending.compareAndSet(false, true)) {
+				// coalesce bursts of changes coming from other threads
+				display.asyncExec(new Runnable() {
+					public void run() {
+						applyPending.set(false);
+						apply();
+					}
+				});
+			}
+		}
+
+		void apply() {
+			if (isAlive()) {
+				item.applyEnablement(enabled);
+			}
+		}
+	}
+}
@@ -34,6 +34,7 @@ import org.eclipse.e4.ui.bindings.EBindingService;
 import org.eclipse.e4.ui.internal.workbench.Activator;
 import org.eclipse.e4.ui.internal.workbench.ContributionsAnalyzer;
 import org.eclipse.e4.ui.internal.workbench.Policy;
+import org.eclipse.e4.ui.internal.workbench.renderers.swt.ItemEnablementEngine;
 import org.eclipse.e4.ui.internal.workbench.renderers.swt.IUpdateService;
 import org.eclipse.e4.ui.internal.workbench.swt.AbstractPartRenderer;
 import org.eclipse.e4.ui.model.application.commands.MParameter;
@@ -57,7 +58,6 @@ import org.eclipse.jface.action.IContributionManager;
 import org.eclipse.jface.action.IMenuCreator;
 import org.eclipse.jface.action.IMenuListener;
 import org.eclipse.jface.action.IMenuManager;
-import org.eclipse.jface.bindings.TriggerSequence;
 import org.eclipse.jface.menus.IMenuStateIds;
 import org.eclipse.jface.resource.DeviceResourceException;
 import org.eclipse.jface.resource.ImageDescriptor;
@@ -160,6 +160,7 @@ public class HandledContributionItem extends ContributionItem {
 	}
 
 	// HACK!! local 'static' timerExec...should move out of this class post 4.1
+	// polls for enablement changes the ItemEnablementEngine cannot track
 	public static ToolItemUpdateTimer toolItemUpdater = new ToolItemUpdateTimer();
 
 	private static final String FORCE_TEXT = "FORCE_TEXT"; //$NON-NLS-1$
@@ -218,20 +219,68 @@ public class HandledContributionItem extends ContributionItem {
 				}
 
 				public void handleException(Throwable exception) {
-					if (!logged) {
-						logged = true;
-						if (logger != null) {
-							logger.error(
-									exception,
-									"Internal error during tool item enablement updating, this is only logged once per tool item."); //$NON-NLS-1$
-						}
-					}
+					logEnablementError(exception);
 				}
 			};
 		}
 		return updateRunner;
 	}
 
+	private void logEnablementError(Throwable exception) {
+		if (!logged) {
+			logged = true;
+			if (logger != null) {
+				logger.error(
+						exception,
+						"Internal error during tool item enablement updating, this is only logged once per tool item."); //$NON-NLS-1$
+			}
+		}
+	}
+
+	private ItemEnablementEngine.IEnablementItem getEnablementItem() {
+		if (enablementItem == null) {
+			enablementItem = new ItemEnablementEngine.IEnablementItem() {
+				public boolean isDisposed() {
+					return widget == null || widget.isDisposed();
+				}
+
+				public boolean computeEnablement() {
+					try {
+						return canExecuteItem(null);
+					} catch (RuntimeException e) {
+						logEnablementError(e);
+						return false;
+					}
+				}
+
+				public void applyEnablement(boolean enabled) {
+					if (model.isEnabled() != enabled) {
+						model.setEnabled(enabled);
+						update();
+					}
+				}
+			};
+		}
+		return enablementItem;
+	}
+
+	private void trackItemEnablement() {
+		if (ItemEnablementEngine.isPolled(model)) {
+			toolItemUpdater.registerItem(this);
+		}
+		ParameterizedCommand cmd = model.getWbCommand();
+		enablementTracking = ItemEnablementEngine.track(getContext(model),
+				cmd == null ? null : cmd.getCommand(), getEnablementItem());
+	}
+
+	private void untrackItemEnablement() {
+		toolItemUpdater.removeItem(this);
+		if (enablementTracking != null) {
+			enablementTracking.run();
+			enablementTracking = null;
+		}
+	}
+
 	protected void updateItemEnablement() {
 		if (!(model.getWidget() instanceof ToolItem))
 			return;
@@ -251,6 +300,10 @@ public class HandledContributionItem extends ContributionItem {
 
 	private ISafeRunnable updateRunner;
 
+	private ItemEnablementEngine.IEnablementItem enablementItem;
+
+	private Runnable enablementTracking;
+
 	private IEclipseContext infoContext;
 
 	private State styleState;
@@ -402,10 +455,10 @@ public class HandledContributionItem extends ContributionItem {
 		widget = item;
 		model.setWidget(widget);
 		widget.setData(AbstractPartRenderer.OWNING_ME, model);
-		toolItemUpdater.registerItem(this);
 
 		update(null);
 		hookCheckListener();
+		trackItemEnablement();
 
 		if (updateService != null) {
 			unreferenceRunnable = updateService.registerElementForUpdate(
@@ -490,10 +543,7 @@ public class HandledContributionItem extends ContributionItem {
 				}
 			}
 			if (bindingService != null) {
-				TriggerSequence binding = bindingService
-						.getBestSequenceFor(parmCmd);
-				if (binding != null)
-					keyBindingText = binding.format();
+				keyBindingText = bindingService.getBestSequenceText(parmCmd);
 			}
 		}
 		if (text != null) {
@@ -550,9 +600,9 @@ public class HandledContributionItem extends ContributionItem {
 			}
 		}
 
-		TriggerSequence sequence = bindingService.getBestSequenceFor(parmCmd);
+		String sequence = bindingService.getBestSequenceText(parmCmd);
 		if (sequence != null) {
-			text = text + " (" + sequence.format() + ')'; //$NON-NLS-1$
+			text = text + " (" + sequence + ')'; //$NON-NLS-1$
 		}
 		return text;
 	}
@@ -643,7 +693,7 @@ public class HandledContributionItem extends ContributionItem {
 	private void handleWidgetDispose(Event event) {
 		if (event.widget == widget) {
 			unhookCheckListener();
-			toolItemUpdater.removeItem(this);
+			untrackItemEnablement();
 			if (infoContext != null) {
 				infoContext.dispose();
 				infoContext = null;
@@ -29,7 +29,6 @@ import org.eclipse.e4.ui.model.application.ui.menu.ItemType;
 import org.eclipse.e4.ui.model.application.ui.menu.MHandledItem;
 import org.eclipse.e4.ui.model.application.ui.menu.MHandledMenuItem;
 import org.eclipse.e4.ui.model.application.ui.menu.MMenuItem;
-import org.eclipse.jface.bindings.TriggerSequence;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Listener;
@@ -121,10 +120,10 @@ public class HandledMenuItemRenderer extends MenuItemRenderer {
 					e.printStackTrace();
 				}
 			}
-			TriggerSequence sequence = bs.getBestSequenceFor(handledItem
+			String sequence = bs.getBestSequenceText(handledItem
 					.getWbCommand());
 			if (sequence != null) {
-				text = text + '\t' + sequence.format();
+				text = text + '\t' + sequence;
 			}
 			item.setText(text == null ? handledItem.getCommand().getElementId()
 					: text);
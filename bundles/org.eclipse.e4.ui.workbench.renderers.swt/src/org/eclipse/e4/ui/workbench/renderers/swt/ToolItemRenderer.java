@@ -18,8 +18,6 @@ import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import org.eclipse.core.commands.ParameterizedCommand;
 import org.eclipse.core.commands.common.NotDefinedException;
-import org.eclipse.core.runtime.ISafeRunnable;
-import org.eclipse.core.runtime.SafeRunner;
 import org.eclipse.e4.core.commands.ECommandService;
 import org.eclipse.e4.core.commands.EHandlerService;
 import org.eclipse.e4.core.contexts.ContextInjectionFactory;
@@ -34,6 +32,7 @@ import org.eclipse.e4.ui.bindings.EBindingService;
 import org.eclipse.e4.ui.internal.workbench.Activator;
 import org.eclipse.e4.ui.internal.workbench.ContributionsAnalyzer;
 import org.eclipse.e4.ui.internal.workbench.Policy;
+import org.eclipse.e4.ui.internal.workbench.renderers.swt.ItemEnablementEngine;
 import org.eclipse.e4.ui.internal.workbench.swt.AbstractPartRenderer;
 import org.eclipse.e4.ui.model.application.MContribution;
 import org.eclipse.e4.ui.model.application.commands.MParameter;
@@ -48,7 +47,6 @@ import org.eclipse.e4.ui.model.application.ui.menu.MRenderedMenu;
 import org.eclipse.e4.ui.model.application.ui.menu.MToolItem;
 import org.eclipse.e4.ui.workbench.UIEvents;
 import org.eclipse.jface.action.IMenuCreator;
-import org.eclipse.jface.bindings.TriggerSequence;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.DisposeEvent;
 import org.eclipse.swt.events.DisposeListener;
@@ -185,7 +183,7 @@ public class ToolItemRenderer extends SWTPartRenderer {
 			if (cmd == null) {
 				cmd = generateParameterizedCommand(handledItem, context);
 			}
-			TriggerSequence sequence = bs.getBestSequenceFor(handledItem
+			String sequence = bs.getBestSequenceText(handledItem
 					.getWbCommand());
 			if (sequence != null) {
 				if (text == null) {
@@ -195,7 +193,7 @@ public class ToolItemRenderer extends SWTPartRenderer {
 						return null;
 					}
 				}
-				text = text + " (" + sequence.format() + ')'; //$NON-NLS-1$
+				text = text + " (" + sequence + ')'; //$NON-NLS-1$
 			}
 			return text;
 		}
@@ -339,54 +337,73 @@ public class ToolItemRenderer extends SWTPartRenderer {
 			final MHandledItem item = (MHandledItem) me;
 			final IEclipseContext lclContext = getContext(me);
 			final ToolItem ti = (ToolItem) me.getWidget();
-			final Display display = ti.getDisplay();
-			display.timerExec(500, new Runnable() {
+			final IEclipseContext enablementContext = EclipseContextFactory
+					.create(TIR_STATIC_CONTEXT);
+			ContributionsAnalyzer.populateModelInterfaces(item,
+					enablementContext, item.getClass().getInterfaces());
+			final ItemEnablementEngine.IEnablementItem enablementItem = new ItemEnablementEngine.IEnablementItem() {
 				boolean logged = false;
 
-				public void run() {
-					if (ti.isDisposed()) {
-						return;
-					}
-					SafeRunner.run(new ISafeRunnable() {
-						public void run() throws Exception {
-							EHandlerService service = lclContext
-									.get(EHandlerService.class);
-							if (service == null) {
-								// no localized handler service
-								return;
-							}
-							ParameterizedCommand cmd = item.getWbCommand();
-							if (cmd == null) {
-								cmd = generateParameterizedCommand(item,
-										lclContext);
-							}
-							if (cmd == null) {
-								return;
-							}
-							final IEclipseContext staticContext = EclipseContextFactory
-									.create(TIR_STATIC_CONTEXT);
-							ContributionsAnalyzer.populateModelInterfaces(item,
-									staticContext, item.getClass()
-											.getInterfaces());
-							try {
-								item.setEnabled(service.canExecute(cmd,
-										staticContext));
-							} finally {
-								staticContext.dispose();
-							}
+				public boolean isDisposed() {
+					return ti.isDisposed();
+				}
+
+				public boolean computeEnablement() {
+					try {
+						EHandlerService service = lclContext
+								.get(EHandlerService.class);
+						if (service == null) {
+							// no localized handler service
+							return item.isEnabled();
+						}
+						ParameterizedCommand cmd = item.getWbCommand();
+						if (cmd == null) {
+							cmd = generateParameterizedCommand(item, lclContext);
+						}
+						if (cmd == null) {
+							return item.isEnabled();
+						}
+						return service.canExecute(cmd, enablementContext);
+					} catch (RuntimeException e) {
+						if (!logged) {
+							logged = true;
+							logger.error(
+									e,
+									"Internal error during tool item enablement updating, this is only logged once per tool item."); //$NON-NLS-1$
 						}
+						return false;
+					}
+				}
 
-						public void handleException(Throwable exception) {
-							if (!logged) {
-								logged = true;
-								logger.error(
-										exception,
-										"Internal error during tool item enablement updating, this is only logged once per tool item."); //$NON-NLS-1$
-							}
+				public void applyEnablement(boolean enabled) {
+					item.setEnabled(enabled);
+				}
+			};
+			ti.addDisposeListener(new DisposeListener() {
+				public void widgetDisposed(DisposeEvent e) {
+					enablementContext.dispose();
+				}
+			});
+			if (ItemEnablementEngine.isPolled(item)) {
+				final Display display = ti.getDisplay();
+				display.timerExec(500, new Runnable() {
+					public void run() {
+						if (ti.isDisposed()) {
+							return;
 						}
-					});
-					// repeat until disposed
-					display.timerExec(500, this);
+						enablementItem.applyEnablement(enablementItem
+								.computeEnablement());
+						// repeat until disposed
+						display.timerExec(500, this);
+					}
+				});
+			}
+			ParameterizedCommand cmd = item.getWbCommand();
+			final Runnable tracking = ItemEnablementEngine.track(lclContext,
+					cmd == null ? null : cmd.getCommand(), enablementItem);
+			ti.addDisposeListener(new DisposeListener() {
+				public void widgetDisposed(DisposeEvent e) {
+					tracking.run();
 				}
 			});
 			ti.addSelectionListener(new SelectionListener() {
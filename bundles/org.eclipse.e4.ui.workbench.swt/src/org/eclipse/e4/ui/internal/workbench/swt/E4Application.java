@@ -353,6 +353,13 @@ public class E4Application implements IApplication {
 		eclipseContext.set(E4Workbench.DELTA_RESTORE,
 				Boolean.valueOf(deltaRestore));
 
+		// Journaled save
+		boolean journalState;
+		value = getArgValue(E4Workbench.JOURNAL_STATE, appContext, true);
+		journalState = value != null && Boolean.parseBoolean(value);
+		eclipseContext.set(E4Workbench.JOURNAL_STATE,
+				Boolean.valueOf(journalState));
+
 		String resourceHandler = getArgValue(
 				E4Workbench.MODEL_RESOURCE_HANDLER, appContext, false);
 
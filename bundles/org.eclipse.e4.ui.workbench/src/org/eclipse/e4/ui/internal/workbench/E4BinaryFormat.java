@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.e4.ui.internal.workbench;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl.EObjectInputStream;
+import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl.EObjectOutputStream;
+import org.eclipse.emf.ecore.xmi.XMLResource;
+
+/**
+ * Reads and writes the contents of a model resource in EMF's binary format. The binary stream is
+ * preceded by a header and the XML ids of the saved objects, so that a model loaded from the binary
+ * form can be used exactly like one loaded from XMI.
+ */
+public class E4BinaryFormat {
+
+	private static final int MAGIC = 0x45345742; // "E4WB"
+	private static final int VERSION = 1;
+
+	private E4BinaryFormat() {
+	}
+
+	/**
+	 * Writes the contents of the given resource and their XML ids to the stream.
+	 *
+	 * @param resource
+	 *            the resource to save
+	 * @param stream
+	 *            the stream to write to, not closed by this method
+	 * @throws IOException
+	 *             if the stream cannot be written
+	 */
+	public static void save(Resource resource, OutputStream stream) throws IOException {
+		BufferedOutputStream buffer = new BufferedOutputStream(stream);
+		DataOutputStream out = new DataOutputStream(buffer);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+
+		List<EObject> objects = getObjects(resource);
+		XMLResource xmlResource = resource instanceof XMLResource ? (XMLResource) resource : null;
+		out.writeInt(objects.size());
+		for (EObject object : objects) {
+			String id = xmlResource == null ? null : xmlResource.getID(object);
+			out.writeBoolean(id != null);
+			if (id != null)
+				out.writeUTF(id);
+		}
+		out.flush();
+
+		EObjectOutputStream eObjectOut = new EObjectOutputStream(buffer,
+				Collections.emptyMap());
+		eObjectOut.saveResource(resource);
+		eObjectOut.flush();
+		buffer.flush();
+	}
+
+	/**
+	 * Reads contents written by {@link #save(Resource, OutputStream)} into the given resource.
+	 *
+	 * @param resource
+	 *            the resource receiving the contents, it should be empty
+	 * @param stream
+	 *            the stream to read from, not closed by this method
+	 * @throws IOException
+	 *             if the stream cannot be read or was not written in this format
+	 */
+	public static void load(Resource resource, InputStream stream) throws IOException {
+		BufferedInputStream buffer = new BufferedInputStream(stream);
+		DataInputStream in = new DataInputStream(buffer);
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not a binary workbench model"); //$NON-NLS-1$
+		int version = in.readInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported binary workbench model version " + version); //$NON-NLS-1$
+
+		String[] ids = new String[in.readInt()];
+		for (int i = 0; i < ids.length; i++) {
+			if (in.readBoolean())
+				ids[i] = in.readUTF();
+		}
+
+		EObjectInputStream eObjectIn = new EObjectInputStream(buffer, Collections.emptyMap());
+		eObjectIn.loadResource(resource);
+
+		List<EObject> objects = getObjects(resource);
+		if (objects.size() != ids.length) {
+			resource.getContents().clear();
+			throw new IOException("Binary workbench model does not match its id table"); //$NON-NLS-1$
+		}
+		if (resource instanceof XMLResource) {
+			XMLResource xmlResource = (XMLResource) resource;
+			for (int i = 0; i < ids.length; i++) {
+				if (ids[i] != null)
+					xmlResource.setID(objects.get(i), ids[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the persisted objects of the resource in containment order. Transient containments
+	 * are not written to the binary stream and are skipped, so that the order is the same on save
+	 * and load.
+	 */
+	private static List<EObject> getObjects(Resource resource) {
+		List<EObject> objects = new ArrayList<EObject>();
+		for (EObject root : resource.getContents()) {
+			collectObjects(root, objects);
+		}
+		return objects;
+	}
+
+	private static void collectObjects(EObject object, List<EObject> objects) {
+		objects.add(object);
+		for (EReference containment : object.eClass().getEAllContainments()) {
+			if (containment.isTransient() || !object.eIsSet(containment))
+				continue;
+			Object value = object.eGet(containment, false);
+			if (containment.isMany()) {
+				for (Object child : (List<?>) value) {
+					collectObjects((EObject) child, objects);
+				}
+			} else if (value != null) {
+				collectObjects((EObject) value, objects);
+			}
+		}
+	}
+}
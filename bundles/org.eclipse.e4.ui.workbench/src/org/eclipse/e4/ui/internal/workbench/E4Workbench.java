@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2010 BestSolution.at and others.
+ * Copyright (c) 2008, 2012 BestSolution.at and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -21,6 +21,7 @@ import org.eclipse.e4.ui.model.application.MApplicationElement;
 import org.eclipse.e4.ui.model.application.ui.MContext;
 import org.eclipse.e4.ui.workbench.IPresentationEngine;
 import org.eclipse.e4.ui.workbench.IWorkbench;
+import org.eclipse.e4.ui.workbench.modeling.EModelService;
 import org.eclipse.e4.ui.workbench.modeling.ExpressionContext;
 import org.eclipse.emf.common.notify.Notifier;
 
@@ -39,6 +40,7 @@ public class E4Workbench implements IWorkbench {
 
 	public static final String CLEAR_PERSISTED_STATE = "clearPersistedState"; //$NON-NLS-1$
 	public static final String DELTA_RESTORE = "deltaRestore"; //$NON-NLS-1$
+	public static final String JOURNAL_STATE = "journalState"; //$NON-NLS-1$
 
 	public static final String RTL_MODE = "dir"; //$NON-NLS-1$
 
@@ -121,6 +123,11 @@ public class E4Workbench implements IWorkbench {
 			((Notifier) appModel).eAdapters().remove(uiEventPublisher);
 			uiEventPublisher = null;
 		}
+		if (appModel != null && appModel.getContext() != null) {
+			EModelService modelService = appModel.getContext().get(EModelService.class);
+			if (modelService instanceof ModelServiceImpl)
+				((ModelServiceImpl) modelService).dispose();
+		}
 		return true;
 	}
 
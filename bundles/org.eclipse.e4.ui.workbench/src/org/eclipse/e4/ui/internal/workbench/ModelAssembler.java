@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2011 BestSolution.at and others.
+ * Copyright (c) 2010, 2012 BestSolution.at and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,9 @@
 
 package org.eclipse.e4.ui.internal.workbench;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -19,6 +22,14 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 import javax.inject.Inject;
 import org.eclipse.core.runtime.IConfigurationElement;
 import org.eclipse.core.runtime.IContributor;
@@ -34,16 +45,23 @@ import org.eclipse.e4.core.services.contributions.IContributionFactory;
 import org.eclipse.e4.core.services.log.Logger;
 import org.eclipse.e4.ui.model.application.MApplication;
 import org.eclipse.e4.ui.model.application.MApplicationElement;
+import org.eclipse.e4.ui.model.application.impl.ApplicationPackageImpl;
 import org.eclipse.e4.ui.model.fragment.MModelFragment;
 import org.eclipse.e4.ui.model.fragment.MModelFragments;
 import org.eclipse.e4.ui.model.fragment.impl.FragmentPackageImpl;
 import org.eclipse.emf.common.util.EList;
 import org.eclipse.emf.common.util.TreeIterator;
 import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
 import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
 import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.impl.EPackageRegistryImpl;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.URIConverter;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
 import org.eclipse.emf.ecore.util.EContentsEList;
 import org.eclipse.emf.ecore.util.EcoreUtil;
 import org.osgi.framework.Bundle;
@@ -89,6 +107,7 @@ public class ModelAssembler {
 			}
 		}
 
+		List<FragmentResource> fragmentResources = new ArrayList<FragmentResource>();
 		for (IExtension extension : extensions) {
 			IConfigurationElement[] ces = extension.getConfigurationElements();
 			for (IConfigurationElement ce : ces) {
@@ -112,75 +131,88 @@ public class ModelAssembler {
 					logger.warn(e, "Model extension has invalid location"); //$NON-NLS-1$
 					continue;
 				}
+				fragmentResources.add(new FragmentResource(contributor, uri, Activator.getDefault()
+						.getBundleForName(bundleName)));
+			}
+		}
 
-				String contributorURI = URIHelper.constructPlatformURI(contributor);
-				Resource resource;
-				try {
-					resource = resourceSet.getResource(uri, true);
-				} catch (RuntimeException e) {
-					logger.warn(e, "Unable to read model extension"); //$NON-NLS-1$
-					continue;
-				}
+		// parse the fragments in parallel, they are merged in order
+		ModelFragmentCache cache = createFragmentCache();
+		loadFragments(fragmentResources, resourceSet, cache);
+
+		for (FragmentResource fragmentResource : fragmentResources) {
+			IContributor contributor = fragmentResource.contributor;
+			String contributorURI = URIHelper.constructPlatformURI(contributor);
+			Resource resource;
+			try {
+				resource = fragmentResource.get(resourceSet);
+			} catch (Exception e) {
+				logger.warn(e, "Unable to read model extension"); //$NON-NLS-1$
+				continue;
+			}
 
-				EList<?> contents = resource.getContents();
-				if (contents.isEmpty()) {
-					continue;
-				}
+			EList<?> contents = resource.getContents();
+			if (contents.isEmpty()) {
+				continue;
+			}
 
-				Object extensionRoot = contents.get(0);
+			Object extensionRoot = contents.get(0);
 
-				if (!(extensionRoot instanceof MModelFragments)) {
-					logger.warn("Unable to create model extension \"{0}\"", //$NON-NLS-1$
-							contributor.getName());
+			if (!(extensionRoot instanceof MModelFragments)) {
+				logger.warn("Unable to create model extension \"{0}\"", //$NON-NLS-1$
+						contributor.getName());
+				continue;
+			}
+
+			MModelFragments fragmentsContainer = (MModelFragments) extensionRoot;
+			List<MModelFragment> fragments = fragmentsContainer.getFragments();
+			boolean evalImports = false;
+			for (MModelFragment fragment : fragments) {
+				List<MApplicationElement> elements = fragment.getElements();
+				if (elements.size() == 0) {
 					continue;
 				}
 
-				MModelFragments fragmentsContainer = (MModelFragments) extensionRoot;
-				List<MModelFragment> fragments = fragmentsContainer.getFragments();
-				boolean evalImports = false;
-				for (MModelFragment fragment : fragments) {
-					List<MApplicationElement> elements = fragment.getElements();
-					if (elements.size() == 0) {
-						continue;
-					}
-
-					for (MApplicationElement el : elements) {
-						EObject o = (EObject) el;
+				for (MApplicationElement el : elements) {
+					EObject o = (EObject) el;
 
-						E4XMIResource r = (E4XMIResource) o.eResource();
-						applicationResource.setID(o, r.getID(o));
+					E4XMIResource r = (E4XMIResource) o.eResource();
+					applicationResource.setID(o, r.getID(o));
 
-						if (contributorURI != null)
-							el.setContributorURI(contributorURI);
+					if (contributorURI != null)
+						el.setContributorURI(contributorURI);
 
-						// Remember IDs of subitems
-						TreeIterator<EObject> treeIt = EcoreUtil.getAllContents(o, true);
-						while (treeIt.hasNext()) {
-							EObject eObj = treeIt.next();
-							r = (E4XMIResource) eObj.eResource();
-							if (contributorURI != null && (eObj instanceof MApplicationElement))
-								((MApplicationElement) eObj).setContributorURI(contributorURI);
-							applicationResource.setID(eObj, r.getInternalId(eObj));
-						}
+					// Remember IDs of subitems
+					TreeIterator<EObject> treeIt = EcoreUtil.getAllContents(o, true);
+					while (treeIt.hasNext()) {
+						EObject eObj = treeIt.next();
+						r = (E4XMIResource) eObj.eResource();
+						if (contributorURI != null && (eObj instanceof MApplicationElement))
+							((MApplicationElement) eObj).setContributorURI(contributorURI);
+						applicationResource.setID(eObj, r.getInternalId(eObj));
 					}
+				}
 
-					List<MApplicationElement> merged = fragment.merge(application);
+				List<MApplicationElement> merged = fragment.merge(application);
 
-					if (merged.size() > 0) {
-						evalImports = true;
-						addedElements.addAll(merged);
-					}
+				if (merged.size() > 0) {
+					evalImports = true;
+					addedElements.addAll(merged);
 				}
+			}
 
-				if (evalImports) {
-					List<MApplicationElement> localImports = fragmentsContainer.getImports();
-					if (localImports != null) {
-						imports.addAll(localImports);
-					}
+			if (evalImports) {
+				List<MApplicationElement> localImports = fragmentsContainer.getImports();
+				if (localImports != null) {
+					imports.addAll(localImports);
 				}
 			}
 		}
 
+		// all the fragments were loaded, forget the ones no longer contributed
+		if (cache != null)
+			cache.prune();
+
 		for (IExtension extension : extensions) {
 			IConfigurationElement[] ces = extension.getConfigurationElements();
 			for (IConfigurationElement ce : ces) {
@@ -195,6 +227,205 @@ public class ModelAssembler {
 		resolveImports(imports, addedElements);
 	}
 
+	/**
+	 * A fragment resource of a model extension, parsed on a loader thread.
+	 */
+	private static class FragmentResource {
+		final IContributor contributor;
+		final URI uri;
+		final Bundle bundle;
+		Future<Resource> future;
+
+		FragmentResource(IContributor contributor, URI uri, Bundle bundle) {
+			this.contributor = contributor;
+			this.uri = uri;
+			this.bundle = bundle;
+		}
+
+		/**
+		 * Waits for the fragment to be parsed and adds it to the resource set.
+		 */
+		Resource get(ResourceSet resourceSet) throws Exception {
+			Resource resource = resourceSet.getResource(uri, false);
+			if (resource != null && resource.isLoaded())
+				return resource;
+			try {
+				resource = future.get();
+			} catch (ExecutionException e) {
+				throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+			}
+			resourceSet.getResources().add(resource);
+			return resource;
+		}
+	}
+
+	/**
+	 * A package registry shared by the loader threads. The packages used by the fragments are
+	 * looked up through its lock, which initializes each of them, with the packages it depends
+	 * on, before it is used by any thread: EMF computes the features of a class lazily and is
+	 * not thread-safe while doing so.
+	 */
+	private static class LoaderPackageRegistry extends EPackageRegistryImpl {
+		private static final long serialVersionUID = 1L;
+
+		private final Set<EPackage> initialized = new HashSet<EPackage>();
+
+		LoaderPackageRegistry() {
+			super(EPackage.Registry.INSTANCE);
+		}
+
+		@Override
+		public synchronized EPackage getEPackage(String nsURI) {
+			EPackage ePackage = super.getEPackage(nsURI);
+			if (ePackage != null)
+				initialize(ePackage);
+			return ePackage;
+		}
+
+		private void initialize(EPackage ePackage) {
+			if (!initialized.add(ePackage))
+				return;
+			for (EClassifier classifier : ePackage.getEClassifiers()) {
+				if (!(classifier instanceof EClass))
+					continue;
+				EClass eClass = (EClass) classifier;
+				eClass.getEAllSuperTypes();
+				eClass.getEAllStructuralFeatures();
+				eClass.getEAllAttributes();
+				eClass.getEAllReferences();
+				eClass.getEAllContainments();
+				eClass.getEIDAttribute();
+				// builds the table of the features by name
+				eClass.getEStructuralFeature(""); //$NON-NLS-1$
+				for (EClass superType : eClass.getESuperTypes()) {
+					initialize(superType.getEPackage());
+				}
+				for (EStructuralFeature feature : eClass.getEStructuralFeatures()) {
+					EClassifier type = feature.getEType();
+					if (type != null && type.getEPackage() != null)
+						initialize(type.getEPackage());
+				}
+			}
+			for (EPackage subpackage : ePackage.getESubpackages()) {
+				initialize(subpackage);
+			}
+		}
+	}
+
+	/**
+	 * Parses the fragments at the given locations, in parallel when there are several, and adds
+	 * them to the resource set. This method is public for use by the test suites.
+	 *
+	 * @param uris
+	 *            the locations of the fragments
+	 * @param bundles
+	 *            the bundle contributing each fragment, the fragments of a <code>null</code>
+	 *            bundle are not cached
+	 * @param resourceSet
+	 *            the resource set receiving the fragments
+	 * @param cache
+	 *            the cache of the parsed fragments, may be <code>null</code>
+	 * @return the fragment resources, in the order of their locations
+	 * @throws Exception
+	 *             if a fragment cannot be read
+	 */
+	public static List<Resource> loadFragments(List<URI> uris, List<Bundle> bundles,
+			ResourceSet resourceSet, ModelFragmentCache cache) throws Exception {
+		List<FragmentResource> fragmentResources = new ArrayList<FragmentResource>();
+		for (int i = 0; i < uris.size(); i++) {
+			fragmentResources.add(new FragmentResource(null, uris.get(i), bundles.get(i)));
+		}
+		loadFragments(fragmentResources, resourceSet, cache);
+		List<Resource> resources = new ArrayList<Resource>();
+		for (FragmentResource fragmentResource : fragmentResources) {
+			resources.add(fragmentResource.get(resourceSet));
+		}
+		return resources;
+	}
+
+	/**
+	 * Starts parsing the given fragment resources on a pool of one thread per available processor.
+	 * The resources are added to the resource set, which is not thread-safe, when they are merged.
+	 */
+	private static void loadFragments(List<FragmentResource> fragmentResources,
+			ResourceSet resourceSet, final ModelFragmentCache cache) {
+		final URIConverter converter = resourceSet.getURIConverter();
+		final Map<?, ?> options = resourceSet.getLoadOptions();
+
+		// initialize the packages of the application model before they are used by several
+		// threads, the packages of other models when a fragment first uses them
+		final EPackage.Registry packageRegistry = new LoaderPackageRegistry();
+		packageRegistry.getEPackage(ApplicationPackageImpl.eNS_URI);
+		packageRegistry.getEPackage(FragmentPackageImpl.eNS_URI);
+
+		int threads = Math.min(fragmentResources.size(), Runtime.getRuntime()
+				.availableProcessors());
+		ExecutorService executor = null;
+		if (threads > 1) {
+			executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Model Fragment Loader"); //$NON-NLS-1$
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		try {
+			for (FragmentResource fragmentResource : fragmentResources) {
+				final URI uri = fragmentResource.uri;
+				final Bundle bundle = fragmentResource.bundle;
+				Callable<Resource> load = new Callable<Resource>() {
+					public Resource call() throws Exception {
+						return loadFragment(uri, bundle, converter, options, packageRegistry,
+								cache);
+					}
+				};
+				if (executor == null) {
+					FutureTask<Resource> task = new FutureTask<Resource>(load);
+					task.run();
+					fragmentResource.future = task;
+				} else {
+					fragmentResource.future = executor.submit(load);
+				}
+			}
+		} finally {
+			if (executor != null)
+				executor.shutdown();
+		}
+	}
+
+	private static Resource loadFragment(URI uri, Bundle bundle, URIConverter converter,
+			Map<?, ?> options, EPackage.Registry packageRegistry, ModelFragmentCache cache)
+			throws IOException {
+		// a resource set of its own, which looks up the packages in the shared registry
+		ResourceSet loaderSet = new ResourceSetImpl();
+		loaderSet.setPackageRegistry(packageRegistry);
+
+		Resource resource = cache == null ? null : cache.load(uri, bundle, loaderSet);
+		if (resource != null)
+			return resource;
+
+		resource = new E4XMIResource(uri);
+		loaderSet.getResources().add(resource);
+		InputStream stream = converter.createInputStream(uri, options);
+		try {
+			resource.load(stream, options);
+		} finally {
+			stream.close();
+		}
+		// cache the fragment before its elements are merged into the application
+		if (cache != null)
+			cache.store(uri, bundle, resource);
+		return resource;
+	}
+
+	private ModelFragmentCache createFragmentCache() {
+		Activator activator = Activator.getDefault();
+		File directory = activator == null || activator.getContext() == null ? null : activator
+				.getContext().getDataFile("fragments"); //$NON-NLS-1$
+		return directory == null ? null : new ModelFragmentCache(directory);
+	}
+
 	private void runProcessor(IConfigurationElement ce) {
 		IEclipseContext localContext = EclipseContextFactory.create();
 		IContributionFactory factory = context.get(IContributionFactory.class);
@@ -229,15 +460,26 @@ public class ModelAssembler {
 		}
 	}
 
-	private void resolveImports(List<MApplicationElement> imports,
+	/**
+	 * Replaces the references of the added elements to imported elements by the elements of the
+	 * application with the same id. This method is public for use by the test suites.
+	 *
+	 * @param imports
+	 *            the elements imported by the fragments
+	 * @param addedElements
+	 *            the elements the fragments added to the application
+	 */
+	public void resolveImports(List<MApplicationElement> imports,
 			List<MApplicationElement> addedElements) {
 		if (imports.isEmpty())
 			return;
 		// now that we have all components loaded, resolve imports
+		Map<String, MApplicationElement> elementsById = new HashMap<String, MApplicationElement>();
+		collectElementsById(application, elementsById);
 		Map<MApplicationElement, MApplicationElement> importMaps = new HashMap<MApplicationElement, MApplicationElement>();
 		for (MApplicationElement importedElement : imports) {
-			MApplicationElement realElement = findElementById(application,
-					importedElement.getElementId());
+			String id = importedElement.getElementId();
+			MApplicationElement realElement = id == null ? null : elementsById.get(id);
 			if (realElement == null) {
 				logger.warn("Could not resolve an import element for '" + realElement + "'"); //$NON-NLS-1$ //$NON-NLS-2$
 			}
@@ -403,6 +645,21 @@ public class ModelAssembler {
 		return extensions;
 	}
 
+	/**
+	 * Maps the ids of the element and its descendants to the elements, keeping the element
+	 * {@link #findElementById(MApplicationElement, String)} would find for duplicate ids.
+	 */
+	private static void collectElementsById(MApplicationElement element,
+			Map<String, MApplicationElement> elementsById) {
+		String id = element.getElementId();
+		if (id != null && id.length() > 0 && !elementsById.containsKey(id))
+			elementsById.put(id, element);
+		for (EObject childElement : ((EObject) element).eContents()) {
+			if (childElement instanceof MApplicationElement)
+				collectElementsById((MApplicationElement) childElement, elementsById);
+		}
+	}
+
 	// FIXME Should we not reuse ModelUtils???
 	private static MApplicationElement findElementById(MApplicationElement element, String id) {
 		if (id == null || id.length() == 0)
@@ -0,0 +1,431 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.e4.ui.internal.workbench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.eclipse.e4.ui.model.application.MApplication;
+import org.eclipse.e4.ui.model.application.ui.MElementContainer;
+import org.eclipse.e4.ui.model.application.ui.MUIElement;
+import org.eclipse.e4.ui.model.application.ui.advanced.MArea;
+import org.eclipse.e4.ui.model.application.ui.advanced.MPerspective;
+import org.eclipse.e4.ui.model.application.ui.advanced.MPerspectiveStack;
+import org.eclipse.e4.ui.model.application.ui.advanced.MPlaceholder;
+import org.eclipse.e4.ui.model.application.ui.basic.MTrimmedWindow;
+import org.eclipse.e4.ui.model.application.ui.basic.MWindow;
+import org.eclipse.e4.ui.workbench.UIEvents;
+import org.eclipse.e4.ui.workbench.modeling.EModelService;
+import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.util.EContentAdapter;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+/**
+ * Indexes the {@link MUIElement}s of an application by element id, implementation class and tag.
+ * The index is kept up to date from the containment notifications of the model.
+ * <p>
+ * {@link #findElements(MUIElement, String, Class, List, int)} looks up the candidates in the
+ * index and keeps those which {@link ModelServiceImpl}'s recursive search would reach from the
+ * search root with the given search flags, in the order the recursive search would find them.
+ * Queries the index cannot answer exactly return <code>null</code> and are left to the recursive
+ * search.
+ * </p>
+ */
+class ModelElementIndex extends EContentAdapter {
+
+	/**
+	 * The indexed values of an element.
+	 */
+	private static class Entry {
+		String id;
+		String[] tags;
+		MUIElement ref;
+	}
+
+	/**
+	 * Marks an element whose path is being computed, or which is not reachable.
+	 */
+	private static final int[] UNREACHABLE = new int[0];
+
+	/**
+	 * Thrown when the search root can reach an element in a way the index does not model.
+	 */
+	private static class UnsupportedPathException extends Exception {
+		private static final long serialVersionUID = 1L;
+	}
+
+	// the order of the steps taken by the recursive search from an element
+	private static final int CHILD = 0;
+	private static final int TRIM_BAR = 1;
+	private static final int WINDOW = 2;
+	private static final int REF = 3;
+
+	private static final Comparator<int[]> PATH_ORDER = new Comparator<int[]>() {
+		public int compare(int[] path1, int[] path2) {
+			int length = Math.min(path1.length, path2.length);
+			for (int i = 0; i < length; i++) {
+				if (path1[i] != path2[i])
+					return path1[i] < path2[i] ? -1 : 1;
+			}
+			return path1.length - path2.length;
+		}
+	};
+
+	private final MApplication application;
+
+	private final Map<MUIElement, Entry> entries = new HashMap<MUIElement, Entry>();
+	private final Map<String, Set<MUIElement>> byId = new HashMap<String, Set<MUIElement>>();
+	private final Map<String, Set<MUIElement>> byTag = new HashMap<String, Set<MUIElement>>();
+	private final Map<Class<?>, Set<MUIElement>> byClass = new HashMap<Class<?>, Set<MUIElement>>();
+
+	// the placeholders referencing an element
+	private final Map<MUIElement, List<MPlaceholder>> referrers = new HashMap<MUIElement, List<MPlaceholder>>();
+
+	// referenced elements which are not part of the application
+	private final Set<MUIElement> externalRefs = new HashSet<MUIElement>();
+
+	// elements which lost the adapter while still being in the application
+	private final Set<MUIElement> detached = new HashSet<MUIElement>();
+
+	private boolean disposed = false;
+
+	ModelElementIndex(MApplication application) {
+		this.application = application;
+		((EObject) application).eAdapters().add(this);
+	}
+
+	MApplication getApplication() {
+		return application;
+	}
+
+	/**
+	 * Stops tracking the application and drops the index.
+	 */
+	void dispose() {
+		disposed = true;
+		((EObject) application).eAdapters().remove(this);
+		entries.clear();
+		byId.clear();
+		byTag.clear();
+		byClass.clear();
+		referrers.clear();
+		externalRefs.clear();
+		detached.clear();
+	}
+
+	@Override
+	protected void setTarget(EObject target) {
+		super.setTarget(target);
+		if (target instanceof MUIElement) {
+			detached.remove(target);
+			add((MUIElement) target);
+		}
+	}
+
+	@Override
+	protected void unsetTarget(EObject target) {
+		super.unsetTarget(target);
+		if (target instanceof MUIElement) {
+			// an element moved to another container is notified as removed from the old one
+			// after it was added to the new one, see reattach()
+			if (!disposed && target != application
+					&& EcoreUtil.isAncestor((EObject) application, target))
+				detached.add((MUIElement) target);
+			remove((MUIElement) target);
+		}
+	}
+
+	/**
+	 * Indexes again the elements which were moved within the application but lost the adapter
+	 * on the way.
+	 */
+	private void reattach() {
+		if (detached.isEmpty())
+			return;
+		MUIElement[] elements = detached.toArray(new MUIElement[detached.size()]);
+		detached.clear();
+		for (MUIElement element : elements) {
+			EObject eObject = (EObject) element;
+			if (!eObject.eAdapters().contains(this)
+					&& EcoreUtil.isAncestor((EObject) application, eObject))
+				addAdapter(eObject);
+		}
+	}
+
+	@Override
+	public void notifyChanged(Notification notification) {
+		super.notifyChanged(notification);
+
+		if (notification.isTouch() || !(notification.getFeature() instanceof EStructuralFeature))
+			return;
+		Object notifier = notification.getNotifier();
+		if (!(notifier instanceof MUIElement) || !entries.containsKey(notifier))
+			return;
+
+		String name = ((EStructuralFeature) notification.getFeature()).getName();
+		if (UIEvents.ApplicationElement.ELEMENTID.equals(name)
+				|| UIEvents.ApplicationElement.TAGS.equals(name)
+				|| UIEvents.Placeholder.REF.equals(name)) {
+			remove((MUIElement) notifier);
+			add((MUIElement) notifier);
+		}
+	}
+
+	private void add(MUIElement element) {
+		if (entries.containsKey(element))
+			return;
+
+		Entry entry = new Entry();
+		entry.id = element.getElementId();
+		List<String> tags = element.getTags();
+		entry.tags = tags.toArray(new String[tags.size()]);
+		entries.put(element, entry);
+
+		if (entry.id != null)
+			addTo(byId, entry.id, element);
+		for (String tag : entry.tags)
+			addTo(byTag, tag, element);
+		addTo(byClass, element.getClass(), element);
+
+		externalRefs.remove(element);
+		if (element instanceof MPlaceholder) {
+			entry.ref = ((MPlaceholder) element).getRef();
+			if (entry.ref != null) {
+				List<MPlaceholder> placeholders = referrers.get(entry.ref);
+				if (placeholders == null) {
+					placeholders = new ArrayList<MPlaceholder>(2);
+					referrers.put(entry.ref, placeholders);
+				}
+				placeholders.add((MPlaceholder) element);
+				if (!entries.containsKey(entry.ref))
+					externalRefs.add(entry.ref);
+			}
+		}
+	}
+
+	private void remove(MUIElement element) {
+		Entry entry = entries.remove(element);
+		if (entry == null)
+			return;
+
+		if (entry.id != null)
+			removeFrom(byId, entry.id, element);
+		for (String tag : entry.tags)
+			removeFrom(byTag, tag, element);
+		removeFrom(byClass, element.getClass(), element);
+
+		if (referrers.containsKey(element))
+			externalRefs.add(element);
+		if (entry.ref != null) {
+			List<MPlaceholder> placeholders = referrers.get(entry.ref);
+			if (placeholders != null) {
+				placeholders.remove(element);
+				if (placeholders.isEmpty()) {
+					referrers.remove(entry.ref);
+					externalRefs.remove(entry.ref);
+				}
+			}
+		}
+	}
+
+	private static <K> void addTo(Map<K, Set<MUIElement>> map, K key, MUIElement element) {
+		Set<MUIElement> elements = map.get(key);
+		if (elements == null) {
+			elements = new HashSet<MUIElement>();
+			map.put(key, elements);
+		}
+		elements.add(element);
+	}
+
+	private static <K> void removeFrom(Map<K, Set<MUIElement>> map, K key, MUIElement element) {
+		Set<MUIElement> elements = map.get(key);
+		if (elements != null) {
+			elements.remove(element);
+			if (elements.isEmpty())
+				map.remove(key);
+		}
+	}
+
+	/**
+	 * Returns the elements the recursive search of {@link ModelServiceImpl} would find, or
+	 * <code>null</code> if the index cannot answer the query.
+	 */
+	<T> List<T> findElements(MUIElement searchRoot, String id, Class<T> clazz,
+			List<String> tagsToMatch, int searchFlags) {
+		if (disposed)
+			return null;
+		reattach();
+		if (!externalRefs.isEmpty() || !entries.containsKey(searchRoot))
+			return null;
+
+		Set<MUIElement> candidates = getCandidates(id, clazz, tagsToMatch);
+		if (candidates == null)
+			return null;
+
+		final Map<MUIElement, int[]> paths = new IdentityHashMap<MUIElement, int[]>();
+		paths.put(searchRoot, new int[0]);
+		List<MUIElement> found = new ArrayList<MUIElement>();
+		try {
+			for (MUIElement candidate : candidates) {
+				if (!match(candidate, id, clazz, tagsToMatch))
+					continue;
+				if (getPath(candidate, searchRoot, searchFlags, paths) != UNREACHABLE)
+					found.add(candidate);
+			}
+		} catch (UnsupportedPathException e) {
+			return null;
+		}
+
+		Collections.sort(found, new Comparator<MUIElement>() {
+			public int compare(MUIElement element1, MUIElement element2) {
+				return PATH_ORDER.compare(paths.get(element1), paths.get(element2));
+			}
+		});
+		List<T> elements = new ArrayList<T>(found.size());
+		for (MUIElement element : found)
+			elements.add((T) element);
+		return elements;
+	}
+
+	/**
+	 * Returns the smallest set of indexed elements containing all matches, or <code>null</code>
+	 * if the query does not restrict the elements.
+	 */
+	private Set<MUIElement> getCandidates(String id, Class<?> clazz, List<String> tagsToMatch) {
+		Set<MUIElement> candidates = null;
+		if (id != null) {
+			candidates = byId.get(id);
+			if (candidates == null)
+				return Collections.emptySet();
+		}
+		if (tagsToMatch != null) {
+			for (String tag : tagsToMatch) {
+				Set<MUIElement> tagged = byTag.get(tag);
+				if (tagged == null)
+					return Collections.emptySet();
+				if (candidates == null || tagged.size() < candidates.size())
+					candidates = tagged;
+			}
+		}
+		if (clazz != null && !clazz.isAssignableFrom(MUIElement.class)) {
+			Set<MUIElement> instances = new HashSet<MUIElement>();
+			for (Map.Entry<Class<?>, Set<MUIElement>> entry : byClass.entrySet()) {
+				if (clazz.isAssignableFrom(entry.getKey()))
+					instances.addAll(entry.getValue());
+			}
+			if (candidates == null || instances.size() < candidates.size())
+				candidates = instances;
+		}
+		return candidates;
+	}
+
+	private static boolean match(MUIElement element, String id, Class<?> clazz,
+			List<String> tagsToMatch) {
+		if (id != null && !id.equals(element.getElementId()))
+			return false;
+		if (clazz != null && !clazz.isInstance(element))
+			return false;
+		return tagsToMatch == null || element.getTags().containsAll(tagsToMatch);
+	}
+
+	/**
+	 * Returns the first path through which the recursive search reaches the element from the
+	 * search root, as a sequence of (step, index) pairs, or {@link #UNREACHABLE}.
+	 */
+	private int[] getPath(MUIElement element, MUIElement searchRoot, int searchFlags,
+			Map<MUIElement, int[]> paths) throws UnsupportedPathException {
+		if (paths.containsKey(element))
+			return paths.get(element);
+
+		// guards against cycles through placeholder references
+		paths.put(element, UNREACHABLE);
+
+		int[] best = UNREACHABLE;
+		EObject container = ((EObject) element).eContainer();
+		if (container instanceof MUIElement) {
+			MUIElement parent = (MUIElement) container;
+			int step = -1;
+			int index = -1;
+			if (parent instanceof MElementContainer<?>) {
+				index = ((MElementContainer<?>) parent).getChildren().indexOf(element);
+				if (index != -1) {
+					step = CHILD;
+					if (parent instanceof MPerspectiveStack && !canSearch((MPerspectiveStack) parent,
+							element, searchFlags))
+						step = -1;
+				}
+			}
+			if (step == -1 && parent instanceof MTrimmedWindow
+					&& (searchFlags & EModelService.IN_TRIM) != 0) {
+				index = ((MTrimmedWindow) parent).getTrimBars().indexOf(element);
+				if (index != -1)
+					step = TRIM_BAR;
+			}
+			if (step == -1 && parent instanceof MWindow) {
+				index = ((MWindow) parent).getWindows().indexOf(element);
+				if (index != -1)
+					step = WINDOW;
+			}
+			if (step == -1 && parent instanceof MPerspective) {
+				index = ((MPerspective) parent).getWindows().indexOf(element);
+				if (index != -1)
+					step = WINDOW;
+			}
+			if (step != -1)
+				best = append(getPath(parent, searchRoot, searchFlags, paths), step, index);
+		}
+
+		List<MPlaceholder> placeholders = referrers.get(element);
+		if (placeholders != null
+				&& (!(element instanceof MArea) || (searchFlags & EModelService.IN_SHARED_AREA) != 0)) {
+			for (MPlaceholder placeholder : placeholders) {
+				int[] path = append(getPath(placeholder, searchRoot, searchFlags, paths), REF, 0);
+				if (best == UNREACHABLE || (path != UNREACHABLE && PATH_ORDER.compare(path, best) < 0))
+					best = path;
+			}
+		}
+
+		paths.put(element, best);
+		return best;
+	}
+
+	private static boolean canSearch(MPerspectiveStack stack, MUIElement perspective,
+			int searchFlags) throws UnsupportedPathException {
+		if ((searchFlags & EModelService.IN_ANY_PERSPECTIVE) != 0)
+			return true;
+		if ((searchFlags & EModelService.IN_ACTIVE_PERSPECTIVE) != 0)
+			return stack.getSelectedElement() == perspective;
+		if ((searchFlags & EModelService.IN_SHARED_AREA) != 0) {
+			// the recursive search looks for the areas below the stack first
+			throw new UnsupportedPathException();
+		}
+		return false;
+	}
+
+	private static int[] append(int[] path, int step, int index) {
+		if (path == UNREACHABLE)
+			return UNREACHABLE;
+		int[] result = new int[path.length + 2];
+		System.arraycopy(path, 0, result, 0, path.length);
+		result[path.length] = step;
+		result[path.length + 1] = index;
+		return result;
+	}
+}
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.e4.ui.internal.workbench;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+
+/**
+ * Keeps the parsed model fragments in the binary model format, so that the fragment XMI of a
+ * bundle is parsed again only when the bundle changes. An entry is keyed by the version and the
+ * modification time stamp of the contributing bundle; bundles with an unqualified development
+ * version are never cached since their fragments may change without a new version.
+ * <p>
+ * This class is public for use by the test suites.
+ * </p>
+ */
+public class ModelFragmentCache {
+
+	private static final String EXTENSION = ".bin"; //$NON-NLS-1$
+
+	private final File directory;
+
+	// the names of the files of the fragments loaded or stored, read by several threads
+	private final Set<String> used = Collections.synchronizedSet(new HashSet<String>());
+
+	/**
+	 * @param directory
+	 *            the directory holding the cached fragments
+	 */
+	public ModelFragmentCache(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Returns the cached fragment resource, or <code>null</code> if the fragment is not cached or
+	 * the contributing bundle changed since it was cached.
+	 *
+	 * @param uri
+	 *            the location of the fragment
+	 * @param bundle
+	 *            the bundle contributing the fragment
+	 * @param resourceSet
+	 *            the resource set receiving the resource
+	 * @return the resource or <code>null</code>
+	 */
+	public Resource load(URI uri, Bundle bundle, ResourceSet resourceSet) {
+		String key = getKey(bundle);
+		File file = getFile(uri);
+		if (key == null || !file.exists())
+			return null;
+
+		used.add(file.getName());
+		E4XMIResource resource = new E4XMIResource(uri);
+		try {
+			DataInputStream in = new DataInputStream(new FileInputStream(file));
+			try {
+				if (!key.equals(in.readUTF()))
+					return null;
+				resourceSet.getResources().add(resource);
+				E4BinaryFormat.load(resource, in);
+				return resource;
+			} finally {
+				in.close();
+			}
+		} catch (Exception e) {
+			// parse the fragment again
+			resourceSet.getResources().remove(resource);
+			file.delete();
+			return null;
+		}
+	}
+
+	/**
+	 * Caches the given fragment resource. Must be called before elements are merged out of the
+	 * resource.
+	 *
+	 * @param uri
+	 *            the location of the fragment
+	 * @param bundle
+	 *            the bundle contributing the fragment
+	 * @param resource
+	 *            the parsed fragment
+	 */
+	public void store(URI uri, Bundle bundle, Resource resource) {
+		String key = getKey(bundle);
+		if (key == null || (!directory.exists() && !directory.mkdirs()))
+			return;
+
+		File file = getFile(uri);
+		used.add(file.getName());
+		File tempFile = new File(directory, file.getName() + ".tmp"); //$NON-NLS-1$
+		boolean stored = false;
+		try {
+			DataOutputStream out = new DataOutputStream(new FileOutputStream(tempFile));
+			try {
+				out.writeUTF(key);
+				E4BinaryFormat.save(resource, out);
+			} finally {
+				out.close();
+			}
+			stored = (!file.exists() || file.delete()) && tempFile.renameTo(file);
+		} catch (Exception e) {
+			// not cached, the fragment is parsed again on the next start
+		} finally {
+			if (!stored)
+				tempFile.delete();
+		}
+	}
+
+	/**
+	 * Deletes the cached fragments that were neither loaded nor stored by the receiver, as their
+	 * bundle no longer contributes them or is no longer cached, and the files left by a failed
+	 * store. Must be called once all the fragments were loaded.
+	 */
+	public void prune() {
+		File[] files = directory.listFiles();
+		if (files == null)
+			return;
+		for (File file : files) {
+			if (file.isFile() && !used.contains(file.getName()))
+				file.delete();
+		}
+	}
+
+	private static String getKey(Bundle bundle) {
+		if (bundle == null)
+			return null;
+		Object version = bundle.getHeaders("").get(Constants.BUNDLE_VERSION); //$NON-NLS-1$
+		if (version == null || version.toString().endsWith(".qualifier")) //$NON-NLS-1$
+			return null;
+		return bundle.getSymbolicName() + '_' + version + '_' + bundle.getLastModified();
+	}
+
+	private File getFile(URI uri) {
+		String location = uri.toString();
+		StringBuilder name = new StringBuilder();
+		for (int i = 0; i < location.length(); i++) {
+			char c = location.charAt(i);
+			name.append(Character.isLetterOrDigit(c) || c == '.' || c == '-' ? c : '_');
+		}
+		name.append('_').append(Integer.toHexString(location.hashCode())).append(EXTENSION);
+		return new File(directory, name.toString());
+	}
+}
@@ -0,0 +1,661 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.e4.ui.internal.workbench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.common.util.ECollections;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.ecore.EAttribute;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.InternalEObject;
+import org.eclipse.emf.ecore.util.EContentAdapter;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.xmi.XMLResource;
+
+/**
+ * A journal of the changes made to a model resource since it was last saved in full (the
+ * "snapshot"). The journal observes the model and collects the changed features; each
+ * {@link #createRecord() record} holds the current values of the features changed since the
+ * previous one, so the cost of a record depends on the size of the change and not on the size of
+ * the model.
+ * <p>
+ * Elements are identified by their XML ids. Elements added to the model are written with their
+ * complete state, map entries (which have no id) with the map containing them. Changes of
+ * transient features and of the resource contents themselves are not journaled, nor are the
+ * features and elements subclasses {@link #isExcluded(EObject, EStructuralFeature) exclude}.
+ * </p>
+ * <p>
+ * The journal file starts with the time stamp and length of the snapshot it belongs to. Every
+ * record carries its length and checksum, a record that was not written completely, for example
+ * because the workbench did not exit cleanly, is dropped when the journal is replayed.
+ * </p>
+ */
+public class ModelJournal extends EContentAdapter {
+
+	private static final int MAGIC = 0x45344a4c; // "E4JL"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 24;
+
+	/** An element written with its complete state */
+	private static final byte STATE = 0;
+	/** An element of the model identified by its id */
+	private static final byte REFERENCE = 1;
+
+	private final XMLResource resource;
+	private final File file;
+
+	private long snapshotTimeStamp = -1;
+	private long snapshotLength = -1;
+
+	/** the features changed since the last record, in the order of their owners' first change */
+	private Map<EObject, Set<EStructuralFeature>> changes = new LinkedHashMap<EObject, Set<EStructuralFeature>>();
+
+	/** the elements added to a containment since the last record */
+	private Map<EObject, Object> added = new IdentityHashMap<EObject, Object>();
+
+	/**
+	 * Creates the journal of the given resource.
+	 *
+	 * @param resource
+	 *            the model resource
+	 * @param file
+	 *            the journal file
+	 */
+	public ModelJournal(XMLResource resource, File file) {
+		this.resource = resource;
+		this.file = file;
+	}
+
+	/**
+	 * Starts observing the model.
+	 */
+	public void start() {
+		if (!resource.eAdapters().contains(this))
+			resource.eAdapters().add(this);
+	}
+
+	/**
+	 * Stops observing the model and discards the changes which were not recorded.
+	 */
+	public void dispose() {
+		resource.eAdapters().remove(this);
+		clearChanges();
+	}
+
+	/**
+	 * Called when the first change after a record is observed. The default implementation does
+	 * nothing, subclasses may schedule writing the next record.
+	 */
+	protected void changed() {
+		// do nothing
+	}
+
+	@Override
+	public void notifyChanged(Notification notification) {
+		super.notifyChanged(notification);
+		if (notification.isTouch() || !(notification.getNotifier() instanceof EObject)
+				|| !(notification.getFeature() instanceof EStructuralFeature))
+			return;
+
+		EObject owner = (EObject) notification.getNotifier();
+		EStructuralFeature feature = (EStructuralFeature) notification.getFeature();
+		if (feature instanceof EReference && ((EReference) feature).isContainment()) {
+			switch (notification.getEventType()) {
+			case Notification.ADD:
+			case Notification.SET:
+				if (notification.getNewValue() != null)
+					added.put((EObject) notification.getNewValue(), null);
+				break;
+			case Notification.ADD_MANY:
+				for (Object value : (List<?>) notification.getNewValue()) {
+					added.put((EObject) value, null);
+				}
+				break;
+			}
+		}
+
+		// map entries are written with the map containing them
+		while (owner instanceof Map.Entry<?, ?>) {
+			feature = owner.eContainmentFeature();
+			owner = owner.eContainer();
+		}
+		if (owner == null || !isPersisted(feature))
+			return;
+
+		boolean first = changes.isEmpty();
+		Set<EStructuralFeature> features = changes.get(owner);
+		if (features == null) {
+			features = new LinkedHashSet<EStructuralFeature>();
+			changes.put(owner, features);
+		}
+		features.add(feature);
+		if (first)
+			changed();
+	}
+
+	private static boolean isPersisted(EStructuralFeature feature) {
+		if (feature.isTransient() || feature.isDerived() || !feature.isChangeable())
+			return false;
+		return !(feature instanceof EReference) || !((EReference) feature).isContainer();
+	}
+
+	/**
+	 * Returns whether a feature is left out of the journal. The default implementation returns
+	 * <code>false</code>, subclasses may leave out features whose values are recreated on every
+	 * start.
+	 *
+	 * @param owner
+	 *            the element owning the feature
+	 * @param feature
+	 *            a persisted feature
+	 * @return <code>true</code> if the feature is not journaled
+	 */
+	protected boolean isExcluded(EObject owner, EStructuralFeature feature) {
+		return false;
+	}
+
+	/**
+	 * Returns whether an element is left out of the journal, together with its contents. The
+	 * element is left out of the containment list holding it. The default implementation returns
+	 * <code>false</code>.
+	 *
+	 * @param element
+	 *            an element contained in a list
+	 * @return <code>true</code> if the element is not journaled
+	 */
+	protected boolean isExcluded(EObject element) {
+		return false;
+	}
+
+	/**
+	 * Returns whether the element or one of its containers is left out of the journal.
+	 */
+	private boolean isInExcluded(EObject element) {
+		for (EObject o = element; o.eContainer() != null; o = o.eContainer()) {
+			if (isExcluded(o) || isExcluded(o.eContainer(), o.eContainmentFeature()))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return <code>true</code> if changes were observed since the last record
+	 */
+	public boolean isDirty() {
+		return !changes.isEmpty();
+	}
+
+	/**
+	 * Discards the changes which were not recorded, used once the model was saved in full.
+	 */
+	public void clearChanges() {
+		changes = new LinkedHashMap<EObject, Set<EStructuralFeature>>();
+		added.clear();
+	}
+
+	/**
+	 * Creates a record of the features changed since the last record, and starts collecting the
+	 * changes for the next one.
+	 *
+	 * @return the record, or <code>null</code> if nothing that is journaled changed
+	 * @throws IOException
+	 *             if the record cannot be created
+	 */
+	public byte[] createRecord() throws IOException {
+		if (changes.isEmpty())
+			return null;
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		for (Map.Entry<EObject, Set<EStructuralFeature>> change : changes.entrySet()) {
+			EObject owner = change.getKey();
+			// elements no longer in the model don't need to be restored, added elements are
+			// written with their complete state by their container
+			if (owner.eResource() != resource || isAdded(owner) || isInExcluded(owner))
+				continue;
+			List<EStructuralFeature> features = new ArrayList<EStructuralFeature>();
+			for (EStructuralFeature feature : change.getValue()) {
+				if (!isExcluded(owner, feature))
+					features.add(feature);
+			}
+			if (features.isEmpty())
+				continue;
+			out.writeByte(REFERENCE);
+			writeString(out, getId(owner));
+			out.writeInt(features.size());
+			for (EStructuralFeature feature : features) {
+				writeString(out, feature.getName());
+				writeFeature(out, owner, feature, false);
+			}
+		}
+		out.flush();
+		clearChanges();
+		// only excluded elements may have changed
+		return bytes.size() == 0 ? null : bytes.toByteArray();
+	}
+
+	private boolean isAdded(EObject object) {
+		for (EObject o = object; o != null; o = o.eContainer()) {
+			if (added.containsKey(o))
+				return true;
+		}
+		return false;
+	}
+
+	private String getId(EObject object) {
+		return object instanceof Map.Entry<?, ?> ? null : resource.getID(object);
+	}
+
+	private void writeFeature(DataOutputStream out, EObject owner, EStructuralFeature feature,
+			boolean inState) throws IOException {
+		boolean set = owner.eIsSet(feature);
+		out.writeBoolean(set);
+		if (!set)
+			return;
+		Object value = ((InternalEObject) owner).eGet(feature, false, true);
+		if (feature.isMany()) {
+			List<?> values = (List<?>) value;
+			if (feature instanceof EReference && ((EReference) feature).isContainment()) {
+				List<Object> kept = new ArrayList<Object>(values.size());
+				for (Object element : values) {
+					if (!isExcluded((EObject) element))
+						kept.add(element);
+				}
+				values = kept;
+			}
+			out.writeInt(values.size());
+			for (Object element : values) {
+				writeValue(out, feature, element, inState);
+			}
+		} else {
+			writeValue(out, feature, value, inState);
+		}
+	}
+
+	private void writeValue(DataOutputStream out, EStructuralFeature feature, Object value,
+			boolean inState) throws IOException {
+		if (feature instanceof EAttribute) {
+			writeString(out, value == null ? null : EcoreUtil.convertToString(
+					((EAttribute) feature).getEAttributeType(), value));
+		} else if (((EReference) feature).isContainment()) {
+			writeElement(out, (EObject) value, inState);
+		} else {
+			writeString(out, value == null ? null : getId((EObject) value));
+		}
+	}
+
+	private void writeElement(DataOutputStream out, EObject element, boolean inState)
+			throws IOException {
+		if (element == null) {
+			out.writeByte(REFERENCE);
+			writeString(out, null);
+			return;
+		}
+		String id = getId(element);
+		if (!inState && id != null && !added.containsKey(element)) {
+			out.writeByte(REFERENCE);
+			writeString(out, id);
+			return;
+		}
+
+		out.writeByte(STATE);
+		EClass eClass = element.eClass();
+		writeString(out, eClass.getEPackage().getNsURI());
+		writeString(out, eClass.getName());
+		writeString(out, id);
+		List<EStructuralFeature> features = new ArrayList<EStructuralFeature>();
+		for (EStructuralFeature feature : eClass.getEAllStructuralFeatures()) {
+			if (isPersisted(feature) && !isExcluded(element, feature))
+				features.add(feature);
+		}
+		out.writeInt(features.size());
+		for (EStructuralFeature feature : features) {
+			writeString(out, feature.getName());
+			writeFeature(out, element, feature, true);
+		}
+	}
+
+	/**
+	 * Appends a record to the journal file.
+	 *
+	 * @param record
+	 *            a record created by {@link #createRecord()}
+	 * @throws IOException
+	 *             if the record cannot be written
+	 */
+	public void append(byte[] record) throws IOException {
+		CRC32 checksum = new CRC32();
+		checksum.update(record);
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file, true));
+		try {
+			out.writeInt(record.length);
+			out.writeInt((int) checksum.getValue());
+			out.write(record);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Starts a new journal file for the given snapshot.
+	 *
+	 * @param snapshot
+	 *            the file the model was saved to in full
+	 * @throws IOException
+	 *             if the journal cannot be written
+	 */
+	public void reset(File snapshot) throws IOException {
+		snapshotTimeStamp = snapshot.lastModified();
+		snapshotLength = snapshot.length();
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(snapshotTimeStamp);
+			out.writeLong(snapshotLength);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Returns whether the journal file belongs to the given snapshot, that is the snapshot was not
+	 * written since the journal was started.
+	 *
+	 * @param snapshot
+	 *            the file the model was saved to in full
+	 * @return <code>true</code> if the journal file belongs to the snapshot
+	 */
+	public boolean isJournalOf(File snapshot) {
+		if (snapshotTimeStamp == -1 && file.length() >= HEADER_SIZE) {
+			try {
+				DataInputStream in = new DataInputStream(new FileInputStream(file));
+				try {
+					if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+						snapshotTimeStamp = in.readLong();
+						snapshotLength = in.readLong();
+					}
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				return false;
+			}
+		}
+		return snapshotTimeStamp != -1 && snapshotTimeStamp == snapshot.lastModified()
+				&& snapshotLength == snapshot.length();
+	}
+
+	/**
+	 * @return the size of the journal file in bytes
+	 */
+	public long length() {
+		return file.length();
+	}
+
+	/**
+	 * Applies the records of the journal file to the model. A record which was not written
+	 * completely ends the journal and is removed from the file. The journal file must belong to
+	 * the snapshot the model was loaded from, see {@link #isJournalOf(File)}.
+	 *
+	 * @return the number of records applied
+	 * @throws IOException
+	 *             if the journal cannot be read or does not match the model, the model may then be
+	 *             partially changed
+	 */
+	public int replay() throws IOException {
+		byte[] data = readFile();
+		Map<String, EObject> elements = new HashMap<String, EObject>();
+		for (Iterator<EObject> it = resource.getAllContents(); it.hasNext();) {
+			EObject element = it.next();
+			String id = getId(element);
+			if (id != null)
+				elements.put(id, element);
+		}
+
+		int records = 0;
+		int offset = HEADER_SIZE;
+		CRC32 checksum = new CRC32();
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		in.skipBytes(HEADER_SIZE);
+		while (offset + 8 <= data.length) {
+			int length = in.readInt();
+			int expected = in.readInt();
+			if (length < 0 || offset + 8 + length > data.length)
+				break;
+			checksum.reset();
+			checksum.update(data, offset + 8, length);
+			if ((int) checksum.getValue() != expected)
+				break;
+			applyRecord(new DataInputStream(new ByteArrayInputStream(data, offset + 8, length)),
+					elements);
+			in.skipBytes(length);
+			offset += 8 + length;
+			records++;
+		}
+
+		if (offset < data.length) {
+			RandomAccessFile journal = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+			try {
+				journal.setLength(offset);
+			} finally {
+				journal.close();
+			}
+		}
+		return records;
+	}
+
+	private byte[] readFile() throws IOException {
+		byte[] data = new byte[(int) file.length()];
+		InputStream in = new FileInputStream(file);
+		try {
+			int read = 0;
+			while (read < data.length) {
+				int count = in.read(data, read, data.length - read);
+				if (count == -1)
+					throw new IOException("Journal was truncated while reading " + file); //$NON-NLS-1$
+				read += count;
+			}
+		} finally {
+			in.close();
+		}
+		return data;
+	}
+
+	/**
+	 * A non-containment reference, set once the record created the elements it may refer to.
+	 */
+	private static class PendingReference {
+		final EObject owner;
+		final EReference reference;
+		final List<String> ids;
+
+		PendingReference(EObject owner, EReference reference, List<String> ids) {
+			this.owner = owner;
+			this.reference = reference;
+			this.ids = ids;
+		}
+	}
+
+	private void applyRecord(DataInputStream in, Map<String, EObject> elements)
+			throws IOException {
+		List<PendingReference> references = new ArrayList<PendingReference>();
+		while (in.available() > 0) {
+			if (in.readByte() != REFERENCE)
+				throw new IOException("Corrupt journal record"); //$NON-NLS-1$
+			EObject owner = getElement(readString(in), elements);
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				readFeature(in, owner, getFeature(owner, readString(in)), elements, references);
+			}
+		}
+
+		for (PendingReference pending : references) {
+			if (pending.ids == null) {
+				pending.owner.eUnset(pending.reference);
+			} else if (pending.reference.isMany()) {
+				List<EObject> values = new ArrayList<EObject>(pending.ids.size());
+				for (String id : pending.ids) {
+					// elements which are no longer part of the model are dropped
+					EObject value = id == null ? null : elements.get(id);
+					if (value != null)
+						values.add(value);
+				}
+				ECollections.setEList(getList(pending.owner, pending.reference), values);
+			} else {
+				String id = pending.ids.get(0);
+				pending.owner.eSet(pending.reference, id == null ? null : elements.get(id));
+			}
+		}
+	}
+
+	private void readFeature(DataInputStream in, EObject owner, EStructuralFeature feature,
+			Map<String, EObject> elements, List<PendingReference> references) throws IOException {
+		boolean set = in.readBoolean();
+		if (feature instanceof EReference && !((EReference) feature).isContainment()) {
+			List<String> ids = null;
+			if (set) {
+				int count = feature.isMany() ? in.readInt() : 1;
+				ids = new ArrayList<String>(count);
+				for (int i = 0; i < count; i++) {
+					ids.add(readString(in));
+				}
+			}
+			references.add(new PendingReference(owner, (EReference) feature, ids));
+			return;
+		}
+
+		if (!set) {
+			owner.eUnset(feature);
+		} else if (feature.isMany()) {
+			int count = in.readInt();
+			List<Object> values = new ArrayList<Object>(count);
+			for (int i = 0; i < count; i++) {
+				values.add(readValue(in, feature, elements, references));
+			}
+			ECollections.setEList(getList(owner, feature), values);
+		} else {
+			owner.eSet(feature, readValue(in, feature, elements, references));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static EList<Object> getList(EObject owner, EStructuralFeature feature) {
+		// the core type, maps are returned as lists of entries
+		return (EList<Object>) ((InternalEObject) owner).eGet(feature, false, true);
+	}
+
+	private Object readValue(DataInputStream in, EStructuralFeature feature,
+			Map<String, EObject> elements, List<PendingReference> references) throws IOException {
+		if (feature instanceof EAttribute) {
+			String value = readString(in);
+			return value == null ? null : EcoreUtil.createFromString(
+					((EAttribute) feature).getEAttributeType(), value);
+		}
+
+		byte kind = in.readByte();
+		if (kind == REFERENCE) {
+			String id = readString(in);
+			return id == null ? null : getElement(id, elements);
+		}
+		if (kind != STATE)
+			throw new IOException("Corrupt journal record"); //$NON-NLS-1$
+
+		String nsURI = readString(in);
+		String className = readString(in);
+		String id = readString(in);
+		EObject element = id == null ? null : elements.get(id);
+		if (element == null) {
+			element = EcoreUtil.create(getEClass(nsURI, className));
+			if (id != null) {
+				resource.setID(element, id);
+				elements.put(id, element);
+			}
+		} else if (!element.eClass().getName().equals(className)) {
+			throw new IOException("Journal does not match element " + id); //$NON-NLS-1$
+		}
+		int count = in.readInt();
+		for (int i = 0; i < count; i++) {
+			readFeature(in, element, getFeature(element, readString(in)), elements, references);
+		}
+		return element;
+	}
+
+	private EClass getEClass(String nsURI, String className) throws IOException {
+		EPackage.Registry registry = resource.getResourceSet() == null ? EPackage.Registry.INSTANCE
+				: resource.getResourceSet().getPackageRegistry();
+		EPackage ePackage = registry.getEPackage(nsURI);
+		EClassifier eClass = ePackage == null ? null : ePackage.getEClassifier(className);
+		if (!(eClass instanceof EClass))
+			throw new IOException("Unknown model class " + nsURI + '#' + className); //$NON-NLS-1$
+		return (EClass) eClass;
+	}
+
+	private static EObject getElement(String id, Map<String, EObject> elements)
+			throws IOException {
+		EObject element = elements.get(id);
+		if (element == null)
+			throw new IOException("Journal refers to unknown element " + id); //$NON-NLS-1$
+		return element;
+	}
+
+	private static EStructuralFeature getFeature(EObject owner, String name) throws IOException {
+		EStructuralFeature feature = owner.eClass().getEStructuralFeature(name);
+		if (feature == null)
+			throw new IOException("Unknown feature " + owner.eClass().getName() + '.' + name); //$NON-NLS-1$
+		return feature;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = value.getBytes("UTF-8"); //$NON-NLS-1$
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length == -1)
+			return null;
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8"); //$NON-NLS-1$
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009 IBM Corporation and others.
+ * Copyright (c) 2009, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -39,6 +39,20 @@ public class ModelReconcilingService implements IModelReconcilingService {
 	}
 
 	public IStatus applyDeltas(Collection<ModelDelta> deltas, String[] filters) {
+		// merging into a live model, send each changed attribute once
+		UIEventPublisher publisher = deltas.isEmpty() ? null : UIEventPublisher
+				.getPublisher(deltas.iterator().next().getObject());
+		if (publisher != null)
+			publisher.beginBatch();
+		try {
+			return doApplyDeltas(deltas, filters);
+		} finally {
+			if (publisher != null)
+				publisher.endBatch();
+		}
+	}
+
+	private IStatus doApplyDeltas(Collection<ModelDelta> deltas, String[] filters) {
 		if (filters == null) {
 			filters = new String[0];
 		}
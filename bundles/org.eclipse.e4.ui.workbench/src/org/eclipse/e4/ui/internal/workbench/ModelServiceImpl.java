@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2011 IBM Corporation and others.
+ * Copyright (c) 2010, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,7 +12,9 @@
 package org.eclipse.e4.ui.internal.workbench;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.e4.core.contexts.IEclipseContext;
 import org.eclipse.e4.core.services.events.IEventBroker;
@@ -57,6 +59,9 @@ import org.osgi.service.event.EventHandler;
 public class ModelServiceImpl implements EModelService {
 	private static String HOSTED_ELEMENT = "HostedElement"; //$NON-NLS-1$
 
+	// Answers the searches within the application model, created on demand
+	private ModelElementIndex index;
+
 	// Cleans up after a hosted element is disposed
 	private EventHandler hostedElementHandler = new EventHandler() {
 
@@ -92,6 +97,17 @@ public class ModelServiceImpl implements EModelService {
 		eventBroker.subscribe(UIEvents.UIElement.TOPIC_WIDGET, hostedElementHandler);
 	}
 
+	/**
+	 * Releases the index of the application model. The index is created again by the next
+	 * search.
+	 */
+	public void dispose() {
+		if (index != null) {
+			index.dispose();
+			index = null;
+		}
+	}
+
 	/**
 	 * Determine if the element passes the matching test for all non-null parameters.
 	 * 
@@ -125,13 +141,20 @@ public class ModelServiceImpl implements EModelService {
 
 	private <T> void findElementsRecursive(MUIElement searchRoot, String id,
 			Class<? extends T> type, List<String> tagsToMatch, List<T> elements, int searchFlags) {
+		findElementsRecursive(searchRoot, id, type, tagsToMatch, elements,
+				new IdentityHashMap<MUIElement, Object>(), searchFlags);
+	}
+
+	private <T> void findElementsRecursive(MUIElement searchRoot, String id,
+			Class<? extends T> type, List<String> tagsToMatch, List<T> elements,
+			Map<MUIElement, Object> found, int searchFlags) {
 		Assert.isLegal(searchRoot != null);
 		if (searchFlags == 0)
 			return;
 
 		// are *we* a match ?
 		if (match(searchRoot, id, type, tagsToMatch)) {
-			if (!elements.contains((T) searchRoot))
+			if (found.put(searchRoot, searchRoot) == null)
 				elements.add((T) searchRoot);
 		}
 
@@ -143,26 +166,30 @@ public class ModelServiceImpl implements EModelService {
 					MElementContainer<MUIElement> container = (MElementContainer<MUIElement>) searchRoot;
 					List<MUIElement> children = container.getChildren();
 					for (MUIElement child : children) {
-						findElementsRecursive(child, id, type, tagsToMatch, elements, searchFlags);
+						findElementsRecursive(child, id, type, tagsToMatch, elements, found,
+								searchFlags);
 					}
 				} else if ((searchFlags & IN_ACTIVE_PERSPECTIVE) != 0) {
 					// Only search the currently active perspective, if any
 					MPerspective active = ((MPerspectiveStack) searchRoot).getSelectedElement();
 					if (active != null) {
-						findElementsRecursive(active, id, type, tagsToMatch, elements, searchFlags);
+						findElementsRecursive(active, id, type, tagsToMatch, elements, found,
+								searchFlags);
 					}
 				} else if ((searchFlags & IN_SHARED_AREA) != 0) {
 					// Only recurse through the shared areas
 					List<MArea> areas = findElements(searchRoot, null, MArea.class, null);
 					for (MArea area : areas) {
-						findElementsRecursive(area, id, type, tagsToMatch, elements, searchFlags);
+						findElementsRecursive(area, id, type, tagsToMatch, elements, found,
+								searchFlags);
 					}
 				}
 			} else {
 				MElementContainer<MUIElement> container = (MElementContainer<MUIElement>) searchRoot;
 				List<MUIElement> children = container.getChildren();
 				for (MUIElement child : children) {
-					findElementsRecursive(child, id, type, tagsToMatch, elements, searchFlags);
+					findElementsRecursive(child, id, type, tagsToMatch, elements, found,
+							searchFlags);
 				}
 			}
 		}
@@ -172,7 +199,8 @@ public class ModelServiceImpl implements EModelService {
 			MTrimmedWindow tw = (MTrimmedWindow) searchRoot;
 			List<MTrimBar> bars = tw.getTrimBars();
 			for (MTrimBar bar : bars) {
-				findElementsRecursive(bar, id, type, tagsToMatch, elements, searchFlags);
+				findElementsRecursive(bar, id, type, tagsToMatch, elements, found,
+						searchFlags);
 			}
 		}
 
@@ -180,13 +208,15 @@ public class ModelServiceImpl implements EModelService {
 		if (searchRoot instanceof MWindow) {
 			MWindow window = (MWindow) searchRoot;
 			for (MWindow dw : window.getWindows()) {
-				findElementsRecursive(dw, id, type, tagsToMatch, elements, searchFlags);
+				findElementsRecursive(dw, id, type, tagsToMatch, elements, found,
+						searchFlags);
 			}
 		}
 		if (searchRoot instanceof MPerspective) {
 			MPerspective persp = (MPerspective) searchRoot;
 			for (MWindow dw : persp.getWindows()) {
-				findElementsRecursive(dw, id, type, tagsToMatch, elements, searchFlags);
+				findElementsRecursive(dw, id, type, tagsToMatch, elements, found,
+						searchFlags);
 			}
 		}
 		// Search shared elements
@@ -196,7 +226,8 @@ public class ModelServiceImpl implements EModelService {
 			// Don't search in shared areas unless the flag is set
 			if (ph.getRef() != null
 					&& (!(ph.getRef() instanceof MArea) || (searchFlags & IN_SHARED_AREA) != 0)) {
-				findElementsRecursive(ph.getRef(), id, type, tagsToMatch, elements, searchFlags);
+				findElementsRecursive(ph.getRef(), id, type, tagsToMatch, elements, found,
+						searchFlags);
 			}
 		}
 	}
@@ -209,18 +240,43 @@ public class ModelServiceImpl implements EModelService {
 	 */
 	public <T> List<T> findElements(MUIElement searchRoot, String id, Class<T> clazz,
 			List<String> tagsToMatch) {
-		List<T> elements = new ArrayList<T>();
-		findElementsRecursive(searchRoot, id, clazz, tagsToMatch, elements, ANYWHERE);
-		return elements;
+		return findElements(searchRoot, id, clazz, tagsToMatch, ANYWHERE);
 	}
 
 	public <T> List<T> findElements(MUIElement searchRoot, String id, Class<T> clazz,
 			List<String> tagsToMatch, int searchFlags) {
+		if (searchFlags != 0) {
+			ModelElementIndex elementIndex = getIndex(searchRoot);
+			if (elementIndex != null) {
+				List<T> elements = elementIndex.findElements(searchRoot, id, clazz, tagsToMatch,
+						searchFlags);
+				if (elements != null)
+					return elements;
+			}
+		}
+
 		List<T> elements = new ArrayList<T>();
 		findElementsRecursive(searchRoot, id, clazz, tagsToMatch, elements, searchFlags);
 		return elements;
 	}
 
+	/**
+	 * Returns the index of the application containing the search root, or <code>null</code> if
+	 * the search root is not part of an application.
+	 */
+	private ModelElementIndex getIndex(MUIElement searchRoot) {
+		EObject root = EcoreUtil.getRootContainer((EObject) searchRoot);
+		if (!(root instanceof MApplication))
+			return null;
+
+		if (index == null || index.getApplication() != root) {
+			if (index != null)
+				index.dispose();
+			index = new ModelElementIndex((MApplication) root);
+		}
+		return index;
+	}
+
 	private <T> List<T> findPerspectiveElements(MUIElement searchRoot, String id, Class<T> clazz,
 			List<String> tagsToMatch) {
 		List<T> elements = new ArrayList<T>();
@@ -836,6 +892,19 @@ public class ModelServiceImpl implements EModelService {
 		if (persp == null)
 			return;
 
+		UIEventPublisher publisher = UIEventPublisher.getPublisher(window);
+		if (publisher != null)
+			publisher.beginBatch();
+		try {
+			doResetPerspectiveModel(persp, window, removeSharedPlaceholders);
+		} finally {
+			if (publisher != null)
+				publisher.endBatch();
+		}
+	}
+
+	private void doResetPerspectiveModel(MPerspective persp, MWindow window,
+			boolean removeSharedPlaceholders) {
 		if (removeSharedPlaceholders) {
 			// Remove any views (Placeholders) from the shared area
 			EPartService ps = window.getContext().get(EPartService.class);
@@ -12,26 +12,39 @@
 package org.eclipse.e4.ui.internal.workbench;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URISyntaxException;
 import java.net.URLConnection;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.xml.parsers.DocumentBuilderFactory;
 import org.eclipse.core.internal.runtime.PlatformURLPluginConnection;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.URIUtil;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.e4.core.contexts.ContextInjectionFactory;
 import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.di.annotations.Optional;
 import org.eclipse.e4.core.services.log.Logger;
+import org.eclipse.e4.ui.di.UISynchronize;
 import org.eclipse.e4.ui.model.application.MApplication;
 import org.eclipse.e4.ui.model.application.MApplicationElement;
 import org.eclipse.e4.ui.model.application.commands.impl.CommandsPackageImpl;
 import org.eclipse.e4.ui.model.application.impl.ApplicationPackageImpl;
 import org.eclipse.e4.ui.model.application.ui.advanced.impl.AdvancedPackageImpl;
+import org.eclipse.e4.ui.model.application.ui.basic.MTrimBar;
 import org.eclipse.e4.ui.model.application.ui.basic.impl.BasicPackageImpl;
 import org.eclipse.e4.ui.model.application.ui.impl.UiPackageImpl;
 import org.eclipse.e4.ui.model.application.ui.menu.impl.MenuPackageImpl;
@@ -42,10 +55,12 @@ import org.eclipse.e4.ui.workbench.modeling.ModelReconciler;
 import org.eclipse.emf.common.util.TreeIterator;
 import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EStructuralFeature;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.resource.URIConverter;
 import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
 import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.xmi.XMLResource;
 import org.eclipse.osgi.service.datalocation.Location;
 import org.osgi.framework.Bundle;
 import org.w3c.dom.Document;
@@ -81,6 +96,25 @@ public class ResourceHandler implements IModelResourceHandler {
 	final private boolean saveAndRestore;
 	final private boolean clearPersistedState;
 
+	/**
+	 * Whether changes are appended to a journal instead of saving the complete model. The model
+	 * is saved in full when the journal grows larger than it.
+	 */
+	@Inject
+	@Optional
+	@Named(E4Workbench.JOURNAL_STATE)
+	private Boolean journalState;
+
+	private static final long JOURNAL_DELAY = 1000;
+	private static final long MIN_COMPACTION_SIZE = 256 * 1024;
+
+	private ModelJournal journal;
+	private Job journalJob;
+	/** whether the journal file belongs to the last saved model */
+	private boolean snapshotJournaled;
+	/** whether the elements recreated from contributions on every start are not saved */
+	private boolean skipContributedElements;
+
 	/**
 	 * Constructor.
 	 * 
@@ -171,9 +205,15 @@ public class ResourceHandler implements IModelResourceHandler {
 		}
 
 		File workbenchData = getWorkbenchSaveLocation();
+		File workbenchBinaryData = getWorkbenchBinarySaveLocation();
+		File journalData = getWorkbenchJournalLocation();
 
 		if (clearPersistedState && workbenchData.exists())
 			workbenchData.delete();
+		if (clearPersistedState && workbenchBinaryData.exists())
+			workbenchBinaryData.delete();
+		if (clearPersistedState && journalData.exists())
+			journalData.delete();
 
 		URI restoreLocation = null;
 		if (saveAndRestore)
@@ -190,14 +230,20 @@ public class ResourceHandler implements IModelResourceHandler {
 
 		resource = null;
 		if (restore && saveAndRestore) {
-			resource = loadResource(restoreLocation);
+			resource = loadSnapshot(restoreLocation, workbenchBinaryData, restoreLastModified);
 		}
+		boolean restored = resource != null;
 		if (resource == null) {
 			Resource applicationResource = loadResource(applicationDefinitionInstance);
 			MApplication theApp = (MApplication) applicationResource.getContents().get(0);
 			resource = createResourceWithApp(theApp);
 		}
 
+		// Journal the changes, including those of the model processors, from now on
+		if (saveAndRestore && journalState != null && journalState.booleanValue()) {
+			startJournal(workbenchData, journalData, restored);
+		}
+
 		// Add model items described in the model extension point
 		// This has to be done before commands are put into the context
 		MApplication appElement = (MApplication) resource.getContents().get(0);
@@ -211,8 +257,295 @@ public class ResourceHandler implements IModelResourceHandler {
 	}
 
 	public void save() throws IOException {
-		if (saveAndRestore)
-			resource.save(null);
+		if (saveAndRestore && journal != null) {
+			journalJob.cancel();
+			writeJournal();
+			journal.dispose();
+			journal = null;
+		} else if (saveAndRestore) {
+			saveSnapshot();
+		}
+	}
+
+	/**
+	 * Sets whether the elements that are recreated from contributions on every start are left out
+	 * when the model is journaled: the main menus of the windows, the trim contributed to the trim
+	 * bars and the menu, tool bar and trim contributions of the application. The snapshots the
+	 * journal belongs to leave them out as well. Used by the compatibility layer, whose auto-save
+	 * leaves out the same elements.
+	 * 
+	 * @param skip
+	 *            <code>true</code> to leave out the contributed elements
+	 */
+	public void setSkipContributedElements(boolean skip) {
+		skipContributedElements = skip;
+	}
+
+	/**
+	 * @return <code>true</code> if the changes of the model are appended to a journal, which
+	 *         makes saving copies of the model unnecessary
+	 */
+	public boolean isJournaling() {
+		return journal != null;
+	}
+
+	private void saveSnapshot() throws IOException {
+		Resource snapshot = resource;
+		if (skipContributedElements && journal != null)
+			snapshot = createCleanCopy();
+		try {
+			snapshot.save(null);
+			try {
+				saveBinaryResource(snapshot, getWorkbenchBinarySaveLocation());
+			} catch (IOException e) {
+				// the XMI is complete, the model is restored from it on the next start
+				if (logger != null) {
+					logger.warn(e, "Unable to save binary model"); //$NON-NLS-1$
+				}
+			}
+		} finally {
+			if (snapshot != resource)
+				resourceSetImpl.getResources().remove(snapshot);
+		}
+	}
+
+	/**
+	 * Copies the model without the contributed elements. The copied elements keep the ids of the
+	 * model's elements, so that the journal of the model can be replayed onto the copy.
+	 */
+	private Resource createCleanCopy() {
+		EcoreUtil.Copier copier = new EcoreUtil.Copier();
+		MApplication appCopy = (MApplication) copier.copy(resource.getContents().get(0));
+		copier.copyReferences();
+		XMLResource copy = (XMLResource) createResourceWithApp(appCopy);
+		XMLResource original = (XMLResource) resource;
+		List<EObject> excluded = new ArrayList<EObject>();
+		for (Map.Entry<EObject, EObject> entry : copier.entrySet()) {
+			EObject element = entry.getKey();
+			String id = original.getID(element);
+			if (id != null)
+				copy.setID(entry.getValue(), id);
+			if (isContributed(element))
+				excluded.add(entry.getValue());
+			for (EStructuralFeature feature : element.eClass().getEAllStructuralFeatures()) {
+				if (isContributed(element, feature))
+					entry.getValue().eUnset(feature);
+			}
+		}
+		for (EObject element : excluded) {
+			EcoreUtil.remove(element);
+		}
+		return copy;
+	}
+
+	/**
+	 * Returns whether a feature holds elements recreated from contributions on every start.
+	 */
+	private static boolean isContributed(EObject owner, EStructuralFeature feature) {
+		return feature == BasicPackageImpl.Literals.WINDOW__MAIN_MENU
+				|| feature == MenuPackageImpl.Literals.MENU_CONTRIBUTIONS__MENU_CONTRIBUTIONS
+				|| feature == MenuPackageImpl.Literals.TOOL_BAR_CONTRIBUTIONS__TOOL_BAR_CONTRIBUTIONS
+				|| feature == MenuPackageImpl.Literals.TRIM_CONTRIBUTIONS__TRIM_CONTRIBUTIONS;
+	}
+
+	/**
+	 * Returns whether an element was contributed to a trim bar, see
+	 * {@link MTrimBar#getPendingCleanup()}.
+	 */
+	private static boolean isContributed(EObject element) {
+		EObject container = element.eContainer();
+		return container instanceof MTrimBar
+				&& ((MTrimBar) container).getPendingCleanup().contains(element);
+	}
+
+	/**
+	 * Loads the last saved model, preferring the binary copy unless the XMI was modified after
+	 * it.
+	 */
+	private Resource loadSnapshot(URI restoreLocation, File binaryData, long restoreLastModified) {
+		Resource snapshot = null;
+		if (binaryData.lastModified() >= restoreLastModified) {
+			snapshot = loadBinaryResource(restoreLocation, binaryData);
+		}
+		if (snapshot == null) {
+			snapshot = loadResource(restoreLocation);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Replays the journal of the restored model and starts journaling its changes.
+	 * 
+	 * @param snapshot
+	 *            the file the model was saved to in full
+	 * @param journalData
+	 *            the journal file
+	 * @param restored
+	 *            whether the model was restored from the snapshot
+	 */
+	private void startJournal(File snapshot, File journalData, boolean restored) {
+		journal = createJournal(journalData);
+		journalJob = new Job("Workbench Journal") { //$NON-NLS-1$
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				UISynchronize sync = context.get(UISynchronize.class);
+				Runnable write = new Runnable() {
+					public void run() {
+						try {
+							if (journal != null)
+								writeJournal();
+						} catch (IOException e) {
+							if (logger != null) {
+								logger.warn(e, "Unable to write the workbench journal"); //$NON-NLS-1$
+							}
+						}
+					}
+				};
+				// the model is read on the thread changing it
+				if (sync == null) {
+					write.run();
+				} else {
+					sync.syncExec(write);
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		journalJob.setSystem(true);
+		journalJob.setPriority(Job.SHORT);
+
+		snapshotJournaled = false;
+		if (restored && journalData.exists() && journal.isJournalOf(snapshot)) {
+			long start = System.currentTimeMillis();
+			try {
+				int records = journal.replay();
+				snapshotJournaled = true;
+				if (logger != null) {
+					logger.debug("Replayed " + records + " journal records in " //$NON-NLS-1$ //$NON-NLS-2$
+							+ (System.currentTimeMillis() - start) + "ms"); //$NON-NLS-1$
+				}
+			} catch (Exception e) {
+				if (logger != null) {
+					logger.warn(e, "Unable to replay the workbench journal"); //$NON-NLS-1$
+				}
+				// the model may be partially changed, start over from the snapshot
+				resourceSetImpl.getResources().remove(resource);
+				resource = loadSnapshot(URI.createFileURI(snapshot.getAbsolutePath()),
+						getWorkbenchBinarySaveLocation(), snapshot.lastModified());
+				journal = createJournal(journalData);
+			}
+		}
+		if (restored && !snapshotJournaled) {
+			try {
+				journal.reset(snapshot);
+				snapshotJournaled = true;
+			} catch (IOException e) {
+				if (logger != null) {
+					logger.warn(e, "Unable to write the workbench journal"); //$NON-NLS-1$
+				}
+			}
+		}
+		journal.start();
+	}
+
+	private ModelJournal createJournal(File journalData) {
+		return new ModelJournal((XMLResource) resource, journalData) {
+			@Override
+			protected void changed() {
+				journalJob.schedule(JOURNAL_DELAY);
+			}
+
+			@Override
+			protected boolean isExcluded(EObject owner, EStructuralFeature feature) {
+				return skipContributedElements && isContributed(owner, feature);
+			}
+
+			@Override
+			protected boolean isExcluded(EObject element) {
+				return skipContributedElements && isContributed(element);
+			}
+		};
+	}
+
+	/**
+	 * Appends the changes made since the last record to the journal, or saves the model in full
+	 * if the journal has grown larger than the model or does not belong to the last saved model.
+	 */
+	private void writeJournal() throws IOException {
+		File snapshot = getWorkbenchSaveLocation();
+		if (!snapshotJournaled || !journal.isJournalOf(snapshot)
+				|| journal.length() > Math.max(MIN_COMPACTION_SIZE, snapshot.length())) {
+			long start = System.currentTimeMillis();
+			saveSnapshot();
+			journal.clearChanges();
+			journal.reset(snapshot);
+			snapshotJournaled = true;
+			if (logger != null) {
+				logger.debug("Compacted the workbench journal in " //$NON-NLS-1$
+						+ (System.currentTimeMillis() - start) + "ms"); //$NON-NLS-1$
+			}
+			return;
+		}
+
+		byte[] record = journal.createRecord();
+		if (record != null)
+			journal.append(record);
+	}
+
+	/**
+	 * Loads the model from its binary copy into a resource at the XMI location.
+	 * 
+	 * @param uri
+	 *            the location of the XMI
+	 * @param file
+	 *            the binary copy
+	 * @return the resource, or <code>null</code> if the binary copy cannot be read
+	 */
+	private Resource loadBinaryResource(URI uri, File file) {
+		long start = System.currentTimeMillis();
+		Resource binaryResource = resourceSetImpl.createResource(uri);
+		try {
+			InputStream stream = new FileInputStream(file);
+			try {
+				E4BinaryFormat.load(binaryResource, stream);
+			} finally {
+				stream.close();
+			}
+		} catch (Exception e) {
+			// format or model version mismatch, fall back to the XMI
+			if (logger != null) {
+				logger.warn(e, "Unable to load binary model " + file); //$NON-NLS-1$
+			}
+			resourceSetImpl.getResources().remove(binaryResource);
+			return null;
+		}
+		if (logger != null) {
+			logger.debug("Loaded binary model in " + (System.currentTimeMillis() - start) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		return binaryResource;
+	}
+
+	/**
+	 * Writes the binary copy of the model next to the XMI. The copy is written to a temporary file
+	 * first so that an interrupted save never leaves a truncated copy behind.
+	 */
+	private void saveBinaryResource(Resource snapshot, File file) throws IOException {
+		File tempFile = new File(file.getParentFile(), file.getName() + ".tmp"); //$NON-NLS-1$
+		boolean saved = false;
+		try {
+			OutputStream stream = new FileOutputStream(tempFile);
+			try {
+				E4BinaryFormat.save(snapshot, stream);
+			} finally {
+				stream.close();
+			}
+			saved = (!file.exists() || file.delete()) && tempFile.renameTo(file);
+		} finally {
+			if (!saved) {
+				tempFile.delete();
+				// never leave a stale copy that could be preferred over the XMI
+				file.delete();
+			}
+		}
 	}
 
 	/**
@@ -234,6 +567,16 @@ public class ResourceHandler implements IModelResourceHandler {
 		return workbenchData;
 	}
 
+	private File getWorkbenchBinarySaveLocation() {
+		File workbenchData = new File(getBaseLocation(), "workbench.bin"); //$NON-NLS-1$
+		return workbenchData;
+	}
+
+	private File getWorkbenchJournalLocation() {
+		File workbenchData = new File(getBaseLocation(), "workbench.journal"); //$NON-NLS-1$
+		return workbenchData;
+	}
+
 	private File getBaseLocation() {
 		File baseLocation;
 		try {
@@ -10,7 +10,9 @@
  *******************************************************************************/
 package org.eclipse.e4.ui.internal.workbench;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.e4.core.contexts.IEclipseContext;
@@ -22,18 +24,101 @@ import org.eclipse.e4.ui.model.application.ui.MUIElement;
 import org.eclipse.e4.ui.workbench.UIEvents;
 import org.eclipse.e4.ui.workbench.UIEvents.EventTags;
 import org.eclipse.e4.ui.workbench.UIEvents.EventTypes;
+import org.eclipse.emf.common.notify.Adapter;
 import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.common.notify.Notifier;
 import org.eclipse.emf.ecore.EClass;
 import org.eclipse.emf.ecore.EStructuralFeature;
 import org.eclipse.emf.ecore.util.EContentAdapter;
 
 /**
  * Transforms E4 MPart events into 3.x legacy events.
+ * <p>
+ * Bulk model edits can be wrapped in {@link #beginBatch()} / {@link #endBatch()}. While a batch is
+ * open SET events are collected instead of sent; SET events on the same element and attribute are
+ * collapsed into one at the position of the first change, carrying the first old value and the
+ * last new value (and dropped if they cancel out). The collected events are sent in order when the outermost batch
+ * ends, or before any other event so that ADD, REMOVE and MOVE events are never reordered with
+ * respect to the SET events preceding them.
+ * </p>
+ * <p>
+ * The model is not published yet while the application model is loaded and assembled, so
+ * batches only matter for bulk edits of a live model such as resetting a perspective or merging
+ * model deltas.
+ * </p>
  */
 public class UIEventPublisher extends EContentAdapter {
 
+	/**
+	 * An event collected during a batch.
+	 */
+	private static class PendingEvent {
+		final String topic;
+		final Map<String, Object> argMap;
+		boolean dropped = false;
+
+		PendingEvent(String topic, Map<String, Object> argMap) {
+			this.topic = topic;
+			this.argMap = argMap;
+		}
+	}
+
+	/**
+	 * Identifies the target of a SET event: the element, the attribute and, for the map
+	 * attributes, the map key.
+	 */
+	private static class SetKey {
+		final Object element;
+		final String attName;
+		final Object mapKey;
+
+		SetKey(Object element, String attName, Object mapKey) {
+			this.element = element;
+			this.attName = attName;
+			this.mapKey = mapKey;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = System.identityHashCode(element) * 31 + attName.hashCode();
+			return mapKey == null ? hash : hash * 31 + mapKey.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof SetKey))
+				return false;
+			SetKey other = (SetKey) obj;
+			return element == other.element && attName.equals(other.attName)
+					&& (mapKey == null ? other.mapKey == null : mapKey.equals(other.mapKey));
+		}
+	}
+
 	private IEclipseContext context;
 
+	private int batchDepth = 0;
+
+	private List<PendingEvent> pendingEvents;
+
+	private Map<SetKey, PendingEvent> pendingSets;
+
+	/**
+	 * Return the publisher observing the given model element.
+	 * 
+	 * @param element
+	 *            a model element
+	 * @return the publisher, or <code>null</code> if the element's model is not being published
+	 */
+	public static UIEventPublisher getPublisher(Object element) {
+		if (!(element instanceof Notifier))
+			return null;
+		for (Adapter adapter : ((Notifier) element).eAdapters()) {
+			if (adapter instanceof UIEventPublisher)
+				return (UIEventPublisher) adapter;
+		}
+		return null;
+	}
+
 	/**
 	 * @param e4Context
 	 */
@@ -54,9 +139,100 @@ public class UIEventPublisher extends EContentAdapter {
 		String topic = formatData(notification, argMap);
 
 		if (topic != null) {
-			IEventBroker eventManager = context.get(IEventBroker.class);
-			eventManager.send(topic, argMap);
+			if (batchDepth > 0 && EventTypes.SET.equals(argMap.get(EventTags.TYPE))) {
+				queue(topic, argMap);
+			} else {
+				if (batchDepth > 0) {
+					flush();
+				}
+				IEventBroker eventManager = context.get(IEventBroker.class);
+				eventManager.send(topic, argMap);
+			}
+		}
+	}
+
+	/**
+	 * Start collecting events instead of sending them. Batches nest, the events are sent when the
+	 * outermost batch ends.
+	 */
+	public void beginBatch() {
+		if (batchDepth++ == 0) {
+			pendingEvents = new ArrayList<PendingEvent>();
+			pendingSets = new HashMap<SetKey, PendingEvent>();
+		}
+	}
+
+	/**
+	 * End a batch started with {@link #beginBatch()}. Ending the outermost batch sends the
+	 * collected events.
+	 */
+	public void endBatch() {
+		if (batchDepth == 0)
+			throw new IllegalStateException("endBatch() called without beginBatch()"); //$NON-NLS-1$
+		if (--batchDepth > 0)
+			return;
+
+		flush();
+		pendingEvents = null;
+		pendingSets = null;
+	}
+
+	/**
+	 * Send the events collected so far.
+	 */
+	private void flush() {
+		if (pendingEvents.isEmpty())
+			return;
+		List<PendingEvent> events = pendingEvents;
+		pendingEvents = new ArrayList<PendingEvent>();
+		pendingSets = new HashMap<SetKey, PendingEvent>();
+		IEventBroker eventManager = context.get(IEventBroker.class);
+		for (PendingEvent event : events) {
+			if (!event.dropped) {
+				eventManager.send(event.topic, event.argMap);
+			}
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if events are currently being collected
+	 */
+	public boolean isBatching() {
+		return batchDepth > 0;
+	}
+
+	private void queue(String topic, Map<String, Object> argMap) {
+		Object newValue = argMap.get(EventTags.NEW_VALUE);
+		Object mapKey = newValue instanceof Map.Entry<?, ?> ? ((Map.Entry<?, ?>) newValue)
+				.getKey() : null;
+		SetKey key = new SetKey(argMap.get(EventTags.ELEMENT),
+				(String) argMap.get(EventTags.ATTNAME), mapKey);
+		PendingEvent previous = pendingSets.get(key);
+		if (previous == null) {
+			PendingEvent event = new PendingEvent(topic, argMap);
+			pendingSets.put(key, event);
+			pendingEvents.add(event);
+			return;
+		}
+
+		// collapse into the earlier event, which keeps both its position and its old value
+		Object oldValue = previous.argMap.get(EventTags.OLD_VALUE);
+		previous.argMap.clear();
+		previous.argMap.putAll(argMap);
+		if (oldValue == null) {
+			previous.argMap.remove(EventTags.OLD_VALUE);
+		} else {
+			previous.argMap.put(EventTags.OLD_VALUE, oldValue);
+		}
+		previous.dropped = isNoop(oldValue, newValue);
+	}
+
+	private boolean isNoop(Object oldValue, Object newValue) {
+		if (oldValue instanceof Map.Entry<?, ?> && newValue instanceof Map.Entry<?, ?>) {
+			oldValue = ((Map.Entry<?, ?>) oldValue).getValue();
+			newValue = ((Map.Entry<?, ?>) newValue).getValue();
 		}
+		return oldValue == null ? newValue == null : oldValue.equals(newValue);
 	}
 
 	/**
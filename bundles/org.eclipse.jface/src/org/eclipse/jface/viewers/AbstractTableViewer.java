@@ -754,6 +754,7 @@ public abstract class AbstractTableViewer extends ColumnViewer {
 			}
 		}
 		// add any remaining elements
+		ensureElementMapCapacity(children.length - min);
 		for (int i = min; i < children.length; ++i) {
 			createItem(children[i], i);
 		}
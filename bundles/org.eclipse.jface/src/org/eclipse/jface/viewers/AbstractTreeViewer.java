@@ -33,6 +33,7 @@ import org.eclipse.jface.util.Policy;
 import org.eclipse.jface.util.SafeRunnable;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.BusyIndicator;
+import org.eclipse.swt.events.DisposeEvent;
 import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.events.SelectionListener;
 import org.eclipse.swt.events.TreeEvent;
@@ -96,6 +97,14 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 	 */
 	private boolean isExpandableCheckFilters = false;
 
+	/**
+	 * Computes the children of expanded items in the background, or
+	 * <code>null</code> if children are computed synchronously.
+	 *
+	 * @see #setUseBackgroundChildren(boolean)
+	 */
+	private BackgroundChildrenUpdater backgroundChildren;
+
 	/**
 	 * Safe runnable used to update an item.
 	 */
@@ -223,6 +232,11 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 	 */
 	protected void internalAdd(Widget widget, Object parentElementOrTreePath,
 			Object[] childElements) {
+		if (backgroundChildren != null && widget instanceof Item
+				&& backgroundChildren.restart((Item) widget)) {
+			// the new children are picked up by the new computation
+			return;
+		}
 		Object parent;
 		TreePath path;
 		if (parentElementOrTreePath instanceof TreePath) {
@@ -786,6 +800,10 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 		boolean oldBusy = isBusy();
 		setBusy(true);
 		try {
+			if (backgroundChildren != null && widget instanceof Item) {
+				// the children are needed now
+				backgroundChildren.cancel((Item) widget);
+			}
 			final Item[] tis = getChildren(widget);
 			if (tis != null && tis.length > 0) {
 				Object data = tis[0].getData();
@@ -819,6 +837,7 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 						} else {
 							children = getSortedChildren(parentElement);
 						}
+						ensureElementMapCapacity(children.length);
 						for (int i = 0; i < children.length; i++) {
 							createTreeItem(widget, children[i], -1);
 						}
@@ -1485,6 +1504,9 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 	 *            the SWT tree event
 	 */
 	protected void handleTreeCollapse(TreeEvent event) {
+		if (backgroundChildren != null) {
+			backgroundChildren.cancel((Item) event.item);
+		}
 		if (event.item.getData() != null) {
 			fireTreeCollapsed(new TreeExpansionEvent(this, event.item.getData()));
 		}
@@ -1497,7 +1519,11 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 	 *            the SWT tree event
 	 */
 	protected void handleTreeExpand(TreeEvent event) {
-		createChildren(event.item);
+		if (backgroundChildren != null) {
+			backgroundChildren.schedule((Item) event.item);
+		} else {
+			createChildren(event.item);
+		}
 		if (event.item.getData() != null) {
 			fireTreeExpanded(new TreeExpansionEvent(this, event.item.getData()));
 		}
@@ -1522,6 +1548,9 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 	 * tree and handles the automatic expand feature.
 	 */
 	protected void inputChanged(Object input, Object oldInput) {
+		if (backgroundChildren != null) {
+			backgroundChildren.cancelAll();
+		}
 		preservingSelection(new Runnable() {
 			public void run() {
 	            Control tree = getControl();
@@ -1910,6 +1939,105 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 		}
 	}
 
+	/* (non-Javadoc) Method declared on StructuredViewer. */
+	boolean internalRefine(ViewerFilter[] refinedFilters, boolean updateLabels) {
+		if (backgroundChildren != null) {
+			// compute pending children with the refined filters
+			backgroundChildren.restartAll();
+		}
+		refineChildren(getControl(), getRoot(), refinedFilters, updateLabels);
+		return true;
+	}
+
+	/**
+	 * Filters the children that the widget shows with the refined filters,
+	 * removes the items of the rejected children and recurses into the
+	 * remaining ones. Children that are not shown are not looked at.
+	 *
+	 * @param widget
+	 *            the widget
+	 * @param element
+	 *            the element of the widget
+	 * @param refinedFilters
+	 *            the filters that were refined
+	 * @param updateLabels
+	 *            whether to update the labels of the remaining children
+	 */
+	private void refineChildren(Widget widget, Object element,
+			ViewerFilter[] refinedFilters, boolean updateLabels) {
+		Item[] items = getChildren(widget);
+		if (items == null || items.length == 0) {
+			return;
+		}
+		Object[] shown = new Object[items.length];
+		int count = 0;
+		for (int i = 0; i < items.length; i++) {
+			Object data = items[i].getData();
+			if (data != null) {
+				shown[count++] = data;
+			}
+		}
+		if (count == 0) {
+			// only a dummy, the children were not created yet
+			if (widget instanceof Item) {
+				updatePlus((Item) widget, element);
+			}
+			return;
+		}
+		if (count < shown.length) {
+			Object[] newShown = new Object[count];
+			System.arraycopy(shown, 0, newShown, 0, count);
+			shown = newShown;
+		}
+
+		Object parentElementOrTreePath = element;
+		if (isTreePathContentProvider() && widget instanceof Item) {
+			parentElementOrTreePath = getTreePathFromItem((Item) widget);
+		}
+		Object[] selected = shown;
+		for (int i = 0; i < refinedFilters.length; i++) {
+			selected = refinedFilters[i].filter(this, parentElementOrTreePath,
+					selected);
+		}
+		filteredOut(shown, selected);
+
+		if (selected.length < shown.length) {
+			CustomHashtable remaining = newHashtable(selected.length * 2 + 1);
+			for (int i = 0; i < selected.length; i++) {
+				remaining.put(selected[i], selected[i]);
+			}
+			for (int i = 0; i < items.length; i++) {
+				Object data = items[i].getData();
+				if (data != null && !remaining.containsKey(data)) {
+					disassociate(items[i]);
+					items[i].dispose();
+				}
+			}
+			if (selected.length == 0) {
+				if (widget instanceof Item) {
+					updatePlus((Item) widget, element);
+				}
+				return;
+			}
+			items = getChildren(widget);
+		}
+
+		for (int i = 0; i < items.length; i++) {
+			Item item = items[i];
+			Object data = item.getData();
+			if (data == null) {
+				continue;
+			}
+			if (updateLabels) {
+				updateItem(item, data);
+			}
+			if (!getExpanded(item) && optionallyPruneChildren(item, data)) {
+				continue;
+			}
+			refineChildren(item, data, refinedFilters, updateLabels);
+		}
+	}
+
 	/**
 	 * Update the structure and recurse. Items are updated in updateChildren, as
 	 * needed.
@@ -2224,6 +2352,9 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 				internalRemove(elementsOrTreePaths);
 			}
 		});
+		if (backgroundChildren != null) {
+			backgroundChildren.removeChildren(elementsOrTreePaths);
+		}
 	}
 
 	/**
@@ -2256,6 +2387,15 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 				internalRemove(parent, elements);
 			}
 		});
+		if (backgroundChildren != null) {
+			Widget[] parentItems = findItems(parent);
+			for (int i = 0; i < parentItems.length; i++) {
+				if (parentItems[i] instanceof Item) {
+					backgroundChildren.removeChildren((Item) parentItems[i],
+							elements);
+				}
+			}
+		}
 	}
 
 	/**
@@ -2601,6 +2741,10 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 	 */
 	private void updateChildren(Widget widget, Object parent,
 			Object[] elementChildren, boolean updateLabels) {
+		if (backgroundChildren != null && widget instanceof Item) {
+			// the refresh computes the children itself
+			backgroundChildren.cancel((Item) widget);
+		}
 		// optimization! prune collapsed subtrees
 		if (widget instanceof Item) {
 			Item ti = (Item) widget;
@@ -2769,6 +2913,7 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 
 		// add any remaining elements
 		if (min < elementChildren.length) {
+			ensureElementMapCapacity(elementChildren.length - min);
 			for (int i = min; i < elementChildren.length; ++i) {
 				createTreeItem(widget, elementChildren[i], -1);
 			}
@@ -2999,7 +3144,7 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 		return (TreePath[]) result.toArray(new TreePath[items.size()]);
 	}
 
-	private boolean isTreePathContentProvider() {
+	boolean isTreePathContentProvider() {
 		return getContentProvider() instanceof ITreePathContentProvider;
 	}
 
@@ -3190,4 +3335,67 @@ public abstract class AbstractTreeViewer extends ColumnViewer {
 		}
 	}
 
+	/**
+	 * Sets whether the children of an item that the user expands are computed
+	 * in the background. When this is on, the expanded item shows a pending
+	 * item while a background thread gets its children from the content
+	 * provider, filters and sorts them. The items for the children are then
+	 * created in batches. Collapsing or refreshing the item, or changing the
+	 * input, cancels the computation.
+	 * <p>
+	 * Only expansion by the user is done in the background. Methods like
+	 * {@link #expandToLevel(Object, int)} or {@link #reveal(Object)} still
+	 * create the children they need synchronously. This setting has no effect
+	 * for lazy content providers.
+	 * </p>
+	 * <p>
+	 * The content provider, the filters and the comparator, including the
+	 * label provider it may use, must support being called from a background
+	 * thread. The default is <code>false</code>.
+	 * </p>
+	 *
+	 * @param useBackgroundChildren
+	 *            <code>true</code> to compute the children of expanded items
+	 *            in the background, <code>false</code> to compute them in the
+	 *            UI thread
+	 * @since 3.9
+	 */
+	public void setUseBackgroundChildren(boolean useBackgroundChildren) {
+		if (useBackgroundChildren == (backgroundChildren != null)) {
+			return;
+		}
+		if (useBackgroundChildren) {
+			backgroundChildren = new BackgroundChildrenUpdater(this);
+		} else {
+			Item[] pending = backgroundChildren.cancelPending();
+			backgroundChildren = null;
+			for (int i = 0; i < pending.length; i++) {
+				if (!pending[i].isDisposed()) {
+					createChildren(pending[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the children of items that the user expands are computed
+	 * in the background.
+	 *
+	 * @return <code>true</code> if the children are computed in the
+	 *         background
+	 * @see #setUseBackgroundChildren(boolean)
+	 * @since 3.9
+	 */
+	public boolean getUseBackgroundChildren() {
+		return backgroundChildren != null;
+	}
+
+	/* (non-Javadoc) Method declared on StructuredViewer. */
+	protected void handleDispose(DisposeEvent event) {
+		if (backgroundChildren != null) {
+			backgroundChildren.cancelAll();
+		}
+		super.handleDispose(event);
+	}
+
 }
@@ -0,0 +1,524 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jface.viewers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.jface.resource.JFaceResources;
+import org.eclipse.jface.util.Policy;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.SWTException;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Item;
+
+/**
+ * Computes the children of expanded items of an {@link AbstractTreeViewer} in
+ * the background. A single background thread gets the children from the
+ * content provider, filters and sorts them, one item at a time. The items for
+ * the children are then created on the UI thread in batches, so that the UI
+ * stays responsive for items with many children.
+ * <p>
+ * While the children are computed, the dummy item of the expanded item shows
+ * a pending message. Cancelling a computation that has created some of the
+ * items disposes them and puts back the dummy item, so that the next
+ * expansion computes the children again. Children that are removed from the
+ * viewer while they are computed are left out when the items are created.
+ * </p>
+ * <p>
+ * Except for the background thread, all methods must be called from the UI
+ * thread.
+ * </p>
+ */
+/* package */final class BackgroundChildrenUpdater {
+
+	/**
+	 * The number of items created by one runnable on the UI thread.
+	 */
+	static final int BATCH_SIZE = 200;
+
+	private static final String PENDING = JFaceResources.getString("Pending"); //$NON-NLS-1$
+
+	/**
+	 * The children of one item. The request is created on the UI thread,
+	 * computed in the background and then applied on the UI thread.
+	 */
+	private final class Request implements Runnable {
+		final Item item;
+
+		final Display display;
+
+		final Object parentElementOrTreePath;
+
+		final IContentProvider contentProvider;
+
+		final ViewerFilter[] filters;
+
+		final ViewerComparator comparator;
+
+		final TreePath sorterPath;
+
+		volatile boolean canceled;
+
+		/**
+		 * the children from the content provider, set by the background
+		 * thread
+		 */
+		Object[] rawChildren;
+
+		/**
+		 * the filtered and sorted children, set by the background thread
+		 */
+		Object[] children;
+
+		/**
+		 * set by the background thread if the computation failed
+		 */
+		RuntimeException exception;
+
+		/**
+		 * the number of children that have items
+		 */
+		int applied;
+
+		/**
+		 * the elements removed from the viewer before the first batch, left
+		 * out of the children when it is applied
+		 */
+		List removed;
+
+		Request(Item item) {
+			this.item = item;
+			this.display = item.getDisplay();
+			if (viewer.isTreePathContentProvider()) {
+				parentElementOrTreePath = viewer.getTreePathFromItem(item);
+			} else {
+				parentElementOrTreePath = item.getData();
+			}
+			// the viewer may change while the children are computed
+			contentProvider = viewer.getContentProvider();
+			filters = viewer.getFilters();
+			comparator = viewer.getComparator();
+			if (comparator instanceof TreePathViewerSorter) {
+				sorterPath = parentElementOrTreePath instanceof TreePath ? (TreePath) parentElementOrTreePath
+						: viewer.getTreePathFromItem(item);
+			} else {
+				sorterPath = null;
+			}
+		}
+
+		/*
+		 * Called in the background thread. Follows
+		 * AbstractTreeViewer#getSortedChildren(Object), without touching
+		 * widgets or the busy flag of the viewer.
+		 */
+		void compute() {
+			try {
+				Object[] result = null;
+				if (contentProvider instanceof ITreePathContentProvider) {
+					TreePath path = parentElementOrTreePath instanceof TreePath ? (TreePath) parentElementOrTreePath
+							: new TreePath(new Object[] { parentElementOrTreePath });
+					result = ((ITreePathContentProvider) contentProvider)
+							.getChildren(path);
+				} else if (contentProvider instanceof ITreeContentProvider) {
+					Object parent = parentElementOrTreePath instanceof TreePath ? ((TreePath) parentElementOrTreePath)
+							.getLastSegment()
+							: parentElementOrTreePath;
+					result = ((ITreeContentProvider) contentProvider)
+							.getChildren(parent);
+				}
+				if (result == null) {
+					result = new Object[0];
+				}
+				for (int i = 0; i < result.length; i++) {
+					Assert.isNotNull(result[i]);
+				}
+				rawChildren = result;
+				for (int i = 0; i < filters.length && !canceled; i++) {
+					result = filters[i].filter(viewer, parentElementOrTreePath,
+							result);
+				}
+				if (comparator != null && !canceled) {
+					// be sure we're not modifying the original array from the
+					// model
+					if (result == rawChildren) {
+						result = (Object[]) result.clone();
+					}
+					if (comparator instanceof TreePathViewerSorter) {
+						((TreePathViewerSorter) comparator).sort(viewer,
+								sorterPath, result);
+					} else {
+						comparator.sort(viewer, result);
+					}
+				}
+				children = result;
+			} catch (RuntimeException e) {
+				exception = e;
+			}
+		}
+
+		/*
+		 * Called in the UI thread when elements were removed from the viewer.
+		 * The children may still be computed, so elements removed before the
+		 * first batch are left out when it is applied.
+		 */
+		void removeChildren(Object[] elements) {
+			if (applied > 0) {
+				children = without(children, applied, elements);
+			} else {
+				if (removed == null) {
+					removed = new ArrayList();
+				}
+				for (int i = 0; i < elements.length; i++) {
+					removed.add(elements[i]);
+				}
+			}
+		}
+
+		/*
+		 * Called in the UI thread, once for every batch.
+		 */
+		public void run() {
+			if (canceled) {
+				return;
+			}
+			if (item.isDisposed()) {
+				requests.remove(item);
+				return;
+			}
+			if (exception != null) {
+				requests.remove(item);
+				resetPlaceholder(item);
+				Policy.logException(exception);
+				return;
+			}
+			boolean oldBusy = viewer.isBusy();
+			viewer.setBusy(true);
+			try {
+				if (applied == 0) {
+					Item[] items = viewer.getChildren(item);
+					for (int i = 0; i < items.length; i++) {
+						if (items[i].getData() != null) {
+							viewer.disassociate(items[i]);
+						}
+						items[i].dispose();
+					}
+					viewer.filteredOut(rawChildren, children);
+					if (removed != null) {
+						children = without(children, 0, removed.toArray());
+						removed = null;
+					}
+					viewer.ensureElementMapCapacity(children.length);
+				}
+				int end = Math.min(children.length, applied + BATCH_SIZE);
+				for (int i = applied; i < end; i++) {
+					viewer.createTreeItem(item, children[i], -1);
+				}
+				applied = end;
+			} finally {
+				viewer.setBusy(oldBusy);
+			}
+			if (applied < children.length) {
+				display.asyncExec(this);
+			} else {
+				requests.remove(item);
+			}
+		}
+	}
+
+	private final AbstractTreeViewer viewer;
+
+	/**
+	 * maps an item to the request for its children
+	 */
+	private final Map requests = new HashMap();
+
+	/**
+	 * Lock for the queue and the thread flag.
+	 */
+	private final Object lock = new Object();
+
+	/**
+	 * the requests to compute, oldest first
+	 */
+	private final LinkedList queue = new LinkedList();
+
+	private boolean threadStarted = false;
+
+	/**
+	 * Creates an updater for the viewer.
+	 *
+	 * @param viewer
+	 *            the viewer
+	 */
+	BackgroundChildrenUpdater(AbstractTreeViewer viewer) {
+		this.viewer = viewer;
+	}
+
+	/**
+	 * Starts computing the children of the item, unless they are already
+	 * there or being computed.
+	 *
+	 * @param item
+	 *            the expanded item
+	 */
+	void schedule(Item item) {
+		if (item.getData() == null || requests.containsKey(item)) {
+			return;
+		}
+		Item[] items = viewer.getChildren(item);
+		if (items.length > 0 && items[0].getData() != null) {
+			return; // children already there!
+		}
+		Item placeholder;
+		if (items.length == 0) {
+			placeholder = viewer.newItem(item, SWT.NULL, -1);
+		} else {
+			placeholder = items[0];
+			for (int i = 1; i < items.length; i++) {
+				items[i].dispose();
+			}
+		}
+		placeholder.setText(PENDING);
+
+		Request request = new Request(item);
+		requests.put(item, request);
+		synchronized (lock) {
+			queue.add(request);
+			if (!threadStarted) {
+				threadStarted = true;
+				Thread thread = new Thread("Tree Viewer Children") { //$NON-NLS-1$
+					public void run() {
+						computeRequests();
+					}
+				};
+				thread.setDaemon(true);
+				thread.setPriority(Thread.NORM_PRIORITY - 1);
+				thread.start();
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the children of the item are being computed.
+	 *
+	 * @param item
+	 *            the item
+	 * @return whether there is a request for the item
+	 */
+	boolean isPending(Item item) {
+		return requests.containsKey(item);
+	}
+
+	/**
+	 * Cancels computing the children of the item. Items that were already
+	 * created for the children are removed again.
+	 *
+	 * @param item
+	 *            the item
+	 * @return whether there was a request for the item
+	 */
+	boolean cancel(Item item) {
+		Request request = (Request) requests.remove(item);
+		if (request == null) {
+			return false;
+		}
+		request.canceled = true;
+		if (item.isDisposed()) {
+			return true;
+		}
+		if (request.applied > 0) {
+			Item[] items = viewer.getChildren(item);
+			for (int i = 0; i < items.length; i++) {
+				if (items[i].getData() != null) {
+					viewer.disassociate(items[i]);
+				}
+				items[i].dispose();
+			}
+			viewer.newItem(item, SWT.NULL, -1);
+		} else {
+			resetPlaceholder(item);
+		}
+		return true;
+	}
+
+	/**
+	 * Computes the children of the item again, if they are being computed.
+	 * Used when the children change while they are computed.
+	 *
+	 * @param item
+	 *            the item
+	 * @return whether the children of the item are being computed
+	 */
+	boolean restart(Item item) {
+		if (!cancel(item)) {
+			return false;
+		}
+		schedule(item);
+		return true;
+	}
+
+	/**
+	 * Leaves the elements out of the children of the item, if they are being
+	 * computed.
+	 *
+	 * @param item
+	 *            the parent item of the removed elements
+	 * @param elements
+	 *            the removed elements
+	 */
+	void removeChildren(Item item, Object[] elements) {
+		Request request = (Request) requests.get(item);
+		if (request != null) {
+			request.removeChildren(elements);
+		}
+	}
+
+	/**
+	 * Leaves the elements out of all children that are being computed. An
+	 * element path only affects the children of its parent path.
+	 *
+	 * @param elementsOrTreePaths
+	 *            the removed elements or element paths
+	 */
+	void removeChildren(Object[] elementsOrTreePaths) {
+		for (Iterator i = requests.values().iterator(); i.hasNext();) {
+			Request request = (Request) i.next();
+			TreePath itemPath = null;
+			List elements = new ArrayList(elementsOrTreePaths.length);
+			for (int j = 0; j < elementsOrTreePaths.length; j++) {
+				Object element = elementsOrTreePaths[j];
+				if (element instanceof TreePath) {
+					TreePath path = (TreePath) element;
+					if (path.getSegmentCount() == 0) {
+						continue;
+					}
+					if (itemPath == null) {
+						itemPath = viewer.getTreePathFromItem(request.item);
+					}
+					if (path.getParentPath().equals(itemPath,
+							viewer.getComparer())) {
+						elements.add(path.getLastSegment());
+					}
+				} else {
+					elements.add(element);
+				}
+			}
+			if (!elements.isEmpty()) {
+				request.removeChildren(elements.toArray());
+			}
+		}
+	}
+
+	/**
+	 * Returns the children without the elements, looking only at the children
+	 * from the given index.
+	 */
+	private Object[] without(Object[] children, int from, Object[] elements) {
+		CustomHashtable toRemove = new CustomHashtable(viewer.getComparer());
+		for (int i = 0; i < elements.length; i++) {
+			toRemove.put(elements[i], elements[i]);
+		}
+		List result = null;
+		for (int i = from; i < children.length; i++) {
+			if (toRemove.containsKey(children[i])) {
+				if (result == null) {
+					result = new ArrayList(children.length);
+					for (int j = 0; j < i; j++) {
+						result.add(children[j]);
+					}
+				}
+			} else if (result != null) {
+				result.add(children[i]);
+			}
+		}
+		return result == null ? children : result.toArray();
+	}
+
+	/**
+	 * Computes the children of all items again.
+	 */
+	void restartAll() {
+		Item[] items = cancelPending();
+		for (int i = 0; i < items.length; i++) {
+			if (!items[i].isDisposed()) {
+				schedule(items[i]);
+			}
+		}
+	}
+
+	/**
+	 * Cancels all requests, removing the items already created for them.
+	 *
+	 * @return the items whose children were being computed
+	 */
+	Item[] cancelPending() {
+		Item[] items = (Item[]) requests.keySet().toArray(
+				new Item[requests.size()]);
+		for (int i = 0; i < items.length; i++) {
+			cancel(items[i]);
+		}
+		return items;
+	}
+
+	/**
+	 * Cancels all requests without touching their items, for when the items
+	 * are about to be removed.
+	 */
+	void cancelAll() {
+		for (Iterator i = requests.values().iterator(); i.hasNext();) {
+			((Request) i.next()).canceled = true;
+		}
+		requests.clear();
+		synchronized (lock) {
+			queue.clear();
+		}
+	}
+
+	private void resetPlaceholder(Item item) {
+		Item[] items = viewer.getChildren(item);
+		if (items.length > 0 && items[0].getData() == null) {
+			items[0].setText(""); //$NON-NLS-1$
+		}
+	}
+
+	/*
+	 * The loop of the background thread. The thread ends when there are no
+	 * more requests.
+	 */
+	private void computeRequests() {
+		while (true) {
+			Request request;
+			synchronized (lock) {
+				if (queue.isEmpty()) {
+					threadStarted = false;
+					return;
+				}
+				request = (Request) queue.removeFirst();
+			}
+			if (request.canceled) {
+				continue;
+			}
+			request.compute();
+			try {
+				request.display.asyncExec(request);
+			} catch (SWTException e) {
+				// the display was disposed
+			}
+		}
+	}
+}
@@ -0,0 +1,370 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jface.viewers;
+
+import java.util.Arrays;
+
+import org.eclipse.swt.widgets.Widget;
+
+/**
+ * ElementMap maps the elements of a structured viewer to their widgets. An
+ * element maps to a <code>Widget</code>, or to a <code>Widget[]</code> if it
+ * is shown by more than one widget.
+ * <p>
+ * The map uses open addressing with linear probing over parallel arrays, and
+ * keeps the hash code of each element, so that growing the map does not call
+ * the element comparer again and most mismatches are found without calling
+ * <code>equals</code>. The map is not synchronized; like the viewer it must be
+ * accessed from the UI thread.
+ * </p>
+ */
+/* package */final class ElementMap {
+
+	private static final int MINIMUM_CAPACITY = 13;
+
+	private static final Widget[] NO_WIDGETS = new Widget[0];
+
+	private final IElementComparer comparer;
+
+	private Object[] elements;
+
+	/**
+	 * the widget or widgets of the element at the same index
+	 */
+	private Object[] widgets;
+
+	/**
+	 * the hash code of the element at the same index
+	 */
+	private int[] hashes;
+
+	private int size;
+
+	private int threshold;
+
+	/**
+	 * Creates an element map for the given number of elements.
+	 *
+	 * @param capacity
+	 *            the expected number of elements
+	 * @param comparer
+	 *            the comparer for the elements, or <code>null</code>
+	 */
+	ElementMap(int capacity, IElementComparer comparer) {
+		this.comparer = comparer;
+		allocate(tableSize(capacity));
+	}
+
+	/**
+	 * Creates an element map with the mappings of the given map.
+	 *
+	 * @param map
+	 *            the map to copy
+	 * @param comparer
+	 *            the comparer for the elements, or <code>null</code>
+	 */
+	ElementMap(ElementMap map, IElementComparer comparer) {
+		this(map.size, comparer);
+		for (int i = 0; i < map.elements.length; i++) {
+			Object element = map.elements[i];
+			if (element != null) {
+				int hash = hashCode(element);
+				int index = indexOf(element, hash);
+				if (index < 0) {
+					insert(element, hash, map.widgets[i]);
+				} else {
+					// elements equal for the new comparer, the last one wins
+					elements[index] = element;
+					widgets[index] = map.widgets[i];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the widget or widgets of the element.
+	 *
+	 * @param element
+	 *            the element
+	 * @return the <code>Widget</code> or <code>Widget[]</code>, or
+	 *         <code>null</code> if the element is not mapped
+	 */
+	Object get(Object element) {
+		int index = indexOf(element, hashCode(element));
+		return index < 0 ? null : widgets[index];
+	}
+
+	/**
+	 * Returns the widgets of the element.
+	 *
+	 * @param element
+	 *            the element
+	 * @return the widgets, empty if the element is not mapped
+	 */
+	Widget[] getWidgets(Object element) {
+		Object widgetOrWidgets = get(element);
+		if (widgetOrWidgets == null) {
+			return NO_WIDGETS;
+		} else if (widgetOrWidgets instanceof Widget) {
+			return new Widget[] { (Widget) widgetOrWidgets };
+		}
+		return (Widget[]) widgetOrWidgets;
+	}
+
+	/**
+	 * Adds the widget to the widgets of the element. The element replaces an
+	 * equal element that is already mapped, so that the map does not hang on
+	 * to old elements (see bug 30607).
+	 *
+	 * @param element
+	 *            the element
+	 * @param item
+	 *            the widget
+	 */
+	void map(Object element, Widget item) {
+		int hash = hashCode(element);
+		int index = indexOf(element, hash);
+		if (index < 0) {
+			if (size >= threshold) {
+				resize(elements.length * 2 + 1);
+				insert(element, hash, item);
+			} else {
+				// the free slot that ended the lookup
+				index = -index - 1;
+				elements[index] = element;
+				widgets[index] = item;
+				hashes[index] = hash;
+				size++;
+			}
+			return;
+		}
+		elements[index] = element;
+		Object widgetOrWidgets = widgets[index];
+		if (widgetOrWidgets instanceof Widget) {
+			if (widgetOrWidgets != item) {
+				widgets[index] = new Widget[] { (Widget) widgetOrWidgets, item };
+			}
+		} else {
+			Widget[] items = (Widget[]) widgetOrWidgets;
+			for (int i = 0; i < items.length; i++) {
+				if (items[i] == item) {
+					return;
+				}
+			}
+			Widget[] newItems = new Widget[items.length + 1];
+			System.arraycopy(items, 0, newItems, 0, items.length);
+			newItems[items.length] = item;
+			widgets[index] = newItems;
+		}
+	}
+
+	/**
+	 * Removes the element with all its widgets.
+	 *
+	 * @param element
+	 *            the element
+	 */
+	void unmap(Object element) {
+		int index = indexOf(element, hashCode(element));
+		if (index >= 0) {
+			delete(index);
+		}
+	}
+
+	/**
+	 * Removes the widget from the widgets of the element. Does nothing if the
+	 * element does not map to the widget.
+	 *
+	 * @param element
+	 *            the element
+	 * @param item
+	 *            the widget
+	 */
+	void unmap(Object element, Widget item) {
+		int index = indexOf(element, hashCode(element));
+		if (index < 0) {
+			return;
+		}
+		Object widgetOrWidgets = widgets[index];
+		if (widgetOrWidgets instanceof Widget) {
+			if (widgetOrWidgets == item) {
+				delete(index);
+			}
+			return;
+		}
+		Widget[] items = (Widget[]) widgetOrWidgets;
+		int indexOfItem = -1;
+		for (int i = 0; i < items.length; i++) {
+			if (items[i] == item) {
+				indexOfItem = i;
+				break;
+			}
+		}
+		if (indexOfItem == -1) {
+			return;
+		}
+		if (items.length == 1) {
+			delete(index);
+		} else if (items.length == 2) {
+			// back to the single widget
+			widgets[index] = items[1 - indexOfItem];
+		} else {
+			Widget[] newItems = new Widget[items.length - 1];
+			System.arraycopy(items, 0, newItems, 0, indexOfItem);
+			System.arraycopy(items, indexOfItem + 1, newItems, indexOfItem,
+					items.length - indexOfItem - 1);
+			widgets[index] = newItems;
+		}
+	}
+
+	/**
+	 * Makes room for the given number of elements, so that a refresh mapping
+	 * many elements does not grow the map step by step.
+	 *
+	 * @param count
+	 *            the number of elements about to be mapped
+	 */
+	void ensureCapacity(int count) {
+		int needed = size + count;
+		if (needed > threshold) {
+			resize(tableSize(needed));
+		}
+	}
+
+	/**
+	 * Removes all elements. The map keeps the capacity for as many elements as
+	 * it held, since a viewer that unmaps all elements usually maps as many
+	 * again, but drops a much larger capacity left from an earlier peak.
+	 */
+	void clear() {
+		int length = tableSize(size);
+		if (elements.length > 4 * length) {
+			allocate(length);
+		} else if (size > 0) {
+			Arrays.fill(elements, null);
+			Arrays.fill(widgets, null);
+		}
+		size = 0;
+	}
+
+	/**
+	 * @return the number of mapped elements
+	 */
+	int size() {
+		return size;
+	}
+
+	private int hashCode(Object element) {
+		int hash = comparer == null ? element.hashCode() : comparer
+				.hashCode(element);
+		// mix the bits, since linear probing clusters on consecutive hash
+		// codes such as those of similar strings
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		return (hash ^ (hash >>> 16)) & 0x7FFFFFFF;
+	}
+
+	private boolean equals(Object a, Object b) {
+		return comparer == null ? a.equals(b) : comparer.equals(a, b);
+	}
+
+	/*
+	 * Returns the index of the element, or -(index + 1) of the free slot where
+	 * the element would be inserted.
+	 */
+	private int indexOf(Object element, int hash) {
+		int length = elements.length;
+		for (int index = hash % length;; index = next(index, length)) {
+			Object other = elements[index];
+			if (other == null) {
+				return -index - 1;
+			}
+			if (hashes[index] == hash && (other == element || equals(element, other))) {
+				return index;
+			}
+		}
+	}
+
+	private void insert(Object element, int hash, Object widgetOrWidgets) {
+		int length = elements.length;
+		int index = hash % length;
+		while (elements[index] != null) {
+			index = next(index, length);
+		}
+		elements[index] = element;
+		widgets[index] = widgetOrWidgets;
+		hashes[index] = hash;
+		size++;
+	}
+
+	/*
+	 * Removes the entry at the index and moves up the entries of the probe
+	 * sequence behind it, so that lookups need no deletion markers.
+	 */
+	private void delete(int index) {
+		int length = elements.length;
+		int hole = index;
+		for (int next = next(hole, length); elements[next] != null; next = next(next, length)) {
+			int home = hashes[next] % length;
+			// move the entry if its home slot is not between the hole and it
+			if (distance(home, next, length) >= distance(hole, next, length)) {
+				elements[hole] = elements[next];
+				widgets[hole] = widgets[next];
+				hashes[hole] = hashes[next];
+				hole = next;
+			}
+		}
+		elements[hole] = null;
+		widgets[hole] = null;
+		size--;
+		// shrink once most elements are gone, leaving room to grow again
+		int shrunk = tableSize(size * 2);
+		if (elements.length > 4 * shrunk) {
+			resize(shrunk);
+		}
+	}
+
+	private void resize(int length) {
+		Object[] oldElements = elements;
+		Object[] oldWidgets = widgets;
+		int[] oldHashes = hashes;
+		allocate(length);
+		size = 0;
+		for (int i = 0; i < oldElements.length; i++) {
+			if (oldElements[i] != null) {
+				insert(oldElements[i], oldHashes[i], oldWidgets[i]);
+			}
+		}
+	}
+
+	private void allocate(int length) {
+		elements = new Object[length];
+		widgets = new Object[length];
+		hashes = new int[length];
+		// keep a quarter of the table free, so that probe sequences stay short
+		threshold = length - length / 4 - 1;
+	}
+
+	private static int tableSize(int capacity) {
+		return Math.max(MINIMUM_CAPACITY, capacity + capacity / 3 + 2);
+	}
+
+	private static int next(int index, int length) {
+		return ++index == length ? 0 : index;
+	}
+
+	private static int distance(int from, int to, int length) {
+		return to >= from ? to - from : to + length - from;
+	}
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jface.viewers;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * SortKeyCache keeps the collation keys of the labels of the elements of a
+ * structured viewer, so that sorting the elements again does not collate
+ * labels that did not change. A key is used only while the label of its
+ * element is the same, so a stale key is never used for sorting. The viewer
+ * removes the keys of updated elements and clears the cache when its label
+ * provider changes.
+ * <p>
+ * The elements are weakly referenced, so that the keys of elements that are
+ * no longer in the model are dropped. Since a weak map compares elements with
+ * <code>equals</code>, viewers with an {@link IElementComparer} do not use
+ * the cache.
+ * </p>
+ * <p>
+ * The cache is synchronized, since viewers may sort children in the
+ * background.
+ * </p>
+ */
+/* package */final class SortKeyCache {
+
+	private static final class Entry {
+		final String label;
+
+		final CollationKey key;
+
+		Entry(String label, CollationKey key) {
+			this.label = label;
+			this.key = key;
+		}
+	}
+
+	private final ViewerComparator viewerComparator;
+
+	private final Collator collator;
+
+	/**
+	 * maps an element to the entry of its label
+	 */
+	private final Map entries = new WeakHashMap();
+
+	/**
+	 * Creates a cache for the keys of the given comparator.
+	 *
+	 * @param viewerComparator
+	 *            the comparator sorting the elements
+	 * @param collator
+	 *            the collator creating the keys
+	 */
+	SortKeyCache(ViewerComparator viewerComparator, Collator collator) {
+		this.viewerComparator = viewerComparator;
+		this.collator = collator;
+	}
+
+	/**
+	 * Returns whether the cache holds the keys of the given comparator and
+	 * collator.
+	 *
+	 * @param viewerComparator
+	 *            the comparator sorting the elements
+	 * @param collator
+	 *            the collator creating the keys
+	 * @return whether the keys in the cache can be used
+	 */
+	boolean isFor(ViewerComparator viewerComparator, Collator collator) {
+		return this.viewerComparator == viewerComparator
+				&& this.collator == collator;
+	}
+
+	/**
+	 * Returns the collation key of the label of the element.
+	 *
+	 * @param element
+	 *            the element
+	 * @param label
+	 *            the current label of the element
+	 * @return the collation key of the label
+	 */
+	synchronized CollationKey getKey(Object element, String label) {
+		Entry entry = (Entry) entries.get(element);
+		if (entry == null || !entry.label.equals(label)) {
+			entry = new Entry(label, collator.getCollationKey(label));
+			entries.put(element, entry);
+		}
+		return entry.key;
+	}
+
+	/**
+	 * Removes the key of the element.
+	 *
+	 * @param element
+	 *            the element
+	 */
+	synchronized void remove(Object element) {
+		entries.remove(element);
+	}
+
+	/**
+	 * Removes all keys.
+	 */
+	synchronized void clear() {
+		entries.clear();
+	}
+}
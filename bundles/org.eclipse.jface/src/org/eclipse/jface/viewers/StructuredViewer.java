@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,7 @@
  *******************************************************************************/
 package org.eclipse.jface.viewers;
 
+import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -63,7 +64,7 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	 * <code>Object</code>, value type: <code>Widget</code>, or <code>Widget[]</code>).
 	 * <code>null</code> means that the element map is disabled.
 	 */
-	private CustomHashtable elementMap;
+	private ElementMap elementMap;
 
 	/**
 	 * The comparer to use for comparing elements, or <code>null</code> to use
@@ -145,6 +146,31 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	 * Calls when associate() and disassociate() are called
 	 */
 	private StructuredViewerInternals.AssociateListener associateListener;
+
+	/**
+	 * The collation keys of the labels of the elements, or <code>null</code>
+	 * if the viewer was not sorted by collation keys yet.
+	 * 
+	 * @see ViewerComparator#useSortKeys()
+	 */
+	private SortKeyCache sortKeyCache;
+
+	/**
+	 * The filters at the last refresh of the root, or <code>null</code>.
+	 * 
+	 * @see ViewerFilter#stateChanged(boolean)
+	 */
+	private ViewerFilter[] lastFilters;
+
+	/**
+	 * The states of the filters at the last refresh of the root.
+	 */
+	private int[] lastFilterStates;
+
+	/**
+	 * The comparator at the last refresh of the root.
+	 */
+	private ViewerComparator lastComparator;
 	
 	/**
 	 * Empty array of widgets.
@@ -813,14 +839,7 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 		}
 		// if we have an element map use it, otherwise search for the item.
 		if (usingElementMap()) {
-			Object widgetOrWidgets = elementMap.get(element);
-			if (widgetOrWidgets==null) {
-				return NO_WIDGETS;
-			} else if (widgetOrWidgets instanceof Widget) {
-				return new Widget[] {(Widget) widgetOrWidgets};
-			} else {
-				return (Widget[])widgetOrWidgets;
-			}
+			return elementMap.getWidgets(element);
 		}
 		result = doFindItem(element);
 		return result == null ? NO_WIDGETS : new Widget[] { result };
@@ -1190,6 +1209,7 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 		if (elements != null) {
 			update(elements, null);
 		} else {
+			clearSortKeys();
 			super.handleLabelProviderChanged(event);
 		}
 	}
@@ -1313,25 +1333,68 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	 */
 	protected void mapElement(Object element, Widget item) {
 		if (elementMap != null) {
-			Object widgetOrWidgets = elementMap.get(element);
-			if (widgetOrWidgets == null) {
-				elementMap.put(element, item);
-			} else if (widgetOrWidgets instanceof Widget) {
-				if (widgetOrWidgets != item) {
-					elementMap.put(element, new Widget[] {
-							(Widget) widgetOrWidgets, item });
-				}
-			} else {
-				Widget[] widgets = (Widget[]) widgetOrWidgets;
-				int indexOfItem = Arrays.asList(widgets).indexOf(item);
-				if (indexOfItem == -1) {
-					int length = widgets.length;
-					System.arraycopy(widgets, 0,
-							widgets = new Widget[length + 1], 0, length);
-					widgets[length] = item;
-					elementMap.put(element, widgets);
-				}
-			}
+			elementMap.map(element, item);
+		}
+	}
+
+	/**
+	 * Makes room in the element map (if enabled) for the given number of
+	 * elements, before a refresh maps them one by one.
+	 * 
+	 * @param count
+	 *            the number of elements about to be mapped
+	 */
+	void ensureElementMapCapacity(int count) {
+		if (elementMap != null) {
+			elementMap.ensureCapacity(count);
+		}
+	}
+
+	/**
+	 * Returns the cache for the collation keys of the labels of the elements,
+	 * for sorting them with the given comparator and collator.
+	 * 
+	 * @param viewerComparator
+	 *            the comparator sorting the elements
+	 * @param collator
+	 *            the collator comparing the labels
+	 * @return the cache, or <code>null</code> if the viewer does not cache
+	 *         the keys since elements are compared with a comparer
+	 */
+	SortKeyCache getSortKeyCache(ViewerComparator viewerComparator,
+			Collator collator) {
+		if (comparer != null) {
+			return null;
+		}
+		SortKeyCache cache = sortKeyCache;
+		if (cache == null || !cache.isFor(viewerComparator, collator)) {
+			cache = new SortKeyCache(viewerComparator, collator);
+			sortKeyCache = cache;
+		}
+		return cache;
+	}
+
+	private void clearSortKeys() {
+		SortKeyCache cache = sortKeyCache;
+		if (cache != null) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Notifies an AssociateListener of the elements that have been filtered
+	 * out, for children that were filtered without
+	 * {@link #getFilteredChildren(Object)}.
+	 * 
+	 * @param rawResult
+	 *            the children before filtering
+	 * @param filteredResult
+	 *            the children after filtering
+	 */
+	void filteredOut(Object[] rawResult, Object[] filteredResult) {
+		if (associateListener != null
+				&& filteredResult.length != rawResult.length) {
+			notifyFilteredOut(rawResult, filteredResult);
 		}
 	}
 
@@ -1505,7 +1568,9 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	public void refresh(final Object element) {
 		preservingSelection(new Runnable() {
 			public void run() {
-				internalRefresh(element);
+				if (!refreshRefined(element, true)) {
+					internalRefresh(element);
+				}
 			}
 		});
 	}
@@ -1532,11 +1597,90 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	public void refresh(final Object element, final boolean updateLabels) {
 		preservingSelection(new Runnable() {
 			public void run() {
-				internalRefresh(element, updateLabels);
+				if (!refreshRefined(element, updateLabels)) {
+					internalRefresh(element, updateLabels);
+				}
 			}
 		});
 	}
 
+	/**
+	 * Refreshes the root by filtering the elements the viewer shows again, if
+	 * the filters were only refined since the last refresh of the root.
+	 * 
+	 * @param element
+	 *            the element to refresh
+	 * @param updateLabels
+	 *            whether to update the labels of the remaining elements
+	 * @return <code>false</code> if the element still needs to be refreshed
+	 */
+	private boolean refreshRefined(Object element, boolean updateLabels) {
+		if (element == null || element != getRoot()) {
+			return false;
+		}
+		ViewerFilter[] refinedFilters = getRefinedFilters();
+		recordFilterStates();
+		return refinedFilters != null
+				&& internalRefine(refinedFilters, updateLabels);
+	}
+
+	/**
+	 * Returns the filters that were refined since the last refresh of the
+	 * root, or <code>null</code> if none were refined or the filters or the
+	 * comparator changed otherwise.
+	 */
+	private ViewerFilter[] getRefinedFilters() {
+		ViewerFilter[] currentFilters = getFilters();
+		if (lastFilters == null || lastComparator != getComparator()
+				|| lastFilters.length != currentFilters.length) {
+			return null;
+		}
+		List refined = null;
+		for (int i = 0; i < currentFilters.length; i++) {
+			ViewerFilter filter = currentFilters[i];
+			if (filter != lastFilters[i]) {
+				return null;
+			}
+			if (filter.getState() != lastFilterStates[i]) {
+				if (!filter.isRefinementOf(lastFilterStates[i])) {
+					return null;
+				}
+				if (refined == null) {
+					refined = new ArrayList(currentFilters.length);
+				}
+				refined.add(filter);
+			}
+		}
+		return refined == null ? null : (ViewerFilter[]) refined
+				.toArray(new ViewerFilter[refined.size()]);
+	}
+
+	private void recordFilterStates() {
+		lastFilters = getFilters();
+		lastFilterStates = new int[lastFilters.length];
+		for (int i = 0; i < lastFilters.length; i++) {
+			lastFilterStates[i] = lastFilters[i].getState();
+		}
+		lastComparator = getComparator();
+	}
+
+	/**
+	 * Filters the elements the viewer shows again with the given filters,
+	 * which were refined since the last refresh of the root. The other filters
+	 * did not change. The default implementation does nothing and returns
+	 * <code>false</code>.
+	 * 
+	 * @param refinedFilters
+	 *            the refined filters
+	 * @param updateLabels
+	 *            whether to update the labels of the remaining elements
+	 * @return <code>true</code> if the viewer was refreshed,
+	 *         <code>false</code> if it needs a full refresh
+	 */
+	boolean internalRefine(ViewerFilter[] refinedFilters, boolean updateLabels) {
+		return false;
+	}
+
 	/**
 	 * 
 	 * Refreshes the given item with the given element. Calls
@@ -1688,6 +1832,7 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 			unmapAllElements();
 
 			super.setInput(input);
+			recordFilterStates();
 
 		} finally {
 			//		fInChange= false;
@@ -1822,7 +1967,7 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 		Assert.isTrue(getInput() == null,
 				"Can only enable the hash look up before input has been set");//$NON-NLS-1$
 		if (enable) {
-			elementMap = newHashtable(CustomHashtable.DEFAULT_CAPACITY);
+			elementMap = new ElementMap(CustomHashtable.DEFAULT_CAPACITY, getComparer());
 		} else {
 			elementMap = null;
 		}
@@ -1840,7 +1985,7 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	public void setComparer(IElementComparer comparer) {
 		this.comparer = comparer;
 		if (elementMap != null) {
-			elementMap = new CustomHashtable(elementMap, comparer);
+			elementMap = new ElementMap(elementMap, comparer);
 		}
 	}
 
@@ -1901,7 +2046,8 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	}
 	
 	/**
-	 * Removes all elements from the map.
+	 * Removes all elements from the map. The map keeps its capacity for the
+	 * elements mapped next.
 	 * <p>
 	 * This method is internal to the framework; subclassers should not call
 	 * this method.
@@ -1909,7 +2055,7 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	 */
 	protected void unmapAllElements() {
 		if (elementMap != null) {
-			elementMap = newHashtable(CustomHashtable.DEFAULT_CAPACITY);
+			elementMap.clear();
 		}
 	}
 
@@ -1927,7 +2073,7 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	 */
 	protected void unmapElement(Object element) {
 		if (elementMap != null) {
-			elementMap.remove(element);
+			elementMap.unmap(element);
 		}
 	}
 
@@ -1949,36 +2095,7 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 		// double-check that the element actually maps to the given item before
 		// unmapping it
 		if (elementMap != null) {
-			Object widgetOrWidgets = elementMap.get(element);
-			if (widgetOrWidgets == null) {
-				// item was not mapped, return
-				return;
-			} else if (widgetOrWidgets instanceof Widget) {
-				if (item == widgetOrWidgets) {
-					elementMap.remove(element);
-				}
-			} else {
-				Widget[] widgets = (Widget[]) widgetOrWidgets;
-				int indexOfItem = Arrays.asList(widgets).indexOf(item);
-				if (indexOfItem == -1) {
-					return;
-				}
-				int length = widgets.length;
-				if (indexOfItem == 0) {
-					if(length == 1) {
-						elementMap.remove(element);
-					} else {
-						Widget[] updatedWidgets = new Widget[length - 1];
-						System.arraycopy(widgets, 1, updatedWidgets, 0, length -1 );
-						elementMap.put(element, updatedWidgets);
-					}
-				} else {
-					Widget[] updatedWidgets = new Widget[length - 1];
-					System.arraycopy(widgets, 0, updatedWidgets, 0, indexOfItem);
-					System.arraycopy(widgets, indexOfItem + 1, updatedWidgets, indexOfItem, length - indexOfItem - 1);
-					elementMap.put(element, updatedWidgets);
-				}
-			}
+			elementMap.unmap(element, item);
 		}
 	}
 
@@ -2082,6 +2199,10 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 	 */
 	public void update(Object element, String[] properties) {
 		Assert.isNotNull(element);
+		SortKeyCache cache = sortKeyCache;
+		if (cache != null) {
+			cache.remove(element);
+		}
 		Widget[] items = findItems(element);
 
 		boolean mayExitEarly = !refreshOccurred;
@@ -2212,6 +2333,7 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 		} else {
 			colorAndFontCollector = new ColorAndFontCollector();
 		}
+		clearSortKeys();
 		super.setLabelProvider(labelProvider);
 		
 	}
@@ -2330,7 +2452,8 @@ public abstract class StructuredViewer extends ContentViewer implements IPostSel
 		comparer = null;
 		if (filters != null)
 			filters.clear();
-		elementMap = newHashtable(1);
+		elementMap = new ElementMap(1, null);
+		sortKeyCache = null;
 		openListeners.clear();
 		doubleClickListeners.clear();
 		colorAndFontCollector.clear();
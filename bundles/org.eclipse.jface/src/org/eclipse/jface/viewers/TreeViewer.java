@@ -952,6 +952,15 @@ public class TreeViewer extends AbstractTreeViewer {
 		super.handleTreeExpand(event);
 	}
 	
+	/* (non-Javadoc) Method declared on StructuredViewer. */
+	boolean internalRefine(ViewerFilter[] refinedFilters, boolean updateLabels) {
+		if (contentProviderIsLazy || (getTree().getStyle() & SWT.VIRTUAL) != 0) {
+			// virtual items do not know their elements yet
+			return false;
+		}
+		return super.internalRefine(refinedFilters, updateLabels);
+	}
+
 	protected void handleTreeCollapse(TreeEvent event) {
 		// Fix for Bug 271744 because windows is firing collapse before
 		// focus lost event
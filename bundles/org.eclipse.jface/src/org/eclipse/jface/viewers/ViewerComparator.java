@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2011 IBM Corporation and others.
+ * Copyright (c) 2006, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,9 @@
 
 package org.eclipse.jface.viewers;
 
+import java.lang.reflect.Method;
+import java.text.CollationKey;
+import java.text.Collator;
 import java.util.Arrays;
 import java.util.Comparator;
 
@@ -46,6 +49,39 @@ public class ViewerComparator {
 	 */
 	private Comparator comparator;
 
+	private static final Class[] COMPARE_PARAMETERS = new Class[] {
+			Viewer.class, Object.class, Object.class };
+
+	/**
+	 * Whether <code>compare(Viewer, Object, Object)</code> is not overridden,
+	 * <code>null</code> until checked.
+	 */
+	private Boolean defaultCompare;
+
+	/**
+	 * The category and label of an element, computed once per sort.
+	 */
+	private static final class SortKey {
+		final Object element;
+
+		final int category;
+
+		final String label;
+
+		/**
+		 * the collation key of the label, or <code>null</code> if the
+		 * strings are not sorted by a collator
+		 */
+		final CollationKey key;
+
+		SortKey(Object element, int category, String label, CollationKey key) {
+			this.element = element;
+			this.category = category;
+			this.label = label;
+			this.key = key;
+		}
+	}
+
 	/**
      * Creates a new {@link ViewerComparator}, which uses the default comparator
      * to sort strings.
@@ -168,12 +204,54 @@ public class ViewerComparator {
         return false;
     }
 
+    /**
+     * Returns whether {@link #sort(Viewer, Object[])} may sort the elements
+     * by their categories and labels, computed once per element, instead of
+     * calling <code>compare</code> for every comparison. When the comparator
+     * used to sort strings is a {@link Collator}, the labels are compared by
+     * their {@link CollationKey}s, which a {@link StructuredViewer} keeps
+     * until the label of the element changes.
+     * <p>
+     * This gives the same order as <code>compare</code> only if
+     * <code>compare</code> orders the elements by category and label, as the
+     * default implementation does. The default implementation of this method
+     * therefore returns <code>true</code> if
+     * {@link #compare(Viewer, Object, Object)} is not overridden. Subclasses
+     * whose <code>compare</code> orders the elements the same way may
+     * override this method to return <code>true</code>, subclasses that need
+     * <code>compare</code> to be called may return <code>false</code>.
+     * </p>
+     *
+     * @return <code>true</code> if elements may be sorted by category and
+     *         label keys
+     * @since 3.9
+     */
+	protected boolean useSortKeys() {
+		if (defaultCompare == null) {
+			boolean declaredHere;
+			try {
+				Method method = getClass().getMethod("compare", //$NON-NLS-1$
+						COMPARE_PARAMETERS);
+				declaredHere = method.getDeclaringClass() == ViewerComparator.class;
+			} catch (NoSuchMethodException e) {
+				declaredHere = false;
+			} catch (SecurityException e) {
+				declaredHere = false;
+			}
+			defaultCompare = Boolean.valueOf(declaredHere);
+		}
+		return defaultCompare.booleanValue();
+	}
+
     /**
      * Sorts the given elements in-place, modifying the given array.
      * <p>
      * The default implementation of this method uses the 
      * java.util.Arrays#sort algorithm on the given array, 
-     * calling <code>compare</code> to compare elements.
+     * calling <code>compare</code> to compare elements. If
+     * {@link #useSortKeys()} returns <code>true</code>, it compares the
+     * categories and labels of the elements instead, computing them once per
+     * element.
      * </p>
      * <p>
      * Subclasses may reimplement this method to provide a more optimized implementation.
@@ -183,6 +261,10 @@ public class ViewerComparator {
      * @param elements the elements to sort
      */
 	public void sort(final Viewer viewer, Object[] elements) {
+		if (elements.length > 1 && useSortKeys()) {
+			sortByKeys(viewer, elements);
+			return;
+		}
 		try {
 			Arrays.sort(elements, new Comparator() {
 				public int compare(Object a, Object b) {
@@ -190,16 +272,67 @@ public class ViewerComparator {
 				}
 			});
 		} catch (IllegalArgumentException e) {
-			String msg = "Workaround for comparator violation:\n\t- set system property java.util.Arrays.useLegacyMergeSort=true\n\t- use a 1.6 JRE "  //$NON-NLS-1$
-					+ "\nmessage: " + e.getLocalizedMessage() //$NON-NLS-1$
-					+ "\nthis: " + getClass().getName() //$NON-NLS-1$
-					+ "\ncomparator: " + (comparator != null ? comparator.getClass().getName() : null) //$NON-NLS-1$
-					+ "\narray:"; //$NON-NLS-1$
-			for (int i = 0; i < elements.length; i++) {
-				msg += "\n\t" + getLabel(viewer, elements[i]); //$NON-NLS-1$
+			logComparatorViolation(viewer, elements, e);
+			throw e;
+		}
+	}
+
+	private void sortByKeys(Viewer viewer, Object[] elements) {
+		final Comparator strings = getComparator();
+		Collator collator = null;
+		SortKeyCache cache = null;
+		if (strings instanceof Collator) {
+			collator = (Collator) strings;
+			if (viewer instanceof StructuredViewer) {
+				cache = ((StructuredViewer) viewer).getSortKeyCache(this,
+						collator);
 			}
-			Policy.getLog().log(new Status(IStatus.ERROR, "org.eclipse.jface", msg)); //$NON-NLS-1$
+		}
+		SortKey[] keys = new SortKey[elements.length];
+		for (int i = 0; i < elements.length; i++) {
+			Object element = elements[i];
+			String label = getLabel(viewer, element);
+			CollationKey key = null;
+			if (cache != null) {
+				key = cache.getKey(element, label);
+			} else if (collator != null) {
+				key = collator.getCollationKey(label);
+			}
+			keys[i] = new SortKey(element, category(element), label, key);
+		}
+		try {
+			Arrays.sort(keys, new Comparator() {
+				public int compare(Object a, Object b) {
+					SortKey key1 = (SortKey) a;
+					SortKey key2 = (SortKey) b;
+					if (key1.category != key2.category) {
+						return key1.category - key2.category;
+					}
+					if (key1.key != null) {
+						return key1.key.compareTo(key2.key);
+					}
+					return strings.compare(key1.label, key2.label);
+				}
+			});
+		} catch (IllegalArgumentException e) {
+			logComparatorViolation(viewer, elements, e);
 			throw e;
 		}
+		for (int i = 0; i < keys.length; i++) {
+			elements[i] = keys[i].element;
+		}
+	}
+
+	private void logComparatorViolation(Viewer viewer, Object[] elements,
+			IllegalArgumentException e) {
+		String msg = "Workaround for comparator violation:\n\t- set system property java.util.Arrays.useLegacyMergeSort=true\n\t- use a 1.6 JRE "  //$NON-NLS-1$
+				+ "\nmessage: " + e.getLocalizedMessage() //$NON-NLS-1$
+				+ "\nthis: " + getClass().getName() //$NON-NLS-1$
+				+ "\ncomparator: " + (comparator != null ? comparator.getClass().getName() : null) //$NON-NLS-1$
+				+ "\narray:"; //$NON-NLS-1$
+		for (int i = 0; i < elements.length; i++) {
+			msg += "\n\t" + getLabel(viewer, elements[i]); //$NON-NLS-1$
+		}
+		Policy.getLog().log(new Status(IStatus.ERROR, "org.eclipse.jface", msg)); //$NON-NLS-1$
 	}
 }
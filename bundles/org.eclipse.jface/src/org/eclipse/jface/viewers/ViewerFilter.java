@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -23,12 +23,72 @@ import java.util.ArrayList;
  * @see StructuredViewer
  */
 public abstract class ViewerFilter {
+    /**
+     * The number of changes of the state of this filter.
+     */
+    private int state = 0;
+
+    /**
+     * The state after the last change that was not a refinement. All changes
+     * since were refinements.
+     */
+    private int refinedFromState = 0;
+
     /**
      * Creates a new viewer filter.
      */
     protected ViewerFilter() {
     }
 
+    /**
+     * Records that the state of this filter changed, for example the pattern
+     * it matches elements against. Subclasses call this method to let viewers
+     * know whether the change is a refinement, that is, whether the filter now
+     * selects only elements that it selected before, like a pattern that was
+     * extended.
+     * <p>
+     * If all filters of a structured viewer were only refined since the last
+     * refresh of its root, the next refresh of the root filters just the
+     * elements the viewer shows, instead of filtering all elements of the
+     * content provider again. The viewer assumes that the model did not change
+     * in the meantime. Viewers that do not support this, and filters that never
+     * call this method, get a full refresh.
+     * </p>
+     * 
+     * @param refinement
+     *            <code>true</code> if the filter now selects a subset of the
+     *            elements it selected before, <code>false</code> otherwise
+     * @since 3.9
+     */
+    protected void stateChanged(boolean refinement) {
+        state++;
+        if (!refinement) {
+            refinedFromState = state;
+        }
+    }
+
+    /**
+     * Returns the number of changes of the state of this filter.
+     * 
+     * @return the state
+     * @see #stateChanged(boolean)
+     */
+    /* package */int getState() {
+        return state;
+    }
+
+    /**
+     * Returns whether all changes since the given state were refinements.
+     * 
+     * @param oldState
+     *            a state returned by {@link #getState()}
+     * @return <code>true</code> if the filter selects a subset of the elements
+     *         it selected in the given state
+     */
+    /* package */boolean isRefinementOf(int oldState) {
+        return oldState >= refinedFromState && oldState <= state;
+    }
+
     /**
      * Filters the given elements for the given viewer.
      * The input array is not modified.
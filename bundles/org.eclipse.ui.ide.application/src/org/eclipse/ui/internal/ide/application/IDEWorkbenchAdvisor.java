@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2003, 2010 IBM Corporation and others.
+ * Copyright (c) 2003, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -81,6 +81,7 @@ import org.eclipse.ui.internal.ide.IDEWorkbenchActivityHelper;
 import org.eclipse.ui.internal.ide.IDEWorkbenchErrorHandler;
 import org.eclipse.ui.internal.ide.IDEWorkbenchMessages;
 import org.eclipse.ui.internal.ide.IDEWorkbenchPlugin;
+import org.eclipse.ui.internal.ide.dialogs.ResourceNameIndex;
 import org.eclipse.ui.internal.ide.undo.WorkspaceUndoMonitor;
 import org.eclipse.ui.internal.progress.ProgressMonitorJobsDialog;
 import org.eclipse.ui.progress.IProgressService;
@@ -267,6 +268,7 @@ public class IDEWorkbenchAdvisor extends WorkbenchAdvisor {
 	public void postStartup() {
 		try {
 			refreshFromLocal();
+			startResourceNameIndex();
 			activateProxyService();
 			((Workbench) PlatformUI.getWorkbench()).registerService(
 					ISelectionConversionService.class,
@@ -280,6 +282,16 @@ public class IDEWorkbenchAdvisor extends WorkbenchAdvisor {
 		}
 	}
 
+	/**
+	 * Start loading the resource name index of the Open Resource dialog, if
+	 * it was saved in an earlier session.
+	 */
+	private void startResourceNameIndex() {
+		if (ResourceNameIndex.isSaved()) {
+			IDEWorkbenchPlugin.getDefault().getResourceNameIndex();
+		}
+	}
+
 	/**
 	 * Activate the proxy service by obtaining it.
 	 */
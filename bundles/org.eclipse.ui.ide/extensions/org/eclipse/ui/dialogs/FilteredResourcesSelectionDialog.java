@@ -68,6 +68,7 @@ import org.eclipse.ui.internal.WorkbenchPlugin;
 import org.eclipse.ui.internal.ide.IDEWorkbenchMessages;
 import org.eclipse.ui.internal.ide.IDEWorkbenchPlugin;
 import org.eclipse.ui.internal.ide.IIDEHelpContextIds;
+import org.eclipse.ui.internal.ide.dialogs.ResourceNameIndex;
 import org.eclipse.ui.internal.ide.model.ResourceFactory;
 import org.eclipse.ui.model.WorkbenchLabelProvider;
 import org.eclipse.ui.statushandlers.StatusManager;
@@ -561,6 +562,16 @@ public class FilteredResourcesSelectionDialog extends
 	protected void fillContentProvider(AbstractContentProvider contentProvider,
 			ItemsFilter itemsFilter, IProgressMonitor progressMonitor)
 			throws CoreException {
+		if (itemsFilter != null && itemsFilter.getClass() == ResourceFilter.class) {
+			ResourceNameIndex index = IDEWorkbenchPlugin.getDefault()
+					.getResourceNameIndex();
+			if (index.isReady()) {
+				fillContentProvider(index, contentProvider,
+						(ResourceFilter) itemsFilter, progressMonitor);
+				progressMonitor.done();
+				return;
+			}
+		}
 		if (itemsFilter instanceof ResourceFilter) {
 			IResource[] members = container.members();
 			progressMonitor
@@ -587,6 +598,40 @@ public class FilteredResourcesSelectionDialog extends
 		progressMonitor.done();
 	}
 
+	/**
+	 * Fills the content provider with the resources that the name index finds
+	 * for the filter. Like the resource tree visit, skips the resources of
+	 * closed projects and, unless derived resources are shown, the resources
+	 * in derived folders.
+	 */
+	private void fillContentProvider(ResourceNameIndex index,
+			AbstractContentProvider contentProvider,
+			final ResourceFilter resourceFilter,
+			IProgressMonitor progressMonitor) {
+		IResource[] resources = index.find(resourceFilter.getNamePrefix(),
+				resourceFilter.getPattern(), new ResourceNameIndex.NameMatcher() {
+					public boolean matches(String name) {
+						return resourceFilter.nameMatches(name);
+					}
+				}, progressMonitor);
+		progressMonitor
+				.beginTask(
+						WorkbenchMessages.FilteredItemsSelectionDialog_searchJob_taskName,
+						resources.length);
+		IPath containerPath = container.getFullPath();
+		for (int i = 0; i < resources.length; i++) {
+			IResource resource = resources[i];
+			if (containerPath.isPrefixOf(resource.getFullPath())
+					&& resource.getProject().isOpen()
+					&& (resourceFilter.isShowDerived() || !resource.getParent()
+							.isDerived(IResource.CHECK_ANCESTORS)))
+				contentProvider.add(resource, resourceFilter);
+			progressMonitor.worked(1);
+			if (progressMonitor.isCanceled())
+				break;
+		}
+	}
+
 	/**
 	 * Sets the derived flag on the ResourceFilter instance
 	 */
@@ -1045,6 +1090,23 @@ public class FilteredResourcesSelectionDialog extends
 			return false;			
 		}
 
+		/**
+		 * Returns the lower case prefix that all names matching this filter
+		 * start with.
+		 */
+		private String getNamePrefix() {
+			String prefix = ResourceNameIndex.getNamePrefix(patternMatcher);
+			if (namePattern != null) {
+				String namePrefix = ResourceNameIndex.getNamePrefix(namePattern);
+				int length = 0;
+				while (length < prefix.length() && length < namePrefix.length()
+						&& prefix.charAt(length) == namePrefix.charAt(length))
+					length++;
+				prefix = prefix.substring(0, length);
+			}
+			return prefix;
+		}
+
 		private boolean nameMatches(String name) {
 			if (namePattern != null) {
 				// fix for https://bugs.eclipse.org/bugs/show_bug.cgi?id=212565
@@ -748,6 +748,8 @@ public class IDEWorkbenchMessages extends NLS {
 	public static String MarkerDeleteHandler_JobMessageLabel;
 	
 	public static String FilteredResourcesSelectionDialog_showDerivedResourcesAction;
+	public static String FilteredResourcesSelectionDialog_indexJobName;
+	public static String FilteredResourcesSelectionDialog_indexSaveError;
 	
 	public static String ResourceSelectionDialog_label;
 	public static String ResourceSelectionDialog_matching;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -36,6 +36,7 @@ import org.eclipse.ui.IWorkbenchPage;
 import org.eclipse.ui.IWorkbenchWindow;
 import org.eclipse.ui.PartInitException;
 import org.eclipse.ui.PlatformUI;
+import org.eclipse.ui.internal.ide.dialogs.ResourceNameIndex;
 import org.eclipse.ui.internal.ide.registry.MarkerImageProviderRegistry;
 import org.eclipse.ui.internal.ide.registry.ProjectImageRegistry;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
@@ -101,6 +102,11 @@ public class IDEWorkbenchPlugin extends AbstractUIPlugin {
 
 	private ResourceManager resourceManager;
 
+	/**
+	 * Resource name index; lazily initialized.
+	 */
+	private ResourceNameIndex resourceNameIndex = null;
+
 	/**
 	 * Create an instance of the receiver.
 	 */
@@ -332,10 +338,26 @@ public class IDEWorkbenchPlugin extends AbstractUIPlugin {
 		return resourceManager;
 	}
 	
+	/**
+	 * Returns the index of the resource names in the workspace. The index is
+	 * started on the first call, and can answer queries once it is ready.
+	 * 
+	 * @return the resource name index
+	 */
+	public synchronized ResourceNameIndex getResourceNameIndex() {
+		if (resourceNameIndex == null) {
+			resourceNameIndex = new ResourceNameIndex();
+			resourceNameIndex.start();
+		}
+		return resourceNameIndex;
+	}
+	
 	/* (non-Javadoc)
 	 * @see org.eclipse.ui.plugin.AbstractUIPlugin#stop(org.osgi.framework.BundleContext)
 	 */
 	public void stop(BundleContext context) throws Exception {
+		if (resourceNameIndex != null)
+			resourceNameIndex.dispose();
 		super.stop(context);
 		if (resourceManager != null)
 			resourceManager.dispose();
@@ -0,0 +1,664 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.internal.ide.dialogs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceProxy;
+import org.eclipse.core.resources.IResourceProxyVisitor;
+import org.eclipse.core.resources.ISaveContext;
+import org.eclipse.core.resources.ISaveParticipant;
+import org.eclipse.core.resources.ISavedState;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.ui.dialogs.SearchPattern;
+import org.eclipse.ui.internal.ide.IDEWorkbenchMessages;
+import org.eclipse.ui.internal.ide.IDEWorkbenchPlugin;
+
+/**
+ * An index of the names of the resources in the workspace, used by the
+ * resource selection dialogs to find resources by name without visiting the
+ * resource tree.
+ * <p>
+ * The names are kept in a sorted map keyed by their lower case form, so that
+ * the names that can match a prefix, camel case or pattern query are found
+ * by a range lookup. The index follows the workspace through resource change
+ * events. It is saved with the workspace in the state location of the IDE
+ * plug-in and brought up to date with the changes made since then when it is
+ * loaded; if it was never saved, it is built by visiting the workspace in a
+ * background job.
+ * </p>
+ * <p>
+ * The index is a hint: names of resources that no longer exist are skipped
+ * when a query is answered, and resources are listed only if they exist.
+ * </p>
+ */
+public class ResourceNameIndex implements IResourceChangeListener,
+		ISaveParticipant {
+
+	/**
+	 * Matches the names of resources for a query.
+	 */
+	public interface NameMatcher {
+		/**
+		 * Returns whether a resource with the given name is part of the
+		 * result.
+		 *
+		 * @param name
+		 *            the name of the resource
+		 * @return <code>true</code> if the name matches
+		 */
+		public boolean matches(String name);
+	}
+
+	/**
+	 * The key under which the index file is mapped in the save context.
+	 */
+	private static final IPath INDEX_KEY = new Path("resourceNameIndex"); //$NON-NLS-1$
+
+	/**
+	 * The prefix of the index files; the files are suffixed with the save
+	 * number.
+	 */
+	private static final String INDEX_FILE = "resourceNames."; //$NON-NLS-1$
+
+	private static final int VERSION = 1;
+
+	/**
+	 * A resource in the index.
+	 */
+	private static final class Entry {
+		final String name;
+
+		/**
+		 * the full path of the parent, shared by the entries of its children
+		 */
+		final String parent;
+
+		Entry(String name, String parent) {
+			this.name = name;
+			this.parent = parent;
+		}
+	}
+
+	/**
+	 * Maps the lower case names to an <code>Entry</code>, or to a
+	 * <code>List</code> of entries if there are several resources of that
+	 * name.
+	 */
+	private TreeMap names = new TreeMap();
+
+	/**
+	 * The parent paths in use, for sharing them between entries.
+	 */
+	private Map parents = new HashMap();
+
+	private boolean ready = false;
+
+	private boolean started = false;
+
+	/**
+	 * Whether the index was written in the current save.
+	 */
+	private boolean saved = false;
+
+	/**
+	 * Returns whether an index was saved by an earlier session.
+	 *
+	 * @return <code>true</code> if a saved index exists
+	 */
+	public static boolean isSaved() {
+		String[] files = IDEWorkbenchPlugin.getDefault().getStateLocation()
+				.toFile().list();
+		if (files != null) {
+			for (int i = 0; i < files.length; i++) {
+				if (files[i].startsWith(INDEX_FILE)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the lower case prefix that all names matching the pattern start
+	 * with.
+	 *
+	 * @param pattern
+	 *            the pattern
+	 * @return the prefix, possibly empty
+	 */
+	public static String getNamePrefix(SearchPattern pattern) {
+		String text = pattern.getPattern();
+		switch (pattern.getMatchRule()) {
+		case SearchPattern.RULE_EXACT_MATCH:
+		case SearchPattern.RULE_PREFIX_MATCH:
+			return toKey(text);
+		case SearchPattern.RULE_CAMELCASE_MATCH:
+			// the first character has to match, the others may be skipped
+			return toKey(text.substring(0, 1));
+		case SearchPattern.RULE_PATTERN_MATCH:
+			int end = 0;
+			while (end < text.length() && "*?\\".indexOf(text.charAt(end)) == -1) { //$NON-NLS-1$
+				end++;
+			}
+			return toKey(text.substring(0, end));
+		default:
+			return ""; //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Returns the key of a name in the index.
+	 */
+	private static String toKey(String name) {
+		char[] chars = name.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = Character.toLowerCase(chars[i]);
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Start loading or building the index in a background job. Does nothing
+	 * if the index was started before.
+	 */
+	public synchronized void start() {
+		if (started) {
+			return;
+		}
+		started = true;
+		Job job = new Job(
+				IDEWorkbenchMessages.FilteredResourcesSelectionDialog_indexJobName) {
+			protected IStatus run(IProgressMonitor monitor) {
+				try {
+					initialize(monitor);
+				} catch (OperationCanceledException e) {
+					return Status.CANCEL_STATUS;
+				} catch (CoreException e) {
+					return e.getStatus();
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(true);
+		job.setPriority(Job.LONG);
+		job.schedule();
+	}
+
+	/**
+	 * Stop following the workspace.
+	 */
+	public void dispose() {
+		IWorkspace workspace = ResourcesPlugin.getWorkspace();
+		workspace.removeResourceChangeListener(this);
+		workspace.removeSaveParticipant(IDEWorkbenchPlugin.IDE_WORKBENCH);
+	}
+
+	/**
+	 * Returns whether the index can answer queries.
+	 *
+	 * @return <code>true</code> if the index is loaded or built
+	 */
+	public synchronized boolean isReady() {
+		return ready;
+	}
+
+	private void initialize(IProgressMonitor monitor) throws CoreException {
+		IWorkspace workspace = ResourcesPlugin.getWorkspace();
+		ISavedState savedState = workspace.addSaveParticipant(
+				IDEWorkbenchPlugin.IDE_WORKBENCH, this);
+		boolean loaded = false;
+		if (savedState != null) {
+			IPath indexFile = savedState.lookup(INDEX_KEY);
+			if (indexFile != null) {
+				loaded = load(getStateLocation().append(indexFile).toFile());
+			}
+		}
+
+		// changes made while the index is built are applied twice at worst
+		workspace.addResourceChangeListener(this,
+				IResourceChangeEvent.POST_CHANGE);
+		if (loaded) {
+			savedState.processResourceChangeEvents(this);
+		} else {
+			build(workspace.getRoot(), monitor);
+		}
+		synchronized (this) {
+			ready = true;
+		}
+	}
+
+	/**
+	 * Add the resources in the container and below it to the index.
+	 */
+	private void build(IResource container, final IProgressMonitor monitor)
+			throws CoreException {
+		final Map buildParents = new HashMap();
+		container.accept(new IResourceProxyVisitor() {
+			public boolean visit(IResourceProxy proxy) {
+				if (monitor.isCanceled()) {
+					throw new OperationCanceledException();
+				}
+				if (proxy.getType() == IResource.ROOT) {
+					return true;
+				}
+				IPath parentPath = proxy.requestFullPath().removeLastSegments(1);
+				String parent = (String) buildParents.get(parentPath);
+				if (parent == null) {
+					parent = parentPath.toString();
+					buildParents.put(parentPath, parent);
+				}
+				synchronized (ResourceNameIndex.this) {
+					add(proxy.getName(), parent);
+				}
+				return proxy.getType() != IResource.FILE
+						&& proxy.isAccessible();
+			}
+		}, IResource.NONE);
+	}
+
+	/**
+	 * Add an entry unless it is in the index. Called with the lock held.
+	 */
+	private void add(String name, String parent) {
+		String sharedParent = (String) parents.get(parent);
+		if (sharedParent == null) {
+			sharedParent = parent;
+			parents.put(parent, parent);
+		}
+		String key = toKey(name);
+		Entry entry = new Entry(key.equals(name) ? key : name, sharedParent);
+		Object value = names.get(key);
+		if (value == null) {
+			names.put(key, entry);
+		} else if (value instanceof Entry) {
+			if (!isEntry((Entry) value, name, parent)) {
+				List entries = new ArrayList(2);
+				entries.add(value);
+				entries.add(entry);
+				names.put(key, entries);
+			}
+		} else {
+			List entries = (List) value;
+			for (int i = 0; i < entries.size(); i++) {
+				if (isEntry((Entry) entries.get(i), name, parent)) {
+					return;
+				}
+			}
+			entries.add(entry);
+		}
+	}
+
+	/**
+	 * Remove an entry if it is in the index. Called with the lock held.
+	 */
+	private void remove(String name, String parent) {
+		String key = toKey(name);
+		Object value = names.get(key);
+		if (value instanceof Entry) {
+			if (isEntry((Entry) value, name, parent)) {
+				names.remove(key);
+			}
+		} else if (value != null) {
+			List entries = (List) value;
+			for (int i = 0; i < entries.size(); i++) {
+				if (isEntry((Entry) entries.get(i), name, parent)) {
+					entries.remove(i);
+					break;
+				}
+			}
+			if (entries.size() == 1) {
+				names.put(key, entries.get(0));
+			}
+		}
+	}
+
+	/**
+	 * Remove the entries below a project. Called with the lock held.
+	 */
+	private void removeMembers(IProject project) {
+		String projectPath = project.getFullPath().toString();
+		String prefix = projectPath + IPath.SEPARATOR;
+		for (Iterator i = names.values().iterator(); i.hasNext();) {
+			Object value = i.next();
+			if (value instanceof Entry) {
+				if (isBelow((Entry) value, projectPath, prefix)) {
+					i.remove();
+				}
+			} else {
+				List entries = (List) value;
+				for (Iterator j = entries.iterator(); j.hasNext();) {
+					if (isBelow((Entry) j.next(), projectPath, prefix)) {
+						j.remove();
+					}
+				}
+				if (entries.isEmpty()) {
+					i.remove();
+				}
+			}
+		}
+	}
+
+	private static boolean isEntry(Entry entry, String name, String parent) {
+		return entry.name.equals(name) && entry.parent.equals(parent);
+	}
+
+	private static boolean isBelow(Entry entry, String path, String prefix) {
+		return entry.parent.equals(path) || entry.parent.startsWith(prefix);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.eclipse.core.resources.IResourceChangeListener#resourceChanged(org.eclipse.core.resources.IResourceChangeEvent)
+	 */
+	public void resourceChanged(IResourceChangeEvent event) {
+		IResourceDelta delta = event.getDelta();
+		if (delta == null) {
+			return;
+		}
+		List opened = new ArrayList();
+		synchronized (this) {
+			processDelta(delta, opened);
+		}
+		for (int i = 0; i < opened.size(); i++) {
+			IProject project = (IProject) opened.get(i);
+			try {
+				if (project.isOpen()) {
+					build(project, new NullProgressMonitor());
+				}
+			} catch (CoreException e) {
+				IDEWorkbenchPlugin.log(e.getMessage(), e.getStatus());
+			}
+		}
+	}
+
+	private void processDelta(IResourceDelta delta, List opened) {
+		IResource resource = delta.getResource();
+		int type = resource.getType();
+		if (type != IResource.ROOT) {
+			String name = resource.getName();
+			String parent = resource.getFullPath().removeLastSegments(1)
+					.toString();
+			switch (delta.getKind()) {
+			case IResourceDelta.ADDED:
+				add(name, parent);
+				break;
+			case IResourceDelta.REMOVED:
+				remove(name, parent);
+				break;
+			case IResourceDelta.CHANGED:
+				if (type == IResource.PROJECT
+						&& (delta.getFlags() & IResourceDelta.OPEN) != 0) {
+					// the members of opened or closed projects are not in
+					// the delta
+					removeMembers((IProject) resource);
+					opened.add(resource);
+					return;
+				}
+				break;
+			}
+		}
+		IResourceDelta[] children = delta.getAffectedChildren();
+		for (int i = 0; i < children.length; i++) {
+			processDelta(children[i], opened);
+		}
+	}
+
+	/**
+	 * Find the resources whose names match. Only names that start with the
+	 * given prefix, ignoring case, are considered.
+	 * <p>
+	 * The resources are ranked by how close their names come to the pattern
+	 * text: names equal to it come first, then names starting with it, then
+	 * the other names. Within a rank resources are ordered by name.
+	 * </p>
+	 *
+	 * @param prefix
+	 *            the lower case prefix of the names, as returned by
+	 *            {@link #getNamePrefix(SearchPattern)}
+	 * @param pattern
+	 *            the text of the pattern, for ranking the resources
+	 * @param matcher
+	 *            the matcher of the names
+	 * @param monitor
+	 *            the monitor to report to
+	 * @return the existing resources with matching names
+	 */
+	public IResource[] find(String prefix, String pattern,
+			NameMatcher matcher, IProgressMonitor monitor) {
+		String rankKey = toKey(pattern);
+		List equal = new ArrayList();
+		List starting = new ArrayList();
+		List other = new ArrayList();
+		synchronized (this) {
+			SortedMap range = prefix.length() == 0 ? names : names.subMap(
+					prefix, prefix + Character.MAX_VALUE);
+			for (Iterator i = range.entrySet().iterator(); i.hasNext();) {
+				if (monitor.isCanceled()) {
+					return new IResource[0];
+				}
+				Map.Entry mapEntry = (Map.Entry) i.next();
+				String key = (String) mapEntry.getKey();
+				List ranked = key.equals(rankKey) ? equal : key
+						.startsWith(rankKey) ? starting : other;
+				Object value = mapEntry.getValue();
+				if (value instanceof Entry) {
+					if (matcher.matches(((Entry) value).name)) {
+						ranked.add(value);
+					}
+				} else {
+					List entries = (List) value;
+					for (int j = 0; j < entries.size(); j++) {
+						Entry entry = (Entry) entries.get(j);
+						if (matcher.matches(entry.name)) {
+							ranked.add(entry);
+						}
+					}
+				}
+			}
+		}
+
+		IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+		List resources = new ArrayList(equal.size() + starting.size()
+				+ other.size());
+		List[] ranks = new List[] { equal, starting, other };
+		for (int i = 0; i < ranks.length; i++) {
+			for (int j = 0; j < ranks[i].size(); j++) {
+				Entry entry = (Entry) ranks[i].get(j);
+				IResource resource = root.findMember(new Path(entry.parent)
+						.append(entry.name));
+				if (resource != null) {
+					resources.add(resource);
+				}
+			}
+		}
+		return (IResource[]) resources.toArray(new IResource[resources.size()]);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.eclipse.core.resources.ISaveParticipant#prepareToSave(org.eclipse.core.resources.ISaveContext)
+	 */
+	public void prepareToSave(ISaveContext context) {
+		// nothing to prepare
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.eclipse.core.resources.ISaveParticipant#saving(org.eclipse.core.resources.ISaveContext)
+	 */
+	public void saving(ISaveContext context) throws CoreException {
+		saved = false;
+		if (context.getKind() != ISaveContext.FULL_SAVE || !isReady()) {
+			return;
+		}
+		String fileName = INDEX_FILE + context.getSaveNumber();
+		try {
+			write(getStateLocation().append(fileName).toFile());
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR,
+					IDEWorkbenchPlugin.IDE_WORKBENCH, IStatus.ERROR,
+					IDEWorkbenchMessages.FilteredResourcesSelectionDialog_indexSaveError,
+					e));
+		}
+		context.map(INDEX_KEY, new Path(fileName));
+		context.needSaveNumber();
+		context.needDelta();
+		saved = true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.eclipse.core.resources.ISaveParticipant#doneSaving(org.eclipse.core.resources.ISaveContext)
+	 */
+	public void doneSaving(ISaveContext context) {
+		if (saved) {
+			getStateLocation().append(
+					INDEX_FILE + context.getPreviousSaveNumber()).toFile()
+					.delete();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see org.eclipse.core.resources.ISaveParticipant#rollback(org.eclipse.core.resources.ISaveContext)
+	 */
+	public void rollback(ISaveContext context) {
+		if (saved) {
+			getStateLocation().append(INDEX_FILE + context.getSaveNumber())
+					.toFile().delete();
+			saved = false;
+		}
+	}
+
+	private static IPath getStateLocation() {
+		return IDEWorkbenchPlugin.getDefault().getStateLocation();
+	}
+
+	/**
+	 * Write the index to a file. The parent paths are written once, and
+	 * referred to by number from the entries.
+	 */
+	private synchronized void write(File file) throws IOException {
+		Map parentNumbers = new HashMap();
+		List entries = new ArrayList();
+		for (Iterator i = names.values().iterator(); i.hasNext();) {
+			Object value = i.next();
+			if (value instanceof Entry) {
+				entries.add(value);
+			} else {
+				entries.addAll((List) value);
+			}
+		}
+		DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			output.writeInt(VERSION);
+			List parentPaths = new ArrayList();
+			for (int i = 0; i < entries.size(); i++) {
+				String parent = ((Entry) entries.get(i)).parent;
+				if (!parentNumbers.containsKey(parent)) {
+					parentNumbers.put(parent, new Integer(parentPaths.size()));
+					parentPaths.add(parent);
+				}
+			}
+			output.writeInt(parentPaths.size());
+			for (int i = 0; i < parentPaths.size(); i++) {
+				output.writeUTF((String) parentPaths.get(i));
+			}
+			output.writeInt(entries.size());
+			for (int i = 0; i < entries.size(); i++) {
+				Entry entry = (Entry) entries.get(i);
+				output.writeInt(((Integer) parentNumbers.get(entry.parent))
+						.intValue());
+				output.writeUTF(entry.name);
+			}
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Read the index from a file.
+	 *
+	 * @return <code>true</code> if the index was read, <code>false</code> if
+	 *         the file is missing or cannot be read
+	 */
+	private synchronized boolean load(File file) {
+		if (!file.exists()) {
+			return false;
+		}
+		try {
+			DataInputStream input = new DataInputStream(
+					new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (input.readInt() != VERSION) {
+					return false;
+				}
+				String[] parentPaths = new String[input.readInt()];
+				for (int i = 0; i < parentPaths.length; i++) {
+					parentPaths[i] = input.readUTF();
+				}
+				int count = input.readInt();
+				for (int i = 0; i < count; i++) {
+					String parent = parentPaths[input.readInt()];
+					add(input.readUTF(), parent);
+				}
+				return true;
+			} finally {
+				input.close();
+			}
+		} catch (IOException e) {
+			IDEWorkbenchPlugin.log(e.getMessage(), e);
+		} catch (RuntimeException e) {
+			// a corrupt file, the index is built instead
+			IDEWorkbenchPlugin.log(e.getMessage(), e);
+		}
+		names.clear();
+		parents.clear();
+		return false;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -466,11 +466,14 @@ public class CachedMarkerBuilder {
 				// ensure cancellation before calling the method
 				// updateJob.cancel();
 			} else {
-				/*
-				 * updateJob = isIncremental() ? new IncrementUpdateJob(this):
-				 * new MarkerUpdateJob(this);
-				 */
-				updateJob = new MarkerUpdateJob(this);
+				if (isIncremental()) {
+					incrementJob = new IncrementUpdateJob(this);
+					updateJob = incrementJob;
+					// the first run gathers the markers
+					clean = true;
+				} else {
+					updateJob = new MarkerUpdateJob(this);
+				}
 				updateJob.setPriority(Job.LONG);
 				updateJob.setSystem(true);
 			}
@@ -615,18 +618,15 @@ public class CachedMarkerBuilder {
 ///////	<Incremental update code>///////
 		private IncrementUpdateJob incrementJob;
 	/**
-	 * Checks whether the builder should perform incrementally Note : Incremental
-	 * updating method is NOT used and tested yet but left out for further
-	 * investigation(*).
+	 * Checks whether the builder should perform incrementally. When it does,
+	 * the markers are gathered only when a clean update is requested, for
+	 * instance when the filters or the selection change; marker changes are
+	 * applied to the gathered markers from the marker deltas.
 	 * 
 	 * @return Returns true if we should collect markers incrementally.
 	 */
 	boolean isIncremental() {
-		/*
-		 * We do not update incrementally. We have 
-		 * code for further investigation(*) for this anyway.
-		 */
-		return false;
+		return true;
 	}
 	
 	/**
@@ -656,12 +656,20 @@ public class CachedMarkerBuilder {
 	 * @param update
 	 */
 	void incrementalUpdate(MarkerUpdate update) {
+		boolean gathered;
 		synchronized (getUpdateScheduler().getSchedulingLock()) {
-			if (incrementJob == null) {
-				scheduleUpdateJob(MarkerUpdateScheduler.SHORT_DELAY, true);
+			gathered = incrementJob != null;
+			if (gathered) {
+				incrementJob.addUpdate(update);
 			}
 		}
-		incrementJob.addUpdate(update);
+		// the scheduler throttles the updates, do not hold the lock
+		if (gathered) {
+			getUpdateScheduler().scheduleIncrementalUpdate();
+		} else {
+			// nothing gathered yet, the first update gathers the change
+			getUpdateScheduler().scheduleUpdate();
+		}
 	}
 ///////	</Incremental update code>///////
 	
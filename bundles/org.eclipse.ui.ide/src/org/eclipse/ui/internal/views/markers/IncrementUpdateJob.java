@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009 IBM Corporation and others.
+ * Copyright (c) 2009, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,8 +12,10 @@
 package org.eclipse.ui.internal.views.markers;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.Map;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -21,25 +23,25 @@ import org.eclipse.core.runtime.Status;
 import org.eclipse.ui.views.markers.internal.MarkerMessages;
 
 /**
- * The job that performs incremental update. Once the processing is complete it
- * schedules an UI update. If it'll be possible and beneficial switch to
- * incremental updatation, this has been left out for further investigation(*).
- * only, and not used currently.
+ * The job that performs incremental update. The markers are gathered when a
+ * clean update is requested; after that the marker changes queued by the
+ * {@link MarkersChangeListener} are applied to the gathered markers in place.
+ * Once the processing is complete it schedules an UI update.
  * 
  * @since 3.6
  * 
  */
 class IncrementUpdateJob extends MarkerUpdateJob {
 
-	private LinkedList incrementEntryList;
 	private LinkedList updateQueue;
 
+	private boolean cleanRequested;
+
 	/**
 	 * @param builder
 	 */
 	public IncrementUpdateJob(CachedMarkerBuilder builder) {
 		super(builder);
-		incrementEntryList = new LinkedList();
 	}
 
 	/*
@@ -51,220 +53,107 @@ class IncrementUpdateJob extends MarkerUpdateJob {
 	protected IStatus run(IProgressMonitor monitor) {
 		monitor.beginTask(MarkerMessages.MarkerView_processUpdates,
 				IProgressMonitor.UNKNOWN);
-		boolean clean= isClean();
-		if (clean) {
-			clearEntries();
-		}
-		Collection markerEntries = incrementalEntries();
-		if (clean) {
+		Map changes = null;
+		LinkedList queue = getUpdatesQueue();
+		synchronized (queue) {
 			/*
-			 * Unfortunately we cannot lock marker operations between gathering
-			 * and updation. We have this code in place only for further
-			 * investigation
+			 * The markers gathered include the changes queued so far, but
+			 * may or may not include the ones that come in while gathering.
+			 * Those are applied after gathering; applying a change twice
+			 * leaves the markers the same.
 			 */
-			clean = !clean(markerEntries, monitor);
-			LinkedList queue = getUpdatesQueue();
-			synchronized (queue) {
+			if (cleanRequested) {
+				cleanRequested = false;
 				queue.clear();
+			} else {
+				changes = takeChanges(queue);
 			}
 		}
-		if (monitor.isCanceled()) {
-			return Status.CANCEL_STATUS;
-		}
-		if (!clean) {
-			builder.registerTypesToListener();
-			if (!processUpdates(monitor)) {
+		if (changes == null) {
+			Collection markerEntries = new LinkedList();
+			if (!clean(markerEntries, monitor)
+					|| !processMarkerEntries(markerEntries, monitor)) {
+				setClean();
 				return Status.CANCEL_STATUS;
 			}
+			synchronized (queue) {
+				changes = takeChanges(queue);
+			}
 		}
-		if (!processMarkerEntries(markerEntries, monitor)) {
-			return Status.CANCEL_STATUS;
-		}
-		if (monitor.isCanceled()) {
+		if (!changes.isEmpty()
+				&& !builder.getMarkers().updateWithMarkerChanges(changes,
+						monitor)) {
+			// the markers have to be gathered again
+			setClean();
 			return Status.CANCEL_STATUS;
 		}
-		// update with sorted entries
-		updateIncrementalList(markerEntries);
-
 		if (monitor.isCanceled()) {
 			return Status.CANCEL_STATUS;
 		}
 		builder.getUpdateScheduler().scheduleUIUpdate(
 				MarkerUpdateScheduler.SHORT_DELAY);
-		if (monitor.isCanceled()) {
-			return Status.CANCEL_STATUS;
-		}
 		builder.setBuilding(false);
 		updateDone();
 		return Status.OK_STATUS;
 	}
 
 	/**
-	 * Update the list
+	 * Take the queued updates as a map from each changed marker to its latest
+	 * {@link MarkerEntry}, or to <code>null</code> if it was removed.
 	 * 
-	 * @param markerEntries
+	 * @param queue
+	 * @return Map
 	 */
-	private boolean updateIncrementalList(Collection markerEntries) {
-		markerEntries.clear();
-		Markers clone = builder.getMarkers();
-		synchronized (clone) {
-			clone = clone.getClone();
-		}
-		MarkerEntry[] entries = clone.getMarkerEntryArray();
-		for (int i = 0; i < entries.length; i++) {
-			markerEntries.add(entries[i]);
-		}
-		return true;
+	private Map takeChanges(LinkedList queue) {
+		Map changes = new HashMap();
+		boolean[] changeFlags = new boolean[] { false, false, false };
+		while (!queue.isEmpty()) {
+			MarkerUpdate update = (MarkerUpdate) queue.removeFirst();
+			putEntries(changes, update.added, false);
+			putEntries(changes, update.changed, false);
+			putEntries(changes, update.removed, true);
+			changeFlags[0] |= !update.added.isEmpty();
+			changeFlags[1] |= !update.removed.isEmpty();
+			changeFlags[2] |= !update.changed.isEmpty();
+		}
+		builder.updateChangeFlags(changeFlags);
+		return changes;
 	}
 
 	/**
-	 * Process the incremental updates
+	 * Put the entries in changes by their marker, replacing earlier changes
+	 * of the same markers.
 	 * 
-	 * @param monitor
-	 */
-	private boolean processUpdates(IProgressMonitor monitor) {
-		Collection markerEntries = incrementalEntries();
-		int addCount = 0, removedCount = 0, changedCount = 0, size = 0, newSize = 0;
-		LinkedList queue = getUpdatesQueue();
-		MarkerUpdate next = null;
-		do {
-			synchronized (queue) {
-				if (!queue.isEmpty()) {
-					next = (MarkerUpdate) queue.removeFirst();
-				} else {
-					next = null;
-				}
-			}
-			if (monitor.isCanceled() || next == null) {
-				break;
-			}
-			/**
-			 * The following performs incremental updation of the markers that
-			 * were gathered intially, and keeps them synched at any point with
-			 * the markers of interest in Workspace
-			 */
-			// unfortunately marker operations cannot be locked
-			// so locking between gathering of markers and
-			// marker deltas is not possible
-			size = markerEntries.size();
-			handleRemovedEntries(markerEntries, next.removed, monitor);
-			newSize = markerEntries.size();
-			removedCount += size - newSize;
-
-			handleChangedEntries(markerEntries, next.changed, monitor);
-			changedCount += next.changed.size();
-
-			size = newSize;
-			handleAddedEntries(markerEntries, next.added, monitor);
-			newSize = markerEntries.size();
-			removedCount += newSize - size;
-		} while (next != null);
-		boolean[] changeFlags = new boolean[] { addCount > 0, removedCount > 0,
-				changedCount > 0 };
-		for (int i = 0; i < changeFlags.length; i++) {
-			if (changeFlags[i]) {
-				builder.updateChangeFlags(changeFlags);
-				return true;
-			}
-		}
-		return false;
-	}
-
-	/**
-	 * @param added
-	 * @param monitor
+	 * @param changes
+	 * @param entries
+	 * @param removed
 	 */
-	private void handleAddedEntries(Collection markerEntries, Collection added,
-			IProgressMonitor monitor) {
-		MarkerContentGenerator generator = builder.getGenerator();
-		Iterator iterator = added.iterator();
+	private void putEntries(Map changes, Collection entries, boolean removed) {
+		Iterator iterator = entries.iterator();
 		while (iterator.hasNext()) {
 			MarkerEntry entry = (MarkerEntry) iterator.next();
-			if (generator.select(entry)) {
-				markerEntries.add(entry);
-			}
+			changes.put(entry.getMarker(), removed ? null : entry);
 		}
 	}
 
 	/**
-	 * @param changed
-	 * @param monitor
+	 * Request a clean
 	 */
-	private void handleChangedEntries(Collection markerEntries,
-			Collection changed, IProgressMonitor monitor) {
-		MarkerContentGenerator generator = builder.getGenerator();
-		Iterator iterator = changed.iterator();
-		while (iterator.hasNext()) {
-			MarkerEntry entry = (MarkerEntry) iterator.next();
-			Iterator iterator2 = markerEntries.iterator();
-			while (iterator2.hasNext()) {
-				MarkerEntry oldEntry = (MarkerEntry) iterator2.next();
-				if (oldEntry.getMarker().equals(entry.getMarker())) {
-					iterator2.remove();
-				}
-			}
-			if (!generator.select(entry)) {
-				iterator.remove();
-			}
-		}
-		markerEntries.addAll(changed);
-	}
-
-	/**
-	 * @param removed
-	 * @param monitor
-	 */
-	private void handleRemovedEntries(Collection markerEntries,
-			Collection removed, IProgressMonitor monitor) {
-		boolean found = false;
-		Iterator iterator = markerEntries.iterator();
-		while (iterator.hasNext()) {
-			MarkerEntry entry = (MarkerEntry) iterator.next();
-			found = entry.getStaleState();
-			if (found) {
-				iterator.remove();
-			}
-			if (removed.isEmpty()) {
-				continue;
-			}
-			Iterator iterator2 = removed.iterator();
-			while (iterator2.hasNext()) {
-				MarkerEntry stale = (MarkerEntry) iterator2.next();
-				if (stale.getMarker().equals(entry.getMarker())) {
-					iterator2.remove();
-					if (!found) {
-						iterator.remove();
-					}
-					break;
-				}
-			}
-		}
-		if (removed.isEmpty()) {
-			// TODO: do we check for residuals?
-			return;
-		}
-		// TODO: do we check for residuals?
-		iterator = markerEntries.iterator();
-		while (iterator.hasNext()) {
-			MarkerEntry entry = (MarkerEntry) iterator.next();
-			if (entry.getMarker() != null && !entry.getMarker().exists()) {
-				iterator.remove();
-			}
+	void setClean() {
+		synchronized (getUpdatesQueue()) {
+			cleanRequested = true;
 		}
+		super.setClean();
 	}
 
 	/**
 	 * Clean
 	 */
 	void clearEntries() {
-		incrementEntryList = new LinkedList();
-	}
-
-	/**
-	 * @return Returns the incrementEntryies.
-	 */
-	Collection incrementalEntries() {
-		return incrementEntryList;
+		LinkedList queue = getUpdatesQueue();
+		synchronized (queue) {
+			queue.clear();
+		}
 	}
 
 	/**
@@ -302,4 +191,4 @@ class IncrementUpdateJob extends MarkerUpdateJob {
 		}
 		return super.belongsTo(family);
 	}
-}
\ No newline at end of file
+}
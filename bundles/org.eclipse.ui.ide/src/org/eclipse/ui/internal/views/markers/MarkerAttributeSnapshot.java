@@ -0,0 +1,390 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.ui.internal.views.markers;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.ui.views.markers.MarkerViewUtil;
+
+import com.ibm.icu.text.CollationKey;
+import com.ibm.icu.text.Collator;
+
+/**
+ * The MarkerAttributeSnapshot holds the attributes of markers that are used
+ * for sorting and filtering, read once when the markers are gathered. The
+ * attributes are kept in columns with a row for each {@link MarkerEntry}:
+ * the numbers in primitive arrays, the strings shared between the rows that
+ * have equal values.
+ *
+ */
+class MarkerAttributeSnapshot {
+
+	/**
+	 * The value of a number attribute that is not set.
+	 */
+	static final int NO_VALUE = Integer.MIN_VALUE;
+
+	private static final String[] ATTRIBUTES = new String[] {
+			IMarker.SEVERITY, IMarker.PRIORITY, IMarker.LINE_NUMBER,
+			IMarker.MESSAGE, IMarker.LOCATION, MarkerViewUtil.NAME_ATTRIBUTE,
+			MarkerViewUtil.PATH_ATTRIBUTE };
+
+	private int size;
+
+	private int[] severities;
+	private int[] priorities;
+	private int[] lineNumbers;
+	private long[] creationTimes;
+	private String[] messages;
+	private String[] locations;
+	private String[] names;
+	private String[] paths;
+	private String[] types;
+
+	// the collation keys of the messages, shared like the messages
+	private CollationKey[] messageKeys;
+
+	// the strings of the rows, used to share equal values while gathering
+	private Map strings;
+
+	private boolean sharing = true;
+
+	// the collation keys by message, shared until every row has its key
+	private Map collationKeys;
+
+	// the number of rows that have their message key
+	private int keyedRows;
+
+	/**
+	 * Create a new instance of the receiver.
+	 *
+	 * @param capacity
+	 *            the number of rows to allocate initially
+	 */
+	MarkerAttributeSnapshot(int capacity) {
+		allocate(Math.max(capacity, 1));
+	}
+
+	/**
+	 * Return whether attribute is a number attribute of the receiver.
+	 *
+	 * @param attribute
+	 * @return boolean
+	 */
+	static boolean isIntAttribute(String attribute) {
+		return IMarker.SEVERITY.equals(attribute)
+				|| IMarker.PRIORITY.equals(attribute)
+				|| IMarker.LINE_NUMBER.equals(attribute);
+	}
+
+	/**
+	 * Return whether attribute is a string attribute of the receiver.
+	 *
+	 * @param attribute
+	 * @return boolean
+	 */
+	static boolean isStringAttribute(String attribute) {
+		return IMarker.MESSAGE.equals(attribute)
+				|| IMarker.LOCATION.equals(attribute)
+				|| MarkerViewUtil.NAME_ATTRIBUTE.equals(attribute);
+	}
+
+	/**
+	 * Add a row for marker and read its attributes.
+	 *
+	 * @param marker
+	 * @return int the row
+	 */
+	int add(IMarker marker) {
+		if (size == severities.length) {
+			allocate(size * 2);
+		}
+		int row = size++;
+		read(row, marker);
+		return row;
+	}
+
+	/**
+	 * Remove the last row added.
+	 */
+	void removeLast() {
+		size--;
+		messages[size] = null;
+		locations[size] = null;
+		names[size] = null;
+		paths[size] = null;
+		types[size] = null;
+		clearMessageKey(size);
+	}
+
+	/**
+	 * Read the attributes of marker into the row again.
+	 *
+	 * @param row
+	 * @param marker
+	 * @return <code>false</code> if the marker does not exist
+	 */
+	boolean read(int row, IMarker marker) {
+		clearMessageKey(row);
+		try {
+			Object[] values = marker.getAttributes(ATTRIBUTES);
+			severities[row] = intValue(values[0]);
+			priorities[row] = intValue(values[1]);
+			lineNumbers[row] = intValue(values[2]);
+			messages[row] = stringValue(values[3]);
+			locations[row] = stringValue(values[4]);
+			names[row] = stringValue(values[5]);
+			String path = stringValue(values[6]);
+			if (path == null) {
+				IPath fullPath = marker.getResource().getFullPath();
+				// the path of the container, not of the resource
+				if (fullPath.segmentCount() > 1) {
+					path = intern(fullPath.removeLastSegments(1)
+							.removeTrailingSeparator().toString());
+				} else {
+					path = MarkerSupportInternalUtilities.EMPTY_STRING;
+				}
+			}
+			paths[row] = path;
+			types[row] = intern(marker.getType());
+			creationTimes[row] = marker.getCreationTime();
+			return true;
+		} catch (CoreException e) {
+			severities[row] = NO_VALUE;
+			priorities[row] = NO_VALUE;
+			lineNumbers[row] = NO_VALUE;
+			messages[row] = null;
+			locations[row] = null;
+			names[row] = null;
+			paths[row] = null;
+			types[row] = null;
+			creationTimes[row] = -1;
+			return false;
+		}
+	}
+
+	/**
+	 * Release the spare rows and the tables used to share the strings and
+	 * their collation keys once no more rows are added.
+	 */
+	void trimToSize() {
+		if (size < severities.length) {
+			allocate(Math.max(size, 1));
+		}
+		synchronized (this) {
+			strings = null;
+			sharing = false;
+			collationKeys = null;
+		}
+	}
+
+	/**
+	 * Return the value of a number attribute, or {@link #NO_VALUE} if it is
+	 * not set.
+	 *
+	 * @param row
+	 * @param attribute
+	 *            one of the attributes for which
+	 *            {@link #isIntAttribute(String)} is <code>true</code>
+	 * @return int
+	 */
+	int getIntValue(int row, String attribute) {
+		if (IMarker.SEVERITY.equals(attribute)) {
+			return severities[row];
+		}
+		if (IMarker.PRIORITY.equals(attribute)) {
+			return priorities[row];
+		}
+		return lineNumbers[row];
+	}
+
+	/**
+	 * Return the value of a string attribute, or <code>null</code> if it is
+	 * not set.
+	 *
+	 * @param row
+	 * @param attribute
+	 *            one of the attributes for which
+	 *            {@link #isStringAttribute(String)} is <code>true</code>
+	 * @return String
+	 */
+	String getStringValue(int row, String attribute) {
+		if (IMarker.MESSAGE.equals(attribute)) {
+			return messages[row];
+		}
+		if (IMarker.LOCATION.equals(attribute)) {
+			return locations[row];
+		}
+		return names[row];
+	}
+
+	/**
+	 * Return the collation key of the message.
+	 *
+	 * @param row
+	 * @param defaultValue
+	 *            the message if it is not set
+	 * @return CollationKey
+	 */
+	CollationKey getMessageKey(int row, String defaultValue) {
+		CollationKey key = messageKeys[row];
+		if (key != null) {
+			return key;
+		}
+		String message = messages[row];
+		if (message == null) {
+			message = defaultValue;
+		}
+		synchronized (this) {
+			key = messageKeys[row];
+			if (key != null) {
+				return key;
+			}
+			if (message.length() == 0) {
+				key = MarkerSupportInternalUtilities.EMPTY_COLLATION_KEY;
+			} else {
+				if (collationKeys == null) {
+					collationKeys = new HashMap();
+				}
+				key = (CollationKey) collationKeys.get(message);
+				if (key == null) {
+					key = Collator.getInstance().getCollationKey(message);
+					collationKeys.put(message, key);
+				}
+			}
+			messageKeys[row] = key;
+			keyedRows++;
+			if (keyedRows == size) {
+				// no more keys to share until a row is read again
+				collationKeys = null;
+			}
+		}
+		return key;
+	}
+
+	private synchronized void clearMessageKey(int row) {
+		if (messageKeys[row] != null) {
+			messageKeys[row] = null;
+			keyedRows--;
+		}
+	}
+
+	/**
+	 * Return whether the attributes of the row were read.
+	 *
+	 * @param row
+	 * @return <code>false</code> if the marker did not exist when read
+	 */
+	boolean isRead(int row) {
+		return types[row] != null;
+	}
+
+	/**
+	 * @param row
+	 * @return the path of the container of the marker's resource, or the
+	 *         path set on the marker
+	 */
+	String getPath(int row) {
+		return paths[row];
+	}
+
+	/**
+	 * @param row
+	 * @return the id of the marker's type
+	 */
+	String getType(int row) {
+		return types[row];
+	}
+
+	/**
+	 * @param row
+	 * @return the creation time of the marker
+	 */
+	long getCreationTime(int row) {
+		return creationTimes[row];
+	}
+
+	private int intValue(Object value) {
+		if (value instanceof Integer) {
+			return ((Integer) value).intValue();
+		}
+		return NO_VALUE;
+	}
+
+	/*
+	 * The toString() is a no-op for string attribute values, but safeguards
+	 * against clients who used other objects as attribute values, see bug
+	 * 218249.
+	 */
+	private String stringValue(Object value) {
+		if (value == null) {
+			return null;
+		}
+		return intern(value.toString());
+	}
+
+	private synchronized String intern(String string) {
+		if (!sharing) {
+			return string;
+		}
+		if (strings == null) {
+			strings = new HashMap();
+		}
+		String shared = (String) strings.get(string);
+		if (shared == null) {
+			strings.put(string, string);
+			shared = string;
+		}
+		return shared;
+	}
+
+	private void allocate(int capacity) {
+		severities = copyOf(severities, capacity);
+		priorities = copyOf(priorities, capacity);
+		lineNumbers = copyOf(lineNumbers, capacity);
+		long[] newCreationTimes = new long[capacity];
+		if (creationTimes != null) {
+			System.arraycopy(creationTimes, 0, newCreationTimes, 0, size);
+		}
+		creationTimes = newCreationTimes;
+		messages = copyOf(messages, capacity);
+		locations = copyOf(locations, capacity);
+		names = copyOf(names, capacity);
+		paths = copyOf(paths, capacity);
+		types = copyOf(types, capacity);
+		CollationKey[] newMessageKeys = new CollationKey[capacity];
+		if (messageKeys != null) {
+			System.arraycopy(messageKeys, 0, newMessageKeys, 0, size);
+		}
+		messageKeys = newMessageKeys;
+	}
+
+	private int[] copyOf(int[] column, int capacity) {
+		int[] newColumn = new int[capacity];
+		if (column != null) {
+			System.arraycopy(column, 0, newColumn, 0, size);
+		}
+		return newColumn;
+	}
+
+	private String[] copyOf(String[] column, int capacity) {
+		String[] newColumn = new String[capacity];
+		if (column != null) {
+			System.arraycopy(column, 0, newColumn, 0, size);
+		}
+		return newColumn;
+	}
+}
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.internal.views.markers;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.ui.views.markers.MarkerItem;
+
+import com.ibm.icu.text.Collator;
+
+/**
+ * Class needed for testing the {@link MarkerAttributeSnapshot} and the
+ * entries reading their attributes into it.
+ */
+public class MarkerAttributeSnapshotTester {
+
+	private MarkerAttributeSnapshot snapshot;
+
+	/**
+	 * Create a new instance of the receiver with an empty snapshot.
+	 *
+	 * @param capacity
+	 */
+	public MarkerAttributeSnapshotTester(int capacity) {
+		snapshot = new MarkerAttributeSnapshot(capacity);
+	}
+
+	/**
+	 * @param marker
+	 * @return a new entry for marker, read into a new row of the snapshot
+	 */
+	public MarkerItem createEntry(IMarker marker) {
+		return new MarkerEntry(marker, snapshot);
+	}
+
+	/**
+	 * @param marker
+	 * @return a new entry for marker reading the attributes from the marker
+	 */
+	public MarkerItem createUnreadEntry(IMarker marker) {
+		return new MarkerEntry(marker);
+	}
+
+	/**
+	 * Remove the row of the last entry created, as the gathering does for a
+	 * marker that is filtered out.
+	 */
+	public void removeLast() {
+		snapshot.removeLast();
+	}
+
+	/**
+	 * Release the spare rows, as the gathering does once it is done.
+	 */
+	public void trimToSize() {
+		snapshot.trimToSize();
+	}
+
+	/**
+	 * Read the attributes of entry again, as a change delta does.
+	 *
+	 * @param entry
+	 *            an entry created by the receiver
+	 */
+	public void readAttributes(MarkerItem entry) {
+		((MarkerEntry) entry).readAttributes(snapshot);
+	}
+
+	/**
+	 * @param entry
+	 * @return whether the marker of entry did not exist when read
+	 */
+	public boolean isStale(MarkerItem entry) {
+		return ((MarkerEntry) entry).getStaleState();
+	}
+
+	/**
+	 * @param entry
+	 * @return the collation key of the message of entry
+	 */
+	public Object getMessageKey(MarkerItem entry) {
+		return ((MarkerEntry) entry).getCollationKey(IMarker.MESSAGE,
+				MarkerSupportInternalUtilities.EMPTY_STRING);
+	}
+
+	/**
+	 * @param message
+	 * @return the collation key the entries use for message
+	 */
+	public static Object createMessageKey(String message) {
+		if (message.length() == 0) {
+			return MarkerSupportInternalUtilities.EMPTY_COLLATION_KEY;
+		}
+		return Collator.getInstance().getCollationKey(message);
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2010 IBM Corporation and others.
+ * Copyright (c) 2007, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -69,6 +69,9 @@ public class MarkerContentGenerator {
 	private static final String TAG_LEGACY_FILTER_ENTRY = "filter"; //$NON-NLS-1$
 	private static final String TAG_MARKER_LIMIT = "markerLimit"; //$NON-NLS-1$
 	private static final String TAG_MARKER_LIMIT_ENABLED = "markerLimitEnabled"; //$NON-NLS-1$
+
+	// the number of markers to read the attributes of before growing
+	private static final int INITIAL_SNAPSHOT_SIZE = 256;
 	
 	/*Use this to indicate filter change rather than a null*/
 	private final Collection FILTERS_CHANGED = Collections.EMPTY_SET;
@@ -1064,7 +1067,8 @@ public class MarkerContentGenerator {
 	}
 
 	/**
-	 * Gather markers into result.
+	 * Gather markers into result. The attributes used for sorting and
+	 * filtering are read once for all the markers gathered.
 	 * @param typeIds
 	 * @param includeSubTypes
 	 * @param result
@@ -1072,6 +1076,8 @@ public class MarkerContentGenerator {
 	 */
 	boolean gatherMarkers(String[] typeIds, boolean includeSubTypes,
 			Collection result, IProgressMonitor monitor) {
+		MarkerAttributeSnapshot snapshot = new MarkerAttributeSnapshot(
+				INITIAL_SNAPSHOT_SIZE);
 		try {
 			Collection resources = getResourcesForBuild();
 			if (includeSubTypes) {
@@ -1083,7 +1089,7 @@ public class MarkerContentGenerator {
 				}
 				for (int i = 0; i < superTypes.length; i++) {
 					boolean success = internalGatherMarkers(resources,superTypes[i],
-							includeSubTypes, result, monitor);
+							includeSubTypes, snapshot, result, monitor);
 					if (!success || monitor.isCanceled()) {
 						return false;
 					}
@@ -1091,7 +1097,7 @@ public class MarkerContentGenerator {
 			} else {
 				for (int i = 0; i < typeIds.length; i++) {
 					boolean success = internalGatherMarkers(resources,typeIds[i],
-							includeSubTypes, result, monitor);
+							includeSubTypes, snapshot, result, monitor);
 					if (!success || monitor.isCanceled()) {
 						return false;
 					}
@@ -1102,6 +1108,7 @@ public class MarkerContentGenerator {
 			MarkerSupportInternalUtilities.showViewError(e);
 			return false;
 		} finally {
+			snapshot.trimToSize();
 		}
 		return true;
 	}
@@ -1113,11 +1120,13 @@ public class MarkerContentGenerator {
 	 * @param resources
 	 * @param typeId
 	 * @param includeSubTypes
+	 * @param snapshot
 	 * @param result
 	 * @param monitor
 	 */
 	private boolean internalGatherMarkers(Collection resources, String typeId,
-			boolean includeSubTypes, Collection result, IProgressMonitor monitor) {
+			boolean includeSubTypes, MarkerAttributeSnapshot snapshot,
+			Collection result, IProgressMonitor monitor) {
 		if (monitor.isCanceled()) {
 			return false;
 		}
@@ -1146,11 +1155,13 @@ public class MarkerContentGenerator {
 			MarkerEntry entry = null;
 			int lenght =  markers.length;
 			for (int i = 0; i < lenght; i++) {
-				entry = new MarkerEntry(markers[i]);
+				entry = new MarkerEntry(markers[i], snapshot);
 				if (select(entry, selected, filters, andFilters)) {
 					result.add(entry);
+				} else {
+					// the row of the entry is the last one
+					snapshot.removeLast();
 				}
-				entry.clearCache();
 				if (i % 500 == 0) {
 					if (monitor.isCanceled()) {
 						return false;
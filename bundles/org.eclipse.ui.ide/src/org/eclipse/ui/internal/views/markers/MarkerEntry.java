@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2009 IBM Corporation and others.
+ * Copyright (c) 2007, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -67,7 +67,16 @@ class MarkerEntry extends MarkerSupportItem implements IAdaptable {
 	// The key for the string we built for display
 	private static final Object LOCATION_STRING = "LOCATION_STRING"; //$NON-NLS-1$
 	private MarkerCategory category;
+	// the values read from a marker that has no snapshot
 	private Map cache = null;
+
+	/**
+	 * The attributes used for sorting and filtering, read when the marker
+	 * was gathered, and the row of the receiver in them. <code>null</code>
+	 * if the receiver reads the attributes from the marker.
+	 */
+	private MarkerAttributeSnapshot snapshot;
+	private int row;
 	
 	/**
 	 * Set the MarkerEntry to be stale, if discovered at any point of time
@@ -92,6 +101,18 @@ class MarkerEntry extends MarkerSupportItem implements IAdaptable {
 		stale = false;
 	}
 
+	/**
+	 * Create a new instance of the receiver that reads the attributes used
+	 * for sorting and filtering into snapshot.
+	 * 
+	 * @param marker
+	 * @param snapshot
+	 */
+	MarkerEntry(IMarker marker, MarkerAttributeSnapshot snapshot) {
+		this(marker);
+		readAttributes(snapshot);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -123,6 +144,13 @@ class MarkerEntry extends MarkerSupportItem implements IAdaptable {
 	 *      int)
 	 */
 	public int getAttributeValue(String attribute, int defaultValue) {
+		if (snapshot != null
+				&& MarkerAttributeSnapshot.isIntAttribute(attribute)) {
+			int value = snapshot.getIntValue(row, attribute);
+			if (value == MarkerAttributeSnapshot.NO_VALUE)
+				return defaultValue;
+			return value;
+		}
 
 		Object value = getAttributeValue(attribute);
 		if (value == null)
@@ -139,6 +167,27 @@ class MarkerEntry extends MarkerSupportItem implements IAdaptable {
 	 * @return Object or <code>null</code>
 	 */
 	Object getAttributeValue(String attribute) {
+		if (snapshot != null) {
+			if (MarkerAttributeSnapshot.isIntAttribute(attribute)) {
+				int value = snapshot.getIntValue(row, attribute);
+				if (value == MarkerAttributeSnapshot.NO_VALUE)
+					return null;
+				return new Integer(value);
+			}
+			if (MarkerAttributeSnapshot.isStringAttribute(attribute)) {
+				return snapshot.getStringValue(row, attribute);
+			}
+			// the other attributes are not in the snapshot
+			if (stale) {
+				return null;
+			}
+			try {
+				return marker.getAttribute(attribute);
+			} catch (CoreException e) {
+				checkIfMarkerStale();
+				return null;
+			}
+		}
 		Object value = getCache().get(attribute);
 		if(value == null) {
 			if(stale){
@@ -203,6 +252,14 @@ class MarkerEntry extends MarkerSupportItem implements IAdaptable {
 	 */
 	CollationKey getCollationKey(String attribute, String defaultValue) {
 		String attributeValue;
+		if (snapshot != null) {
+			if (IMarker.MESSAGE.equals(attribute))
+				return snapshot.getMessageKey(row, defaultValue);
+			attributeValue = getAttributeValue(attribute, defaultValue);
+			if (attributeValue.length() == 0)
+				return MarkerSupportInternalUtilities.EMPTY_COLLATION_KEY;
+			return Collator.getInstance().getCollationKey(attributeValue);
+		}
 		Object value = getCache().get(attribute);
 		if (value != null) {
 			// Only return a collation key otherwise 
@@ -232,6 +289,9 @@ class MarkerEntry extends MarkerSupportItem implements IAdaptable {
 		if(stale){
 			return -1;
 		}
+		if (snapshot != null) {
+			return snapshot.getCreationTime(row);
+		}
 		try {
 			return marker.getCreationTime();
 		} catch (CoreException e) {
@@ -269,7 +329,7 @@ class MarkerEntry extends MarkerSupportItem implements IAdaptable {
 		if(stale||checkIfMarkerStale()){
 			return MarkerSupportInternalUtilities.UNKNOWN_ATRRIBTE_VALUE_STRING;
 		}
-		if (getCache().containsKey(LOCATION_STRING)) {
+		if (snapshot == null && getCache().containsKey(LOCATION_STRING)) {
 			Object value = getCache().get(LOCATION_STRING);
 			if (value instanceof CollationKey)
 				return ((CollationKey) value).getSourceString();
@@ -281,7 +341,8 @@ class MarkerEntry extends MarkerSupportItem implements IAdaptable {
 		String locationString = getAttributeValue(IMarker.LOCATION,
 				MarkerSupportInternalUtilities.EMPTY_STRING);
 		if (locationString.length() > 0) {
-			getCache().put(LOCATION_STRING, locationString);
+			if (snapshot == null)
+				getCache().put(LOCATION_STRING, locationString);
 			return locationString;
 		}
 
@@ -294,7 +355,8 @@ class MarkerEntry extends MarkerSupportItem implements IAdaptable {
 			lineNumberString = NLS.bind(MarkerMessages.label_lineNumber,
 					Integer.toString(lineNumber));
 
-		getCache().put(LOCATION_STRING, lineNumberString);
+		if (snapshot == null)
+			getCache().put(LOCATION_STRING, lineNumberString);
 		return lineNumberString;
 
 	}
@@ -318,6 +380,10 @@ class MarkerEntry extends MarkerSupportItem implements IAdaptable {
 			return NLS.bind(MarkerMessages.FieldMessage_WrongType, marker
 					.toString());
 		}
+		if (snapshot != null) {
+			return MarkerTypesModel.getInstance().getType(
+					snapshot.getType(row)).getLabel();
+		}
 		try {
 			return MarkerTypesModel.getInstance().getType(marker.getType())
 					.getLabel();
@@ -333,6 +399,9 @@ class MarkerEntry extends MarkerSupportItem implements IAdaptable {
 			return NLS.bind(MarkerMessages.FieldMessage_WrongType, marker
 					.toString());
 		}
+		if (snapshot != null) {
+			return snapshot.getType(row);
+		}
 		try {
 			return marker.getType();
 		} catch (CoreException e) {
@@ -358,6 +427,12 @@ class MarkerEntry extends MarkerSupportItem implements IAdaptable {
 	 * @see org.eclipse.ui.views.markers.MarkerItem#getPath()
 	 */
 	public String getPath() {
+		if (snapshot != null) {
+			if (stale) {
+				return MarkerSupportInternalUtilities.UNKNOWN_ATRRIBTE_VALUE_STRING;
+			}
+			return snapshot.getPath(row);
+		}
 		String folder = getAttributeValue(MarkerViewUtil.PATH_ATTRIBUTE, null);
 		if (folder != null) {
 			return folder;
@@ -406,9 +481,29 @@ class MarkerEntry extends MarkerSupportItem implements IAdaptable {
 		this.marker = marker;
 		// reset stale
 		stale = false;
+		snapshot = null;
 		clearCache();
 	}
 
+	/**
+	 * Read the attributes used for sorting and filtering from the marker
+	 * again. They are read into the row of the receiver, or into a new row of
+	 * snapshot if the receiver has none.
+	 * 
+	 * @param attributes
+	 *            the snapshot to add a row to
+	 */
+	void readAttributes(MarkerAttributeSnapshot attributes) {
+		clearCache();
+		if (snapshot == null) {
+			snapshot = attributes;
+			row = attributes.add(marker);
+			stale = !attributes.isRead(row);
+		} else {
+			stale = !snapshot.read(row, marker);
+		}
+	}
+
 	/**
 	 * Get the cache for the receiver. Create if neccessary.
 	 * 
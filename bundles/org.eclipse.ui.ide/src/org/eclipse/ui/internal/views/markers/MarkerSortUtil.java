@@ -50,8 +50,8 @@ public class MarkerSortUtil {
 
 	/*
 	 * Increasing BATCH_SIZE increases memory consumption but increases speed,
-	 * and vice-versa.This indirectly controls the number of active caches in
-	 * MarkerEntry[] array passed for sorting.
+	 * and vice-versa. The attributes compared are read from the snapshot of
+	 * the entries, so no caches are filled while sorting.
 	 */
 	private static int BATCH_SIZE = 10000;
 
@@ -95,10 +95,6 @@ public class MarkerSortUtil {
 	 */
 	private static void adjustMaxElement(MarkerEntry[] heapArray, int first,
 			int heapSize, int last, Comparator comparator) {
-		/*
-		 * we do not clear caches for heap elements when re-adjusting and
-		 * sorting this will ensure sorting remains fast
-		 */
 		int current = heapSize;
 		while (current <= last) {
 			if (comparator.compare(heapArray[current], heapArray[first]) < 0) {
@@ -107,9 +103,6 @@ public class MarkerSortUtil {
 				heapArray[first] = tmp;
 				adjustHeap(heapArray, first, first, heapSize, comparator);
 			}
-			// clear cache of the one not in heap
-			heapArray[current].clearCache();
-
 			++current;
 		}
 	}
@@ -117,9 +110,6 @@ public class MarkerSortUtil {
 	/**
 	 *  Re-adjust the elements in the heap to maintain heap-property
 	 *  
-	 *  Note: caches are not cleared in this method, as it would offset
-	 *  to a certain extent the benefit of caching in sorting.
-	 *  
 	 * @param array
 	 * @param first
 	 * @param position
@@ -278,8 +268,6 @@ public class MarkerSortUtil {
 		//TODO:Use mergesort to convert the heap to sorted array?
 		
 		while (last - first > 1) {
-			// clear cache sorted and present at the end
-			array[last].clearCache();
 			// leave out the max elements at the end
 			MarkerEntry tmp = array[--last];
 			array[last] = array[first];
@@ -287,8 +275,6 @@ public class MarkerSortUtil {
 			// readjust for next max
 			adjustHeap(array, first, first, last, comparator);
 		}
-		array[first+1].clearCache();
-		array[first].clearCache();
 	}
 
 	/**
@@ -319,15 +305,11 @@ public class MarkerSortUtil {
 				/*|| ((float) n / k) <= MERGE_OR_HEAP_SWITCH*/) { 
 			// use arrays sort
 			Arrays.sort(entries, from, to + 1, comparator);
-			// clear cache for first to middle since we are done with sort
-			for (int i = from; i <= to; i++) {
-				entries[i].clearCache();
-			}
 			return;
 		}
 		
 		// do it in blocks of BATCH_SIZE so we get a chance
-		// of clearing caches to keep memory usage to a minimum
+		// to check the monitor
 
 		//we choose k-1 so that last batch includes last element 
 		//in case k is a multiple of  BATCH_SIZE
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2008 IBM Corporation and others.
+ * Copyright (c) 2007, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -51,6 +51,11 @@ public class MarkerTypeFieldFilter extends CompatibilityFieldFilter {
 		IMarker marker = item.getMarker();
 		if (marker == null)// OK if all are selected
 			return contentGenerator.allTypesSelected(selectedTypes);
+		if (item instanceof MarkerEntry) {
+			// the type was read when the marker was gathered
+			return selectedTypes.contains(MarkerTypesModel.getInstance()
+					.getType(((MarkerEntry) item).getMarkerTypeId()));
+		}
 		try {
 			return selectedTypes.contains(MarkerTypesModel.getInstance()
 					.getType(marker.getType()));
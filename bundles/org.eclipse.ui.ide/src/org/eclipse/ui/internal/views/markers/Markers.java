@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009 IBM Corporation and others.
+ * Copyright (c) 2009, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,6 +12,8 @@
 package org.eclipse.ui.internal.views.markers;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -21,8 +23,10 @@ import java.util.Map;
 import java.util.TreeMap;
 
 import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.ui.views.markers.MarkerItem;
 import org.eclipse.ui.views.markers.internal.MarkerGroup;
 import org.eclipse.ui.views.markers.internal.MarkerGroupingEntry;
@@ -39,11 +43,20 @@ class Markers {
 
 	static final MarkerCategory[] EMPTY_CATEGORY_ARRAY = new MarkerCategory[0];
 	static final MarkerEntry[] EMPTY_ENTRY_ARRAY = new MarkerEntry[0];
+	static final MarkerGroupingEntry[] EMPTY_GROUPING_ARRAY = new MarkerGroupingEntry[0];
 
 	// the marker entries
 	private MarkerEntry[] markerEntryArray = EMPTY_ENTRY_ARRAY;
 	// the categories
 	private MarkerCategory[] categories = EMPTY_CATEGORY_ARRAY;
+	// the grouping entries of the categories, in the order of the categories
+	private MarkerGroupingEntry[] categoryEntries = EMPTY_GROUPING_ARRAY;
+	// the group the categories were made for
+	private MarkerGroup categoryGroup;
+	// the number of sorted entries at the start of each category, or of all
+	// the entries if they are not grouped; the entries after them are not
+	// smaller than any of them
+	private int[] sortedCounts = new int[] { 0 };
 
 	private CachedMarkerBuilder builder;
 
@@ -80,7 +93,11 @@ class Markers {
 			markerCounts = null;
 			if (markerEntries.size() == 0) {
 				categories = EMPTY_CATEGORY_ARRAY;
+				categoryEntries = EMPTY_GROUPING_ARRAY;
+				categoryGroup = builder.getCategoryGroup();
+				sortedCounts = new int[] { 0 };
 				markerEntryArray = EMPTY_ENTRY_ARRAY;
+				markerCounts = getMarkerCounts(markerEntryArray);
 				return true;
 			}
 			if (monitor.isCanceled()) {
@@ -88,6 +105,8 @@ class Markers {
 			}
 			markerEntryArray = new MarkerEntry[markerEntries.size()];
 			markerEntries.toArray(markerEntryArray);
+			// counted once, the incremental updates keep them up to date
+			markerCounts = getMarkerCounts(markerEntryArray);
 			if (sortAndGroup) {
 				if (monitor.isCanceled()) {
 					return false;
@@ -99,6 +118,9 @@ class Markers {
 				}
 			} else {
 				categories = EMPTY_CATEGORY_ARRAY;
+				categoryEntries = EMPTY_GROUPING_ARRAY;
+				categoryGroup = null;
+				sortedCounts = new int[] { 0 };
 			}
 			return true;
 		} finally {
@@ -122,7 +144,9 @@ class Markers {
 				categories = markerCategories;
 			} else {
 				categories = EMPTY_CATEGORY_ARRAY;
+				categoryEntries = EMPTY_GROUPING_ARRAY;
 			}
+			categoryGroup = builder.getCategoryGroup();
 
 			if (monitor.isCanceled()) {
 				return false;
@@ -148,6 +172,7 @@ class Markers {
 			if (builder.isShowingHierarchy()) {
 				Comparator comparator = builder.getComparator()
 						.getFieldsComparator();
+				sortedCounts = new int[categories.length];
 				for (int i = 0; i < categories.length; i++) {
 					if (monitor.isCanceled()) {
 						return false;
@@ -160,8 +185,10 @@ class Markers {
 					MarkerSortUtil.sortStartingKElement(markerEntryArray,
 							comparator, category.start, category.end, effLimit,
 							monitor);
+					sortedCounts[i] = effLimit;
 				}
 			} else {
+				sortedCounts = new int[] { 0 };
 				if (monitor.isCanceled()) {
 					return false;
 				}
@@ -169,6 +196,7 @@ class Markers {
 				int effLimit = getShowingLimit(avaialble);
 				MarkerSortUtil.sortStartingKElement(markerEntryArray,
 						builder.getComparator(), effLimit, monitor);
+				sortedCounts[0] = Math.max(effLimit, 0);
 			}
 			if (monitor.isCanceled()) {
 				return false;
@@ -214,16 +242,20 @@ class Markers {
 		int start = 0;
 		MarkerCategory[] markerCategories = new MarkerCategory[boundaryInfoMap
 				.size()];
+		MarkerGroupingEntry[] groupingEntries = new MarkerGroupingEntry[boundaryInfoMap
+				.size()];
 		int i = 0;
 		int end = 0;
 		while (iterator.hasNext()) {
 			Object key = iterator.next();
 			end = ((Integer) boundaryInfoMap.get(key)).intValue();
+			groupingEntries[i] = (MarkerGroupingEntry) key;
 			markerCategories[i++] = new MarkerCategory(this, start, end,
 					builder.getCategoryGroup().getMarkerField()
 							.getValue(newMarkers[start]));
 			start = end + 1;
 		}
+		categoryEntries = groupingEntries;
 		return markerCategories;
 	}
 
@@ -283,6 +315,399 @@ class Markers {
 		return map;
 	}
 
+	/**
+	 * Patch the marker entries with the markers that were added, removed or
+	 * changed since they were gathered, keeping them filtered, grouped and
+	 * sorted. Only the changed markers are read, filtered and compared: the
+	 * present entries of the changed markers are looked up in the marker map
+	 * and located within the bounds of their category, the ones that still
+	 * pass the filters are put back where they sort. The entries are copied
+	 * once into a new array so that the clones in use by the UI remain
+	 * unchanged; the marker map and the marker counts are updated in place.
+	 * 
+	 * @param changes
+	 *            a {@link Map} from each changed {@link IMarker} to a new
+	 *            {@link MarkerEntry} for it, or to <code>null</code> if the
+	 *            marker was removed. The entries of markers that are already
+	 *            present are replaced by their present ones.
+	 * @param monitor
+	 * @return <code>false</code> if the changes could not be applied and the
+	 *         markers need to be gathered again
+	 */
+	synchronized boolean updateWithMarkerChanges(Map changes,
+			IProgressMonitor monitor) {
+		MarkerGroup group = builder.getCategoryGroup();
+		if (monitor.isCanceled() || group != categoryGroup) {
+			return false;
+		}
+		boolean initialVal = inChange;
+		try {
+			inChange = true;
+			boolean grouped = group != null;
+			Comparator comparator = grouped ? builder.getComparator()
+					.getFieldsComparator() : builder.getComparator();
+
+			// the categories as they are
+			List ranges = new ArrayList();
+			int rangeCount = grouped ? categories.length : 1;
+			for (int i = 0; i < rangeCount; i++) {
+				Range range = new Range();
+				if (grouped) {
+					range.groupingEntry = categoryEntries[i];
+					range.name = categories[i].getName();
+					range.start = categories[i].start;
+					range.end = categories[i].end;
+				} else {
+					range.start = 0;
+					range.end = markerEntryArray.length - 1;
+				}
+				range.sortedEnd = Math.min(range.start
+						+ (i < sortedCounts.length ? sortedCounts[i] : 0),
+						range.end + 1);
+				ranges.add(range);
+			}
+
+			// take out the present entries of the changed markers
+			Map entries = getMarkerToEntryMap();
+			int[] counts = new int[4];
+			BitSet removed = new BitSet(markerEntryArray.length);
+			int removedCount = 0;
+			Iterator iterator = changes.entrySet().iterator();
+			while (iterator.hasNext()) {
+				Map.Entry change = (Map.Entry) iterator.next();
+				MarkerEntry present = (MarkerEntry) entries.remove(change
+						.getKey());
+				if (present == null) {
+					continue;
+				}
+				Range range = null;
+				int index = -1;
+				for (int i = 0; i < ranges.size() && index < 0; i++) {
+					range = (Range) ranges.get(i);
+					index = indexOfSorted(markerEntryArray, range.start,
+							range.sortedEnd, present, comparator);
+				}
+				for (int i = 0; i < ranges.size() && index < 0; i++) {
+					range = (Range) ranges.get(i);
+					index = indexOf(markerEntryArray, range.sortedEnd,
+							range.end + 1, present);
+				}
+				if (index < 0) {
+					// the entry no longer sorts where it was sorted
+					for (int i = 0; i < ranges.size() && index < 0; i++) {
+						range = (Range) ranges.get(i);
+						index = indexOf(markerEntryArray, range.start,
+								range.sortedEnd, present);
+					}
+				}
+				if (index < 0) {
+					return false;
+				}
+				removed.set(index);
+				removedCount++;
+				range.removed++;
+				if (index < range.sortedEnd) {
+					range.removedSorted++;
+				}
+				counts[getCountIndex(present)]--;
+				if (change.getValue() != null) {
+					change.setValue(present);
+				}
+			}
+
+			// select the entries of the changed markers again
+			MarkerContentGenerator generator = builder.getGenerator();
+			IResource[] selected = generator.getSelectedResources();
+			Collection filters = generator.getEnabledFilters();
+			boolean andFilters = generator.andFilters();
+			// the attributes of the markers that were not gathered before
+			MarkerAttributeSnapshot snapshot = new MarkerAttributeSnapshot(
+					changes.size());
+			int addedCount = 0;
+			iterator = changes.values().iterator();
+			while (iterator.hasNext()) {
+				MarkerEntry entry = (MarkerEntry) iterator.next();
+				if (entry == null) {
+					continue;
+				}
+				IMarker marker = entry.getMarker();
+				if (!marker.exists()) {
+					continue;
+				}
+				entry.readAttributes(snapshot);
+				if (!generator.select(entry, selected, filters, andFilters)) {
+					continue;
+				}
+				Range range;
+				if (grouped) {
+					MarkerGroupingEntry groupingEntry;
+					try {
+						groupingEntry = group.findGroupValue(marker.getType(),
+								marker);
+					} catch (CoreException e) {
+						entry.checkIfMarkerStale();
+						continue;
+					}
+					range = findRange(ranges, groupingEntry, group
+							.getEntriesComparator());
+				} else {
+					range = (Range) ranges.get(0);
+				}
+				range.additions.add(entry);
+				entries.put(marker, entry);
+				counts[getCountIndex(entry)]++;
+				addedCount++;
+			}
+			snapshot.trimToSize();
+
+			// merge the selected entries into the sorted ones
+			MarkerEntry[] newEntries = new MarkerEntry[markerEntryArray.length
+					- removedCount + addedCount];
+			int position = 0;
+			for (int i = 0; i < ranges.size(); i++) {
+				Range range = (Range) ranges.get(i);
+				MarkerEntry[] added = new MarkerEntry[range.additions.size()];
+				range.additions.toArray(added);
+				Arrays.sort(added, comparator);
+				int from = range.start;
+				int sorted = range.sortedEnd - range.start
+						- range.removedSorted;
+				boolean unsortedTail = sorted < range.end - range.start + 1
+						- range.removed;
+				int newStart = position;
+				List tail = new ArrayList();
+				for (int j = 0; j < added.length; j++) {
+					int index = insertionPoint(markerEntryArray, from,
+							range.sortedEnd, added[j], comparator, removed);
+					if (index == range.sortedEnd && unsortedTail) {
+						// greater than the sorted ones, any position in the
+						// unsorted tail will do
+						tail.add(added[j]);
+						continue;
+					}
+					position = copyKept(markerEntryArray, from, index,
+							newEntries, position, removed);
+					newEntries[position++] = added[j];
+					sorted++;
+					from = index;
+				}
+				position = copyKept(markerEntryArray, from, range.end + 1,
+						newEntries, position, removed);
+				for (int j = 0; j < tail.size(); j++) {
+					newEntries[position++] = (MarkerEntry) tail.get(j);
+				}
+				range.start = newStart;
+				range.size = position - newStart;
+
+				// sort the smallest of the tail if the removals left too
+				// few sorted entries
+				int limit = getShowingLimit(range.size);
+				if (sorted < limit) {
+					MarkerSortUtil.sortStartingKElement(newEntries,
+							comparator, range.start + sorted, range.start
+									+ range.size - 1, limit - sorted,
+							new NullProgressMonitor());
+					sorted = limit;
+				}
+				range.sorted = sorted;
+			}
+
+			// rebuild the categories
+			if (grouped) {
+				List newCategories = new ArrayList();
+				List newCategoryEntries = new ArrayList();
+				List newSortedCounts = new ArrayList();
+				for (int i = 0; i < ranges.size(); i++) {
+					Range range = (Range) ranges.get(i);
+					if (range.size == 0) {
+						continue;
+					}
+					String name = range.name;
+					if (name == null) {
+						name = group.getMarkerField().getValue(
+								newEntries[range.start]);
+					}
+					newCategories.add(new MarkerCategory(this, range.start,
+							range.start + range.size - 1, name));
+					newCategoryEntries.add(range.groupingEntry);
+					newSortedCounts.add(new Integer(range.sorted));
+				}
+				categories = new MarkerCategory[newCategories.size()];
+				newCategories.toArray(categories);
+				categoryEntries = new MarkerGroupingEntry[newCategoryEntries
+						.size()];
+				newCategoryEntries.toArray(categoryEntries);
+				sortedCounts = new int[newSortedCounts.size()];
+				for (int i = 0; i < sortedCounts.length; i++) {
+					sortedCounts[i] = ((Integer) newSortedCounts.get(i))
+							.intValue();
+				}
+			} else {
+				sortedCounts = new int[] { ((Range) ranges.get(0)).sorted };
+			}
+			markerEntryArray = newEntries;
+			if (markerCounts != null) {
+				// a new array, the clones in use by the UI share the old one
+				markerCounts = new Integer[] {
+						new Integer(markerCounts[0].intValue() + counts[2]),
+						new Integer(markerCounts[1].intValue() + counts[1]),
+						new Integer(markerCounts[2].intValue() + counts[0]),
+						new Integer(markerCounts[3].intValue() + counts[3]) };
+			}
+			return true;
+		} finally {
+			inChange = initialVal;
+		}
+	}
+
+	/**
+	 * Find the range of the category for the grouping entry, adding one if
+	 * there is none yet.
+	 * 
+	 * @param ranges
+	 *            the ranges of the categories in sort order
+	 * @param groupingEntry
+	 * @param comparator
+	 *            the comparator of the grouping entries
+	 * @return Range
+	 */
+	private static Range findRange(List ranges,
+			MarkerGroupingEntry groupingEntry, Comparator comparator) {
+		int low = 0;
+		int high = ranges.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			int value = comparator.compare(
+					((Range) ranges.get(middle)).groupingEntry, groupingEntry);
+			if (value == 0) {
+				return (Range) ranges.get(middle);
+			}
+			if (value < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		Range range = new Range();
+		range.groupingEntry = groupingEntry;
+		ranges.add(low, range);
+		return range;
+	}
+
+	/**
+	 * Return the index of entry between low and high, where the entries are
+	 * sorted, or -1 if it is not there.
+	 * 
+	 * @param entries
+	 * @param low
+	 * @param high
+	 *            the index after the last sorted entry
+	 * @param entry
+	 * @param comparator
+	 * @return int
+	 */
+	private static int indexOfSorted(MarkerEntry[] entries, int low,
+			int high, MarkerEntry entry, Comparator comparator) {
+		int first = low;
+		int last = high;
+		while (first < last) {
+			int middle = (first + last) >>> 1;
+			if (comparator.compare(entries[middle], entry) < 0) {
+				first = middle + 1;
+			} else {
+				last = middle;
+			}
+		}
+		for (int i = first; i < high
+				&& comparator.compare(entries[i], entry) == 0; i++) {
+			if (entries[i] == entry) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Return the index of entry between low and high, or -1 if it is not
+	 * there.
+	 * 
+	 * @param entries
+	 * @param low
+	 * @param high
+	 *            the index after the last entry to look at
+	 * @param entry
+	 * @return int
+	 */
+	private static int indexOf(MarkerEntry[] entries, int low, int high,
+			MarkerEntry entry) {
+		for (int i = low; i < high; i++) {
+			if (entries[i] == entry) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Return the index after the last entry between low and high that is not
+	 * greater than entry, skipping the removed entries.
+	 * 
+	 * @param entries
+	 *            the entries, sorted between low and high
+	 * @param low
+	 * @param high
+	 *            the index after the last sorted entry
+	 * @param entry
+	 * @param comparator
+	 * @param removed
+	 *            the indices of the entries that were taken out
+	 * @return int
+	 */
+	private static int insertionPoint(MarkerEntry[] entries, int low,
+			int high, MarkerEntry entry, Comparator comparator, BitSet removed) {
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			// the removed entries were read again and may sort elsewhere
+			int kept = removed.nextClearBit(middle);
+			if (kept >= high) {
+				high = middle;
+			} else if (comparator.compare(entries[kept], entry) <= 0) {
+				low = kept + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Copy the entries between from and to that were not removed.
+	 * 
+	 * @param source
+	 * @param from
+	 * @param to
+	 *            the index after the last entry to copy
+	 * @param target
+	 * @param position
+	 *            the index in target to copy to
+	 * @param removed
+	 *            the indices of the entries that were taken out
+	 * @return the index in target after the copied entries
+	 */
+	private static int copyKept(MarkerEntry[] source, int from, int to,
+			MarkerEntry[] target, int position, BitSet removed) {
+		while (from < to) {
+			int next = removed.nextSetBit(from);
+			if (next < 0 || next > to) {
+				next = to;
+			}
+			System.arraycopy(source, from, target, position, next - from);
+			position += next - from;
+			from = next + 1;
+		}
+		return position;
+	}
+
 	/**
 	 * Returns an array of marker counts where getMarkerCounts()[severity] is
 	 * the number of markers in the list with the given severity.
@@ -309,35 +734,50 @@ class Markers {
 	static Integer[] getMarkerCounts(MarkerEntry[] entries) {
 		int[] ints = new int[] { 0, 0, 0, 0 };
 		for (int idx = 0; idx < entries.length; idx++) {
-			IMarker marker = entries[idx].getMarker();
-			int severity = -1;
-			Object value = null;
-			try {
-				value = marker.getAttribute(IMarker.SEVERITY);
-			} catch (CoreException e) {
-				entries[idx].checkIfMarkerStale();
-			}
-			if (value instanceof Integer) {
-				severity = ((Integer) value).intValue();
-			}
-			if (severity >= IMarker.SEVERITY_INFO) {
-				ints[severity]++;
-			} else {
-				ints[3]++;
-			}
+			ints[getCountIndex(entries[idx])]++;
 		}
 
 		return new Integer[] { new Integer(ints[2]), new Integer(ints[1]),
 				new Integer(ints[0]), new Integer(ints[3]) };
 	}
 
+	/**
+	 * Return the index of the count of the severity of entry, the severity
+	 * for infos, warnings and errors and 3 for the others.
+	 * 
+	 * @param entry
+	 * @return int
+	 */
+	private static int getCountIndex(MarkerEntry entry) {
+		int severity = -1;
+		Object value = entry.getAttributeValue(IMarker.SEVERITY);
+		if (value instanceof Integer) {
+			severity = ((Integer) value).intValue();
+		}
+		if (severity >= IMarker.SEVERITY_INFO
+				&& severity <= IMarker.SEVERITY_ERROR) {
+			return severity;
+		}
+		return 3;
+	}
+
 	/**
 	 * Return the {@link MarkerItem} that maps to marker.
 	 * 
 	 * @param marker
 	 * @return {@link MarkerItem}
 	 */
-	public MarkerItem getMarkerItem(IMarker marker) {
+	public synchronized MarkerItem getMarkerItem(IMarker marker) {
+		return (MarkerItem) getMarkerToEntryMap().get(marker);
+	}
+
+	/**
+	 * Return the map from the markers to their entries, creating it if
+	 * necessary.
+	 * 
+	 * @return {@link Map}
+	 */
+	private Map getMarkerToEntryMap() {
 		if (markerToEntryMap == null) {
 			markerToEntryMap = new HashMap();
 			for (int i = 0; i < markerEntryArray.length; i++) {
@@ -346,11 +786,7 @@ class Markers {
 					markerToEntryMap.put(nextMarker, markerEntryArray[i]);
 			}
 		}
-
-		if (markerToEntryMap.containsKey(marker))
-			return (MarkerItem) markerToEntryMap.get(marker);
-
-		return null;
+		return markerToEntryMap;
 	}
 
 	/**
@@ -392,6 +828,7 @@ class Markers {
 		if (!inChange) {
 			markers.markerEntryArray = markerEntryArray;
 			markers.categories = categories;
+			markers.markerCounts = markerCounts;
 		}
 		return markers;
 	}
@@ -440,4 +877,23 @@ class Markers {
 		}
 		return true;
 	}
+
+	/**
+	 * A category of the marker entries being patched, or all the entries if
+	 * they are not grouped.
+	 */
+	private static class Range {
+		MarkerGroupingEntry groupingEntry;
+		String name;
+		// the entries of the category before the changes
+		int start;
+		int end = -1;
+		int sortedEnd;
+		int removed;
+		int removedSorted;
+		// the entries of the category after the changes
+		int size;
+		int sorted;
+		List additions = new ArrayList();
+	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009 IBM Corporation and others.
+ * Copyright (c) 2009, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -180,14 +180,12 @@ class MarkersChangeListener implements IResourceChangeListener {
 
 	/**
 	 * Handle changes incrementally. 
-	 * The following performs incremental updation
-	 * of the markers that were gathered initially, and keeps them synched at
-	 * any point with the markers of interest in Workspace. Unfortunately marker
-	 * operations cannot be locked so locking between gathering of markers and
-	 * marker deltas is not possible.
-	 * 
-	 * Note : this method of updating is NOT used and tested yet and has holes
-	 * but left out SOLELY for further investigation(*).
+	 * The following queues the marker deltas of interest for the update job,
+	 * which applies them to the markers that were gathered initially, and keeps
+	 * them synched at any point with the markers of interest in Workspace.
+	 * Unfortunately marker operations cannot be locked so locking between
+	 * gathering of markers and marker deltas is not possible; the update job
+	 * applies the changes that come in while gathering after it.
 	 * 
 	 * @param event
 	 */
@@ -231,7 +229,6 @@ class MarkersChangeListener implements IResourceChangeListener {
 		if (removed.size() > 0 || added.size() > 0 || changed.size() > 0) {
 			MarkerUpdate update = new MarkerUpdate(added, removed, changed);
 			builder.incrementalUpdate(update);
-			builder.getUpdateScheduler().scheduleUpdate();
 		} else {
 			handleNoMarkerChange();
 		}
@@ -494,6 +491,9 @@ class MarkerUpdateScheduler {
 	
 	private MarkerUpdateTimer updateTimer;
 
+	// whether the update scheduled by the timer gathers the markers again
+	private boolean cleanPending;
+
 	/**
 	 * @param view 
 	 * @param builder 
@@ -558,6 +558,7 @@ class MarkerUpdateScheduler {
 	void scheduleUpdate(boolean[] changeFlags) {
 		synchronized (updateTimer) {
 			builder.updateChangeFlags(changeFlags);
+			cleanPending = true;
 			updateTimer.update();
 		}
 	}
@@ -567,11 +568,40 @@ class MarkerUpdateScheduler {
 	 */
 
 	void scheduleUpdate() {
+		synchronized (updateTimer) {
+			cleanPending = true;
+			updateTimer.update();
+		}
+	}
+
+	/**
+	 * Schedule applying the marker changes queued for the incremental update.
+	 * The update is throttled like the others but does not gather the markers
+	 * again, unless a clean update is pending.
+	 */
+	void scheduleIncrementalUpdate() {
 		synchronized (updateTimer) {
 			updateTimer.update();
 		}
 	}
 
+	/**
+	 * Schedule the update requested through the timer.
+	 */
+	private void scheduleTimedUpdate(long delay, boolean cancelPrevious) {
+		boolean clean = cleanPending;
+		cleanPending = false;
+		builder.setBuilding(true);
+		// cancelling a running incremental update would gather the markers
+		if (cancelPrevious && clean) {
+			cancelQueuedUIUpdates();
+			cancelUpdate();
+		}
+		// the incremental update reports the kinds of changes it applied
+		updateJob = builder.scheduleUpdateJob(delay, clean, new boolean[] {
+				clean, false, false });
+	}
+
 	/**
 	 * Schedule pending updates to happen quickly.
 	 */
@@ -808,7 +838,7 @@ class MarkerUpdateScheduler {
 
 		private void go(long delay, boolean cancelPrevious) {
 			timeB4Update = System.currentTimeMillis() + delay;
-			scheduleUpdate(delay + AFTER_MARGIN, cancelPrevious);
+			scheduleTimedUpdate(delay + AFTER_MARGIN, cancelPrevious);
 		}
 	}
 }
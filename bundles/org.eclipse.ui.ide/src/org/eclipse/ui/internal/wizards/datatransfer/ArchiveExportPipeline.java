@@ -0,0 +1,338 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.internal.wizards.datatransfer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * Exports the entries of an archive in a pipeline. Worker threads read the
+ * contents of the files, and compress them where the archive format allows
+ * it, while the exporting thread appends the prepared entries to the archive
+ * in the order they were added.
+ * <p>
+ * The entries waiting to be written are bounded in number and in the size of
+ * their buffered contents. Files too large to be buffered are read by the
+ * exporting thread when their turn comes, while the workers go on preparing
+ * the entries behind them.
+ * </p>
+ * <p>
+ * Except for {@link Entry#prepare()}, all methods are called from the
+ * exporting thread. Failures to export an entry are reported to
+ * {@link #exportFailed(IResource, Exception)}.
+ * </p>
+ */
+public abstract class ArchiveExportPipeline {
+
+	/**
+	 * The most bytes buffered by entries that are not written yet.
+	 */
+	static final int BUFFER_LIMIT = 32 * 1024 * 1024;
+
+	/**
+	 * The size of the largest file that is buffered.
+	 */
+	static final int ENTRY_LIMIT = BUFFER_LIMIT / 4;
+
+	/**
+	 * An entry of the archive. Entries that buffer their contents are
+	 * prepared in a worker thread; all entries are written in the exporting
+	 * thread, in the order they were added to the pipeline.
+	 */
+	public abstract static class Entry {
+		private IResource resource;
+
+		private int bufferSize;
+
+		private boolean prepared;
+
+		private Throwable failure;
+
+		/**
+		 * Create a new entry.
+		 *
+		 * @param resource the exported resource
+		 * @param bufferSize the number of bytes the entry buffers when it is
+		 *            prepared, or 0 if the entry is written without
+		 *            preparing it
+		 */
+		protected Entry(IResource resource, int bufferSize) {
+			this.resource = resource;
+			this.bufferSize = bufferSize;
+			this.prepared = bufferSize == 0;
+		}
+
+		/**
+		 * Returns the number of bytes the entry buffers when it is prepared.
+		 *
+		 * @return the size of the buffered contents, or 0 if the entry is not
+		 *         prepared
+		 */
+		protected final int getBufferSize() {
+			return bufferSize;
+		}
+
+		/**
+		 * Reads the contents of the entry into memory, for writing them
+		 * later. Called in a worker thread, only if the entry buffers its
+		 * contents.
+		 *
+		 * @throws IOException
+		 * @throws CoreException
+		 */
+		protected abstract void prepare() throws IOException, CoreException;
+
+		/**
+		 * Writes the entry to the archive. Called in the exporting thread,
+		 * after the entry was prepared.
+		 *
+		 * @throws IOException
+		 * @throws CoreException
+		 */
+		protected abstract void write() throws IOException, CoreException;
+	}
+
+	/**
+	 * Lock for the queue, the disposed flag and the prepared state of the
+	 * entries.
+	 */
+	private Object lock = new Object();
+
+	/**
+	 * the entries to prepare, oldest first
+	 */
+	private LinkedList queue = new LinkedList();
+
+	private boolean disposed = false;
+
+	/**
+	 * the entries that are not written yet, in the order they were added
+	 */
+	private LinkedList pending = new LinkedList();
+
+	/**
+	 * the number of bytes buffered by the pending entries
+	 */
+	private int buffered = 0;
+
+	private int maxPending;
+
+	/**
+	 * Create a new pipeline and start its worker threads.
+	 *
+	 * @param workerCount the number of worker threads
+	 */
+	public ArchiveExportPipeline(int workerCount) {
+		maxPending = workerCount * 4;
+		for (int i = 0; i < workerCount; i++) {
+			Thread worker = new Thread("Archive Export") { //$NON-NLS-1$
+				public void run() {
+					prepareEntries();
+				}
+			};
+			worker.setDaemon(true);
+			worker.start();
+		}
+	}
+
+	/**
+	 * Report that an entry could not be exported.
+	 *
+	 * @param resource the resource of the entry
+	 * @param e the exception, an <code>IOException</code> or a
+	 *            <code>CoreException</code>
+	 */
+	protected abstract void exportFailed(IResource resource, Exception e);
+
+	/**
+	 * Add an entry to the archive. Writes the entries ahead of it that are
+	 * prepared, and waits for entries to be written while too many are
+	 * pending.
+	 *
+	 * @param entry the entry
+	 * @throws InterruptedException if the exporting thread is interrupted
+	 */
+	public void add(Entry entry) throws InterruptedException {
+		while (!pending.isEmpty()
+				&& (pending.size() >= maxPending || buffered + entry.bufferSize > BUFFER_LIMIT)) {
+			writeNext();
+		}
+		pending.addLast(entry);
+		buffered += entry.bufferSize;
+		if (entry.bufferSize > 0) {
+			synchronized (lock) {
+				queue.addLast(entry);
+				lock.notifyAll();
+			}
+		}
+
+		// entries that are not buffered wait for their turn, so that the
+		// workers prepare the entries behind them while they are written
+		while (!pending.isEmpty()) {
+			Entry next = (Entry) pending.getFirst();
+			synchronized (lock) {
+				if (next.bufferSize == 0 || !next.prepared) {
+					break;
+				}
+			}
+			writeNext();
+		}
+	}
+
+	/**
+	 * Write all pending entries.
+	 *
+	 * @throws InterruptedException if the exporting thread is interrupted
+	 */
+	public void finish() throws InterruptedException {
+		while (!pending.isEmpty()) {
+			writeNext();
+		}
+	}
+
+	/**
+	 * Stop the worker threads. Pending entries are dropped.
+	 */
+	public void dispose() {
+		synchronized (lock) {
+			disposed = true;
+			queue.clear();
+			lock.notifyAll();
+		}
+		pending.clear();
+		buffered = 0;
+	}
+
+	private void writeNext() throws InterruptedException {
+		Entry entry = (Entry) pending.getFirst();
+		synchronized (lock) {
+			while (!entry.prepared) {
+				lock.wait();
+			}
+		}
+		pending.removeFirst();
+		buffered -= entry.bufferSize;
+
+		Throwable failure = entry.failure;
+		if (failure == null) {
+			try {
+				entry.write();
+			} catch (IOException e) {
+				failure = e;
+			} catch (CoreException e) {
+				failure = e;
+			}
+		}
+		if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else if (failure instanceof Error) {
+			throw (Error) failure;
+		} else if (failure != null) {
+			exportFailed(entry.resource, (Exception) failure);
+		}
+	}
+
+	/*
+	 * The loop of a worker thread. The thread ends when the pipeline is
+	 * disposed.
+	 */
+	private void prepareEntries() {
+		while (true) {
+			Entry entry;
+			synchronized (lock) {
+				while (queue.isEmpty() && !disposed) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (disposed) {
+					return;
+				}
+				entry = (Entry) queue.removeFirst();
+			}
+			Throwable failure = null;
+			try {
+				entry.prepare();
+			} catch (Exception e) {
+				failure = e;
+			} catch (Error e) {
+				failure = e;
+			}
+			synchronized (lock) {
+				entry.failure = failure;
+				entry.prepared = true;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of bytes to buffer for a file of the given length.
+	 *
+	 * @param length the length of the file, or -1 if unknown
+	 * @return the buffer size, or 0 if the file is not buffered
+	 */
+	static int getBufferSize(long length) {
+		return length > 0 && length <= ENTRY_LIMIT ? (int) length : 0;
+	}
+
+	/**
+	 * Reads the contents of a file.
+	 *
+	 * @param file the file
+	 * @param length the expected length of the contents
+	 * @return the contents
+	 * @throws IOException
+	 * @throws CoreException
+	 */
+	static byte[] readContents(IFile file, int length) throws IOException,
+			CoreException {
+		InputStream contentStream = file.getContents(false);
+		try {
+			byte[] contents = new byte[length];
+			int offset = 0;
+			int n;
+			while (offset < length
+					&& (n = contentStream.read(contents, offset, length - offset)) > 0) {
+				offset += n;
+			}
+			if (offset < length) {
+				// the file shrank since its length was fetched
+				byte[] shorter = new byte[offset];
+				System.arraycopy(contents, 0, shorter, 0, offset);
+				return shorter;
+			}
+			int next = contentStream.read();
+			if (next == -1) {
+				return contents;
+			}
+			// the file grew since its length was fetched
+			ByteArrayOutputStream longer = new ByteArrayOutputStream(length * 2);
+			longer.write(contents, 0, length);
+			longer.write(next);
+			byte[] readBuffer = new byte[4096];
+			while ((n = contentStream.read(readBuffer)) > 0) {
+				longer.write(readBuffer, 0, n);
+			}
+			return longer.toByteArray();
+		} finally {
+			contentStream.close();
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -55,6 +55,10 @@ public class ArchiveFileExportOperation implements IRunnableWithProgress {
 
     private boolean createLeadupStructure = true;
 
+    private boolean usePipeline = false;
+
+    private ArchiveExportPipeline pipeline;
+
     /**
      *	Create an instance of this class.  Use this constructor if you wish to
      *	export specific resources without a common parent resource
@@ -113,6 +117,14 @@ public class ArchiveFileExportOperation implements IRunnableWithProgress {
                 IDEWorkbenchPlugin.IDE_WORKBENCH, 0, message, e));
     }
 
+    /**
+     * Add a new entry to the error table for the resource that could not
+     * be exported
+     */
+    private void addExportError(IResource exportResource, Exception e) {
+        addError(NLS.bind(DataTransferMessages.DataTransfer_errorExporting, exportResource.getFullPath().makeRelative(), e.getMessage()), e);
+    }
+
     /**
      *  Answer the total number of file resources that exist at or below self
      *  in the resources hierarchy.
@@ -195,11 +207,15 @@ public class ArchiveFileExportOperation implements IRunnableWithProgress {
             monitor.subTask(destinationName);
 
             try {
-                exporter.write((IFile) exportResource, destinationName);
+                if (pipeline != null) {
+                    pipeline.add(((IPipelinedFileExporter) exporter).createEntry((IFile) exportResource, destinationName));
+                } else {
+                    exporter.write((IFile) exportResource, destinationName);
+                }
             } catch (IOException e) {
-                addError(NLS.bind(DataTransferMessages.DataTransfer_errorExporting, exportResource.getFullPath().makeRelative(), e.getMessage()), e);
+                addExportError(exportResource, e);
             } catch (CoreException e) {
-                addError(NLS.bind(DataTransferMessages.DataTransfer_errorExporting, exportResource.getFullPath().makeRelative(), e.getMessage()), e);
+                addExportError(exportResource, e);
             }
 
             monitor.worked(1);
@@ -216,10 +232,14 @@ public class ArchiveFileExportOperation implements IRunnableWithProgress {
             
             if (children.length == 0) { // create an entry for empty containers, see bug 278402
             	String destinationName = createDestinationName(leadupDepth, exportResource);
-                try {
-            		exporter.write((IContainer) exportResource, destinationName + IPath.SEPARATOR);
-                } catch (IOException e) {
-                    addError(NLS.bind(DataTransferMessages.DataTransfer_errorExporting, exportResource.getFullPath().makeRelative(), e.getMessage()), e);
+                if (pipeline != null) {
+                    pipeline.add(((IPipelinedFileExporter) exporter).createEntry((IContainer) exportResource, destinationName + IPath.SEPARATOR));
+                } else {
+                    try {
+                        exporter.write((IContainer) exportResource, destinationName + IPath.SEPARATOR);
+                    } catch (IOException e) {
+                        addExportError(exportResource, e);
+                    }
                 }
             }
 
@@ -270,9 +290,18 @@ public class ArchiveFileExportOperation implements IRunnableWithProgress {
     protected void initialize() throws IOException {
     	if(useTarFormat) {
     		exporter = new TarFileExporter(destinationFilename, useCompression);
+    	} else if (usePipeline) {
+    		exporter = new PipelinedZipFileExporter(destinationFilename, useCompression);
     	} else {
         	exporter = new ZipFileExporter(destinationFilename, useCompression);
     	}
+    	if (usePipeline && exporter instanceof IPipelinedFileExporter) {
+    		pipeline = new ArchiveExportPipeline(Runtime.getRuntime().availableProcessors()) {
+    			protected void exportFailed(IResource exportResource, Exception e) {
+    				addExportError(exportResource, e);
+    			}
+    		};
+    	}
     }
 
     /**
@@ -329,6 +358,9 @@ public class ArchiveFileExportOperation implements IRunnableWithProgress {
                 // ie.- a list of specific resources to export was specified
                 exportSpecifiedResources();
             }
+            if (pipeline != null) {
+                pipeline.finish();
+            }
 
             try {
                 exporter.finished();
@@ -338,6 +370,10 @@ public class ArchiveFileExportOperation implements IRunnableWithProgress {
                         NLS.bind(DataTransferMessages.ZipExport_cannotClose, e.getMessage()));
             }
         } finally {
+            if (pipeline != null) {
+                pipeline.dispose();
+                pipeline = null;
+            }
             monitor.done();
         }
     }
@@ -371,4 +407,15 @@ public class ArchiveFileExportOperation implements IRunnableWithProgress {
     public void setUseTarFormat(boolean value) {
     	useTarFormat = value;
     }
+
+    /**
+     * Set this boolean indicating whether the files should be read and
+     * compressed by several threads, while the archive is written in the
+     * order of the resources. The contents of each file are read once.
+     * 
+     * @param value boolean
+     */
+    public void setUsePipeline(boolean value) {
+    	usePipeline = value;
+    }
 }
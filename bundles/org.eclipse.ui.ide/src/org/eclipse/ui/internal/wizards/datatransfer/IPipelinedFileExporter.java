@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.internal.wizards.datatransfer;
+
+import java.io.IOException;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * Interface for file exporters whose entries can be exported in an
+ * {@link ArchiveExportPipeline}.
+ */
+public interface IPipelinedFileExporter extends IFileExporter {
+
+	/**
+	 * Create the entry for the folder's name in the current archive.
+	 *
+	 * @param container the container to write
+	 * @param destinationPath the path that will be used in the archive
+	 * @return the entry
+	 */
+	public ArchiveExportPipeline.Entry createEntry(IContainer container,
+			String destinationPath);
+
+	/**
+	 * Create the entry for the passed resource in the current archive. The
+	 * entry buffers the contents of the resource if they are small enough.
+	 *
+	 * @param resource the resource to write
+	 * @param destinationPath the path that will be used in the archive
+	 * @return the entry
+	 * @throws IOException
+	 * @throws CoreException
+	 */
+	public ArchiveExportPipeline.Entry createEntry(IFile resource,
+			String destinationPath) throws IOException, CoreException;
+}
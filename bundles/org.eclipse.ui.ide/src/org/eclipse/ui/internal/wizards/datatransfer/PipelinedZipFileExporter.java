@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.internal.wizards.datatransfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * Exports resources to a .zip file, reading the contents of each file once.
+ * The entries of small files are checksummed and compressed when they are
+ * prepared, possibly in the worker threads of an
+ * {@link ArchiveExportPipeline}; larger files are streamed into the archive.
+ */
+public class PipelinedZipFileExporter implements IPipelinedFileExporter {
+
+	/**
+	 * The deflated data of no bytes.
+	 */
+	private static final byte[] EMPTY_DEFLATED = { 3, 0 };
+
+	private static final byte[] NO_BYTES = new byte[0];
+
+	private ZipArchiveWriter writer;
+
+	private boolean useCompression = true;
+
+	/**
+	 * The entry of a file, holding its compressed contents once prepared.
+	 */
+	private class FileEntry extends ArchiveExportPipeline.Entry {
+		private IFile file;
+
+		private String name;
+
+		private long time;
+
+		private int method;
+
+		private long crc;
+
+		private long size;
+
+		private byte[] data;
+
+		private int length;
+
+		FileEntry(IFile file, String name, int bufferSize) {
+			super(file, bufferSize);
+			this.file = file;
+			this.name = name;
+			this.time = getTime(file);
+		}
+
+		protected void prepare() throws IOException, CoreException {
+			byte[] contents = ArchiveExportPipeline.readContents(file,
+					getBufferSize());
+			CRC32 checksumCalculator = new CRC32();
+			checksumCalculator.update(contents);
+			crc = checksumCalculator.getValue();
+			size = contents.length;
+			if (useCompression) {
+				method = ZipEntry.DEFLATED;
+				deflate(contents);
+			} else {
+				method = ZipEntry.STORED;
+				data = contents;
+				length = contents.length;
+			}
+		}
+
+		private void deflate(byte[] contents) {
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			try {
+				deflater.setInput(contents);
+				deflater.finish();
+				data = new byte[Math.max(64, contents.length / 2)];
+				length = 0;
+				while (!deflater.finished()) {
+					if (length == data.length) {
+						byte[] larger = new byte[data.length * 2];
+						System.arraycopy(data, 0, larger, 0, length);
+						data = larger;
+					}
+					length += deflater.deflate(data, length, data.length - length);
+				}
+			} finally {
+				deflater.end();
+			}
+		}
+
+		protected void write() throws IOException, CoreException {
+			if (data == null) {
+				PipelinedZipFileExporter.this.write(file, name);
+			} else {
+				writer.putEntry(name, time, method, crc, size, data, length);
+				data = null;
+			}
+		}
+	}
+
+	/**
+	 *	Create an instance of this class.
+	 *
+	 *	@param filename java.lang.String
+	 *	@param compress boolean
+	 *	@exception java.io.IOException
+	 */
+	public PipelinedZipFileExporter(String filename, boolean compress)
+			throws IOException {
+		writer = new ZipArchiveWriter(filename);
+		useCompression = compress;
+	}
+
+	/**
+	 *	Do all required cleanup now that we're finished with the
+	 *	currently-open .zip
+	 *
+	 *	@exception java.io.IOException
+	 */
+	public void finished() throws IOException {
+		writer.close();
+	}
+
+	public void write(IContainer container, String destinationPath)
+			throws IOException {
+		if (useCompression) {
+			writer.putEntry(destinationPath, System.currentTimeMillis(),
+					ZipEntry.DEFLATED, 0, 0, EMPTY_DEFLATED,
+					EMPTY_DEFLATED.length);
+		} else {
+			writer.putEntry(destinationPath, System.currentTimeMillis(),
+					ZipEntry.STORED, 0, 0, NO_BYTES, 0);
+		}
+	}
+
+	/**
+	 *  Write the passed resource to the current archive, streaming its
+	 *  contents.
+	 *
+	 *  @param resource org.eclipse.core.resources.IFile
+	 *  @param destinationPath java.lang.String
+	 *  @exception java.io.IOException
+	 *  @exception org.eclipse.core.runtime.CoreException
+	 */
+	public void write(IFile resource, String destinationPath)
+			throws IOException, CoreException {
+		long length = getLength(resource);
+		InputStream contentStream = resource.getContents(false);
+		try {
+			writer.putEntry(destinationPath, getTime(resource),
+					useCompression, contentStream, length);
+		} finally {
+			contentStream.close();
+		}
+	}
+
+	public ArchiveExportPipeline.Entry createEntry(
+			final IContainer container, final String destinationPath) {
+		return new ArchiveExportPipeline.Entry(container, 0) {
+			protected void prepare() {
+				// nothing to read
+			}
+
+			protected void write() throws IOException {
+				PipelinedZipFileExporter.this.write(container, destinationPath);
+			}
+		};
+	}
+
+	public ArchiveExportPipeline.Entry createEntry(IFile resource,
+			String destinationPath) throws CoreException {
+		return new FileEntry(resource, destinationPath, ArchiveExportPipeline
+				.getBufferSize(getLength(resource)));
+	}
+
+	private static long getLength(IFile resource) throws CoreException {
+		URI location = resource.getLocationURI();
+		if (location == null) {
+			return -1;
+		}
+		return EFS.getStore(location).fetchInfo().getLength();
+	}
+
+	private static long getTime(IResource resource) {
+		long localTimeStamp = resource.getLocalTimeStamp();
+		if (localTimeStamp != IResource.NULL_STAMP) {
+			return localTimeStamp;
+		}
+		return System.currentTimeMillis();
+	}
+}
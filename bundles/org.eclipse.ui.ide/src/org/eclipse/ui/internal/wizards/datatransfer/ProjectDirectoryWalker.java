@@ -0,0 +1,248 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.internal.wizards.datatransfer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.osgi.util.NLS;
+import org.eclipse.ui.internal.ide.StatusUtil;
+import org.eclipse.ui.statushandlers.StatusManager;
+
+/**
+ * Searches a directory tree for project description files in several
+ * threads. The threads share a stack of the directories left to visit: a
+ * thread lists a directory, reports the project description file in it and
+ * pushes its subdirectories for any thread to take.
+ * <p>
+ * Like the search of a single thread, the search does not go into the
+ * subdirectories of a project unless nested projects are searched, and skips
+ * the metadata folders of workspaces. Directories are visited once by their
+ * canonical path, so that symbolic links cannot make the search loop.
+ * </p>
+ */
+public abstract class ProjectDirectoryWalker {
+
+	private boolean nestedProjects;
+
+	private int threadCount;
+
+	/**
+	 * Lock for the directories to visit, the busy count, the current
+	 * directory and the done flag.
+	 */
+	private Object lock = new Object();
+
+	/**
+	 * the directories to visit
+	 */
+	private LinkedList directories = new LinkedList();
+
+	/**
+	 * the number of threads visiting a directory
+	 */
+	private int busy = 0;
+
+	/**
+	 * the directory visited last, for reporting progress
+	 */
+	private File current;
+
+	private boolean done = false;
+
+	/**
+	 * the canonical paths of the directories visited, used as recursion
+	 * guard
+	 */
+	private Set visited = new HashSet();
+
+	/**
+	 * Create a new walker.
+	 *
+	 * @param nestedProjects whether to search the subdirectories of projects
+	 * @param threadCount the number of threads visiting directories
+	 */
+	public ProjectDirectoryWalker(boolean nestedProjects, int threadCount) {
+		this.nestedProjects = nestedProjects;
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * Report a project description file. Called in the searching threads.
+	 *
+	 * @param file the project description file
+	 */
+	protected abstract void projectFound(File file);
+
+	/**
+	 * Search the directory and its subdirectories. Returns when all
+	 * directories were visited or the monitor is canceled.
+	 *
+	 * @param directory the directory to search
+	 * @param monitor the monitor to report to
+	 * @return boolean <code>true</code> if the operation was completed.
+	 */
+	public boolean walk(File directory, IProgressMonitor monitor) {
+		if (monitor.isCanceled()) {
+			return false;
+		}
+		monitor.subTask(NLS.bind(
+				DataTransferMessages.WizardProjectsImportPage_CheckingMessage,
+				directory.getPath()));
+		File[] contents = directory.listFiles();
+		if (contents == null) {
+			return false;
+		}
+		markVisited(directory);
+		visit(contents);
+
+		for (int i = 0; i < threadCount; i++) {
+			Thread thread = new Thread("Project Search") { //$NON-NLS-1$
+				public void run() {
+					visitDirectories();
+				}
+			};
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		try {
+			while (true) {
+				File reported;
+				synchronized (lock) {
+					if (directories.isEmpty() && busy == 0) {
+						return true;
+					}
+					try {
+						lock.wait(100);
+					} catch (InterruptedException e) {
+						return false;
+					}
+					reported = current;
+				}
+				if (monitor.isCanceled()) {
+					return false;
+				}
+				if (reported != null) {
+					monitor.subTask(NLS.bind(
+							DataTransferMessages.WizardProjectsImportPage_CheckingMessage,
+							reported.getPath()));
+				}
+			}
+		} finally {
+			synchronized (lock) {
+				done = true;
+				directories.clear();
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/*
+	 * The loop of a searching thread. The thread ends when there are no more
+	 * directories to visit and no other thread can find more.
+	 */
+	private void visitDirectories() {
+		while (true) {
+			File directory;
+			synchronized (lock) {
+				while (directories.isEmpty() && busy > 0 && !done) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (done || directories.isEmpty()) {
+					lock.notifyAll();
+					return;
+				}
+				directory = (File) directories.removeLast();
+				current = directory;
+				busy++;
+			}
+			try {
+				File[] contents = directory.listFiles();
+				if (contents != null) {
+					visit(contents);
+				}
+			} finally {
+				synchronized (lock) {
+					busy--;
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+
+	/*
+	 * Looks for the project description file in the contents of a directory
+	 * and pushes the subdirectories to visit.
+	 */
+	private void visit(File[] contents) {
+		// first look for project description files
+		final String dotProject = IProjectDescription.DESCRIPTION_FILE_NAME;
+		for (int i = 0; i < contents.length; i++) {
+			File file = contents[i];
+			if (file.isFile() && file.getName().equals(dotProject)) {
+				projectFound(file);
+				if (!nestedProjects) {
+					// don't search sub-directories since we can't have nested
+					// projects
+					return;
+				}
+			}
+		}
+		// no project description found or search for nested projects enabled,
+		// so visit the sub-directories
+		LinkedList subdirectories = new LinkedList();
+		for (int i = 0; i < contents.length; i++) {
+			if (contents[i].isDirectory()
+					&& !contents[i].getName().equals(
+							WizardProjectsImportPage.METADATA_FOLDER)
+					&& markVisited(contents[i])) {
+				subdirectories.add(contents[i]);
+			}
+		}
+		if (!subdirectories.isEmpty()) {
+			synchronized (lock) {
+				if (!done) {
+					directories.addAll(subdirectories);
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+
+	/*
+	 * Returns false if the directory was already visited.
+	 */
+	private boolean markVisited(File directory) {
+		String canonicalPath;
+		try {
+			canonicalPath = directory.getCanonicalPath();
+		} catch (IOException exception) {
+			StatusManager.getManager().handle(
+					StatusUtil.newStatus(IStatus.ERROR, exception
+							.getLocalizedMessage(), exception));
+			return true;
+		}
+		synchronized (visited) {
+			return visited.add(canonicalPath);
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2008 IBM Corporation and others.
+ * Copyright (c) 2004, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,9 +13,13 @@ package org.eclipse.ui.internal.wizards.datatransfer;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.zip.GZIPInputStream;
 
 
@@ -23,15 +27,34 @@ import java.util.zip.GZIPInputStream;
  * Reads a .tar or .tar.gz archive file, providing an index enumeration
  * and allows for accessing an InputStream for arbitrary files in the
  * archive.
+ * <p>
+ * The entries are read from the archive once, as they are enumerated the
+ * first time, and kept in an index that later enumerations replay.
+ * </p>
  * 
  * @since 3.1
  */
 public class TarFile {
 	private File file;
 	private TarInputStream entryEnumerationStream;
-	private TarEntry curEntry;
 	private TarInputStream entryStream;
 
+	/**
+	 * the entries read so far, in the order of the archive
+	 */
+	private List entryIndex = new ArrayList();
+
+	/**
+	 * whether all entries of the archive have been read
+	 */
+	private boolean indexComplete = false;
+
+	/**
+	 * the entry read last whose contents the enumeration stream is positioned
+	 * at, if they were not read yet
+	 */
+	private TarEntry streamedEntry;
+
 	private InputStream internalEntryStream;
 	
 	/**
@@ -60,7 +83,34 @@ public class TarFile {
 			in.close();
 			throw ex;
 		}
-		curEntry = entryEnumerationStream.getNextEntry();
+		readNextEntry();
+	}
+
+	/**
+	 * Reads the next entry of the archive into the index.
+	 * 
+	 * @return <code>true</code> if an entry was read, <code>false</code>
+	 *         at the end of the archive
+	 */
+	private boolean readNextEntry() {
+		if (indexComplete) {
+			return false;
+		}
+		TarEntry entry;
+		try {
+			entry = entryEnumerationStream.getNextEntry();
+		} catch (TarException e) {
+			entry = null;
+		} catch (IOException e) {
+			entry = null;
+		}
+		streamedEntry = entry;
+		if (entry == null) {
+			indexComplete = true;
+			return false;
+		}
+		entryIndex.add(entry);
+		return true;
 	}
 	
 	/**
@@ -87,26 +137,26 @@ public class TarFile {
 	}
 
 	/**
-	 * Returns an enumeration cataloguing the tar archive.
+	 * Returns an enumeration cataloguing the tar archive. Entries that were
+	 * enumerated before are taken from the index; the others are read from
+	 * the archive when they are asked for, so that the contents of the entry
+	 * enumerated last can be read without reading the archive again.
 	 * 
 	 * @return enumeration of all files in the archive
 	 */
 	public Enumeration entries() {
 		return new Enumeration() {
+			private int index = 0;
+
 			public boolean hasMoreElements() {
-				return (curEntry != null);
+				return index < entryIndex.size() || readNextEntry();
 			}
 			
 			public Object nextElement() {
-				TarEntry oldEntry = curEntry;
-				try {
-					curEntry = entryEnumerationStream.getNextEntry();
-				} catch(TarException e) {
-					curEntry = null;
-				} catch(IOException e) {
-					curEntry = null;
+				if (!hasMoreElements()) {
+					throw new NoSuchElementException();
 				}
-				return oldEntry;
+				return entryIndex.get(index++);
 			}
 		};
 	}
@@ -120,6 +170,33 @@ public class TarFile {
 	 * @throws IOException
 	 */
 	public InputStream getInputStream(TarEntry entry) throws TarException, IOException {
+		if (entry == streamedEntry) {
+			// the enumeration stream is at the contents of the entry
+			streamedEntry = null;
+			return new FilterInputStream(entryEnumerationStream) {
+				public long skip(long n) throws IOException {
+					if (n <= 0) {
+						return 0;
+					}
+					// skip through the tar stream so that it counts the bytes
+					byte[] buffer = new byte[(int) Math.min(n, 4096)];
+					long skipped = 0;
+					while (skipped < n) {
+						int read = read(buffer, 0, (int) Math.min(n - skipped,
+								buffer.length));
+						if (read < 0) {
+							break;
+						}
+						skipped += read;
+					}
+					return skipped;
+				}
+
+				public void close() {
+					// Ignore close() since the enumeration goes on.
+				}
+			};
+		}
 		if(entryStream == null || !entryStream.skipToEntry(entry)) {
 			if (internalEntryStream != null) {
 				internalEntryStream.close();
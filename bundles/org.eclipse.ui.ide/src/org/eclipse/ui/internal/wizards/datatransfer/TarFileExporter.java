@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -30,10 +30,40 @@ import org.eclipse.core.runtime.CoreException;
  *
  * @since 3.1
  */
-public class TarFileExporter implements IFileExporter {
+public class TarFileExporter implements IPipelinedFileExporter {
     private TarOutputStream outputStream;
     private GZIPOutputStream gzipOutputStream;
-    
+
+    /**
+     * The entry of a file, holding its contents once prepared.
+     */
+    private class FileEntry extends ArchiveExportPipeline.Entry {
+    	private IFile file;
+    	private TarEntry entry;
+    	private byte[] contents;
+
+    	FileEntry(IFile file, TarEntry entry, int bufferSize) {
+    		super(file, bufferSize);
+    		this.file = file;
+    		this.entry = entry;
+    	}
+
+    	protected void prepare() throws IOException, CoreException {
+    		contents = ArchiveExportPipeline.readContents(file, getBufferSize());
+    	}
+
+    	protected void write() throws IOException, CoreException {
+    		if (contents == null) {
+    			TarFileExporter.this.write(entry, file);
+    		} else {
+    			entry.setSize(contents.length);
+    			outputStream.putNextEntry(entry);
+    			outputStream.write(contents, 0, contents.length);
+    			outputStream.closeEntry();
+    			contents = null;
+    		}
+    	}
+    }
 
     /**
      *	Create an instance of this class.
@@ -98,17 +128,7 @@ public class TarFileExporter implements IFileExporter {
 
     public void write(IContainer container, String destinationPath)
             throws IOException {
-        TarEntry newEntry = new TarEntry(destinationPath);
-        if(container.getLocalTimeStamp() != IResource.NULL_STAMP) {
-        	newEntry.setTime(container.getLocalTimeStamp() / 1000);
-        }
-        ResourceAttributes attributes = container.getResourceAttributes();
-        if (attributes != null && attributes.isExecutable()) {
-        	newEntry.setMode(newEntry.getMode() | 0111);
-        }
-        if (attributes != null && attributes.isReadOnly()) {
-        	newEntry.setMode(newEntry.getMode() & ~0222);
-        }
+        TarEntry newEntry = newEntry(container, destinationPath);
         newEntry.setFileType(TarEntry.DIRECTORY);
         outputStream.putNextEntry(newEntry);
     }
@@ -123,7 +143,42 @@ public class TarFileExporter implements IFileExporter {
      */
     public void write(IFile resource, String destinationPath)
             throws IOException, CoreException {
+        write(newEntry(resource, destinationPath), resource);
+    }
+
+    public ArchiveExportPipeline.Entry createEntry(
+    		final IContainer container, final String destinationPath) {
+    	return new ArchiveExportPipeline.Entry(container, 0) {
+    		protected void prepare() {
+    			// nothing to read
+    		}
+
+    		protected void write() throws IOException {
+    			TarFileExporter.this.write(container, destinationPath);
+    		}
+    	};
+    }
+
+    public ArchiveExportPipeline.Entry createEntry(IFile resource,
+    		String destinationPath) throws IOException, CoreException {
+    	final URI location = resource.getLocationURI();
+    	if (location == null) {
+    		throw new FileNotFoundException(resource.getFullPath().toOSString());
+    	}
+    	long length = EFS.getStore(location).fetchInfo().getLength();
+    	return new FileEntry(resource, newEntry(resource, destinationPath),
+    			ArchiveExportPipeline.getBufferSize(length));
+    }
 
+    /**
+     *  Create the entry for the passed resource, with its timestamp and
+     *  permissions.
+     *
+     *  @param resource the resource
+     *  @param destinationPath the path that will be used in the archive
+     *  @return the entry
+     */
+    private TarEntry newEntry(IResource resource, String destinationPath) {
         TarEntry newEntry = new TarEntry(destinationPath);
         if(resource.getLocalTimeStamp() != IResource.NULL_STAMP) {
         	newEntry.setTime(resource.getLocalTimeStamp() / 1000);
@@ -135,6 +190,6 @@ public class TarFileExporter implements IFileExporter {
         if (attributes != null && attributes.isReadOnly()) {
         	newEntry.setMode(newEntry.getMode() & ~0222);
         }
-        write(newEntry, resource);
+        return newEntry;
     }
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -198,6 +198,7 @@ public class WizardArchiveFileResourceExportPage1 extends
                 .getSelection());
         op.setUseCompression(compressContentsCheckbox.getSelection());
         op.setUseTarFormat(targzFormatButton.getSelection());
+        op.setUsePipeline(true);
 
         try {
             getContainer().run(true, true, op);
@@ -26,11 +26,11 @@ import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
@@ -79,6 +79,7 @@ import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.DirectoryDialog;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.FileDialog;
 import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Text;
@@ -90,8 +91,6 @@ import org.eclipse.ui.dialogs.IOverwriteQuery;
 import org.eclipse.ui.dialogs.WorkingSetGroup;
 import org.eclipse.ui.internal.ide.IDEWorkbenchMessages;
 import org.eclipse.ui.internal.ide.IDEWorkbenchPlugin;
-import org.eclipse.ui.internal.ide.StatusUtil;
-import org.eclipse.ui.statushandlers.StatusManager;
 import org.eclipse.ui.wizards.datatransfer.FileSystemStructureProvider;
 import org.eclipse.ui.wizards.datatransfer.ImportOperation;
 
@@ -147,6 +146,8 @@ public class WizardProjectsImportPage extends WizardPage implements
 
 		String projectName;
 
+		IPath parentPath;
+
 		Object parent;
 
 		int level;
@@ -168,18 +169,30 @@ public class WizardProjectsImportPage extends WizardPage implements
 		/**
 		 * @param file
 		 * 		The Object representing the .project file
-		 * @param parent
-		 * 		The parent folder of the .project file
-		 * @param level
-		 * 		The number of levels deep in the provider the file is
+		 * @param parentPath
+		 * 		The path of the parent folder of the .project file in the
+		 * 		archive
 		 */
-		ProjectRecord(Object file, Object parent, int level) {
+		ProjectRecord(Object file, IPath parentPath) {
 			this.projectArchiveFile = file;
-			this.parent = parent;
-			this.level = level;
+			this.parentPath = parentPath;
+			this.level = parentPath.segmentCount();
 			setProjectName();
 		}
 
+		/**
+		 * Returns the parent folder of the .project file in the provider,
+		 * looking it up the first time.
+		 * 
+		 * @return Object the folder, or <code>null</code> if it is not found
+		 */
+		Object getParent() {
+			if (parent == null) {
+				parent = findFolder(parentPath);
+			}
+			return parent;
+		}
+
 		/**
 		 * Set the name of the project based on the projectFile.
 		 */
@@ -269,9 +282,14 @@ public class WizardProjectsImportPage extends WizardPage implements
 			if (description == null)
 				return projectName;
 
-			String path = projectSystemFile == null ? structureProvider
-					.getLabel(parent) : projectSystemFile
-					.getParent();
+			String path;
+			if (projectSystemFile != null) {
+				path = projectSystemFile.getParent();
+			} else if (parentPath.isEmpty()) {
+				path = structureProvider.getLabel(structureProvider.getRoot());
+			} else {
+				path = parentPath.lastSegment();
+			}
 
 			return NLS.bind(
 					DataTransferMessages.WizardProjectsImportPage_projectLabel,
@@ -286,6 +304,90 @@ public class WizardProjectsImportPage extends WizardPage implements
 		}
 	}
 
+	/**
+	 * Publishes the projects found by a search into the projects list while
+	 * the search goes on. Projects are added from the searching threads; the
+	 * list is updated in the UI thread.
+	 */
+	private class ProjectPublisher implements Runnable {
+		private Display display = getShell().getDisplay();
+
+		private List records = new ArrayList();
+
+		/**
+		 * the number of records shown in the list
+		 */
+		private int published = 0;
+
+		private boolean scheduled = false;
+
+		private boolean closed = false;
+
+		/**
+		 * Add a project found by the search.
+		 * 
+		 * @param record
+		 */
+		void add(ProjectRecord record) {
+			synchronized (this) {
+				records.add(record);
+				if (scheduled || closed) {
+					return;
+				}
+				scheduled = true;
+			}
+			display.asyncExec(this);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.lang.Runnable#run()
+		 */
+		public void run() {
+			ProjectRecord[] found;
+			synchronized (this) {
+				scheduled = false;
+				if (closed) {
+					return;
+				}
+				found = (ProjectRecord[]) records
+						.toArray(new ProjectRecord[records.size()]);
+			}
+			if (projectsList.getControl().isDisposed()) {
+				return;
+			}
+			selectedProjects = found;
+			projectsList.refresh(true);
+			for (int i = published; i < found.length; i++) {
+				found[i].hasConflicts = isInWorkspace(found[i]);
+				if (found[i].hasConflicts) {
+					projectsList.setGrayed(found[i], true);
+				} else {
+					projectsList.setChecked(found[i], true);
+				}
+			}
+			published = found.length;
+		}
+
+		/**
+		 * Stop publishing, once the search is over.
+		 */
+		synchronized void close() {
+			closed = true;
+		}
+
+		/**
+		 * Returns the projects found.
+		 * 
+		 * @return ProjectRecord[]
+		 */
+		synchronized ProjectRecord[] getRecords() {
+			return (ProjectRecord[]) records.toArray(new ProjectRecord[records
+					.size()]);
+		}
+	}
+
 	// dialog store id constants
 	private final static String STORE_NESTED_PROJECTS = "WizardProjectsImportPage.STORE_NESTED_PROJECTS"; //$NON-NLS-1$
 	
@@ -900,6 +1002,9 @@ public class WizardProjectsImportPage extends WizardPage implements
 		// status beforehand
 		final boolean dirSelected = this.projectFromDirectoryRadio
 				.getSelection();
+		selectedProjects = new ProjectRecord[0];
+		projectsList.refresh(true);
+		final ProjectPublisher publisher = new ProjectPublisher();
 		try {
 			getContainer().run(true, true, new IRunnableWithProgress() {
 
@@ -916,8 +1021,6 @@ public class WizardProjectsImportPage extends WizardPage implements
 							.beginTask(
 									DataTransferMessages.WizardProjectsImportPage_SearchingMessage,
 									100);
-					selectedProjects = new ProjectRecord[0];
-					Collection files = new ArrayList();
 					monitor.worked(10);
 					if (!dirSelected
 							&& ArchiveFileManipulations.isTarFile(path)) {
@@ -928,22 +1031,11 @@ public class WizardProjectsImportPage extends WizardPage implements
 
 						structureProvider = new TarLeveledStructureProvider(
 								sourceTarFile);
-						Object child = structureProvider.getRoot();
-
-						if (!collectProjectFilesFromProvider(files, child, 0,
-								monitor)) {
+						if (!collectProjectFilesFromArchive(publisher,
+								sourceTarFile.entries(), monitor)) {
 							return;
 						}
-						Iterator filesIterator = files.iterator();
-						selectedProjects = new ProjectRecord[files.size()];
-						int index = 0;
 						monitor.worked(50);
-						monitor
-								.subTask(DataTransferMessages.WizardProjectsImportPage_ProcessingMessage);
-						while (filesIterator.hasNext()) {
-							selectedProjects[index++] = (ProjectRecord) filesIterator
-									.next();
-						}
 					} else if (!dirSelected
 							&& ArchiveFileManipulations.isZipFile(path)) {
 						ZipFile sourceFile = getSpecifiedZipSourceFile(path);
@@ -952,41 +1044,25 @@ public class WizardProjectsImportPage extends WizardPage implements
 						}
 						structureProvider = new ZipLeveledStructureProvider(
 								sourceFile);
-						Object child = structureProvider.getRoot();
-
-						if (!collectProjectFilesFromProvider(files, child, 0,
-								monitor)) {
+						if (!collectProjectFilesFromArchive(publisher,
+								sourceFile.entries(), monitor)) {
 							return;
 						}
-						Iterator filesIterator = files.iterator();
-						selectedProjects = new ProjectRecord[files.size()];
-						int index = 0;
 						monitor.worked(50);
-						monitor
-								.subTask(DataTransferMessages.WizardProjectsImportPage_ProcessingMessage);
-						while (filesIterator.hasNext()) {
-							selectedProjects[index++] = (ProjectRecord) filesIterator
-									.next();
-						}
 					}
 
 					else if (dirSelected && directory.isDirectory()) {
-
-						if (!collectProjectFilesFromDirectory(files, directory,
-								null, monitor)) {
+						ProjectDirectoryWalker walker = new ProjectDirectoryWalker(
+								nestedProjects, Math.max(2, Runtime
+										.getRuntime().availableProcessors())) {
+							protected void projectFound(File file) {
+								publisher.add(new ProjectRecord(file));
+							}
+						};
+						if (!walker.walk(directory, monitor)) {
 							return;
 						}
-						Iterator filesIterator = files.iterator();
-						selectedProjects = new ProjectRecord[files.size()];
-						int index = 0;
 						monitor.worked(50);
-						monitor
-								.subTask(DataTransferMessages.WizardProjectsImportPage_ProcessingMessage);
-						while (filesIterator.hasNext()) {
-							File file = (File) filesIterator.next();
-							selectedProjects[index] = new ProjectRecord(file);
-							index++;
-						}
 					} else {
 						monitor.worked(60);
 					}
@@ -1000,6 +1076,20 @@ public class WizardProjectsImportPage extends WizardPage implements
 			// Nothing to do if the user interrupts.
 		}
 
+		// the projects found so far, also if the search was canceled
+		publisher.close();
+		selectedProjects = publisher.getRecords();
+		if (dirSelected) {
+			Arrays.sort(selectedProjects, new Comparator() {
+				public int compare(Object o1, Object o2) {
+					return ((ProjectRecord) o1).projectSystemFile.getPath()
+							.compareTo(
+									((ProjectRecord) o2).projectSystemFile
+											.getPath());
+				}
+			});
+		}
+
 		projectsList.refresh(true);
 		ProjectRecord[] projects = getProjectRecords();
 		boolean displayWarning = false;
@@ -1007,6 +1097,7 @@ public class WizardProjectsImportPage extends WizardPage implements
 			if(projects[i].hasConflicts) {
 				displayWarning = true;
 				projectsList.setGrayed(projects[i], true);
+				projectsList.setChecked(projects[i], false);
 			}else {
 				projectsList.setChecked(projects[i], true);
 			}
@@ -1088,113 +1179,79 @@ public class WizardProjectsImportPage extends WizardPage implements
 	}
 
 	/**
-	 * Collect the list of .project files that are under directory into files.
+	 * Collect the .project files among the entries of an archive, publishing
+	 * each project as its entry is read.
 	 * 
-	 * @param files
-	 * @param directory
-	 * @param directoriesVisited
-	 * 		Set of canonical paths of directories, used as recursion guard
+	 * @param publisher
+	 * 		The publisher of the projects found
+	 * @param entries
+	 * 		The enumeration of the <code>ZipEntry</code> or
+	 * 		<code>TarEntry</code> objects of the archive
 	 * @param monitor
 	 * 		The monitor to report to
 	 * @return boolean <code>true</code> if the operation was completed.
 	 */
-	private boolean collectProjectFilesFromDirectory(Collection files,
-			File directory, Set directoriesVisited, IProgressMonitor monitor) {
-
-		if (monitor.isCanceled()) {
-			return false;
-		}
-		monitor.subTask(NLS.bind(
-				DataTransferMessages.WizardProjectsImportPage_CheckingMessage,
-				directory.getPath()));
-		File[] contents = directory.listFiles();
-		if (contents == null)
-			return false;
+	private boolean collectProjectFilesFromArchive(ProjectPublisher publisher,
+			Enumeration entries, IProgressMonitor monitor) {
 
-		// Initialize recursion guard for recursive symbolic links
-		if (directoriesVisited == null) {
-			directoriesVisited = new HashSet();
-			try {
-				directoriesVisited.add(directory.getCanonicalPath());
-			} catch (IOException exception) {
-				StatusManager.getManager().handle(
-						StatusUtil.newStatus(IStatus.ERROR, exception
-								.getLocalizedMessage(), exception));
+		while (entries.hasMoreElements()) {
+			if (monitor.isCanceled()) {
+				return false;
 			}
-		}
-
-		// first look for project description files
-		final String dotProject = IProjectDescription.DESCRIPTION_FILE_NAME;
-		for (int i = 0; i < contents.length; i++) {
-			File file = contents[i];
-			if (file.isFile() && file.getName().equals(dotProject)) {
-				files.add(file);
-				if (!nestedProjects) {
-					// don't search sub-directories since we can't have nested
-					// projects
-					return true;
+			Object entry = entries.nextElement();
+			IPath path;
+			if (entry instanceof ZipEntry) {
+				if (((ZipEntry) entry).isDirectory()) {
+					continue;
 				}
-			}
-		}
-		// no project description found or search for nested projects enabled,
-		// so recurse into sub-directories
-		for (int i = 0; i < contents.length; i++) {
-			if (contents[i].isDirectory()) {
-				if (!contents[i].getName().equals(METADATA_FOLDER)) {
-					try {
-						String canonicalPath = contents[i].getCanonicalPath();
-						if (!directoriesVisited.add(canonicalPath)) {
-							// already been here --> do not recurse
-							continue;
-						}
-					} catch (IOException exception) {
-						StatusManager.getManager().handle(
-								StatusUtil.newStatus(IStatus.ERROR, exception
-										.getLocalizedMessage(), exception));
-
-					}
-					collectProjectFilesFromDirectory(files, contents[i],
-							directoriesVisited, monitor);
+				path = new Path(((ZipEntry) entry).getName());
+			} else {
+				if (((TarEntry) entry).getFileType() == TarEntry.DIRECTORY) {
+					continue;
 				}
+				path = new Path(((TarEntry) entry).getName());
+			}
+			if (IProjectDescription.DESCRIPTION_FILE_NAME.equals(path
+					.lastSegment())) {
+				IPath parentPath = path.removeLastSegments(1);
+				monitor.subTask(NLS.bind(
+						DataTransferMessages.WizardProjectsImportPage_CheckingMessage,
+						parentPath.toString()));
+				publisher.add(new ProjectRecord(entry, parentPath.makeRelative()));
 			}
 		}
 		return true;
 	}
 
 	/**
-	 * Collect the list of .project files that are under directory into files.
+	 * Find the folder with the given path in the structure provider.
 	 * 
-	 * @param files
-	 * @param monitor
-	 * 		The monitor to report to
-	 * @return boolean <code>true</code> if the operation was completed.
+	 * @param path
+	 * 		The path of the folder relative to the root of the provider
+	 * @return Object the folder, or <code>null</code> if there is none
 	 */
-	private boolean collectProjectFilesFromProvider(Collection files,
-			Object entry, int level, IProgressMonitor monitor) {
-
-		if (monitor.isCanceled()) {
-			return false;
-		}
-		monitor.subTask(NLS.bind(
-				DataTransferMessages.WizardProjectsImportPage_CheckingMessage,
-				structureProvider.getLabel(entry)));
-		List children = structureProvider.getChildren(entry);
-		if (children == null) {
-			children = new ArrayList(1);
-		}
-		Iterator childrenEnum = children.iterator();
-		while (childrenEnum.hasNext()) {
-			Object child = childrenEnum.next();
-			if (structureProvider.isFolder(child)) {
-				collectProjectFilesFromProvider(files, child, level + 1,
-						monitor);
+	private Object findFolder(IPath path) {
+		// the labels are not stripped while searching
+		structureProvider.setStrip(0);
+		Object folder = structureProvider.getRoot();
+		for (int i = 0; i < path.segmentCount() && folder != null; i++) {
+			List children = structureProvider.getChildren(folder);
+			folder = null;
+			if (children == null) {
+				break;
 			}
-			String elementLabel = structureProvider.getLabel(child);
-			if (elementLabel.equals(IProjectDescription.DESCRIPTION_FILE_NAME)) {
-				files.add(new ProjectRecord(child, entry, level));
+			Iterator childrenEnum = children.iterator();
+			while (childrenEnum.hasNext()) {
+				Object child = childrenEnum.next();
+				if (structureProvider.isFolder(child)
+						&& path.segment(i).equals(
+								structureProvider.getLabel(child))) {
+					folder = child;
+					break;
+				}
 			}
 		}
-		return true;
+		return folder;
 	}
 
 	/**
@@ -1375,7 +1432,7 @@ public class WizardProjectsImportPage extends WizardPage implements
 		if (record.projectArchiveFile != null) {
 			// import from archive
 			List fileSystemObjects = structureProvider
-					.getChildren(record.parent);
+					.getChildren(record.getParent());
 			structureProvider.setStrip(record.level);
 			ImportOperation operation = new ImportOperation(project
 					.getFullPath(), structureProvider.getRoot(),
@@ -1543,8 +1600,7 @@ public class WizardProjectsImportPage extends WizardPage implements
 	public ProjectRecord[] getProjectRecords() {
 		List projectRecords = new ArrayList();
 		for (int i = 0; i < selectedProjects.length; i++) {
-			if ( (isProjectInWorkspacePath(selectedProjects[i].getProjectName()) && copyFiles)||
-					isProjectInWorkspace(selectedProjects[i].getProjectName())) {
+			if (isInWorkspace(selectedProjects[i])) {
 				selectedProjects[i].hasConflicts = true;
 			}
 			projectRecords.add(selectedProjects[i]);
@@ -1553,6 +1609,19 @@ public class WizardProjectsImportPage extends WizardPage implements
 				.toArray(new ProjectRecord[projectRecords.size()]);
 	}
 
+	/**
+	 * Determine if the project of a record conflicts with the workspace,
+	 * because the workspace has a project or, when the files are copied, a
+	 * directory with the same name.
+	 * 
+	 * @param record the project record
+	 * @return true if the project cannot be imported
+	 */
+	private boolean isInWorkspace(ProjectRecord record) {
+		return (isProjectInWorkspacePath(record.getProjectName()) && copyFiles)
+				|| isProjectInWorkspace(record.getProjectName());
+	}
+
 	/**
 	 * Determine if there is a directory with the project name in the workspace path.
 	 * 
@@ -0,0 +1,394 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.internal.wizards.datatransfer;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes zip archive files whose entries may be compressed beforehand, for
+ * instance in other threads. Unlike <code>java.util.zip.ZipOutputStream</code>
+ * it takes the data of an entry as it is stored in the archive, together
+ * with its checksum and size, so that only writing the archive is serial.
+ * <p>
+ * Entries that are too large to be prepared in memory are streamed instead.
+ * Their local header is completed once their data is written, so that their
+ * contents are read only once, even when they are stored uncompressed.
+ * </p>
+ * <p>
+ * The zip64 extensions are used where the sizes, offsets or the number of
+ * entries require them.
+ * </p>
+ */
+public class ZipArchiveWriter {
+
+	private static final int LOCAL_HEADER = 0x04034b50;
+
+	private static final int CENTRAL_HEADER = 0x02014b50;
+
+	private static final int ZIP64_END = 0x06064b50;
+
+	private static final int ZIP64_LOCATOR = 0x07064b50;
+
+	private static final int END = 0x06054b50;
+
+	private static final int ZIP64_EXTRA = 0x0001;
+
+	/**
+	 * General purpose flag for names encoded in UTF-8.
+	 */
+	private static final int UTF8_FLAG = 0x0800;
+
+	private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+	private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * An entry of the central directory.
+	 */
+	private static class Entry {
+		byte[] name;
+
+		int method;
+
+		int dosTime;
+
+		long crc;
+
+		long compressedSize;
+
+		long size;
+
+		long offset;
+	}
+
+	private FileOutputStream fileStream;
+
+	private OutputStream out;
+
+	private long written = 0;
+
+	private List entries = new ArrayList();
+
+	private byte[] scratch = new byte[8];
+
+	private Calendar calendar = Calendar.getInstance();
+
+	/**
+	 * Creates a writer for a new archive file.
+	 *
+	 * @param filename the name of the archive file
+	 * @throws IOException if the file cannot be created
+	 */
+	public ZipArchiveWriter(String filename) throws IOException {
+		fileStream = new FileOutputStream(filename);
+		out = new BufferedOutputStream(fileStream, BUFFER_SIZE);
+	}
+
+	/**
+	 * Writes an entry whose data was prepared beforehand.
+	 *
+	 * @param name the name of the entry
+	 * @param time the modification time of the entry
+	 * @param method <code>ZipEntry.STORED</code> or
+	 *            <code>ZipEntry.DEFLATED</code>
+	 * @param crc the CRC-32 of the uncompressed data
+	 * @param size the size of the uncompressed data
+	 * @param data the data as stored in the archive
+	 * @param length the length of the data
+	 * @throws IOException if the entry cannot be written
+	 */
+	public void putEntry(String name, long time, int method, long crc,
+			long size, byte[] data, int length) throws IOException {
+		Entry entry = newEntry(name, time, method);
+		entry.crc = crc;
+		entry.size = size;
+		entry.compressedSize = length;
+		writeLocalHeader(entry, false);
+		write(data, 0, length);
+		entries.add(entry);
+	}
+
+	/**
+	 * Writes an entry by reading its contents, compressing them if requested.
+	 * The caller closes the contents.
+	 *
+	 * @param name the name of the entry
+	 * @param time the modification time of the entry
+	 * @param compress whether to deflate the contents
+	 * @param contents the contents of the entry
+	 * @param expectedSize the expected size of the contents, or -1 if unknown
+	 * @throws IOException if the entry cannot be read or written
+	 */
+	public void putEntry(String name, long time, boolean compress,
+			InputStream contents, long expectedSize) throws IOException {
+		Entry entry = newEntry(name, time, compress ? ZipEntry.DEFLATED
+				: ZipEntry.STORED);
+		boolean zip64 = expectedSize >= ZIP64_MAGIC;
+		writeLocalHeader(entry, zip64);
+		long start = written;
+
+		CRC32 checksumCalculator = new CRC32();
+		Deflater deflater = compress ? new Deflater(
+				Deflater.DEFAULT_COMPRESSION, true) : null;
+		byte[] readBuffer = new byte[BUFFER_SIZE];
+		byte[] deflateBuffer = compress ? new byte[BUFFER_SIZE] : null;
+		try {
+			int n;
+			while ((n = contents.read(readBuffer)) > 0) {
+				checksumCalculator.update(readBuffer, 0, n);
+				entry.size += n;
+				if (deflater == null) {
+					write(readBuffer, 0, n);
+				} else {
+					deflater.setInput(readBuffer, 0, n);
+					while (!deflater.needsInput()) {
+						write(deflateBuffer, 0, deflater.deflate(deflateBuffer));
+					}
+				}
+			}
+			if (deflater != null) {
+				deflater.finish();
+				while (!deflater.finished()) {
+					write(deflateBuffer, 0, deflater.deflate(deflateBuffer));
+				}
+			}
+		} finally {
+			if (deflater != null) {
+				deflater.end();
+			}
+		}
+		entry.crc = checksumCalculator.getValue();
+		entry.compressedSize = written - start;
+		if (!zip64
+				&& (entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC)) {
+			throw new IOException("entry too large: " + name); //$NON-NLS-1$
+		}
+
+		// complete the local header
+		out.flush();
+		byte[] header = new byte[12];
+		putInt(header, 0, (int) entry.crc);
+		if (zip64) {
+			putInt(header, 4, -1);
+			putInt(header, 8, -1);
+		} else {
+			putInt(header, 4, (int) entry.compressedSize);
+			putInt(header, 8, (int) entry.size);
+		}
+		patch(entry.offset + 14, header);
+		if (zip64) {
+			byte[] extra = new byte[16];
+			putLong(extra, 0, entry.size);
+			putLong(extra, 8, entry.compressedSize);
+			patch(entry.offset + 30 + entry.name.length + 4, extra);
+		}
+		entries.add(entry);
+	}
+
+	/**
+	 * Writes the central directory and closes the archive file.
+	 *
+	 * @throws IOException if the archive cannot be written
+	 */
+	public void close() throws IOException {
+		try {
+			long start = written;
+			for (Iterator i = entries.iterator(); i.hasNext();) {
+				writeCentralHeader((Entry) i.next());
+			}
+			long size = written - start;
+			int count = entries.size();
+			if (count >= ZIP64_MAGIC_COUNT || size >= ZIP64_MAGIC
+					|| start >= ZIP64_MAGIC) {
+				long zip64End = written;
+				writeInt(ZIP64_END);
+				writeLong(44);
+				writeShort(45);
+				writeShort(45);
+				writeInt(0);
+				writeInt(0);
+				writeLong(count);
+				writeLong(count);
+				writeLong(size);
+				writeLong(start);
+
+				writeInt(ZIP64_LOCATOR);
+				writeInt(0);
+				writeLong(zip64End);
+				writeInt(1);
+			}
+			writeInt(END);
+			writeShort(0);
+			writeShort(0);
+			writeShort(Math.min(count, ZIP64_MAGIC_COUNT));
+			writeShort(Math.min(count, ZIP64_MAGIC_COUNT));
+			writeInt((int) Math.min(size, ZIP64_MAGIC));
+			writeInt((int) Math.min(start, ZIP64_MAGIC));
+			writeShort(0);
+		} finally {
+			out.close();
+		}
+	}
+
+	private Entry newEntry(String name, long time, int method)
+			throws IOException {
+		Entry entry = new Entry();
+		entry.name = name.getBytes("UTF8"); //$NON-NLS-1$
+		if (entry.name.length > 0xFFFF) {
+			throw new IOException("name too long"); //$NON-NLS-1$
+		}
+		entry.method = method;
+		entry.dosTime = toDosTime(time);
+		entry.offset = written;
+		return entry;
+	}
+
+	private void writeLocalHeader(Entry entry, boolean zip64)
+			throws IOException {
+		writeInt(LOCAL_HEADER);
+		writeShort(zip64 ? 45 : versionNeeded(entry));
+		writeShort(UTF8_FLAG);
+		writeShort(entry.method);
+		writeInt(entry.dosTime);
+		writeInt((int) entry.crc);
+		if (zip64) {
+			writeInt(-1);
+			writeInt(-1);
+		} else {
+			writeInt((int) entry.compressedSize);
+			writeInt((int) entry.size);
+		}
+		writeShort(entry.name.length);
+		writeShort(zip64 ? 20 : 0);
+		write(entry.name, 0, entry.name.length);
+		if (zip64) {
+			writeShort(ZIP64_EXTRA);
+			writeShort(16);
+			writeLong(entry.size);
+			writeLong(entry.compressedSize);
+		}
+	}
+
+	private void writeCentralHeader(Entry entry) throws IOException {
+		boolean sizes64 = entry.size >= ZIP64_MAGIC
+				|| entry.compressedSize >= ZIP64_MAGIC;
+		boolean offset64 = entry.offset >= ZIP64_MAGIC;
+		int extraLength = (sizes64 ? 16 : 0) + (offset64 ? 8 : 0);
+		int version = extraLength > 0 ? 45 : versionNeeded(entry);
+
+		writeInt(CENTRAL_HEADER);
+		writeShort(version);
+		writeShort(version);
+		writeShort(UTF8_FLAG);
+		writeShort(entry.method);
+		writeInt(entry.dosTime);
+		writeInt((int) entry.crc);
+		writeInt(sizes64 ? -1 : (int) entry.compressedSize);
+		writeInt(sizes64 ? -1 : (int) entry.size);
+		writeShort(entry.name.length);
+		writeShort(extraLength > 0 ? extraLength + 4 : 0);
+		writeShort(0); // comment length
+		writeShort(0); // disk number
+		writeShort(0); // internal attributes
+		writeInt(0); // external attributes
+		writeInt(offset64 ? -1 : (int) entry.offset);
+		write(entry.name, 0, entry.name.length);
+		if (extraLength > 0) {
+			writeShort(ZIP64_EXTRA);
+			writeShort(extraLength);
+			if (sizes64) {
+				writeLong(entry.size);
+				writeLong(entry.compressedSize);
+			}
+			if (offset64) {
+				writeLong(entry.offset);
+			}
+		}
+	}
+
+	private static int versionNeeded(Entry entry) {
+		return entry.method == ZipEntry.DEFLATED ? 20 : 10;
+	}
+
+	private int toDosTime(long time) {
+		calendar.setTimeInMillis(time);
+		int year = calendar.get(Calendar.YEAR);
+		if (year < 1980) {
+			// 1980-01-01 00:00
+			return (1 << 21) | (1 << 16);
+		}
+		return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21
+				| calendar.get(Calendar.DAY_OF_MONTH) << 16
+				| calendar.get(Calendar.HOUR_OF_DAY) << 11
+				| calendar.get(Calendar.MINUTE) << 5
+				| calendar.get(Calendar.SECOND) >> 1;
+	}
+
+	/*
+	 * Writes over data that was already written to the file. The buffered
+	 * stream must be flushed.
+	 */
+	private void patch(long position, byte[] data) throws IOException {
+		FileChannel channel = fileStream.getChannel();
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+	}
+
+	private void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		written += len;
+	}
+
+	private void writeShort(int value) throws IOException {
+		scratch[0] = (byte) value;
+		scratch[1] = (byte) (value >>> 8);
+		write(scratch, 0, 2);
+	}
+
+	private void writeInt(int value) throws IOException {
+		putInt(scratch, 0, value);
+		write(scratch, 0, 4);
+	}
+
+	private void writeLong(long value) throws IOException {
+		putLong(scratch, 0, value);
+		write(scratch, 0, 8);
+	}
+
+	private static void putInt(byte[] b, int off, int value) {
+		b[off] = (byte) value;
+		b[off + 1] = (byte) (value >>> 8);
+		b[off + 2] = (byte) (value >>> 16);
+		b[off + 3] = (byte) (value >>> 24);
+	}
+
+	private static void putLong(byte[] b, int off, long value) {
+		putInt(b, off, (int) value);
+		putInt(b, off + 4, (int) (value >>> 32));
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2009 IBM Corporation and others.
+ * Copyright (c) 2004, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -508,7 +508,13 @@ public class FilteredTree extends Composite {
 							}
 						}
 					}
-					treeViewer.refresh(true);
+					// keep what the pattern filter learned about the tree
+					refreshingFilter = true;
+					try {
+						treeViewer.refresh(true);
+					} finally {
+						refreshingFilter = false;
+					}
 
 					if (text.length() > 0 && !initial) {
 						/*
@@ -837,6 +843,12 @@ public class FilteredTree extends Composite {
 
 	private boolean narrowingDown;
 
+	/**
+	 * Whether the tree is refreshed for a new filter pattern, rather than for
+	 * a change of the tree content.
+	 */
+	private boolean refreshingFilter;
+
 	/**
 	 * Update the receiver after the text has changed.
 	 */
@@ -1199,7 +1211,9 @@ public class FilteredTree extends Composite {
 		}
 
 		public void refresh(boolean updateLabels) {
-			getPatternFilter().clearCaches();
+			if (!refreshingFilter) {
+				getPatternFilter().clearCaches();
+			}
 			super.refresh(updateLabels);
 		}
 
@@ -1249,6 +1263,16 @@ public class FilteredTree extends Composite {
 			super.setHasChildren(elementOrTreePath, hasChildren);
 		}
 
+		public void update(Object element, String[] properties) {
+			getPatternFilter().clearRejected();
+			super.update(element, properties);
+		}
+
+		public void update(Object[] elements, String[] properties) {
+			getPatternFilter().clearRejected();
+			super.update(elements, properties);
+		}
+
 	}
 
 }
@@ -13,8 +13,10 @@ package org.eclipse.ui.dialogs;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.jface.viewers.AbstractTreeViewer;
 import org.eclipse.jface.viewers.ILabelProvider;
@@ -47,6 +49,12 @@ public class PatternFilter extends ViewerFilter {
      */
     private Map foundAnyCache = new HashMap();
     
+    /*
+     * Elements that were not visible for the current pattern or a pattern it
+     * extends. They stay invisible while the pattern is only extended.
+     */
+    private Set rejected = new HashSet();
+    
     private boolean useCache = false;
     
 	/**
@@ -60,6 +68,16 @@ public class PatternFilter extends ViewerFilter {
 	 */
     private StringMatcher matcher;
     
+    /*
+     * The pattern string of the matcher, or null if there is no matcher.
+     */
+    private String pattern;
+    
+    /*
+     * Whether the matcher includes a leading wildcard.
+     */
+    private boolean patternIncludesLeadingWildcard;
+    
     private boolean useEarlyReturnIfMatcherIsNull = true;
     
     private static Object[] EMPTY = new Object[0];
@@ -134,17 +152,39 @@ public class PatternFilter extends ViewerFilter {
 		boolean elementFound = false;
 		for (int i = 0; i < elements.length && !elementFound; i++) {
 			Object element = elements[i];
-			elementFound = isElementVisible(viewer, element);
+			elementFound = isVisible(viewer, element);
 		}
 		return elementFound;
 	}
+
+	/**
+	 * Returns whether the element is visible, remembering invisible elements
+	 * if caching is enabled.
+	 * 
+	 * @param viewer the viewer
+	 * @param element the element
+	 * @return whether the element is visible
+	 */
+	private boolean isVisible(Viewer viewer, Object element) {
+		if (!useCache) {
+			return isElementVisible(viewer, element);
+		}
+		if (rejected.contains(element)) {
+			return false;
+		}
+		boolean visible = isElementVisible(viewer, element);
+		if (!visible) {
+			rejected.add(element);
+		}
+		return visible;
+	}
     
     /* (non-Javadoc)
      * @see org.eclipse.jface.viewers.ViewerFilter#select(org.eclipse.jface.viewers.Viewer, java.lang.Object, java.lang.Object)
      */
     public final boolean select(Viewer viewer, Object parentElement,
 			Object element) {
-        return isElementVisible(viewer, element);
+        return isVisible(viewer, element);
     }
     
     /**
@@ -162,8 +202,15 @@ public class PatternFilter extends ViewerFilter {
     /**
      * The pattern string for which this filter should select 
      * elements in the viewer.
+     * <p>
+     * When the filter is used by a {@link FilteredTree}, a pattern that extends
+     * the previous pattern selects a subset of the elements, and is reported
+     * to the viewer as a refinement, so that it only filters the elements it
+     * shows. Other clients always get a full refresh.
+     * </p>
      * 
      * @param patternString
+     * @see ViewerFilter#stateChanged(boolean)
      */
     public void setPattern(String patternString) {
     	// these 2 strings allow the PatternFilter to be extended in
@@ -175,18 +222,55 @@ public class PatternFilter extends ViewerFilter {
     		useEarlyReturnIfMatcherIsNull = false;
     		return;
     	}
-        clearCaches();
+        boolean refinement = isRefinement(patternString);
+        cache.clear();
+        foundAnyCache.clear();
+        if (!refinement) {
+        	rejected.clear();
+        }
         if (patternString == null || patternString.equals("")) { //$NON-NLS-1$
 			matcher = null;
+			pattern = null;
 		} else {
 			String pattern = patternString + "*"; //$NON-NLS-1$
 			if (includeLeadingWildcard) {
 				pattern = "*" + pattern; //$NON-NLS-1$
 			}
 			matcher = new StringMatcher(pattern, true, false);
+			this.pattern = patternString;
+			patternIncludesLeadingWildcard = includeLeadingWildcard;
 		}
+		stateChanged(refinement);
     }
 
+	/**
+	 * Returns whether the given pattern string selects a subset of the
+	 * elements the current pattern selects. Since a trailing wildcard is
+	 * always added, this is the case if it extends the current pattern.
+	 * Refinements are only reported while the caches are used, that is, when
+	 * the filtered tree tells this filter about every change of the tree.
+	 * 
+	 * @param patternString
+	 *            the new pattern string
+	 * @return <code>true</code> if the new pattern is a refinement
+	 */
+	private boolean isRefinement(String patternString) {
+		if (!useCache) {
+			return false;
+		}
+		if (patternString == null || patternString.equals("")) { //$NON-NLS-1$
+			return pattern == null;
+		}
+		if (pattern == null) {
+			// no pattern selects all elements
+			return true;
+		}
+		// a trailing backslash escapes the wildcard that was added
+		return patternIncludesLeadingWildcard == includeLeadingWildcard
+				&& !pattern.endsWith("\\") //$NON-NLS-1$
+				&& patternString.startsWith(pattern);
+	}
+
 	/**
 	 * Clears the caches used for optimizing this filter. Needs to be called whenever
 	 * the tree content changes.
@@ -194,6 +278,17 @@ public class PatternFilter extends ViewerFilter {
 	/* package */ void clearCaches() {
 		cache.clear();
         foundAnyCache.clear();
+        clearRejected();
+	}
+
+	/**
+	 * Forgets the elements that were not visible, so that they are matched
+	 * again. Needs to be called whenever the labels in the tree change. The
+	 * next refresh of the viewer filters all elements again.
+	 */
+	/* package */ void clearRejected() {
+		rejected.clear();
+		stateChanged(false);
 	}
 
     /**
@@ -70,6 +70,7 @@ import org.eclipse.e4.core.contexts.IEclipseContext;
 import org.eclipse.e4.core.di.InjectionException;
 import org.eclipse.e4.core.services.events.IEventBroker;
 import org.eclipse.e4.ui.internal.workbench.E4Workbench;
+import org.eclipse.e4.ui.internal.workbench.ResourceHandler;
 import org.eclipse.e4.ui.internal.workbench.renderers.swt.IUpdateService;
 import org.eclipse.e4.ui.internal.workbench.swt.E4Application;
 import org.eclipse.e4.ui.internal.workbench.swt.IEventLoopAdvisor;
@@ -467,6 +468,13 @@ public final class Workbench extends EventManager implements IWorkbench {
 		Workbench.instance = this;
 		eventBroker = (IEventBroker) e4Context.get(IEventBroker.class.getName());
 
+		IModelResourceHandler handler = e4Context.get(IModelResourceHandler.class);
+		if (handler instanceof ResourceHandler) {
+			// leave out the elements cleanUpCopy() removes from the auto-saved
+			// model when the model is journaled
+			((ResourceHandler) handler).setSkipContributedElements(true);
+		}
+
 		appContext.set(getClass().getName(), this);
 		appContext.set(IWorkbench.class.getName(), this);
 		appContext.set(IEventLoopAdvisor.class, new IEventLoopAdvisor() {
@@ -1169,11 +1177,15 @@ public final class Workbench extends EventManager implements IWorkbench {
 
 	/**
 	 * Copy the model, clean it up and write it out to workbench.xmi. Called as
-	 * part of persist(false) during auto-save.
+	 * part of persist(false) during auto-save. Nothing is written when the
+	 * model changes are journaled, the journal is up to date already.
 	 */
 	private void persistWorkbenchModel() {
-		final MApplication appCopy = (MApplication) EcoreUtil.copy((EObject) application);
 		final IModelResourceHandler handler = e4Context.get(IModelResourceHandler.class);
+		if (handler instanceof ResourceHandler && ((ResourceHandler) handler).isJournaling()) {
+			return;
+		}
+		final MApplication appCopy = (MApplication) EcoreUtil.copy((EObject) application);
 
 		Job cleanAndSaveJob = new Job("Workbench Auto-Save Background Job") { //$NON-NLS-1$
 			@Override
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -100,10 +100,23 @@ class DecorationReference {
 		return contexts;
 	}
 
-	void addContext(IDecorationContext context) {
+	/**
+	 * Add a context the element is decorated for.
+	 * 
+	 * @param context
+	 * @return <code>false</code> if the element is already decorated for
+	 *         context
+	 */
+	boolean addContext(IDecorationContext context) {
+		for (int i = 0; i < contexts.length; i++) {
+			if (contexts[i].equals(context)) {
+				return false;
+			}
+		}
 		IDecorationContext[] newContexts = new IDecorationContext[contexts.length + 1];
 		System.arraycopy(contexts, 0, newContexts, 0, contexts.length);
 		newContexts[contexts.length] = context;
 		contexts = newContexts;
+		return true;
 	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,12 +12,13 @@
  *******************************************************************************/
 package org.eclipse.ui.internal.decorators;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -41,18 +42,59 @@ import org.eclipse.ui.progress.WorkbenchJob;
 
 /**
  * The DecorationScheduler is the class that handles the decoration of elements
- * using a background thread.
+ * using a pool of background jobs. The jobs decorate different elements at
+ * once, an element is only decorated by one job at a time.
  */
 public class DecorationScheduler {
 
+	/**
+	 * System property holding the number of jobs computing lightweight
+	 * decorations concurrently.
+	 */
+	static final String WORKER_COUNT_PROPERTY = "org.eclipse.ui.decorators.workerCount"; //$NON-NLS-1$
+
+	/**
+	 * System property holding the maximum number of decoration results cached
+	 * per decoration context.
+	 */
+	static final String CACHE_SIZE_PROPERTY = "org.eclipse.ui.decorators.cacheSize"; //$NON-NLS-1$
+
+	static final int WORKER_COUNT = Math.max(1, Integer.getInteger(
+			WORKER_COUNT_PROPERTY,
+			Math.min(4, Runtime.getRuntime().availableProcessors()))
+			.intValue());
+
+	static final int CACHE_SIZE = Math.max(1, Integer.getInteger(
+			CACHE_SIZE_PROPERTY, 10000).intValue());
+
+	/**
+	 * Number of pending label updates of a decoration context after which the
+	 * update job is scheduled even though elements of the context are still
+	 * awaiting decoration.
+	 */
+	static final int UPDATE_BATCH_SIZE = Math.max(1, CACHE_SIZE / 10);
+
 	static final ILabelProviderListener[] EMPTY_LISTENER_LIST = new ILabelProviderListener[0];
 
 	// When decorations are computed they are added to this cache via
-	// decorated() method
+	// decorated() method. Maps each context to a ResultCache.
 	Map resultCache = new HashMap();
 
-	// Objects that need an icon and text computed for display to the user
-	List awaitingDecoration = new ArrayList();
+	// The number of elements awaiting decoration for each context. The
+	// context is the closest the scheduler gets to the viewer requesting the
+	// decorations, so the label updates are batched per context.
+	Map awaitingCounts = new HashMap();
+
+	// Elements being decorated by one of the jobs
+	Set decorating = new HashSet();
+
+	// Objects that need an icon and text computed for display to the user,
+	// requested by a viewer labelling them
+	Set awaitingDecoration = new LinkedHashSet();
+
+	// Objects queued because their labels changed. They are only decorated
+	// once there are no elements awaiting decoration for a viewer.
+	Set awaitingBackgroundDecoration = new LinkedHashSet();
 
 	// Objects that are awaiting a label update.
 	Set pendingUpdate = new HashSet();
@@ -60,13 +102,17 @@ public class DecorationScheduler {
 	// Key to lock write access to the pending update set
 	Object pendingKey = new Object();
 
+	// The number of pending updates added by each context since the last
+	// label update
+	Map pendingCounts = new HashMap();
+
 	Map awaitingDecorationValues = new HashMap();
 
 	DecoratorManager decoratorManager;
 
 	boolean shutdown = false;
 
-	Job decorationJob;
+	Job[] decorationJobs;
 
 	UIJob updateJob;
 
@@ -83,13 +129,14 @@ public class DecorationScheduler {
 
 	/**
 	 * Return a new instance of the receiver configured for the supplied
-	 * DecoratorManager.
+	 * DecoratorManager. This constructor is public for use by the test suites
+	 * and is not intended to be referenced by other workbench internals.
 	 * 
 	 * @param manager
 	 */
-	DecorationScheduler(DecoratorManager manager) {
+	public DecorationScheduler(DecoratorManager manager) {
 		decoratorManager = manager;
-		createDecorationJob();
+		createDecorationJobs();
 	}
 
 	/**
@@ -134,9 +181,34 @@ public class DecorationScheduler {
 	 *            The decoration context
 	 */
 
-	synchronized void queueForDecoration(Object element, Object adaptedElement,
+	void queueForDecoration(Object element, Object adaptedElement,
 			boolean forceUpdate, String undecoratedText,
 			IDecorationContext context) {
+		queueForDecoration(element, adaptedElement, forceUpdate,
+				undecoratedText, context, false);
+	}
+
+	/**
+	 * Queue the element and its adapted value if it has not been already.
+	 * Elements requested by a viewer are decorated before the elements queued
+	 * in the background.
+	 * 
+	 * @param element
+	 * @param adaptedElement
+	 *            The adapted value of element. May be null.
+	 * @param forceUpdate
+	 *            If true then a labelProviderChanged is fired whether
+	 *            decoration occurred or not.
+	 * @param undecoratedText
+	 *            The original text for the element if it is known.
+	 * @param context
+	 *            The decoration context
+	 * @param background
+	 *            <code>true</code> if no viewer is waiting for the element
+	 */
+	synchronized void queueForDecoration(Object element, Object adaptedElement,
+			boolean forceUpdate, String undecoratedText,
+			IDecorationContext context, boolean background) {
 
 		Assert.isNotNull(context);
 		DecorationReference reference = (DecorationReference) awaitingDecorationValues
@@ -145,18 +217,32 @@ public class DecorationScheduler {
 			if (forceUpdate) {// Make sure we don't loose a force
 				reference.setForceUpdate(forceUpdate);
 			}
-			reference.addContext(context);
+			if (reference.addContext(context)) {
+				addCount(awaitingCounts, context, 1);
+			}
+			if (!background && awaitingBackgroundDecoration.remove(element)) {
+				awaitingDecoration.add(element);
+			}
 		} else {
 			reference = new DecorationReference(element, adaptedElement,
 					context);
 			reference.setForceUpdate(forceUpdate);
 			reference.setUndecoratedText(undecoratedText);
 			awaitingDecorationValues.put(element, reference);
-			awaitingDecoration.add(element);
+			addCount(awaitingCounts, context, 1);
+			if (background) {
+				awaitingBackgroundDecoration.add(element);
+			} else {
+				awaitingDecoration.add(element);
+			}
 			if (shutdown) {
 				return;
 			}
-			decorationJob.schedule();
+			int workers = Math.min(decorationJobs.length,
+					awaitingDecorationValues.size());
+			for (int i = 0; i < workers; i++) {
+				decorationJobs[i].schedule();
+			}
 		}
 
 	}
@@ -217,23 +303,56 @@ public class DecorationScheduler {
 
 	}
 
+	/**
+	 * Return the cached result of element, read to label the element.
+	 * 
+	 * @param element
+	 * @param context
+	 * @return DecorationResult or <code>null</code>
+	 */
 	private DecorationResult internalGetResult(Object element,
 			IDecorationContext context) {
-		Map results = (Map) resultCache.get(context);
-		if (results != null) {
-			return (DecorationResult) results.get(element);
+		synchronized (resultCache) {
+			ResultCache results = (ResultCache) resultCache.get(context);
+			if (results != null) {
+				return results.get(element);
+			}
+			return null;
+		}
+	}
+
+	private boolean isResultCached(Object element, IDecorationContext context) {
+		synchronized (resultCache) {
+			ResultCache results = (ResultCache) resultCache.get(context);
+			return results != null && results.contains(element);
 		}
-		return null;
 	}
 
-	protected void internalPutResult(Object element,
+	/**
+	 * Cache the result of element. This method is public for use by the test
+	 * suites and is not intended to be referenced by other workbench
+	 * internals.
+	 * 
+	 * @param element
+	 * @param context
+	 * @param result
+	 */
+	public void internalPutResult(Object element,
 			IDecorationContext context, DecorationResult result) {
-		Map results = (Map) resultCache.get(context);
-		if (results == null) {
-			results = new HashMap();
-			resultCache.put(context, results);
+		synchronized (resultCache) {
+			ResultCache results = (ResultCache) resultCache.get(context);
+			if (results == null) {
+				results = new ResultCache();
+				resultCache.put(context, results);
+			}
+			results.put(element, result);
+		}
+	}
+
+	private void clearResultCache() {
+		synchronized (resultCache) {
+			resultCache.clear();
 		}
-		results.put(element, result);
 	}
 
 	/**
@@ -256,32 +375,103 @@ public class DecorationScheduler {
 	}
 
 	/**
-	 * Shutdown the decoration.
+	 * Shutdown the decoration. This method is public for use by the test
+	 * suites and is not intended to be referenced by other workbench
+	 * internals.
 	 */
-	synchronized void shutdown() {
+	public synchronized void shutdown() {
 		shutdown = true;
 	}
 
 	/**
-	 * Get the next resource to be decorated.
+	 * Get the next resource to be decorated. The elements being decorated by
+	 * another job are left in the queue until that job is done with them.
 	 * 
-	 * @return IResource
+	 * @return IResource or <code>null</code> if there is none left for the
+	 *         calling job
 	 */
 	synchronized DecorationReference nextElement() {
 
-		if (shutdown || awaitingDecoration.isEmpty()) {
+		if (shutdown || awaitingDecorationValues.isEmpty()) {
 			return null;
 		}
-		Object element = awaitingDecoration.remove(0);
+		Object element = nextElement(awaitingDecoration);
+		if (element == null) {
+			element = nextElement(awaitingBackgroundDecoration);
+			if (element == null) {
+				return null;
+			}
+		}
+		decorating.add(element);
 
 		return (DecorationReference) awaitingDecorationValues.remove(element);
 	}
 
+	private Object nextElement(Set queue) {
+		Iterator iterator = queue.iterator();
+		while (iterator.hasNext()) {
+			Object element = iterator.next();
+			if (!decorating.contains(element)) {
+				iterator.remove();
+				return element;
+			}
+		}
+		return null;
+	}
+
 	/**
-	 * Create the Thread used for running decoration.
+	 * The decoration of the element of reference is done. Execute a label
+	 * update once a context has no more elements awaiting decoration or
+	 * enough pending updates.
+	 * 
+	 * @param reference
 	 */
-	private void createDecorationJob() {
-		decorationJob = new Job(
+	synchronized void decorated(DecorationReference reference) {
+		decorating.remove(reference.getElement());
+		boolean update = awaitingDecorationValues.isEmpty();
+		IDecorationContext[] contexts = reference.getContexts();
+		for (int i = 0; i < contexts.length; i++) {
+			int awaiting = addCount(awaitingCounts, contexts[i], -1);
+			int pending;
+			synchronized (pendingKey) {
+				pending = getCount(pendingCounts, contexts[i]);
+			}
+			if (pending >= UPDATE_BATCH_SIZE || (awaiting == 0 && pending > 0)) {
+				update = true;
+			}
+		}
+		if (update) {
+			decorated();
+		}
+	}
+
+	/**
+	 * Return whether or not elements are waiting to be decorated.
+	 * 
+	 * @return boolean
+	 */
+	synchronized boolean isAwaitingDecoration() {
+		return !awaitingDecorationValues.isEmpty();
+	}
+
+	/**
+	 * Create the jobs used for running decoration.
+	 */
+	private void createDecorationJobs() {
+		decorationJobs = new Job[WORKER_COUNT];
+		for (int i = 0; i < decorationJobs.length; i++) {
+			decorationJobs[i] = createDecorationJob();
+		}
+		decorationJobs[0].schedule();
+	}
+
+	/**
+	 * Create a job decorating the queued elements.
+	 * 
+	 * @return Job
+	 */
+	private Job createDecorationJob() {
+		Job decorationJob = new Job(
 				WorkbenchMessages.DecorationScheduler_CalculationJobName) {
 			/*
 			 * (non-Javadoc)
@@ -326,17 +516,16 @@ public class DecorationScheduler {
 					Object element = reference.getElement();
 					boolean force = reference.shouldForceUpdate();
 					IDecorationContext[] contexts = reference.getContexts();
-					for (int i = 0; i < contexts.length; i++) {
-						IDecorationContext context = contexts[i];
-						ensureResultCached(element, force, context);
-					}
-
-					// Only notify listeners when we have exhausted the
-					// queue of decoration requests.
-					synchronized (DecorationScheduler.this) {
-						if (awaitingDecoration.isEmpty()) {
-							decorated();
+					try {
+						for (int i = 0; i < contexts.length; i++) {
+							IDecorationContext context = contexts[i];
+							ensureResultCached(element, force, context);
 						}
+					} finally {
+						// Only notify listeners when we have exhausted the
+						// queue of decoration requests of a context or when
+						// enough of its updates are pending.
+						decorated(reference);
 					}
 				}
 				monitor.worked(100 - workCount);
@@ -356,12 +545,9 @@ public class DecorationScheduler {
 			 */
 			private void ensureResultCached(Object element, boolean force,
 					IDecorationContext context) {
-				boolean elementIsCached = internalGetResult(element, context) != null;
+				boolean elementIsCached = isResultCached(element, context);
 				if (elementIsCached) {
-					synchronized (pendingKey) {
-						pendingUpdate.add(element);
-					}
-
+					addPendingUpdate(element, context);
 				}
 
 				if (!elementIsCached) {
@@ -390,10 +576,7 @@ public class DecorationScheduler {
 						// Add an update for only the original element
 						// to
 						// prevent multiple updates and clear the cache.
-						synchronized (pendingKey) {
-							pendingUpdate.add(element);
-						}
-						
+						addPendingUpdate(element, context);
 
 					}
 				}
@@ -420,7 +603,7 @@ public class DecorationScheduler {
 
 		decorationJob.setSystem(true);
 		decorationJob.setPriority(Job.DECORATE);
-		decorationJob.schedule();
+		return decorationJob;
 	}
 
 	/**
@@ -459,7 +642,7 @@ public class DecorationScheduler {
 			 * @see org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.IProgressMonitor)
 			 */
 			protected IStatus run(IProgressMonitor monitor) {
-				resultCache.clear();
+				clearResultCache();
 				return Status.OK_STATUS;
 			}
 
@@ -563,8 +746,8 @@ public class DecorationScheduler {
                 // Other decoration requests may have occurred due to
                 // updates or we may have timed out updating listeners.
                 // Only clear the results if there are none pending.
-                if (awaitingDecoration.isEmpty()) {
-                    resultCache.clear();
+                if (!isAwaitingDecoration()) {
+                    clearResultCache();
                 }
             }
             
@@ -577,6 +760,7 @@ public class DecorationScheduler {
 					Object[] elements = pendingUpdate
 							.toArray(new Object[pendingUpdate.size()]);
 					pendingUpdate.clear();
+					pendingCounts.clear();
 					labelProviderChangedEvent = new LabelProviderChangedEvent(
 							decoratorManager, elements);
 				}
@@ -615,7 +799,7 @@ public class DecorationScheduler {
 	 * @return boolean true if the element is ready.
 	 */
 	public boolean isDecorationReady(Object element, IDecorationContext context) {
-		return internalGetResult(element, context) != null;
+		return isResultCached(element, context);
 	}
 
 	/**
@@ -684,7 +868,7 @@ public class DecorationScheduler {
 	 * @return boolean
 	 */
 	public boolean processingUpdates() {
-		return !hasPendingUpdates() && !awaitingDecoration.isEmpty();
+		return !hasPendingUpdates() && isAwaitingDecoration();
 	}
 
 	/**
@@ -714,4 +898,86 @@ public class DecorationScheduler {
 		}
 
 	}
+
+	private void addPendingUpdate(Object element, IDecorationContext context) {
+		synchronized (pendingKey) {
+			pendingUpdate.add(element);
+			addCount(pendingCounts, context, 1);
+		}
+	}
+
+	private static int getCount(Map counts, Object key) {
+		Integer count = (Integer) counts.get(key);
+		return count == null ? 0 : count.intValue();
+	}
+
+	private static int addCount(Map counts, Object key, int delta) {
+		int count = getCount(counts, key) + delta;
+		if (count > 0) {
+			counts.put(key, new Integer(count));
+		} else {
+			counts.remove(key);
+		}
+		return count;
+	}
+
+	/**
+	 * Return the maximum number of results cached per decoration context once
+	 * the labels were updated. This method is public for use by the test
+	 * suites and is not intended to be referenced by other workbench
+	 * internals.
+	 * 
+	 * @return int
+	 */
+	public static int getCacheSize() {
+		return CACHE_SIZE;
+	}
+
+	/**
+	 * The results of one decoration context. A result is kept until a viewer
+	 * reads it to label the element. Once read it joins the results that
+	 * were already read, of which the least recently used is dropped once
+	 * full; it is computed again when next requested.
+	 */
+	private static class ResultCache {
+
+		private Map unread = new HashMap();
+
+		private Map read = new UsedResults();
+
+		DecorationResult get(Object element) {
+			DecorationResult result = (DecorationResult) unread.remove(element);
+			if (result == null) {
+				return (DecorationResult) read.get(element);
+			}
+			read.put(element, result);
+			return result;
+		}
+
+		boolean contains(Object element) {
+			// does not count as a use of the result
+			return unread.containsKey(element) || read.containsKey(element);
+		}
+
+		void put(Object element, DecorationResult result) {
+			read.remove(element);
+			unread.put(element, result);
+		}
+	}
+
+	/**
+	 * The results read by the viewers, in the order they were used.
+	 */
+	private static class UsedResults extends LinkedHashMap {
+
+		private static final long serialVersionUID = 1L;
+
+		UsedResults() {
+			super(16, 0.75f, true);
+		}
+
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			return size() > CACHE_SIZE;
+		}
+	}
 }
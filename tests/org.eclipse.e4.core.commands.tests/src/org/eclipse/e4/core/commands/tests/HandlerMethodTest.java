@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.e4.core.commands.tests;
+
+import javax.inject.Named;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.commands.Category;
+import org.eclipse.core.commands.ParameterizedCommand;
+import org.eclipse.e4.core.commands.CommandServiceAddon;
+import org.eclipse.e4.core.commands.ECommandService;
+import org.eclipse.e4.core.commands.EHandlerService;
+import org.eclipse.e4.core.contexts.ContextInjectionFactory;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.di.InjectionException;
+import org.eclipse.e4.core.di.annotations.CanExecute;
+import org.eclipse.e4.core.di.annotations.Execute;
+import org.eclipse.e4.core.di.annotations.Optional;
+
+/**
+ * Tests {@link EHandlerService} with handlers without a <code>@CanExecute</code> method, with
+ * <code>@CanExecute</code> and <code>@Execute</code> methods taking no arguments and with ones
+ * taking injected arguments, which the service calls in different ways.
+ */
+public class HandlerMethodTest extends TestCase {
+
+	private static final String CAT_ID = "handlerMethod.cat";
+	private static final String PLAIN_ID = "handlerMethod.plain";
+	private static final String NO_ARGS_ID = "handlerMethod.noArgs";
+	private static final String INJECTED_ID = "handlerMethod.injected";
+	private static final String FAILING_ID = "handlerMethod.failing";
+	private static final String ENABLED_ID = "handlerMethod.enabled";
+
+	static class PlainHandler {
+		public int executed;
+
+		@Execute
+		public void execute() {
+			executed++;
+		}
+	}
+
+	static class NoArgsHandler {
+		public int checked;
+		public boolean enabled = true;
+
+		@CanExecute
+		public boolean canExecute() {
+			checked++;
+			return enabled;
+		}
+
+		@Execute
+		public Object execute() {
+			return NO_ARGS_ID;
+		}
+	}
+
+	static class InjectedHandler {
+		@CanExecute
+		public boolean canExecute(@Optional @Named(ENABLED_ID) Boolean enabled) {
+			return enabled != null && enabled.booleanValue();
+		}
+
+		@Execute
+		public Object execute(@Named(ENABLED_ID) Boolean enabled) {
+			return enabled;
+		}
+	}
+
+	static class FailingHandler {
+		@Execute
+		public void execute() {
+			throw new IllegalStateException();
+		}
+	}
+
+	private IEclipseContext workbenchContext;
+	private EHandlerService handlerService;
+	private ECommandService commandService;
+
+	@Override
+	protected void setUp() throws Exception {
+		IEclipseContext globalContext = TestActivator.getDefault().getGlobalContext();
+		workbenchContext = globalContext.createChild("workbenchContext");
+		ContextInjectionFactory.make(CommandServiceAddon.class, workbenchContext);
+		commandService = (ECommandService) workbenchContext.get(ECommandService.class.getName());
+		handlerService = (EHandlerService) workbenchContext.get(EHandlerService.class.getName());
+		Category category = commandService.defineCategory(CAT_ID, "Handler Methods", null);
+		commandService.defineCommand(PLAIN_ID, "Plain", null, category, null);
+		commandService.defineCommand(NO_ARGS_ID, "No Arguments", null, category, null);
+		commandService.defineCommand(INJECTED_ID, "Injected", null, category, null);
+		commandService.defineCommand(FAILING_ID, "Failing", null, category, null);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		workbenchContext.dispose();
+	}
+
+	public void testCanExecute() throws Exception {
+		PlainHandler plain = new PlainHandler();
+		NoArgsHandler noArgs = new NoArgsHandler();
+		handlerService.activateHandler(PLAIN_ID, plain);
+		handlerService.activateHandler(NO_ARGS_ID, noArgs);
+		handlerService.activateHandler(INJECTED_ID, new InjectedHandler());
+		ParameterizedCommand noArgsCommand = commandService.createCommand(NO_ARGS_ID, null);
+		ParameterizedCommand injectedCommand = commandService.createCommand(INJECTED_ID, null);
+
+		assertTrue(handlerService.canExecute(commandService.createCommand(PLAIN_ID, null)));
+		assertTrue(handlerService.canExecute(noArgsCommand));
+		noArgs.enabled = false;
+		assertFalse(handlerService.canExecute(noArgsCommand));
+		assertEquals(2, noArgs.checked);
+
+		assertFalse(handlerService.canExecute(injectedCommand));
+		workbenchContext.set(ENABLED_ID, Boolean.TRUE);
+		assertTrue(handlerService.canExecute(injectedCommand));
+		workbenchContext.set(ENABLED_ID, Boolean.FALSE);
+		assertFalse(handlerService.canExecute(injectedCommand));
+
+		assertEquals(0, plain.executed);
+	}
+
+	public void testExecuteWithoutCanExecute() throws Exception {
+		PlainHandler plain = new PlainHandler();
+		handlerService.activateHandler(PLAIN_ID, plain);
+		ParameterizedCommand command = commandService.createCommand(PLAIN_ID, null);
+		assertTrue(handlerService.canExecute(command));
+		assertNull(handlerService.executeHandler(command));
+		assertEquals(1, plain.executed);
+
+		handlerService.deactivateHandler(PLAIN_ID, plain);
+		assertFalse(handlerService.canExecute(command));
+	}
+
+	public void testExecute() throws Exception {
+		NoArgsHandler noArgs = new NoArgsHandler();
+		handlerService.activateHandler(NO_ARGS_ID, noArgs);
+		handlerService.activateHandler(INJECTED_ID, new InjectedHandler());
+		ParameterizedCommand noArgsCommand = commandService.createCommand(NO_ARGS_ID, null);
+
+		assertEquals(NO_ARGS_ID, handlerService.executeHandler(noArgsCommand));
+		noArgs.enabled = false;
+		assertNull(handlerService.executeHandler(noArgsCommand));
+
+		workbenchContext.set(ENABLED_ID, Boolean.TRUE);
+		assertEquals(Boolean.TRUE,
+				handlerService.executeHandler(commandService.createCommand(INJECTED_ID, null)));
+	}
+
+	public void testExecuteFailure() throws Exception {
+		handlerService.activateHandler(FAILING_ID, new FailingHandler());
+		try {
+			handlerService.executeHandler(commandService.createCommand(FAILING_ID, null));
+			fail("The failure of the handler was not reported");
+		} catch (InjectionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+}
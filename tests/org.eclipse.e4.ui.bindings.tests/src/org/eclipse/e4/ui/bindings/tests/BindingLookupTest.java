@@ -272,6 +272,28 @@ public class BindingLookupTest extends TestCase {
 		assertEquals(seq, foundSequence);
 	}
 
+	public void testLookupBestShortcutText() throws Exception {
+		ECommandService cs = (ECommandService) workbenchContext
+				.get(ECommandService.class.getName());
+		ParameterizedCommand cmd = cs.createCommand(TEST_ID1, null);
+		EBindingService bs = (EBindingService) workbenchContext
+				.get(EBindingService.class.getName());
+		assertNull(bs.getBestSequenceText(cmd));
+
+		TriggerSequence seq2 = bs.createSequence("ALT+5 X");
+		Binding db2 = createDefaultBinding(bs, seq2, cmd, ID_DIALOG_AND_WINDOW);
+		bs.activateBinding(db2);
+		assertEquals(seq2.format(), bs.getBestSequenceText(cmd));
+
+		TriggerSequence seq = bs.createSequence("CTRL+5 T");
+		Binding db = createDefaultBinding(bs, seq, cmd, ID_DIALOG_AND_WINDOW);
+		bs.activateBinding(db);
+		assertEquals(seq.format(), bs.getBestSequenceText(cmd));
+
+		bs.deactivateBinding(db);
+		assertEquals(seq2.format(), bs.getBestSequenceText(cmd));
+	}
+
 	public void testLookupBestShortcut() throws Exception {
 		ECommandService cs = (ECommandService) workbenchContext
 				.get(ECommandService.class.getName());
@@ -353,6 +353,34 @@ public class BindingTableTests extends TestCase {
 		assertEquals(about, it.next());
 	}
 
+	public void testManagerLookupsFollowTableChanges() throws Exception {
+		BindingTableManager manager = createManager();
+		Binding paste = getTestBinding(PASTE_ID);
+		ContextSet javaSet = createJavaSet(manager);
+		assertEquals(paste, manager.getPerfectMatch(javaSet, paste
+				.getTriggerSequence()));
+		assertEquals(paste, manager.getBestSequenceFor(javaSet, paste
+				.getParameterizedCommand()));
+
+		BindingTable table = manager.getTable(paste.getContextId());
+		table.removeBinding(paste);
+		// an equal context set shares the lookups of the first one
+		ContextSet otherJavaSet = createJavaSet(manager);
+		assertNull(manager.getPerfectMatch(otherJavaSet, paste
+				.getTriggerSequence()));
+		assertEquals(KeySequence.getInstance("SHIFT+INSERT"), manager
+				.getBestSequenceFor(javaSet, paste.getParameterizedCommand())
+				.getTriggerSequence());
+		assertEquals(2, manager.getSequencesFor(javaSet,
+				paste.getParameterizedCommand()).size());
+
+		table.addBinding(paste);
+		assertEquals(paste, manager.getPerfectMatch(javaSet, paste
+				.getTriggerSequence()));
+		assertEquals(paste, manager.getBestSequenceFor(otherJavaSet, paste
+				.getParameterizedCommand()));
+	}
+
 	private BindingTable loadTable(String contextId) {
 		Context context = contextManager.getContext(contextId);
 		BindingTable table = new BindingTable(context);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2009 IBM Corporation and others. All rights reserved. This
+ * Copyright (c) 2008, 2012 IBM Corporation and others. All rights reserved. This
  * program and the accompanying materials are made available under the terms of
  * the Eclipse Public License v1.0 which accompanies this distribution, and is
  * available at http://www.eclipse.org/legal/epl-v10.html
@@ -46,6 +46,7 @@ public class CssSwtTestSuite extends TestSuite {
 		addTestSuite(DescendentTest.class);  
 
 		addTestSuite(ThemeTest.class);
+		addTestSuite(ThemeStyleCacheTest.class);
 
 	}
 }
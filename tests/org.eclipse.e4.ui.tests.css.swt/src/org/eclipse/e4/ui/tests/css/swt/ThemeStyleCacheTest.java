@@ -0,0 +1,240 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.e4.ui.tests.css.swt;
+
+import org.eclipse.e4.ui.css.core.engine.CSSEngine;
+import org.eclipse.e4.ui.css.core.impl.engine.AbstractCSSEngine;
+import org.eclipse.e4.ui.css.swt.dom.WidgetElement;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.CTabFolder;
+import org.eclipse.swt.custom.CTabItem;
+import org.eclipse.swt.custom.SashForm;
+import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.layout.FillLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Text;
+import org.eclipse.swt.widgets.ToolBar;
+import org.eclipse.swt.widgets.ToolItem;
+import org.eclipse.swt.widgets.Tree;
+
+/**
+ * Tests the sharing of computed styles and the skipping of unchanged
+ * properties while a dark workbench theme is applied to a workbench sized
+ * widget tree.
+ */
+public class ThemeStyleCacheTest extends CSSSWTTestCase {
+
+	/**
+	 * A condensed version of the workbench dark theme: type, class, id,
+	 * descendant and pseudo-class selectors in roughly the same proportions.
+	 */
+	static final String DARK_THEME = "Shell, Composite, SashForm { background-color: #2F2F2F; color: #CCCCCC; }\n"
+			+ ".MTrimmedWindow { background-color: #161616; }\n"
+			+ ".MTrimBar { background-color: #3F3F3F; color: #CCCCCC; }\n"
+			+ ".MTrimBar#org-eclipse-ui-main-toolbar { background-color: #404040; }\n"
+			+ "CTabFolder { background-color: #2F2F2F; color: #DDDDDD; }\n"
+			+ "CTabFolder.active { background-color: #505050; }\n"
+			+ "CTabItem { color: #DDDDDD; }\n"
+			+ "CTabItem:selected { color: #FFFFFF; }\n"
+			+ ".MPartStack.active CTabItem:selected { color: #FFFFFF; }\n"
+			+ "ToolBar { background-color: #3F3F3F; }\n"
+			+ ".MToolBar ToolBar { background-color: #3F3F3F; }\n"
+			+ "Tree, Table { background-color: #2F2F2F; color: #CCCCCC; }\n"
+			+ "Text { background-color: #262626; color: #CCCCCC; }\n"
+			+ "Label { color: #CCCCCC; }\n"
+			+ "Button { background-color: #2F2F2F; }\n"
+			+ "#org-eclipse-ui-editorss { background-color: #262626; }\n"
+			+ ".MPart Composite { background-color: #2F2F2F; }\n"
+			+ ".MPart Label { color: #BBBBBB; }\n";
+
+	private static final int STACKS = 12;
+
+	private static final int PARTS_PER_STACK = 8;
+
+	private static final int WIDGETS_PER_PART = 20;
+
+	private Shell createWorkbenchTree(Display display) {
+		Shell shell = new Shell(display, SWT.SHELL_TRIM);
+		WidgetElement.setCSSClass(shell, "MTrimmedWindow");
+		shell.setLayout(new FillLayout(SWT.VERTICAL));
+
+		Composite trimBar = new Composite(shell, SWT.NONE);
+		WidgetElement.setCSSClass(trimBar, "MTrimBar");
+		WidgetElement.setID(trimBar, "org-eclipse-ui-main-toolbar");
+		trimBar.setLayout(new FillLayout());
+		for (int i = 0; i < 10; i++) {
+			ToolBar toolBar = new ToolBar(trimBar, SWT.FLAT);
+			WidgetElement.setCSSClass(toolBar, "MToolBar");
+			for (int j = 0; j < 6; j++) {
+				new ToolItem(toolBar, SWT.PUSH).setText("item" + j);
+			}
+		}
+
+		SashForm sash = new SashForm(shell, SWT.HORIZONTAL);
+		for (int s = 0; s < STACKS; s++) {
+			CTabFolder folder = new CTabFolder(sash, SWT.BORDER);
+			WidgetElement.setCSSClass(folder, s == 0 ? "MPartStack active"
+					: "MPartStack");
+			for (int p = 0; p < PARTS_PER_STACK; p++) {
+				CTabItem item = new CTabItem(folder, SWT.CLOSE);
+				item.setText("Part " + s + '.' + p);
+				Composite part = new Composite(folder, SWT.NONE);
+				WidgetElement.setCSSClass(part, "MPart");
+				part.setLayout(new FillLayout(SWT.VERTICAL));
+				item.setControl(part);
+				new Tree(part, SWT.NONE);
+				for (int w = 0; w < WIDGETS_PER_PART; w++) {
+					switch (w % 3) {
+					case 0:
+						new Label(part, SWT.NONE).setText("label" + w);
+						break;
+					case 1:
+						new Text(part, SWT.BORDER);
+						break;
+					default:
+						new Button(part, SWT.PUSH).setText("button" + w);
+					}
+				}
+			}
+			folder.setSelection(0);
+		}
+		return shell;
+	}
+
+	/**
+	 * Returns the first part of the stack; the sash form also has sash
+	 * children.
+	 */
+	private static Composite getPart(Shell shell, int stack) {
+		Control[] controls = ((Composite) shell.getChildren()[1]).getChildren();
+		for (int i = 0; i < controls.length; i++) {
+			if (controls[i] instanceof CTabFolder && stack-- == 0) {
+				return (Composite) ((CTabFolder) controls[i]).getItem(0)
+						.getControl();
+			}
+		}
+		return null;
+	}
+
+	public void testApplyDarkTheme() {
+		Display display = Display.getDefault();
+		CSSEngine engine = createEngine(DARK_THEME, display);
+		Shell shell = createWorkbenchTree(display);
+		AbstractCSSEngine abstractEngine = (AbstractCSSEngine) engine;
+		abstractEngine.resetStyleCacheCounters();
+
+		engine.applyStyles(shell, true);
+
+		assertTrue(abstractEngine.getStyleCacheMisses() > 0);
+		assertTrue(abstractEngine.getStyleCacheHits() > abstractEngine
+				.getStyleCacheMisses());
+		assertEquals(new RGB(0x16, 0x16, 0x16), shell.getBackground()
+				.getRGB());
+		Composite part = getPart(shell, STACKS - 1);
+		assertEquals(new RGB(0x2F, 0x2F, 0x2F), part.getBackground().getRGB());
+		Control[] controls = part.getChildren();
+		assertEquals(new RGB(0x2F, 0x2F, 0x2F), controls[0].getBackground()
+				.getRGB());
+		assertEquals(new RGB(0xBB, 0xBB, 0xBB), controls[1].getForeground()
+				.getRGB());
+		assertEquals(new RGB(0x26, 0x26, 0x26), controls[2].getBackground()
+				.getRGB());
+
+		// all the styles are shared when the theme is applied again
+		abstractEngine.resetStyleCacheCounters();
+		engine.applyStyles(shell, true);
+		assertEquals(0, abstractEngine.getStyleCacheMisses());
+		assertTrue(abstractEngine.getStyleCacheHits() > 0);
+		assertEquals(new RGB(0xBB, 0xBB, 0xBB), controls[1].getForeground()
+				.getRGB());
+		shell.dispose();
+	}
+
+	public void testStyleSharingKeepsDescendantRules() {
+		Display display = Display.getDefault();
+		CSSEngine engine = createEngine(DARK_THEME, display);
+		Shell shell = createWorkbenchTree(display);
+		Label outside = new Label(shell, SWT.NONE);
+		AbstractCSSEngine abstractEngine = (AbstractCSSEngine) engine;
+		abstractEngine.resetStyleCacheCounters();
+
+		engine.applyStyles(shell, true);
+
+		// labels of parts share one style, the label outside the parts is
+		// styled by the plain Label rule
+		assertTrue(abstractEngine.getStyleCacheHits() > abstractEngine
+				.getStyleCacheMisses());
+		assertEquals(new RGB(0xCC, 0xCC, 0xCC), outside.getForeground()
+				.getRGB());
+		Label inside = (Label) getPart(shell, 0).getChildren()[1];
+		assertEquals(new RGB(0xBB, 0xBB, 0xBB), inside.getForeground()
+				.getRGB());
+
+		// new stylesheets drop the shared styles
+		clearAndApply(engine, shell, "Label { color: #112233; }");
+		assertEquals(new RGB(0x11, 0x22, 0x33), inside.getForeground()
+				.getRGB());
+		shell.dispose();
+	}
+
+	public void testReapplySkipsUnchangedProperties() {
+		Display display = Display.getDefault();
+		CSSEngine engine = createEngine(DARK_THEME, display);
+		Shell shell = createWorkbenchTree(display);
+		Label label = new Label(shell, SWT.NONE);
+		AbstractCSSEngine abstractEngine = (AbstractCSSEngine) engine;
+		abstractEngine.setSkipUnchangedProperties(true);
+		engine.applyStyles(shell, true);
+
+		abstractEngine.resetPropertyCounters();
+		engine.applyStyles(shell, true);
+		assertEquals(0, abstractEngine.getAppliedPropertiesCount());
+		assertTrue(abstractEngine.getSkippedPropertiesCount() > 0);
+
+		// a changed value is applied again
+		WidgetElement.setID(label, "org-eclipse-ui-editorss");
+		engine.applyStyles(label, false);
+		assertTrue(abstractEngine.getAppliedPropertiesCount() > 0);
+
+		// a widget changed outside of the engine is styled again
+		label.setForeground(display.getSystemColor(SWT.COLOR_RED));
+		abstractEngine.clearAppliedValues(label);
+		abstractEngine.resetPropertyCounters();
+		engine.applyStyles(label, false);
+		assertEquals(0, abstractEngine.getSkippedPropertiesCount());
+		assertFalse(new RGB(255, 0, 0).equals(label.getForeground().getRGB()));
+		shell.dispose();
+	}
+
+	public void testReapplyWithoutSkipping() {
+		Display display = Display.getDefault();
+		CSSEngine engine = createEngine(DARK_THEME, display);
+		Shell shell = createWorkbenchTree(display);
+		Label label = new Label(shell, SWT.NONE);
+		AbstractCSSEngine abstractEngine = (AbstractCSSEngine) engine;
+		assertFalse(abstractEngine.isSkipUnchangedProperties());
+		engine.applyStyles(shell, true);
+
+		// by default a widget changed outside of the engine is styled again
+		label.setForeground(display.getSystemColor(SWT.COLOR_RED));
+		abstractEngine.resetPropertyCounters();
+		engine.applyStyles(shell, true);
+		assertEquals(0, abstractEngine.getSkippedPropertiesCount());
+		assertTrue(abstractEngine.getAppliedPropertiesCount() > 0);
+		assertFalse(new RGB(255, 0, 0).equals(label.getForeground().getRGB()));
+		shell.dispose();
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2010 IBM Corporation and others.
+ * Copyright (c) 2009, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,16 +16,23 @@ import junit.framework.TestSuite;
 import org.eclipse.e4.ui.tests.application.Bug299755Test;
 import org.eclipse.e4.ui.tests.application.Bug308220Test;
 import org.eclipse.e4.ui.tests.application.Bug320857Test;
+import org.eclipse.e4.ui.tests.application.E4BinaryFormatTest;
+import org.eclipse.e4.ui.tests.application.EModelServiceIndexTest;
+import org.eclipse.e4.ui.tests.application.ModelAssemblerTest;
 import org.eclipse.e4.ui.tests.application.ModelElementTest;
+import org.eclipse.e4.ui.tests.application.ModelJournalTest;
 import org.eclipse.e4.ui.tests.application.ModelRobustnessTest;
 import org.eclipse.e4.ui.tests.application.ResourceHandlerTest;
 import org.eclipse.e4.ui.tests.application.StartupTestSuite;
+import org.eclipse.e4.ui.tests.application.TopicTreeTest;
+import org.eclipse.e4.ui.tests.application.UIEventBatchTest;
 import org.eclipse.e4.ui.tests.application.UIEventTypesTest;
 import org.eclipse.e4.ui.tests.reconciler.ModelReconcilerTestSuite;
 import org.eclipse.e4.ui.tests.workbench.Bug308317Test;
 import org.eclipse.e4.ui.tests.workbench.ContextTest;
 import org.eclipse.e4.ui.tests.workbench.HandlerTest;
 import org.eclipse.e4.ui.tests.workbench.InjectionEventTest;
+import org.eclipse.e4.ui.tests.workbench.ItemEnablementEngineTest;
 import org.eclipse.e4.ui.tests.workbench.MMenuItemTest;
 import org.eclipse.e4.ui.tests.workbench.MPartSashContainerTest;
 import org.eclipse.e4.ui.tests.workbench.MPartTest;
@@ -48,6 +55,8 @@ public class UIAllTests extends TestSuite {
 	public UIAllTests() {
 		addTest(StartupTestSuite.suite());
 		addTestSuite(UIEventTypesTest.class);
+		addTestSuite(UIEventBatchTest.class);
+		addTestSuite(TopicTreeTest.class);
 		addTestSuite(Bug299755Test.class);
 		addTestSuite(Bug308220Test.class);
 		addTestSuite(Bug320857Test.class);
@@ -58,6 +67,7 @@ public class UIAllTests extends TestSuite {
 		addTestSuite(MPartSashContainerTest.class);
 		addTestSuite(MSaveablePartTest.class);
 		addTestSuite(MToolItemTest.class);
+		addTestSuite(ItemEnablementEngineTest.class);
 		addTestSuite(MWindowTest.class);
 		addTestSuite(MSashTest.class);
 		addTestSuite(HandlerTest.class);
@@ -66,8 +76,12 @@ public class UIAllTests extends TestSuite {
 		addTestSuite(Bug308317Test.class);
 		addTestSuite(ModelRobustnessTest.class);
 		addTestSuite(ResourceHandlerTest.class);
+		addTestSuite(ModelJournalTest.class);
 		addTestSuite(InjectionEventTest.class);
 		addTestSuite(PartFocusTest.class);
 		addTestSuite(ModelElementTest.class);
+		addTestSuite(EModelServiceIndexTest.class);
+		addTestSuite(E4BinaryFormatTest.class);
+		addTestSuite(ModelAssemblerTest.class);
 	}
 }
@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.e4.ui.tests.application;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import junit.framework.TestCase;
+import org.eclipse.e4.ui.internal.workbench.E4BinaryFormat;
+import org.eclipse.e4.ui.internal.workbench.E4XMIResource;
+import org.eclipse.e4.ui.internal.workbench.E4XMIResourceFactory;
+import org.eclipse.e4.ui.model.application.MApplication;
+import org.eclipse.e4.ui.model.application.impl.ApplicationFactoryImpl;
+import org.eclipse.e4.ui.model.application.ui.advanced.MPerspective;
+import org.eclipse.e4.ui.model.application.ui.advanced.MPerspectiveStack;
+import org.eclipse.e4.ui.model.application.ui.advanced.MPlaceholder;
+import org.eclipse.e4.ui.model.application.ui.advanced.impl.AdvancedFactoryImpl;
+import org.eclipse.e4.ui.model.application.ui.basic.MPart;
+import org.eclipse.e4.ui.model.application.ui.basic.MPartStack;
+import org.eclipse.e4.ui.model.application.ui.basic.MTrimmedWindow;
+import org.eclipse.e4.ui.model.application.ui.basic.impl.BasicFactoryImpl;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+/**
+ * Tests that a workbench model saved in the binary format the resource handler writes next to
+ * workbench.xmi restores the same model, with the same ids, as the XMI.
+ */
+public class E4BinaryFormatTest extends TestCase {
+	private static final int PERSPECTIVES = 4;
+	private static final int STACKS = 3;
+	private static final int PARTS_PER_STACK = 5;
+
+	private File xmiFile;
+	private File binaryFile;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		xmiFile = File.createTempFile("workbench", ".xmi");
+		binaryFile = File.createTempFile("workbench", ".bin");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		xmiFile.delete();
+		binaryFile.delete();
+		super.tearDown();
+	}
+
+	private static ResourceSetImpl createResourceSet() {
+		ResourceSetImpl resourceSet = new ResourceSetImpl();
+		resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap()
+				.put(Resource.Factory.Registry.DEFAULT_EXTENSION, new E4XMIResourceFactory());
+		return resourceSet;
+	}
+
+	private Resource createModel() {
+		MApplication application = ApplicationFactoryImpl.eINSTANCE.createApplication();
+		MTrimmedWindow window = BasicFactoryImpl.eINSTANCE.createTrimmedWindow();
+		application.getChildren().add(window);
+
+		MPerspectiveStack perspectiveStack = AdvancedFactoryImpl.eINSTANCE
+				.createPerspectiveStack();
+		window.getChildren().add(perspectiveStack);
+		for (int p = 0; p < PERSPECTIVES; p++) {
+			MPerspective perspective = AdvancedFactoryImpl.eINSTANCE.createPerspective();
+			perspective.setElementId("perspective." + p);
+			perspective.setLabel("Perspective " + p);
+			perspectiveStack.getChildren().add(perspective);
+			for (int s = 0; s < STACKS; s++) {
+				MPartStack stack = BasicFactoryImpl.eINSTANCE.createPartStack();
+				stack.getTags().add("stack." + s);
+				perspective.getChildren().add(stack);
+				for (int i = 0; i < PARTS_PER_STACK; i++) {
+					MPart part = BasicFactoryImpl.eINSTANCE.createPart();
+					part.setElementId("part." + p + '.' + s + '.' + i);
+					part.setLabel("Part " + i);
+					part.setContributionURI("bundleclass://org.eclipse.e4.ui.tests/Part" + i);
+					part.getPersistedState().put("index", Integer.toString(i));
+					stack.getChildren().add(part);
+				}
+				stack.setSelectedElement(stack.getChildren().get(0));
+
+				MPart view = BasicFactoryImpl.eINSTANCE.createPart();
+				view.setElementId("view." + (p * STACKS + s));
+				window.getSharedElements().add(view);
+				MPlaceholder viewRef = AdvancedFactoryImpl.eINSTANCE.createPlaceholder();
+				viewRef.setElementId(view.getElementId());
+				viewRef.setRef(view);
+				stack.getChildren().add(viewRef);
+			}
+		}
+		perspectiveStack.setSelectedElement(perspectiveStack.getChildren().get(0));
+
+		Resource resource = createResourceSet().createResource(
+				URI.createFileURI(xmiFile.getAbsolutePath()));
+		resource.getContents().add((EObject) application);
+		return resource;
+	}
+
+	private Resource loadXMI() {
+		return createResourceSet().getResource(URI.createFileURI(xmiFile.getAbsolutePath()), true);
+	}
+
+	private Resource loadBinary() throws IOException {
+		Resource resource = createResourceSet().createResource(
+				URI.createFileURI(xmiFile.getAbsolutePath()));
+		InputStream stream = new FileInputStream(binaryFile);
+		try {
+			E4BinaryFormat.load(resource, stream);
+		} finally {
+			stream.close();
+		}
+		return resource;
+	}
+
+	private void saveBinary(Resource resource) throws IOException {
+		OutputStream stream = new FileOutputStream(binaryFile);
+		try {
+			E4BinaryFormat.save(resource, stream);
+		} finally {
+			stream.close();
+		}
+	}
+
+	public void testSaveAndLoad() throws IOException {
+		Resource resource = createModel();
+		resource.save(null);
+		saveBinary(resource);
+		assertTrue(binaryFile.length() > 0);
+
+		Resource xmiResource = loadXMI();
+		Resource binaryResource = loadBinary();
+		assertTrue(EcoreUtil.equals(resource.getContents(), binaryResource.getContents()));
+		assertTrue(EcoreUtil.equals(xmiResource.getContents(), binaryResource.getContents()));
+		checkIds((E4XMIResource) resource, (E4XMIResource) binaryResource);
+		checkIds((E4XMIResource) xmiResource, (E4XMIResource) binaryResource);
+
+		// the placeholders still reference the shared parts
+		MApplication application = (MApplication) binaryResource.getContents().get(0);
+		MTrimmedWindow window = (MTrimmedWindow) application.getChildren().get(0);
+		assertEquals(PERSPECTIVES * STACKS, window.getSharedElements().size());
+		MPerspectiveStack perspectiveStack = (MPerspectiveStack) window.getChildren().get(0);
+		MPartStack stack = (MPartStack) perspectiveStack.getSelectedElement().getChildren()
+				.get(STACKS - 1);
+		MPlaceholder viewRef = (MPlaceholder) stack.getChildren().get(PARTS_PER_STACK);
+		assertSame(window.getSharedElements().get(STACKS - 1), viewRef.getRef());
+		assertEquals("4", ((MPart) stack.getChildren().get(4)).getPersistedState().get("index"));
+	}
+
+	public void testSaveLoadedModel() throws IOException {
+		Resource resource = createModel();
+		saveBinary(resource);
+		Resource loaded = loadBinary();
+
+		// a model read from the binary format is written again as it was read
+		saveBinary(loaded);
+		Resource reloaded = loadBinary();
+		assertTrue(EcoreUtil.equals(resource.getContents(), reloaded.getContents()));
+		checkIds((E4XMIResource) resource, (E4XMIResource) reloaded);
+	}
+
+	private static void checkIds(E4XMIResource expected, E4XMIResource actual) {
+		Iterator<EObject> expectedIt = expected.getAllContents();
+		Iterator<EObject> actualIt = actual.getAllContents();
+		while (expectedIt.hasNext()) {
+			assertTrue(actualIt.hasNext());
+			assertEquals(expected.getID(expectedIt.next()), actual.getID(actualIt.next()));
+		}
+		assertFalse(actualIt.hasNext());
+	}
+
+	public void testFormatMismatch() {
+		Resource resource = createResourceSet().createResource(
+				URI.createFileURI(xmiFile.getAbsolutePath()));
+		try {
+			E4BinaryFormat.load(resource,
+					new ByteArrayInputStream("<?xml version=\"1.0\"?>".getBytes()));
+			fail("XMI content must not be read as binary model");
+		} catch (IOException e) {
+			// expected, the resource handler falls back to the XMI
+		}
+		assertTrue(resource.getContents().isEmpty());
+	}
+}
@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.e4.ui.tests.application;
+
+import java.util.List;
+import junit.framework.TestCase;
+import org.eclipse.e4.ui.internal.workbench.ModelServiceImpl;
+import org.eclipse.e4.ui.model.application.MApplication;
+import org.eclipse.e4.ui.model.application.impl.ApplicationFactoryImpl;
+import org.eclipse.e4.ui.model.application.ui.MElementContainer;
+import org.eclipse.e4.ui.model.application.ui.advanced.MArea;
+import org.eclipse.e4.ui.model.application.ui.advanced.MPerspective;
+import org.eclipse.e4.ui.model.application.ui.advanced.MPerspectiveStack;
+import org.eclipse.e4.ui.model.application.ui.advanced.MPlaceholder;
+import org.eclipse.e4.ui.model.application.ui.advanced.impl.AdvancedFactoryImpl;
+import org.eclipse.e4.ui.model.application.ui.basic.MPart;
+import org.eclipse.e4.ui.model.application.ui.basic.MPartStack;
+import org.eclipse.e4.ui.model.application.ui.basic.MTrimmedWindow;
+import org.eclipse.e4.ui.model.application.ui.basic.impl.BasicFactoryImpl;
+import org.eclipse.e4.ui.workbench.modeling.EModelService;
+import org.eclipse.emf.ecore.EObject;
+
+/**
+ * Tests the element searches of the model service which are answered by its index of the
+ * application model, on a model with several perspectives sharing an area and views.
+ */
+public class EModelServiceIndexTest extends TestCase {
+	private static final int PERSPECTIVES = 4;
+	private static final int STACKS = 3;
+	private static final int PARTS_PER_STACK = 5;
+
+	private static final int FIND_PART = EModelService.OUTSIDE_PERSPECTIVE
+			| EModelService.IN_ACTIVE_PERSPECTIVE | EModelService.IN_SHARED_AREA;
+
+	private ModelServiceImpl modelService;
+	private MApplication application;
+	private MTrimmedWindow window;
+	private MPerspectiveStack perspectiveStack;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		modelService = new ModelServiceImpl(null);
+		application = ApplicationFactoryImpl.eINSTANCE.createApplication();
+		window = BasicFactoryImpl.eINSTANCE.createTrimmedWindow();
+		application.getChildren().add(window);
+
+		MArea area = AdvancedFactoryImpl.eINSTANCE.createArea();
+		area.setElementId("org.eclipse.ui.editorss");
+		MPartStack editorStack = BasicFactoryImpl.eINSTANCE.createPartStack();
+		MPart editor = BasicFactoryImpl.eINSTANCE.createPart();
+		editor.setElementId("editor");
+		editorStack.getChildren().add(editor);
+		area.getChildren().add(editorStack);
+		window.getSharedElements().add(area);
+
+		perspectiveStack = AdvancedFactoryImpl.eINSTANCE.createPerspectiveStack();
+		window.getChildren().add(perspectiveStack);
+		for (int p = 0; p < PERSPECTIVES; p++) {
+			MPerspective perspective = AdvancedFactoryImpl.eINSTANCE.createPerspective();
+			perspective.setElementId("perspective." + p);
+			perspectiveStack.getChildren().add(perspective);
+
+			MPlaceholder areaRef = AdvancedFactoryImpl.eINSTANCE.createPlaceholder();
+			areaRef.setRef(area);
+			perspective.getChildren().add(areaRef);
+
+			for (int s = 0; s < STACKS; s++) {
+				MPartStack stack = BasicFactoryImpl.eINSTANCE.createPartStack();
+				stack.setElementId("stack." + p + '.' + s);
+				perspective.getChildren().add(stack);
+				for (int i = 0; i < PARTS_PER_STACK; i++) {
+					MPart part = BasicFactoryImpl.eINSTANCE.createPart();
+					part.setElementId("part." + p + '.' + s + '.' + i);
+					stack.getChildren().add(part);
+				}
+
+				// one shared view per stack
+				MPart view = BasicFactoryImpl.eINSTANCE.createPart();
+				view.setElementId("view." + (p * STACKS + s));
+				window.getSharedElements().add(view);
+				MPlaceholder viewRef = AdvancedFactoryImpl.eINSTANCE.createPlaceholder();
+				viewRef.setElementId(view.getElementId());
+				viewRef.setRef(view);
+				stack.getChildren().add(viewRef);
+			}
+		}
+		perspectiveStack.setSelectedElement(perspectiveStack.getChildren().get(0));
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		modelService.dispose();
+		super.tearDown();
+	}
+
+	private List<MPart> findParts(String id, int searchFlags) {
+		return modelService.findElements(window, id, MPart.class, null, searchFlags);
+	}
+
+	public void testFindPart() {
+		// as EPartService.findPart(String)
+		for (int s = 0; s < STACKS; s++) {
+			assertEquals(1, findParts("view." + s, FIND_PART).size());
+			assertEquals(1, findParts("part.0." + s + ".0", FIND_PART).size());
+		}
+		for (int p = 1; p < PERSPECTIVES; p++) {
+			assertTrue(findParts("view." + p * STACKS, FIND_PART).isEmpty());
+			assertTrue(findParts("part." + p + ".0.0", FIND_PART).isEmpty());
+			assertEquals(1, findParts("part." + p + ".0.0", EModelService.ANYWHERE).size());
+		}
+		assertEquals(1, findParts("editor", FIND_PART).size());
+		assertTrue(findParts("editor", EModelService.OUTSIDE_PERSPECTIVE
+				| EModelService.IN_ACTIVE_PERSPECTIVE).isEmpty());
+	}
+
+	public void testFindAllParts() {
+		List<MPart> parts = findParts(null, EModelService.ANYWHERE);
+		assertEquals(PERSPECTIVES * STACKS * (PARTS_PER_STACK + 1) + 1, parts.size());
+
+		// in the order of the recursive search
+		List<MPart> inOrder = modelService.findElements(perspectiveStack.getChildren().get(0),
+				null, MPart.class, null, EModelService.ANYWHERE);
+		assertEquals(STACKS * (PARTS_PER_STACK + 1) + 1, inOrder.size());
+		assertEquals("editor", inOrder.get(0).getElementId());
+		assertEquals("part.0.0.0", inOrder.get(1).getElementId());
+		assertEquals("part.0.2.4", inOrder.get(inOrder.size() - 2).getElementId());
+		assertEquals("view.2", inOrder.get(inOrder.size() - 1).getElementId());
+	}
+
+	public void testSearchFollowsModelChanges() {
+		MPart part = (MPart) modelService.find("part.0.1.2", application);
+		assertNotNull(part);
+
+		part.setElementId("renamed");
+		assertNull(modelService.find("part.0.1.2", application));
+		assertSame(part, modelService.find("renamed", application));
+
+		MPartStack stack = (MPartStack) (MElementContainer<?>) part.getParent();
+		stack.getChildren().remove(part);
+		assertNull(modelService.find("renamed", application));
+
+		MPerspective other = perspectiveStack.getChildren().get(1);
+		((MPartStack) other.getChildren().get(1)).getChildren().add(part);
+		assertSame(part, modelService.find("renamed", application));
+		assertTrue(findParts("renamed", EModelService.PRESENTATION).isEmpty());
+
+		perspectiveStack.setSelectedElement(other);
+		assertEquals(1, findParts("renamed", EModelService.PRESENTATION).size());
+	}
+
+	public void testSearchFollowsMoves() {
+		MPerspective first = perspectiveStack.getChildren().get(0);
+		MPerspective other = perspectiveStack.getChildren().get(1);
+		assertEquals(1, findParts("part.1.2.3", EModelService.ANYWHERE).size());
+
+		// move a stack with its parts directly to another perspective
+		MPartStack stack = (MPartStack) modelService.find("stack.1.2", application);
+		first.getChildren().add(stack);
+		assertSame(first, stack.getParent());
+		assertEquals(1, findParts("part.1.2.3", FIND_PART).size());
+		assertEquals(1, findParts("part.1.2.3", EModelService.ANYWHERE).size());
+
+		// and a single part
+		MPart part = (MPart) modelService.find("part.0.0.0", application);
+		((MPartStack) other.getChildren().get(1)).getChildren().add(part);
+		assertTrue(findParts("part.0.0.0", FIND_PART).isEmpty());
+		assertEquals(1, findParts("part.0.0.0", EModelService.ANYWHERE).size());
+
+		// the moved elements are still tracked
+		part.setElementId("renamed");
+		assertEquals(1, findParts("renamed", EModelService.ANYWHERE).size());
+		stack.getChildren().get(0).setElementId("renamed");
+		assertEquals(2, findParts("renamed", EModelService.ANYWHERE).size());
+		first.getChildren().remove(stack);
+		assertEquals(1, findParts("renamed", EModelService.ANYWHERE).size());
+	}
+
+	public void testDispose() {
+		assertEquals(1, findParts("view.0", FIND_PART).size());
+		assertFalse(((EObject) application).eAdapters().isEmpty());
+
+		modelService.dispose();
+		assertTrue(((EObject) application).eAdapters().isEmpty());
+
+		// searching again indexes the application again
+		assertEquals(1, findParts("view.0", FIND_PART).size());
+		assertFalse(((EObject) application).eAdapters().isEmpty());
+	}
+}
@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.e4.ui.tests.application;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+import org.eclipse.e4.core.contexts.ContextInjectionFactory;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.ui.internal.workbench.E4XMIResource;
+import org.eclipse.e4.ui.internal.workbench.E4XMIResourceFactory;
+import org.eclipse.e4.ui.internal.workbench.ModelAssembler;
+import org.eclipse.e4.ui.internal.workbench.ModelFragmentCache;
+import org.eclipse.e4.ui.model.application.MApplication;
+import org.eclipse.e4.ui.model.application.MApplicationElement;
+import org.eclipse.e4.ui.model.application.commands.MCommand;
+import org.eclipse.e4.ui.model.application.commands.MHandler;
+import org.eclipse.e4.ui.model.application.commands.impl.CommandsFactoryImpl;
+import org.eclipse.e4.ui.model.application.impl.ApplicationFactoryImpl;
+import org.eclipse.e4.ui.model.application.ui.basic.MPart;
+import org.eclipse.e4.ui.model.application.ui.basic.impl.BasicFactoryImpl;
+import org.eclipse.e4.ui.model.fragment.MFragmentFactory;
+import org.eclipse.e4.ui.model.fragment.MModelFragments;
+import org.eclipse.e4.ui.model.fragment.MStringModelFragment;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Constants;
+
+/**
+ * Tests the loading of the model fragments by the {@link ModelAssembler}, in parallel and from the
+ * {@link ModelFragmentCache}, and the resolution of the elements they import.
+ */
+public class ModelAssemblerTest extends HeadlessStartupTest {
+	private static final int FRAGMENTS = 8;
+
+	private File directory;
+
+	private File cacheDirectory;
+
+	/**
+	 * A bundle answering the headers and the time stamp the cache keys on.
+	 */
+	private static class TestBundle implements InvocationHandler {
+		String version = "1.0.0.v20120101";
+		long lastModified = 1;
+
+		Bundle create() {
+			return (Bundle) Proxy.newProxyInstance(Bundle.class.getClassLoader(),
+					new Class<?>[] { Bundle.class }, this);
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			if (name.equals("getHeaders")) {
+				Hashtable<String, String> headers = new Hashtable<String, String>();
+				headers.put(Constants.BUNDLE_VERSION, version);
+				return headers;
+			} else if (name.equals("getSymbolicName")) {
+				return "org.eclipse.e4.ui.tests.fragments";
+			} else if (name.equals("getLastModified")) {
+				return Long.valueOf(lastModified);
+			} else if (name.equals("hashCode")) {
+				return Integer.valueOf(System.identityHashCode(proxy));
+			} else if (name.equals("equals")) {
+				return Boolean.valueOf(proxy == args[0]);
+			}
+			return null;
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		directory = File.createTempFile("fragments", "");
+		directory.delete();
+		directory.mkdirs();
+		cacheDirectory = new File(directory, "cache");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		delete(directory);
+		super.tearDown();
+	}
+
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File child : files) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	private URI createFragment(String name, String partId) throws Exception {
+		ResourceSetImpl resourceSet = new ResourceSetImpl();
+		resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap()
+				.put(Resource.Factory.Registry.DEFAULT_EXTENSION, new E4XMIResourceFactory());
+		URI uri = URI.createFileURI(new File(directory, name + ".e4xmi").getAbsolutePath());
+		Resource resource = resourceSet.createResource(uri);
+
+		MModelFragments fragments = MFragmentFactory.INSTANCE.createModelFragments();
+		MStringModelFragment fragment = MFragmentFactory.INSTANCE.createStringModelFragment();
+		fragment.setFeaturename("children");
+		fragment.setParentElementId("window");
+		MPart part = BasicFactoryImpl.eINSTANCE.createPart();
+		part.setElementId(partId);
+		fragment.getElements().add(part);
+		fragments.getFragments().add(fragment);
+		resource.getContents().add((EObject) fragments);
+		((E4XMIResource) resource).setID((EObject) part, name + ".part");
+		resource.save(null);
+		return uri;
+	}
+
+	private static MPart getPart(Resource resource) {
+		MModelFragments fragments = (MModelFragments) resource.getContents().get(0);
+		return (MPart) fragments.getFragments().get(0).getElements().get(0);
+	}
+
+	public void testParallelLoad() throws Exception {
+		List<URI> uris = new ArrayList<URI>();
+		for (int i = 0; i < FRAGMENTS; i++) {
+			uris.add(createFragment("fragment" + i, "part" + i));
+		}
+		ResourceSetImpl resourceSet = new ResourceSetImpl();
+		List<Resource> resources = ModelAssembler.loadFragments(uris,
+				Collections.<Bundle> nCopies(FRAGMENTS, null), resourceSet, null);
+
+		// in the order of the locations, whatever the order they were parsed in
+		assertEquals(FRAGMENTS, resources.size());
+		for (int i = 0; i < FRAGMENTS; i++) {
+			Resource resource = resources.get(i);
+			assertEquals(uris.get(i), resource.getURI());
+			assertTrue(resource.isLoaded());
+			assertSame(resourceSet, resource.getResourceSet());
+			MPart part = getPart(resource);
+			assertEquals("part" + i, part.getElementId());
+			assertEquals("fragment" + i + ".part",
+					((E4XMIResource) resource).getID((EObject) part));
+		}
+		assertEquals(FRAGMENTS, resourceSet.getResources().size());
+	}
+
+	public void testCacheHit() throws Exception {
+		URI uri = createFragment("fragment", "before");
+		TestBundle bundle = new TestBundle();
+		ModelFragmentCache cache = new ModelFragmentCache(cacheDirectory);
+		List<Resource> resources = ModelAssembler.loadFragments(Collections.singletonList(uri),
+				Collections.singletonList(bundle.create()), new ResourceSetImpl(), cache);
+		assertEquals("before", getPart(resources.get(0)).getElementId());
+		assertEquals(1, cacheDirectory.list().length);
+
+		// the bundle did not change, the fragment is not parsed again
+		createFragment("fragment", "after");
+		resources = ModelAssembler.loadFragments(Collections.singletonList(uri),
+				Collections.singletonList(bundle.create()), new ResourceSetImpl(), cache);
+		MPart part = getPart(resources.get(0));
+		assertEquals("before", part.getElementId());
+		assertEquals("fragment.part", ((E4XMIResource) resources.get(0)).getID((EObject) part));
+	}
+
+	public void testCacheInvalidation() throws Exception {
+		URI uri = createFragment("fragment", "before");
+		TestBundle bundle = new TestBundle();
+		ModelFragmentCache cache = new ModelFragmentCache(cacheDirectory);
+		ModelAssembler.loadFragments(Collections.singletonList(uri),
+				Collections.singletonList(bundle.create()), new ResourceSetImpl(), cache);
+
+		// the bundle was updated
+		createFragment("fragment", "after");
+		bundle.lastModified++;
+		List<Resource> resources = ModelAssembler.loadFragments(Collections.singletonList(uri),
+				Collections.singletonList(bundle.create()), new ResourceSetImpl(), cache);
+		assertEquals("after", getPart(resources.get(0)).getElementId());
+
+		// and the updated fragment was cached in place of the old one
+		createFragment("fragment", "again");
+		resources = ModelAssembler.loadFragments(Collections.singletonList(uri),
+				Collections.singletonList(bundle.create()), new ResourceSetImpl(), cache);
+		assertEquals("after", getPart(resources.get(0)).getElementId());
+		assertEquals(1, cacheDirectory.list().length);
+	}
+
+	public void testDevelopmentBundleNotCached() throws Exception {
+		URI uri = createFragment("fragment", "before");
+		TestBundle bundle = new TestBundle();
+		bundle.version = "1.0.0.qualifier";
+		ModelFragmentCache cache = new ModelFragmentCache(cacheDirectory);
+		ModelAssembler.loadFragments(Collections.singletonList(uri),
+				Collections.singletonList(bundle.create()), new ResourceSetImpl(), cache);
+		assertFalse(cacheDirectory.exists());
+
+		createFragment("fragment", "after");
+		List<Resource> resources = ModelAssembler.loadFragments(Collections.singletonList(uri),
+				Collections.singletonList(bundle.create()), new ResourceSetImpl(), cache);
+		assertEquals("after", getPart(resources.get(0)).getElementId());
+	}
+
+	public void testPrune() throws Exception {
+		List<URI> uris = new ArrayList<URI>();
+		uris.add(createFragment("kept", "kept"));
+		uris.add(createFragment("removed", "removed"));
+		Bundle bundle = new TestBundle().create();
+		ModelAssembler.loadFragments(uris, Collections.nCopies(2, bundle), new ResourceSetImpl(),
+				new ModelFragmentCache(cacheDirectory));
+		assertEquals(2, cacheDirectory.list().length);
+		File stray = new File(cacheDirectory, "stray.bin.tmp");
+		assertTrue(stray.createNewFile());
+
+		// on the next start only the first fragment is still contributed
+		ModelFragmentCache cache = new ModelFragmentCache(cacheDirectory);
+		List<Resource> resources = ModelAssembler.loadFragments(uris.subList(0, 1),
+				Collections.singletonList(bundle), new ResourceSetImpl(), cache);
+		cache.prune();
+
+		String[] names = cacheDirectory.list();
+		assertEquals(1, names.length);
+		assertTrue(names[0].startsWith(uris.get(0).toString().replaceAll("[^\\w.-]", "_")));
+		assertFalse(stray.exists());
+
+		// still a cache hit
+		createFragment("kept", "changed");
+		resources = ModelAssembler.loadFragments(uris.subList(0, 1),
+				Collections.singletonList(bundle), new ResourceSetImpl(), cache);
+		assertEquals("kept", getPart(resources.get(0)).getElementId());
+	}
+
+	public void testResolveImports() {
+		MApplication application = ApplicationFactoryImpl.eINSTANCE.createApplication();
+		MCommand command = CommandsFactoryImpl.eINSTANCE.createCommand();
+		command.setElementId("test.command");
+		MCommand duplicate = CommandsFactoryImpl.eINSTANCE.createCommand();
+		duplicate.setElementId("test.command");
+		MCommand other = CommandsFactoryImpl.eINSTANCE.createCommand();
+		other.setElementId("test.other");
+		application.getCommands().add(command);
+		application.getCommands().add(other);
+		application.getCommands().add(duplicate);
+
+		// the fragment imports the commands its handlers refer to
+		MModelFragments fragments = MFragmentFactory.INSTANCE.createModelFragments();
+		MCommand importedCommand = CommandsFactoryImpl.eINSTANCE.createCommand();
+		importedCommand.setElementId("test.command");
+		MCommand importedOther = CommandsFactoryImpl.eINSTANCE.createCommand();
+		importedOther.setElementId("test.other");
+		fragments.getImports().add(importedCommand);
+		fragments.getImports().add(importedOther);
+		MHandler handler = CommandsFactoryImpl.eINSTANCE.createHandler();
+		handler.setCommand(importedCommand);
+		MHandler otherHandler = CommandsFactoryImpl.eINSTANCE.createHandler();
+		otherHandler.setCommand(importedOther);
+		application.getHandlers().add(handler);
+		application.getHandlers().add(otherHandler);
+
+		IEclipseContext context = applicationContext.createChild();
+		context.set(MApplication.class, application);
+		ModelAssembler assembler = ContextInjectionFactory.make(ModelAssembler.class, context);
+		List<MApplicationElement> addedElements = new ArrayList<MApplicationElement>();
+		addedElements.add(handler);
+		addedElements.add(otherHandler);
+		assembler.resolveImports(fragments.getImports(), addedElements);
+
+		// the first command with the id, as the search of the model finds it
+		assertSame(command, handler.getCommand());
+		assertSame(other, otherHandler.getCommand());
+		context.dispose();
+	}
+}
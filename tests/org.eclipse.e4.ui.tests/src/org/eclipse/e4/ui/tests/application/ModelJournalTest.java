@@ -0,0 +1,262 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.e4.ui.tests.application;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import junit.framework.TestCase;
+import org.eclipse.e4.ui.internal.workbench.E4XMIResource;
+import org.eclipse.e4.ui.internal.workbench.E4XMIResourceFactory;
+import org.eclipse.e4.ui.internal.workbench.ModelJournal;
+import org.eclipse.e4.ui.model.application.MApplication;
+import org.eclipse.e4.ui.model.application.MApplicationElement;
+import org.eclipse.e4.ui.model.application.impl.ApplicationFactoryImpl;
+import org.eclipse.e4.ui.model.application.ui.advanced.MPerspective;
+import org.eclipse.e4.ui.model.application.ui.advanced.MPerspectiveStack;
+import org.eclipse.e4.ui.model.application.ui.advanced.impl.AdvancedFactoryImpl;
+import org.eclipse.e4.ui.model.application.ui.basic.MPart;
+import org.eclipse.e4.ui.model.application.ui.basic.MPartStack;
+import org.eclipse.e4.ui.model.application.ui.basic.MTrimBar;
+import org.eclipse.e4.ui.model.application.ui.basic.MTrimmedWindow;
+import org.eclipse.e4.ui.model.application.ui.basic.impl.BasicFactoryImpl;
+import org.eclipse.e4.ui.model.application.ui.basic.impl.BasicPackageImpl;
+import org.eclipse.e4.ui.model.application.ui.menu.MToolBar;
+import org.eclipse.e4.ui.model.application.ui.menu.impl.MenuFactoryImpl;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+public class ModelJournalTest extends TestCase {
+
+	private File snapshotFile;
+	private File journalFile;
+	private E4XMIResource resource;
+	private ModelJournal journal;
+	private MPerspectiveStack perspectiveStack;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		snapshotFile = File.createTempFile("workbench", ".xmi");
+		journalFile = File.createTempFile("workbench", ".journal");
+
+		MApplication application = ApplicationFactoryImpl.eINSTANCE.createApplication();
+		MTrimmedWindow window = BasicFactoryImpl.eINSTANCE.createTrimmedWindow();
+		application.getChildren().add(window);
+		perspectiveStack = AdvancedFactoryImpl.eINSTANCE.createPerspectiveStack();
+		window.getChildren().add(perspectiveStack);
+		for (int p = 0; p < 2; p++) {
+			MPerspective perspective = AdvancedFactoryImpl.eINSTANCE.createPerspective();
+			perspective.setElementId("perspective." + p);
+			perspectiveStack.getChildren().add(perspective);
+			for (int s = 0; s < 2; s++) {
+				MPartStack stack = BasicFactoryImpl.eINSTANCE.createPartStack();
+				stack.setElementId("stack." + p + '.' + s);
+				perspective.getChildren().add(stack);
+				for (int i = 0; i < 3; i++) {
+					MPart part = BasicFactoryImpl.eINSTANCE.createPart();
+					part.setElementId("part." + p + '.' + s + '.' + i);
+					part.getPersistedState().put("index", Integer.toString(i));
+					stack.getChildren().add(part);
+				}
+				stack.setSelectedElement(stack.getChildren().get(0));
+			}
+		}
+		perspectiveStack.setSelectedElement(perspectiveStack.getChildren().get(0));
+
+		resource = (E4XMIResource) createResourceSet().createResource(
+				URI.createFileURI(snapshotFile.getAbsolutePath()));
+		resource.getContents().add((EObject) application);
+		resource.save(null);
+
+		journal = new ModelJournal(resource, journalFile);
+		journal.reset(snapshotFile);
+		journal.start();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		journal.dispose();
+		snapshotFile.delete();
+		journalFile.delete();
+		super.tearDown();
+	}
+
+	private static ResourceSetImpl createResourceSet() {
+		ResourceSetImpl resourceSet = new ResourceSetImpl();
+		resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap()
+				.put(Resource.Factory.Registry.DEFAULT_EXTENSION, new E4XMIResourceFactory());
+		return resourceSet;
+	}
+
+	private MPartStack getStack(int perspective, int stack) {
+		return (MPartStack) perspectiveStack.getChildren().get(perspective).getChildren()
+				.get(stack);
+	}
+
+	private void writeRecord() throws IOException {
+		byte[] record = journal.createRecord();
+		assertNotNull(record);
+		journal.append(record);
+		assertFalse(journal.isDirty());
+	}
+
+	private E4XMIResource replay(int expectedRecords) throws IOException {
+		E4XMIResource restored = (E4XMIResource) createResourceSet().getResource(
+				URI.createFileURI(snapshotFile.getAbsolutePath()), true);
+		ModelJournal replayed = new ModelJournal(restored, journalFile);
+		assertTrue(replayed.isJournalOf(snapshotFile));
+		assertEquals(expectedRecords, replayed.replay());
+		return restored;
+	}
+
+	private void checkRestored(E4XMIResource restored) {
+		assertTrue(EcoreUtil.equals(resource.getContents(), restored.getContents()));
+		Iterator<EObject> expected = resource.getAllContents();
+		Iterator<EObject> actual = restored.getAllContents();
+		while (expected.hasNext()) {
+			assertEquals(resource.getID(expected.next()), restored.getID(actual.next()));
+		}
+		assertFalse(actual.hasNext());
+	}
+
+	public void testAttributeChanges() throws IOException {
+		MPart part = (MPart) getStack(0, 1).getChildren().get(2);
+		part.setLabel("Renamed");
+		part.getTags().add("tag");
+		part.getPersistedState().put("index", "changed");
+		part.getPersistedState().put("other", "value");
+		writeRecord();
+
+		part.setLabel(null);
+		getStack(1, 0).setToBeRendered(false);
+		writeRecord();
+
+		checkRestored(replay(2));
+	}
+
+	public void testStructuralChanges() throws IOException {
+		// move a part to another stack and select it
+		MPart moved = (MPart) getStack(0, 0).getChildren().get(1);
+		getStack(1, 1).getChildren().add(0, moved);
+		getStack(1, 1).setSelectedElement(moved);
+		// remove a part
+		getStack(0, 1).getChildren().remove(0);
+		writeRecord();
+
+		// add a stack with new parts, and change a new part after it was added
+		MPartStack stack = BasicFactoryImpl.eINSTANCE.createPartStack();
+		MPart part = BasicFactoryImpl.eINSTANCE.createPart();
+		part.setElementId("new.part");
+		stack.getChildren().add(part);
+		perspectiveStack.getChildren().get(1).getChildren().add(stack);
+		part.setLabel("New");
+		stack.getChildren().add(getStack(0, 0).getChildren().get(0));
+		stack.setSelectedElement(part);
+		perspectiveStack.setSelectedElement(perspectiveStack.getChildren().get(1));
+		writeRecord();
+
+		checkRestored(replay(2));
+	}
+
+	public void testRecordSizeFollowsChange() throws IOException {
+		getStack(0, 0).getChildren().get(0).setLabel("Renamed");
+		byte[] record = journal.createRecord();
+		assertTrue(record.length < snapshotFile.length() / 10);
+		assertNull(journal.createRecord());
+	}
+
+	public void testIncompleteRecordIsDropped() throws IOException {
+		getStack(0, 0).getChildren().get(0).setLabel("Renamed");
+		writeRecord();
+		long length = journalFile.length();
+
+		// a record cut off by an unclean exit
+		getStack(0, 0).getChildren().get(1).setLabel("Lost");
+		byte[] record = journal.createRecord();
+		FileOutputStream out = new FileOutputStream(journalFile, true);
+		try {
+			out.write(new byte[] { 0, 0, 0, (byte) record.length });
+			out.write(record, 0, record.length / 2);
+		} finally {
+			out.close();
+		}
+
+		E4XMIResource restored = replay(1);
+		assertEquals(length, journalFile.length());
+		MApplication application = (MApplication) restored.getContents().get(0);
+		MPerspective perspective = (MPerspective) ((MPerspectiveStack) application.getChildren()
+				.get(0).getChildren().get(0)).getChildren().get(0);
+		MPartStack stack = (MPartStack) perspective.getChildren().get(0);
+		assertEquals("Renamed", stack.getChildren().get(0).getLabel());
+		assertNull(stack.getChildren().get(1).getLabel());
+	}
+
+	public void testJournalOfOtherSnapshot() throws IOException {
+		getStack(0, 0).getChildren().get(0).setLabel("Renamed");
+		writeRecord();
+
+		// the snapshot is rewritten, e.g. by the auto-save of the compatibility layer
+		getStack(0, 0).getChildren().get(1).setLabel("Saved in full");
+		resource.save(null);
+
+		ModelJournal replayed = new ModelJournal(resource, journalFile);
+		assertFalse(replayed.isJournalOf(snapshotFile));
+	}
+
+	public void testExcludedElements() throws IOException {
+		journal.dispose();
+		journal = new ModelJournal(resource, journalFile) {
+			@Override
+			protected boolean isExcluded(EObject owner, EStructuralFeature feature) {
+				return feature == BasicPackageImpl.Literals.WINDOW__MAIN_MENU;
+			}
+
+			@Override
+			protected boolean isExcluded(EObject element) {
+				return element instanceof MApplicationElement
+						&& ((MApplicationElement) element).getTags().contains("contributed");
+			}
+		};
+		journal.start();
+
+		MTrimmedWindow window = (MTrimmedWindow) ((MApplication) resource.getContents().get(0))
+				.getChildren().get(0);
+		window.setMainMenu(MenuFactoryImpl.eINSTANCE.createMenu());
+		MTrimBar trimBar = BasicFactoryImpl.eINSTANCE.createTrimBar();
+		MToolBar toolBar = MenuFactoryImpl.eINSTANCE.createToolBar();
+		toolBar.setElementId("tool.bar");
+		trimBar.getChildren().add(toolBar);
+		window.getTrimBars().add(trimBar);
+		MToolBar contributed = MenuFactoryImpl.eINSTANCE.createToolBar();
+		contributed.getTags().add("contributed");
+		trimBar.getChildren().add(contributed);
+		writeRecord();
+
+		// changes of the excluded elements are not recorded
+		window.getMainMenu().setLabel("Menu");
+		contributed.setLabel("Contributed");
+		assertNull(journal.createRecord());
+
+		MTrimmedWindow restored = (MTrimmedWindow) ((MApplication) replay(1).getContents().get(0))
+				.getChildren().get(0);
+		assertNull(restored.getMainMenu());
+		assertEquals(1, restored.getTrimBars().size());
+		assertEquals(1, restored.getTrimBars().get(0).getChildren().size());
+		assertEquals("tool.bar", restored.getTrimBars().get(0).getChildren().get(0).getElementId());
+	}
+}
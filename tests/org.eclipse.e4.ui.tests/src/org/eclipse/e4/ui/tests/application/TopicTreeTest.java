@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.e4.ui.tests.application;
+
+import java.util.HashMap;
+import java.util.Map;
+import junit.framework.TestCase;
+import org.eclipse.e4.core.services.events.IEventBroker;
+import org.eclipse.e4.ui.services.internal.events.EventAdminBridge;
+import org.eclipse.e4.ui.services.internal.events.TopicTree;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
+
+/**
+ * Tests the in-process event dispatch of the event broker.
+ */
+public class TopicTreeTest extends TestCase {
+	private static final String[] CLASSES = { "ElementContainer", "UIElement",
+			"UILabel", "Item", "Part", "Context", "Window", "Perspective" };
+
+	private static final String[] FEATURES = { "children", "selectedElement",
+			"visible", "toBeRendered", "label", "enabled", "selected",
+			"widget", "tags", "parent" };
+
+	private static final String[] TYPES = { "SET", "ADD", "REMOVE", "MOVE" };
+
+	private int notified;
+
+	private EventHandler handler = new EventHandler() {
+		public void handleEvent(Event event) {
+			notified++;
+		}
+	};
+
+	private static String topic(int i) {
+		return "org/eclipse/e4/ui/model/ui/" + CLASSES[i % CLASSES.length]
+				+ '/' + FEATURES[(i / CLASSES.length) % FEATURES.length] + '/'
+				+ TYPES[(i / (CLASSES.length * FEATURES.length))
+						% TYPES.length];
+	}
+
+	private static Event event(String topic) {
+		Map<String, Object> data = new HashMap<String, Object>();
+		data.put(IEventBroker.DATA, "data");
+		data.put("type", "SET");
+		return new Event(topic, data);
+	}
+
+	public void testWildcardMatching() {
+		TopicTree tree = new TopicTree();
+		TopicTree.Subscription all = new TopicTree.Subscription("*", null,
+				handler);
+		TopicTree.Subscription prefix = new TopicTree.Subscription("a/b/*",
+				null, handler);
+		TopicTree.Subscription exact = new TopicTree.Subscription("a/b",
+				null, handler);
+		tree.add(all);
+		tree.add(prefix);
+		tree.add(exact);
+		assertEquals(2, tree.match("a/b").length);
+		assertEquals(2, tree.match("a/b/c").length);
+		assertEquals(2, tree.match("a/b/c/d").length);
+		assertEquals(1, tree.match("a").length);
+		assertTrue(tree.remove(prefix));
+		assertFalse(tree.remove(prefix));
+		assertEquals(1, tree.match("a/b/c").length);
+		assertEquals(2, tree.size());
+	}
+
+	public void testDispatchToManySubscribers() {
+		TopicTree tree = new TopicTree();
+		int topics = CLASSES.length * FEATURES.length * TYPES.length;
+		for (int i = 0; i < topics * 10; i++) {
+			String topic = topic(i);
+			if (i % 10 == 0) {
+				// every tenth subscriber listens to all types of a feature
+				topic = topic.substring(0, topic.lastIndexOf('/')) + "/*";
+			}
+			tree.add(new TopicTree.Subscription(topic, null, handler));
+		}
+		for (int i = 0; i < topics; i++) {
+			notified = 0;
+			int expected = tree.match(topic(i)).length;
+			assertTrue(expected > 0);
+			assertEquals(expected, tree.dispatch(event(topic(i)), null));
+			assertEquals(expected, notified);
+		}
+	}
+
+	public void testFilter() throws Exception {
+		TopicTree tree = new TopicTree();
+		tree.add(new TopicTree.Subscription("a/b", FrameworkUtil
+				.createFilter("(type=SET)"), handler));
+		tree.add(new TopicTree.Subscription("a/b", FrameworkUtil
+				.createFilter("(type=ADD)"), handler));
+		assertEquals(1, tree.dispatch(event("a/b"), null));
+		assertEquals(1, notified);
+	}
+
+	public void testFailingHandler() {
+		TopicTree tree = new TopicTree();
+		final RuntimeException failure = new RuntimeException();
+		tree.add(new TopicTree.Subscription("a/b", null, handler));
+		tree.add(new TopicTree.Subscription("a/*", null, new EventHandler() {
+			public void handleEvent(Event event) {
+				throw failure;
+			}
+		}));
+		tree.add(new TopicTree.Subscription("*", null, handler));
+		try {
+			tree.dispatch(event("a/b"), null);
+			fail("The failure of the handler was not reported");
+		} catch (RuntimeException e) {
+			assertSame(failure, e);
+		}
+		// the other handlers were still notified
+		assertEquals(2, notified);
+	}
+
+	public void testManyTopics() {
+		TopicTree tree = new TopicTree();
+		tree.add(new TopicTree.Subscription("a/*", null, handler));
+		// more topics than the resolved subscribers are cached for
+		for (int i = 0; i < 2000; i++) {
+			assertEquals(1, tree.match("a/" + i).length);
+		}
+		tree.add(new TopicTree.Subscription("a/0", null, handler));
+		assertEquals(2, tree.match("a/0").length);
+		assertEquals(1, tree.match("a/1999").length);
+	}
+
+	public void testEventAdminBridge() {
+		TopicTree tree = new TopicTree();
+		tree.add(new TopicTree.Subscription("a/*", null, handler));
+		EventAdminBridge bridge = new EventAdminBridge(tree);
+
+		// an event sent straight to the EventAdmin
+		bridge.handleEvent(event("a/b"));
+		assertEquals(1, notified);
+
+		// an event the broker has dispatched already
+		Event forwarded = EventAdminBridge.forwarded(event("a/b"));
+		assertEquals("a/b", forwarded.getTopic());
+		assertEquals("data", forwarded.getProperty(IEventBroker.DATA));
+		bridge.handleEvent(forwarded);
+		assertEquals(1, notified);
+	}
+}
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.e4.ui.tests.application;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.services.events.IEventBroker;
+import org.eclipse.e4.ui.internal.workbench.EMFModelDeltaSet;
+import org.eclipse.e4.ui.internal.workbench.ModelReconcilingService;
+import org.eclipse.e4.ui.internal.workbench.ModelServiceImpl;
+import org.eclipse.e4.ui.internal.workbench.UIEventPublisher;
+import org.eclipse.e4.ui.model.application.MApplication;
+import org.eclipse.e4.ui.model.application.MApplicationElement;
+import org.eclipse.e4.ui.model.application.MApplicationFactory;
+import org.eclipse.e4.ui.model.application.ui.advanced.MPerspective;
+import org.eclipse.e4.ui.model.application.ui.advanced.MPerspectiveStack;
+import org.eclipse.e4.ui.model.application.ui.advanced.impl.AdvancedFactoryImpl;
+import org.eclipse.e4.ui.model.application.ui.basic.MTrimBar;
+import org.eclipse.e4.ui.model.application.ui.basic.MTrimmedWindow;
+import org.eclipse.e4.ui.model.application.ui.basic.impl.BasicFactoryImpl;
+import org.eclipse.e4.ui.model.application.ui.impl.UiPackageImpl;
+import org.eclipse.e4.ui.model.application.ui.menu.MToolControl;
+import org.eclipse.e4.ui.model.application.ui.menu.impl.MenuFactoryImpl;
+import org.eclipse.e4.ui.workbench.UIEvents;
+import org.eclipse.e4.ui.workbench.modeling.ModelDelta;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
+
+/**
+ * Tests the events sent by the bulk model edits that run in a
+ * {@link UIEventPublisher} batch.
+ */
+public class UIEventBatchTest extends HeadlessApplicationElementTest {
+	private List<Event> events = new ArrayList<Event>();
+
+	private MTrimmedWindow window;
+
+	private MPerspective perspective;
+
+	private MTrimBar trimBar;
+
+	private List<MToolControl> toolControls = new ArrayList<MToolControl>();
+
+	@Override
+	protected MApplicationElement createApplicationElement(
+			IEclipseContext appContext) throws Exception {
+		MApplication application = MApplicationFactory.INSTANCE
+				.createApplication();
+
+		window = BasicFactoryImpl.eINSTANCE.createTrimmedWindow();
+		window.setLabel("windowName");
+		application.getChildren().add(window);
+
+		MPerspectiveStack perspectiveStack = AdvancedFactoryImpl.eINSTANCE
+				.createPerspectiveStack();
+		window.getChildren().add(perspectiveStack);
+		perspective = AdvancedFactoryImpl.eINSTANCE.createPerspective();
+		perspective.setElementId("perspective");
+		perspectiveStack.getChildren().add(perspective);
+
+		// the trim of two stacks minimized in the perspective
+		trimBar = BasicFactoryImpl.eINSTANCE.createTrimBar();
+		window.getTrimBars().add(trimBar);
+		for (int i = 0; i < 2; i++) {
+			MToolControl toolControl = MenuFactoryImpl.eINSTANCE
+					.createToolControl();
+			toolControl.setElementId("stack" + i + "(perspective)");
+			trimBar.getChildren().add(toolControl);
+			toolControls.add(toolControl);
+		}
+		return application;
+	}
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		IEventBroker appEB = applicationContext.get(IEventBroker.class);
+		appEB.subscribe(UIEvents.UIModelTopicBase + UIEvents.TOPIC_SEP
+				+ UIEvents.ALL_SUB_TOPICS, new EventHandler() {
+			public void handleEvent(Event event) {
+				events.add(event);
+			}
+		});
+	}
+
+	private List<Event> getEvents(String attName) {
+		List<Event> result = new ArrayList<Event>();
+		for (Event event : events) {
+			if (attName.equals(event.getProperty(UIEvents.EventTags.ATTNAME))) {
+				result.add(event);
+			}
+		}
+		return result;
+	}
+
+	private int indexOf(String attName, String key, Object value) {
+		for (int i = 0; i < events.size(); i++) {
+			Event event = events.get(i);
+			if (attName.equals(event.getProperty(UIEvents.EventTags.ATTNAME))
+					&& event.getProperty(key) == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public void testCollapsedSetKeepsFirstPosition() {
+		UIEventPublisher publisher = UIEventPublisher.getPublisher(window);
+
+		publisher.beginBatch();
+		window.setLabel("aaa");
+		window.setTooltip("tooltip");
+		window.setLabel("bbb");
+		assertEquals(0, events.size());
+		publisher.endBatch();
+
+		assertEquals(2, events.size());
+		Event label = events.get(0);
+		assertEquals(UIEvents.UILabel.LABEL,
+				label.getProperty(UIEvents.EventTags.ATTNAME));
+		assertEquals("windowName",
+				label.getProperty(UIEvents.EventTags.OLD_VALUE));
+		assertEquals("bbb", label.getProperty(UIEvents.EventTags.NEW_VALUE));
+		assertEquals(UIEvents.UILabel.TOOLTIP,
+				events.get(1).getProperty(UIEvents.EventTags.ATTNAME));
+	}
+
+	public void testCancelledSetIsRevived() {
+		UIEventPublisher publisher = UIEventPublisher.getPublisher(window);
+
+		publisher.beginBatch();
+		window.setLabel("aaa");
+		window.setLabel("windowName");
+		window.setTooltip("tooltip");
+		window.setLabel("bbb");
+		publisher.endBatch();
+
+		assertEquals(2, events.size());
+		assertEquals("bbb",
+				events.get(0).getProperty(UIEvents.EventTags.NEW_VALUE));
+	}
+
+	public void testResetPerspective() {
+		// removing a perspective resets it first
+		new ModelServiceImpl(null).removePerspectiveModel(perspective, window);
+
+		assertEquals(0, trimBar.getChildren().size());
+		assertFalse(UIEventPublisher.getPublisher(window).isBatching());
+
+		// each tool control is unrendered before it is removed
+		for (MToolControl toolControl : toolControls) {
+			int set = indexOf(UIEvents.UIElement.TOBERENDERED,
+					UIEvents.EventTags.ELEMENT, toolControl);
+			int remove = indexOf(UIEvents.ElementContainer.CHILDREN,
+					UIEvents.EventTags.OLD_VALUE, toolControl);
+			assertTrue(set != -1);
+			assertTrue(remove != -1);
+			assertTrue(set < remove);
+			assertEquals(UIEvents.EventTypes.REMOVE,
+					events.get(remove).getProperty(UIEvents.EventTags.TYPE));
+		}
+	}
+
+	public void testMergeDeltas() {
+		List<ModelDelta> deltas = new ArrayList<ModelDelta>();
+		deltas.add(new EMFModelDeltaSet(window,
+				UiPackageImpl.Literals.UI_LABEL__LABEL, "aaa"));
+		deltas.add(new EMFModelDeltaSet(window,
+				UiPackageImpl.Literals.UI_LABEL__TOOLTIP, "tooltip"));
+		deltas.add(new EMFModelDeltaSet(window,
+				UiPackageImpl.Literals.UI_LABEL__LABEL, "bbb"));
+
+		assertTrue(new ModelReconcilingService().applyDeltas(deltas).isOK());
+
+		assertEquals("bbb", window.getLabel());
+		assertFalse(UIEventPublisher.getPublisher(window).isBatching());
+
+		// one collapsed label change, in the position of the first one
+		assertEquals(2, events.size());
+		List<Event> labels = getEvents(UIEvents.UILabel.LABEL);
+		assertEquals(1, labels.size());
+		assertSame(events.get(0), labels.get(0));
+		assertEquals("windowName",
+				labels.get(0).getProperty(UIEvents.EventTags.OLD_VALUE));
+		assertEquals("bbb",
+				labels.get(0).getProperty(UIEvents.EventTags.NEW_VALUE));
+	}
+}
@@ -14,6 +14,7 @@ package org.eclipse.e4.ui.tests.application;
 import java.util.Arrays;
 import org.eclipse.e4.core.contexts.IEclipseContext;
 import org.eclipse.e4.core.services.events.IEventBroker;
+import org.eclipse.e4.ui.internal.workbench.UIEventPublisher;
 import org.eclipse.e4.ui.model.application.MApplication;
 import org.eclipse.e4.ui.model.application.MApplicationElement;
 import org.eclipse.e4.ui.model.application.MApplicationFactory;
@@ -230,4 +231,63 @@ public class UIEventTypesTest extends HeadlessApplicationElementTest {
 		assertEquals(null, event.getProperty(UIEvents.EventTags.NEW_VALUE));
 	}
 
+	public void testBatchCollapsesSets() {
+		UIEventPublisher publisher = UIEventPublisher
+				.getPublisher(applicationElement);
+		assertNotNull(publisher);
+
+		publisher.beginBatch();
+		applicationElement.setElementId("aaa");
+		applicationElement.setElementId("bbb");
+		applicationElement.setElementId("ccc");
+		assertEquals(0, eventCount);
+		publisher.endBatch();
+
+		// one collapsed SET
+		assertEquals(1, eventCount);
+		assertEquals(UIEvents.EventTypes.SET,
+				event.getProperty(UIEvents.EventTags.TYPE));
+		assertEquals(null, event.getProperty(UIEvents.EventTags.OLD_VALUE));
+		assertEquals("ccc", event.getProperty(UIEvents.EventTags.NEW_VALUE));
+	}
+
+	public void testBatchFlushesBeforeAdd() {
+		UIEventPublisher publisher = UIEventPublisher
+				.getPublisher(applicationElement);
+
+		publisher.beginBatch();
+		applicationElement.setElementId("aaa");
+		applicationElement.setElementId("bbb");
+		assertEquals(0, eventCount);
+		applicationElement.getTags().add("0");
+
+		// the collapsed SET is sent before the ADD, which is not held back
+		assertEquals(2, eventCount);
+		assertEquals(UIEvents.EventTypes.ADD,
+				event.getProperty(UIEvents.EventTags.TYPE));
+
+		applicationElement.setElementId("ccc");
+		assertEquals(2, eventCount);
+		publisher.endBatch();
+
+		assertEquals(3, eventCount);
+		assertEquals("bbb", event.getProperty(UIEvents.EventTags.OLD_VALUE));
+		assertEquals("ccc", event.getProperty(UIEvents.EventTags.NEW_VALUE));
+	}
+
+	public void testBatchDropsCancelledSets() {
+		UIEventPublisher publisher = UIEventPublisher
+				.getPublisher(applicationElement);
+
+		publisher.beginBatch();
+		publisher.beginBatch();
+		applicationElement.setElementId("aaa");
+		publisher.endBatch();
+		applicationElement.setElementId(null);
+		publisher.endBatch();
+
+		assertEquals(0, eventCount);
+		assertFalse(publisher.isBatching());
+	}
+
 }
@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ ******************************************************************************/
+
+package org.eclipse.e4.ui.tests.workbench;
+
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+import org.eclipse.core.commands.AbstractHandler;
+import org.eclipse.core.commands.Command;
+import org.eclipse.core.commands.CommandManager;
+import org.eclipse.core.commands.ExecutionEvent;
+import org.eclipse.e4.core.contexts.EclipseContextFactory;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.ui.internal.workbench.renderers.swt.ItemEnablementEngine;
+import org.eclipse.e4.ui.model.application.ui.menu.MHandledToolItem;
+import org.eclipse.e4.ui.model.application.ui.menu.impl.MenuFactoryImpl;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Tests that the enablement of tracked items follows the context and the
+ * handler events right away, without the polling timer.
+ */
+public class ItemEnablementEngineTest extends TestCase {
+	private static final String ENABLED = "enabled";
+
+	private IEclipseContext context;
+
+	@Override
+	protected void setUp() throws Exception {
+		// the items are updated on the thread of their display
+		Display.getDefault();
+		context = EclipseContextFactory.create();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		context.dispose();
+	}
+
+	/**
+	 * An item reading its enablement from a context variable, recording the
+	 * enablement applied to it.
+	 */
+	private class ContextItem implements ItemEnablementEngine.IEnablementItem {
+		final List<Boolean> applied = new ArrayList<Boolean>();
+		boolean disposed = false;
+
+		public boolean isDisposed() {
+			return disposed;
+		}
+
+		public boolean computeEnablement() {
+			return Boolean.TRUE.equals(context.get(ENABLED));
+		}
+
+		public void applyEnablement(boolean enabled) {
+			applied.add(Boolean.valueOf(enabled));
+		}
+
+		boolean last() {
+			return applied.get(applied.size() - 1).booleanValue();
+		}
+	}
+
+	static class TestHandler extends AbstractHandler {
+		public Object execute(ExecutionEvent event) {
+			return null;
+		}
+
+		void changeEnabled(boolean enabled) {
+			setBaseEnabled(enabled);
+		}
+	}
+
+	public void testOnlyTaggedItemsArePolled() {
+		assertFalse(ItemEnablementEngine.isPollingEnabled());
+		MHandledToolItem item = MenuFactoryImpl.eINSTANCE
+				.createHandledToolItem();
+		assertFalse(ItemEnablementEngine.isPolled(item));
+		item.getTags().add(ItemEnablementEngine.POLL_ENABLEMENT_TAG);
+		assertTrue(ItemEnablementEngine.isPolled(item));
+	}
+
+	public void testContextChange() {
+		context.set(ENABLED, Boolean.FALSE);
+		ContextItem item = new ContextItem();
+		Runnable tracking = ItemEnablementEngine.track(context, null, item);
+		assertEquals(1, item.applied.size());
+		assertFalse(item.last());
+
+		// applied at once, the event loop does not run
+		context.set(ENABLED, Boolean.TRUE);
+		assertEquals(2, item.applied.size());
+		assertTrue(item.last());
+
+		context.remove(ENABLED);
+		assertEquals(3, item.applied.size());
+		assertFalse(item.last());
+		tracking.run();
+	}
+
+	public void testChildContextChange() {
+		IEclipseContext child = context.createChild();
+		context.set(ENABLED, Boolean.TRUE);
+		ContextItem item = new ContextItem() {
+			@Override
+			public boolean computeEnablement() {
+				// as the handler lookup does
+				return Boolean.TRUE.equals(context.getActiveLeaf().get(ENABLED));
+			}
+		};
+		ItemEnablementEngine.track(context, null, item);
+		assertTrue(item.last());
+
+		// the active leaf changes, as on a part activation
+		child.set(ENABLED, Boolean.FALSE);
+		child.activate();
+		assertFalse(item.last());
+		item.disposed = true;
+	}
+
+	public void testHandlerEvent() {
+		CommandManager manager = new CommandManager();
+		Command command = manager.getCommand("test.command");
+		command.define("Test", null, manager.getCategory("test.category"));
+		final TestHandler handler = new TestHandler();
+		command.setHandler(handler);
+
+		final List<Boolean> applied = new ArrayList<Boolean>();
+		Runnable tracking = ItemEnablementEngine.track(context, command,
+				new ItemEnablementEngine.IEnablementItem() {
+					public boolean isDisposed() {
+						return false;
+					}
+
+					public boolean computeEnablement() {
+						// not read from the context, reported by the handler
+						return handler.isEnabled();
+					}
+
+					public void applyEnablement(boolean enabled) {
+						applied.add(Boolean.valueOf(enabled));
+					}
+				});
+		assertEquals(Boolean.TRUE, applied.get(applied.size() - 1));
+
+		handler.changeEnabled(false);
+		assertEquals(Boolean.FALSE, applied.get(applied.size() - 1));
+
+		handler.changeEnabled(true);
+		assertEquals(Boolean.TRUE, applied.get(applied.size() - 1));
+
+		tracking.run();
+		int count = applied.size();
+		handler.changeEnabled(false);
+		assertEquals(count, applied.size());
+	}
+
+	public void testStopTracking() {
+		context.set(ENABLED, Boolean.TRUE);
+		ContextItem item = new ContextItem();
+		Runnable tracking = ItemEnablementEngine.track(context, null, item);
+		tracking.run();
+		context.set(ENABLED, Boolean.FALSE);
+		assertEquals(1, item.applied.size());
+
+		ContextItem disposedItem = new ContextItem();
+		ItemEnablementEngine.track(context, null, disposedItem);
+		disposedItem.disposed = true;
+		context.set(ENABLED, Boolean.TRUE);
+		assertEquals(1, disposedItem.applied.size());
+	}
+}
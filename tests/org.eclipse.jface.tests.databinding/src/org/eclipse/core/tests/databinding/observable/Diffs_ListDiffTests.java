@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2008 IBM Corporation and others.
+ * Copyright (c) 2007, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,6 +15,7 @@ package org.eclipse.core.tests.databinding.observable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
@@ -256,9 +257,65 @@ public class Diffs_ListDiffTests extends TestCase {
 				Arrays.asList(new Object[] { "c", "a", "b" }));
 	}
 
+	public void testComputeMinimalListDiff_MoveReportedAsMove() {
+		ListDiff diff = Diffs.computeMinimalListDiff(Arrays
+				.asList(new Object[] { "a", "b", "c" }), Arrays
+				.asList(new Object[] { "c", "a", "b" }));
+
+		assertEquals(2, diff.getDifferences().length);
+		assertEntry(diff.getDifferences()[0], false, 2, "c");
+		assertEntry(diff.getDifferences()[1], true, 0, "c");
+	}
+
+	public void testComputeMinimalListDiff_Reverse() {
+		ListDiff diff = Diffs.computeMinimalListDiff(Arrays
+				.asList(new Object[] { "a", "b", "c", "d" }), Arrays
+				.asList(new Object[] { "d", "c", "b", "a" }));
+
+		// only one element can stay in place
+		assertEquals(6, diff.getDifferences().length);
+	}
+
+	public void testComputeMinimalListDiff_Random() {
+		Random random = new Random(42);
+		for (int n = 0; n < 500; n++) {
+			List oldList = new ArrayList();
+			List newList = new ArrayList();
+			int distinct = 1 + random.nextInt(6);
+			for (int i = random.nextInt(10); i > 0; i--)
+				oldList.add(String.valueOf(random.nextInt(distinct)));
+			for (int i = random.nextInt(10); i > 0; i--)
+				newList.add(String.valueOf(random.nextInt(distinct)));
+
+			ListDiff diff = Diffs.computeMinimalListDiff(oldList, newList);
+			checkListDiff(oldList, newList, diff);
+			int common = longestCommonSubsequence(oldList, newList);
+			assertEquals(oldList.size() + newList.size() - 2 * common, diff
+					.getDifferences().length);
+		}
+	}
+
+	private static int longestCommonSubsequence(List a, List b) {
+		int[][] lengths = new int[a.size() + 1][b.size() + 1];
+		for (int i = 1; i <= a.size(); i++) {
+			for (int j = 1; j <= b.size(); j++) {
+				if (a.get(i - 1).equals(b.get(j - 1)))
+					lengths[i][j] = lengths[i - 1][j - 1] + 1;
+				else
+					lengths[i][j] = Math.max(lengths[i - 1][j],
+							lengths[i][j - 1]);
+			}
+		}
+		return lengths[a.size()][b.size()];
+	}
+
 	private static void checkComputedListDiff(List oldList, List newList) {
-		ListDiff diff = Diffs.computeListDiff(oldList, newList);
+		checkListDiff(oldList, newList, Diffs.computeListDiff(oldList, newList));
+		checkListDiff(oldList, newList, Diffs.computeMinimalListDiff(oldList,
+				newList));
+	}
 
+	private static void checkListDiff(List oldList, List newList, ListDiff diff) {
 		final List list = new ArrayList(oldList);
 		diff.accept(new ListDiffVisitor() {
 			public void handleAdd(int index, Object element) {
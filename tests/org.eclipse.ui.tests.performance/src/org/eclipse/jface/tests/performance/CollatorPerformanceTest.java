@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2009 IBM Corporation and others.
+ * Copyright (c) 2008, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,10 +11,12 @@
 
 package org.eclipse.jface.tests.performance;
 
+import java.text.Collator;
 import java.util.Arrays;
 import java.util.Comparator;
 
 import org.eclipse.jface.util.Policy;
+import org.eclipse.jface.viewers.ViewerComparator;
 import org.eclipse.ui.tests.performance.BasicPerformanceTest;
 
 /**
@@ -48,6 +50,22 @@ public class CollatorPerformanceTest extends BasicPerformanceTest {
         commitMeasurements();
         assertPerformance();
 	}
+
+	/**
+	 * test sorting the array with a ViewerComparator, which collates every
+	 * string once
+	 */
+	public void testViewerComparatorCollationKeys(){
+		ViewerComparator comparator=new ViewerComparator(Collator.getInstance());
+		for (int i = 0; i < 15; i++) {
+			String[] array=(String[]) fArray.clone();
+			startMeasuring();
+			comparator.sort(null, array);
+			stopMeasuring();
+		}
+        commitMeasurements();
+        assertPerformance();
+	}
 	
 	/**
 	 * Generate a large sized array for sorting
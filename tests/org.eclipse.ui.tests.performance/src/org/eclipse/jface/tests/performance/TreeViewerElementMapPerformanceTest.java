@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jface.tests.performance;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jface.viewers.ITreeContentProvider;
+import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.StructuredViewer;
+import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.ui.tests.performance.TestRunnable;
+
+/**
+ * Measures a tree viewer whose element map holds 200,000 mapped items: a full
+ * refresh, which looks up every element, and setting the input again, which
+ * unmaps and maps them all.
+ *
+ * @since 3.8
+ */
+public class TreeViewerElementMapPerformanceTest extends ViewerTest {
+
+	private static final int PARENTS = 200;
+
+	private static final int CHILDREN = 1000;
+
+	private static final int ITERATIONS = 10;
+
+	private static final int MIN_ITERATIONS = 3;
+
+	private static final String ROOT = "root";
+
+	private TreeViewer viewer;
+
+	private static class Node {
+		final int parent;
+
+		final int child;
+
+		Node(int parent, int child) {
+			this.parent = parent;
+			this.child = child;
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Node)) {
+				return false;
+			}
+			Node other = (Node) obj;
+			return parent == other.parent && child == other.child;
+		}
+
+		public int hashCode() {
+			return parent * 31 + child;
+		}
+
+		public String toString() {
+			return parent + "." + child;
+		}
+	}
+
+	private static class ContentProvider implements ITreeContentProvider {
+		public Object[] getElements(Object inputElement) {
+			return getChildren(inputElement);
+		}
+
+		public Object[] getChildren(Object parentElement) {
+			if (parentElement == ROOT) {
+				Object[] parents = new Object[PARENTS];
+				for (int i = 0; i < PARENTS; i++) {
+					parents[i] = new Node(i, -1);
+				}
+				return parents;
+			}
+			Node node = (Node) parentElement;
+			if (node.child != -1) {
+				return new Object[0];
+			}
+			Object[] children = new Object[CHILDREN];
+			for (int i = 0; i < CHILDREN; i++) {
+				children[i] = new Node(node.parent, i);
+			}
+			return children;
+		}
+
+		public Object getParent(Object element) {
+			Node node = (Node) element;
+			return node.child == -1 ? ROOT : new Node(node.parent, -1);
+		}
+
+		public boolean hasChildren(Object element) {
+			return element == ROOT || ((Node) element).child == -1;
+		}
+
+		public void dispose() {
+		}
+
+		public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+		}
+	}
+
+	/**
+	 * Create a new instance of the receiver.
+	 *
+	 * @param testName
+	 */
+	public TreeViewerElementMapPerformanceTest(String testName) {
+		super(testName);
+	}
+
+	protected StructuredViewer createViewer(Shell shell) {
+		viewer = new TreeViewer(shell);
+		viewer.setContentProvider(new ContentProvider());
+		viewer.setLabelProvider(new LabelProvider());
+		return viewer;
+	}
+
+	protected Object getInitialInput() {
+		return ROOT;
+	}
+
+	public void testRefresh() throws CoreException {
+		openBrowser();
+		viewer.expandAll();
+		assertNotNull(viewer.testFindItem(new Node(PARENTS - 1, CHILDREN - 1)));
+
+		exercise(new TestRunnable() {
+			public void run() {
+				startMeasuring();
+				viewer.refresh();
+				stopMeasuring();
+			}
+		}, MIN_ITERATIONS, ITERATIONS, JFacePerformanceSuite.MAX_TIME);
+
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	public void testSetInput() throws CoreException {
+		openBrowser();
+
+		exercise(new TestRunnable() {
+			public void run() {
+				viewer.setInput(ROOT);
+				viewer.expandAll();
+				processEvents();
+				startMeasuring();
+				viewer.setInput(null);
+				viewer.setInput(ROOT);
+				viewer.expandAll();
+				stopMeasuring();
+			}
+		}, MIN_ITERATIONS, ITERATIONS, JFacePerformanceSuite.MAX_TIME);
+
+		commitMeasurements();
+		assertPerformance();
+	}
+}
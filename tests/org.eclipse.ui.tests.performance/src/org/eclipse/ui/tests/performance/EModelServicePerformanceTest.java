@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.ui.tests.performance;
+
+import org.eclipse.e4.ui.internal.workbench.ModelServiceImpl;
+import org.eclipse.e4.ui.model.application.MApplication;
+import org.eclipse.e4.ui.model.application.impl.ApplicationFactoryImpl;
+import org.eclipse.e4.ui.model.application.ui.MUIElement;
+import org.eclipse.e4.ui.model.application.ui.advanced.MArea;
+import org.eclipse.e4.ui.model.application.ui.advanced.MPerspective;
+import org.eclipse.e4.ui.model.application.ui.advanced.MPerspectiveStack;
+import org.eclipse.e4.ui.model.application.ui.advanced.MPlaceholder;
+import org.eclipse.e4.ui.model.application.ui.advanced.impl.AdvancedFactoryImpl;
+import org.eclipse.e4.ui.model.application.ui.basic.MPart;
+import org.eclipse.e4.ui.model.application.ui.basic.MPartStack;
+import org.eclipse.e4.ui.model.application.ui.basic.MTrimmedWindow;
+import org.eclipse.e4.ui.model.application.ui.basic.impl.BasicFactoryImpl;
+import org.eclipse.e4.ui.workbench.modeling.EModelService;
+
+/**
+ * Measures the element searches of the model service on a model with 20
+ * perspectives and 2,000 parts.
+ *
+ * @since 3.8
+ */
+public class EModelServicePerformanceTest extends BasicPerformanceTest {
+
+	private static final int PERSPECTIVES = 20;
+
+	private static final int STACKS = 5;
+
+	private static final int PARTS_PER_STACK = 19;
+
+	private static final int SEARCHES = 10000;
+
+	private static final int RUNS = 10;
+
+	private EModelService modelService;
+
+	private MTrimmedWindow window;
+
+	public EModelServicePerformanceTest(String testName) {
+		super(testName);
+	}
+
+	protected void doSetUp() throws Exception {
+		super.doSetUp();
+		modelService = new ModelServiceImpl(null);
+		MApplication application = ApplicationFactoryImpl.eINSTANCE
+				.createApplication();
+		window = BasicFactoryImpl.eINSTANCE.createTrimmedWindow();
+		application.getChildren().add(window);
+
+		MArea area = AdvancedFactoryImpl.eINSTANCE.createArea();
+		area.setElementId("org.eclipse.ui.editorss");
+		area.getChildren().add(BasicFactoryImpl.eINSTANCE.createPartStack());
+		window.getSharedElements().add(area);
+
+		MPerspectiveStack perspectiveStack = AdvancedFactoryImpl.eINSTANCE
+				.createPerspectiveStack();
+		window.getChildren().add(perspectiveStack);
+		for (int p = 0; p < PERSPECTIVES; p++) {
+			MPerspective perspective = AdvancedFactoryImpl.eINSTANCE
+					.createPerspective();
+			perspective.setElementId("perspective." + p);
+			perspectiveStack.getChildren().add(perspective);
+
+			MPlaceholder areaRef = AdvancedFactoryImpl.eINSTANCE
+					.createPlaceholder();
+			areaRef.setRef(area);
+			perspective.getChildren().add(areaRef);
+
+			for (int s = 0; s < STACKS; s++) {
+				MPartStack stack = BasicFactoryImpl.eINSTANCE.createPartStack();
+				perspective.getChildren().add(stack);
+				for (int i = 0; i < PARTS_PER_STACK; i++) {
+					MPart part = BasicFactoryImpl.eINSTANCE.createPart();
+					part.setElementId("part." + p + '.' + s + '.' + i);
+					stack.getChildren().add(part);
+				}
+
+				// one shared view per stack
+				MPart view = BasicFactoryImpl.eINSTANCE.createPart();
+				view.setElementId("view." + (p * STACKS + s));
+				window.getSharedElements().add(view);
+				MPlaceholder viewRef = AdvancedFactoryImpl.eINSTANCE
+						.createPlaceholder();
+				viewRef.setElementId(view.getElementId());
+				viewRef.setRef(view);
+				stack.getChildren().add(viewRef);
+			}
+		}
+		perspectiveStack.setSelectedElement((MPerspective) perspectiveStack
+				.getChildren().get(0));
+	}
+
+	private long measure(String[] ids, Class clazz, int searchFlags) {
+		// warm up
+		for (int i = 0; i < SEARCHES / 10; i++) {
+			modelService.findElements(window, ids[i % ids.length], clazz,
+					null, searchFlags);
+		}
+
+		long found = 0;
+		for (int run = 0; run < RUNS; run++) {
+			found = 0;
+			startMeasuring();
+			for (int i = 0; i < SEARCHES; i++) {
+				found += modelService.findElements(window, ids[i % ids.length],
+						clazz, null, searchFlags).size();
+			}
+			stopMeasuring();
+		}
+		commitMeasurements();
+		assertPerformance();
+		return found;
+	}
+
+	private static String[] partIds() {
+		String[] ids = new String[PERSPECTIVES * STACKS];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = i % 2 == 0 ? "view." + i : "part." + (i % PERSPECTIVES)
+					+ ".0.0";
+		}
+		return ids;
+	}
+
+	public void testFindPart() {
+		String[] ids = partIds();
+		// as EPartService.findPart(String), only view.0, view.2 and view.4
+		// are in the active perspective
+		long found = measure(ids, MPart.class,
+				EModelService.OUTSIDE_PERSPECTIVE
+						| EModelService.IN_ACTIVE_PERSPECTIVE
+						| EModelService.IN_SHARED_AREA);
+		assertEquals(SEARCHES / ids.length * 3, found);
+	}
+
+	public void testFindPartAnywhere() {
+		long found = measure(partIds(), MPart.class, EModelService.ANYWHERE);
+		assertEquals(SEARCHES, found);
+	}
+
+	public void testFindAllParts() {
+		long found = measure(new String[] { null }, MPart.class,
+				EModelService.ANYWHERE);
+		assertEquals(SEARCHES * (long) PERSPECTIVES * STACKS
+				* (PARTS_PER_STACK + 1), found);
+	}
+
+	public void testFindAllElements() {
+		// not restricted by id, type or tag, answered by walking the model
+		measure(new String[] { null }, MUIElement.class,
+				EModelService.ANYWHERE);
+	}
+}
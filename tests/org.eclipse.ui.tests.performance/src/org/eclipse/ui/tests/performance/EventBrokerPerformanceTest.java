@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.ui.tests.performance;
+
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import org.eclipse.e4.core.services.events.IEventBroker;
+import org.eclipse.e4.ui.services.internal.events.TopicTree;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
+
+/**
+ * Measures the in-process dispatch of the events sent through the event
+ * broker to 1,000, 10,000 and 50,000 subscribers of the model topics.
+ *
+ * @since 3.8
+ */
+public class EventBrokerPerformanceTest extends BasicPerformanceTest {
+
+	private static final String[] CLASSES = { "ElementContainer", "UIElement",
+			"UILabel", "Item", "Part", "Context", "Window", "Perspective" };
+
+	private static final String[] FEATURES = { "children", "selectedElement",
+			"visible", "toBeRendered", "label", "enabled", "selected",
+			"widget", "tags", "parent" };
+
+	private static final String[] TYPES = { "SET", "ADD", "REMOVE", "MOVE" };
+
+	private static final int SENDS = 100000;
+
+	private static final int RUNS = 10;
+
+	private int notified;
+
+	private EventHandler handler = new EventHandler() {
+		public void handleEvent(Event event) {
+			notified++;
+		}
+	};
+
+	public EventBrokerPerformanceTest(String testName) {
+		super(testName);
+	}
+
+	private static String topic(int i) {
+		return "org/eclipse/e4/ui/model/ui/" + CLASSES[i % CLASSES.length]
+				+ '/' + FEATURES[(i / CLASSES.length) % FEATURES.length] + '/'
+				+ TYPES[(i / (CLASSES.length * FEATURES.length))
+						% TYPES.length];
+	}
+
+	private TopicTree createTree(int subscribers) {
+		TopicTree tree = new TopicTree();
+		for (int i = 0; i < subscribers; i++) {
+			String topic = topic(i);
+			if (i % 10 == 0) {
+				// every tenth subscriber listens to all types of a feature
+				topic = topic.substring(0, topic.lastIndexOf('/')) + "/*";
+			}
+			tree.add(new TopicTree.Subscription(topic, null, handler));
+		}
+		return tree;
+	}
+
+	private void measure(int subscribers) {
+		TopicTree tree = createTree(subscribers);
+		Event[] events = new Event[CLASSES.length * FEATURES.length
+				* TYPES.length];
+		for (int i = 0; i < events.length; i++) {
+			Dictionary data = new Hashtable();
+			data.put(IEventBroker.DATA, this);
+			events[i] = new Event(topic(i), data);
+		}
+
+		// warm up the resolved subscriber cache
+		for (int i = 0; i < events.length; i++) {
+			tree.dispatch(events[i], null);
+		}
+
+		for (int run = 0; run < RUNS; run++) {
+			notified = 0;
+			int expected = 0;
+			startMeasuring();
+			for (int i = 0; i < SENDS; i++) {
+				expected += tree.dispatch(events[i % events.length], null);
+			}
+			stopMeasuring();
+			assertEquals(expected, notified);
+		}
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	public void testSend1kSubscribers() {
+		measure(1000);
+	}
+
+	public void testSend10kSubscribers() {
+		measure(10000);
+	}
+
+	public void testSend50kSubscribers() {
+		measure(50000);
+	}
+}
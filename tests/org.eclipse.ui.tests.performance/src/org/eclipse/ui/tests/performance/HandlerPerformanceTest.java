@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.ui.tests.performance;
+
+import javax.inject.Named;
+
+import org.eclipse.core.commands.Category;
+import org.eclipse.core.commands.ParameterizedCommand;
+import org.eclipse.e4.core.commands.CommandServiceAddon;
+import org.eclipse.e4.core.commands.ECommandService;
+import org.eclipse.e4.core.commands.EHandlerService;
+import org.eclipse.e4.core.contexts.ContextInjectionFactory;
+import org.eclipse.e4.core.contexts.EclipseContextFactory;
+import org.eclipse.e4.core.contexts.IEclipseContext;
+import org.eclipse.e4.core.di.annotations.CanExecute;
+import org.eclipse.e4.core.di.annotations.Execute;
+import org.eclipse.e4.core.di.annotations.Optional;
+
+/**
+ * Measures {@link EHandlerService#canExecute(ParameterizedCommand)} for
+ * handlers without a <code>@CanExecute</code> method, with one taking no
+ * arguments and with one taking injected arguments, the way menus and
+ * toolbars check their items.
+ *
+ * @since 3.8
+ */
+public class HandlerPerformanceTest extends BasicPerformanceTest {
+
+	private static final String CAT_ID = "perf.cat";
+
+	private static final String PLAIN_ID = "perf.plain";
+
+	private static final String NO_ARGS_ID = "perf.noArgs";
+
+	private static final String INJECTED_ID = "perf.injected";
+
+	private static final String ENABLED_ID = "perf.enabled";
+
+	private static final int WARMUP = 20000;
+
+	private static final int ITERATIONS = 100000;
+
+	private static final int RUNS = 10;
+
+	public static class PlainHandler {
+		@Execute
+		public void execute() {
+		}
+	}
+
+	public static class NoArgsHandler {
+		@CanExecute
+		public boolean canExecute() {
+			return true;
+		}
+
+		@Execute
+		public void execute() {
+		}
+	}
+
+	public static class InjectedHandler {
+		@CanExecute
+		public boolean canExecute(
+				@Optional @Named(ENABLED_ID) Boolean enabled) {
+			return enabled != null && enabled.booleanValue();
+		}
+
+		@Execute
+		public void execute() {
+		}
+	}
+
+	private IEclipseContext workbenchContext;
+
+	private EHandlerService handlerService;
+
+	private ECommandService commandService;
+
+	public HandlerPerformanceTest(String testName) {
+		super(testName);
+	}
+
+	protected void doSetUp() throws Exception {
+		super.doSetUp();
+		IEclipseContext serviceContext = EclipseContextFactory
+				.getServiceContext(UIPerformancePlugin.getDefault()
+						.getContext());
+		workbenchContext = serviceContext.createChild("workbenchContext");
+		ContextInjectionFactory.make(CommandServiceAddon.class,
+				workbenchContext);
+		commandService = (ECommandService) workbenchContext
+				.get(ECommandService.class.getName());
+		handlerService = (EHandlerService) workbenchContext
+				.get(EHandlerService.class.getName());
+		Category category = commandService.defineCategory(CAT_ID,
+				"Performance", null);
+		commandService.defineCommand(PLAIN_ID, "Plain", null, category, null);
+		commandService.defineCommand(NO_ARGS_ID, "No Arguments", null,
+				category, null);
+		commandService.defineCommand(INJECTED_ID, "Injected", null, category,
+				null);
+		handlerService.activateHandler(PLAIN_ID, new PlainHandler());
+		handlerService.activateHandler(NO_ARGS_ID, new NoArgsHandler());
+		handlerService.activateHandler(INJECTED_ID, new InjectedHandler());
+	}
+
+	protected void doTearDown() throws Exception {
+		workbenchContext.dispose();
+		super.doTearDown();
+	}
+
+	private void measure(String commandId, boolean expected) {
+		ParameterizedCommand command = commandService.createCommand(
+				commandId, null);
+		for (int i = 0; i < WARMUP; i++) {
+			assertEquals(expected, handlerService.canExecute(command));
+		}
+		for (int run = 0; run < RUNS; run++) {
+			startMeasuring();
+			for (int i = 0; i < ITERATIONS; i++) {
+				if (handlerService.canExecute(command) != expected) {
+					fail("Unexpected result for " + commandId);
+				}
+			}
+			stopMeasuring();
+		}
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	public void testCanExecuteWithoutCanExecuteMethod() {
+		measure(PLAIN_ID, true);
+	}
+
+	public void testCanExecuteWithoutArguments() {
+		measure(NO_ARGS_ID, true);
+	}
+
+	public void testCanExecuteInjected() {
+		workbenchContext.set(ENABLED_ID, Boolean.TRUE);
+		measure(INJECTED_ID, true);
+	}
+
+	public void testCanExecuteInjectedDisabled() {
+		workbenchContext.set(ENABLED_ID, Boolean.FALSE);
+		measure(INJECTED_ID, false);
+	}
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.ui.tests.performance;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.core.databinding.observable.Diffs;
+import org.eclipse.core.databinding.observable.list.ListDiff;
+import org.eclipse.core.databinding.observable.list.ListDiffVisitor;
+
+/**
+ * Measures {@link Diffs#computeListDiff(List, List)} and
+ * {@link Diffs#computeMinimalListDiff(List, List)} on random and near-sorted
+ * permutations of a list of 5,000 elements, as a viewer refresh sorting its
+ * elements produces them.
+ *
+ * @since 3.8
+ */
+public class ListDiffPerformanceTest extends BasicPerformanceTest {
+
+	private static final int SIZE = 5000;
+
+	private static final int RUNS = 10;
+
+	private Random random = new Random(1234);
+
+	public ListDiffPerformanceTest(String testName) {
+		super(testName);
+	}
+
+	private static List createList(int size) {
+		List list = new ArrayList(size);
+		for (int i = 0; i < size; i++)
+			list.add(new Integer(i));
+		return list;
+	}
+
+	private List shuffle(List oldList) {
+		List newList = new ArrayList(oldList);
+		Collections.shuffle(newList, random);
+		return newList;
+	}
+
+	private List moveSome(List oldList) {
+		List newList = new ArrayList(oldList);
+		// move 1% of the elements to a random position
+		for (int i = Math.max(1, oldList.size() / 100); i > 0; i--) {
+			Object element = newList.remove(random.nextInt(newList.size()));
+			newList.add(random.nextInt(newList.size() + 1), element);
+		}
+		return newList;
+	}
+
+	private void measure(List oldList, List newList, boolean minimal) {
+		ListDiff diff = null;
+		for (int i = 0; i < RUNS; i++) {
+			startMeasuring();
+			diff = minimal ? Diffs.computeMinimalListDiff(oldList, newList)
+					: Diffs.computeListDiff(oldList, newList);
+			stopMeasuring();
+		}
+		commitMeasurements();
+		checkListDiff(oldList, newList, diff);
+		assertPerformance();
+	}
+
+	public void testMinimalListDiffRandomPermutation() {
+		List oldList = createList(SIZE);
+		measure(oldList, shuffle(oldList), true);
+	}
+
+	public void testMinimalListDiffNearSortedPermutation() {
+		List oldList = createList(SIZE);
+		measure(oldList, moveSome(oldList), true);
+	}
+
+	public void testListDiffNearSortedPermutation() {
+		List oldList = createList(SIZE);
+		measure(oldList, moveSome(oldList), false);
+	}
+
+	private static void checkListDiff(List oldList, List newList, ListDiff diff) {
+		final List list = new ArrayList(oldList);
+		diff.accept(new ListDiffVisitor() {
+			public void handleAdd(int index, Object element) {
+				list.add(index, element);
+			}
+
+			public void handleRemove(int index, Object element) {
+				assertEquals(element, list.remove(index));
+			}
+		});
+		assertEquals(newList, list);
+	}
+}
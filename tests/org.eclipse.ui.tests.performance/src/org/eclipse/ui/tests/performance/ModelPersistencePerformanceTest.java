@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.ui.tests.performance;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.eclipse.e4.ui.internal.workbench.E4BinaryFormat;
+import org.eclipse.e4.ui.internal.workbench.E4XMIResourceFactory;
+import org.eclipse.e4.ui.model.application.MApplication;
+import org.eclipse.e4.ui.model.application.impl.ApplicationFactoryImpl;
+import org.eclipse.e4.ui.model.application.ui.advanced.MPerspective;
+import org.eclipse.e4.ui.model.application.ui.advanced.MPerspectiveStack;
+import org.eclipse.e4.ui.model.application.ui.advanced.MPlaceholder;
+import org.eclipse.e4.ui.model.application.ui.advanced.impl.AdvancedFactoryImpl;
+import org.eclipse.e4.ui.model.application.ui.basic.MPart;
+import org.eclipse.e4.ui.model.application.ui.basic.MPartStack;
+import org.eclipse.e4.ui.model.application.ui.basic.MTrimmedWindow;
+import org.eclipse.e4.ui.model.application.ui.basic.impl.BasicFactoryImpl;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+/**
+ * Measures saving and loading a workbench model with 2,000 parts as XMI and in
+ * the binary format the resource handler writes next to workbench.xmi.
+ *
+ * @since 3.8
+ */
+public class ModelPersistencePerformanceTest extends BasicPerformanceTest {
+
+	private static final int PERSPECTIVES = 20;
+
+	private static final int STACKS = 5;
+
+	private static final int PARTS_PER_STACK = 19;
+
+	private static final int RUNS = 10;
+
+	private File xmiFile;
+
+	private File binaryFile;
+
+	private Resource resource;
+
+	public ModelPersistencePerformanceTest(String testName) {
+		super(testName);
+	}
+
+	protected void doSetUp() throws Exception {
+		super.doSetUp();
+		xmiFile = File.createTempFile("workbench", ".xmi");
+		binaryFile = File.createTempFile("workbench", ".bin");
+		resource = createModel();
+		resource.save(null);
+		saveBinary(resource);
+	}
+
+	protected void doTearDown() throws Exception {
+		xmiFile.delete();
+		binaryFile.delete();
+		super.doTearDown();
+	}
+
+	private static ResourceSetImpl createResourceSet() {
+		ResourceSetImpl resourceSet = new ResourceSetImpl();
+		resourceSet.getResourceFactoryRegistry().getExtensionToFactoryMap()
+				.put(Resource.Factory.Registry.DEFAULT_EXTENSION,
+						new E4XMIResourceFactory());
+		return resourceSet;
+	}
+
+	private Resource createModel() {
+		MApplication application = ApplicationFactoryImpl.eINSTANCE
+				.createApplication();
+		MTrimmedWindow window = BasicFactoryImpl.eINSTANCE
+				.createTrimmedWindow();
+		application.getChildren().add(window);
+
+		MPerspectiveStack perspectiveStack = AdvancedFactoryImpl.eINSTANCE
+				.createPerspectiveStack();
+		window.getChildren().add(perspectiveStack);
+		for (int p = 0; p < PERSPECTIVES; p++) {
+			MPerspective perspective = AdvancedFactoryImpl.eINSTANCE
+					.createPerspective();
+			perspective.setElementId("perspective." + p);
+			perspective.setLabel("Perspective " + p);
+			perspectiveStack.getChildren().add(perspective);
+			for (int s = 0; s < STACKS; s++) {
+				MPartStack stack = BasicFactoryImpl.eINSTANCE.createPartStack();
+				stack.getTags().add("stack." + s);
+				perspective.getChildren().add(stack);
+				MPart first = null;
+				for (int i = 0; i < PARTS_PER_STACK; i++) {
+					MPart part = BasicFactoryImpl.eINSTANCE.createPart();
+					part.setElementId("part." + p + '.' + s + '.' + i);
+					part.setLabel("Part " + i);
+					part.setContributionURI("bundleclass://org.eclipse.ui.tests.performance/Part"
+							+ i);
+					part.getPersistedState().put("index", Integer.toString(i));
+					stack.getChildren().add(part);
+					if (first == null)
+						first = part;
+				}
+				stack.setSelectedElement(first);
+
+				MPart view = BasicFactoryImpl.eINSTANCE.createPart();
+				view.setElementId("view." + (p * STACKS + s));
+				window.getSharedElements().add(view);
+				MPlaceholder viewRef = AdvancedFactoryImpl.eINSTANCE
+						.createPlaceholder();
+				viewRef.setElementId(view.getElementId());
+				viewRef.setRef(view);
+				stack.getChildren().add(viewRef);
+			}
+		}
+		perspectiveStack.setSelectedElement((MPerspective) perspectiveStack
+				.getChildren().get(0));
+
+		Resource resource = createResourceSet().createResource(
+				URI.createFileURI(xmiFile.getAbsolutePath()));
+		resource.getContents().add((EObject) application);
+		return resource;
+	}
+
+	private Resource loadXMI() {
+		return createResourceSet().getResource(
+				URI.createFileURI(xmiFile.getAbsolutePath()), true);
+	}
+
+	private Resource loadBinary() throws IOException {
+		Resource resource = createResourceSet().createResource(
+				URI.createFileURI(xmiFile.getAbsolutePath()));
+		InputStream stream = new FileInputStream(binaryFile);
+		try {
+			E4BinaryFormat.load(resource, stream);
+		} finally {
+			stream.close();
+		}
+		return resource;
+	}
+
+	private void saveBinary(Resource resource) throws IOException {
+		OutputStream stream = new FileOutputStream(binaryFile);
+		try {
+			E4BinaryFormat.save(resource, stream);
+		} finally {
+			stream.close();
+		}
+	}
+
+	public void testSaveXMI() throws IOException {
+		for (int i = 0; i < RUNS; i++) {
+			startMeasuring();
+			resource.save(null);
+			stopMeasuring();
+		}
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	public void testSaveBinary() throws IOException {
+		for (int i = 0; i < RUNS; i++) {
+			startMeasuring();
+			saveBinary(resource);
+			stopMeasuring();
+		}
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	public void testLoadXMI() {
+		Resource loaded = null;
+		for (int i = 0; i < RUNS; i++) {
+			startMeasuring();
+			loaded = loadXMI();
+			stopMeasuring();
+		}
+		commitMeasurements();
+		assertTrue(EcoreUtil.equals(resource.getContents(), loaded
+				.getContents()));
+		assertPerformance();
+	}
+
+	public void testLoadBinary() throws IOException {
+		Resource loaded = null;
+		for (int i = 0; i < RUNS; i++) {
+			startMeasuring();
+			loaded = loadBinary();
+			stopMeasuring();
+		}
+		commitMeasurements();
+		assertTrue(EcoreUtil.equals(resource.getContents(), loaded
+				.getContents()));
+		assertPerformance();
+	}
+}
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.ui.tests.performance;
+
+import java.io.StringReader;
+
+import org.eclipse.e4.ui.css.core.engine.CSSEngine;
+import org.eclipse.e4.ui.css.core.engine.CSSErrorHandler;
+import org.eclipse.e4.ui.css.swt.dom.WidgetElement;
+import org.eclipse.e4.ui.css.swt.engine.CSSSWTEngineImpl;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.CTabFolder;
+import org.eclipse.swt.custom.CTabItem;
+import org.eclipse.swt.custom.SashForm;
+import org.eclipse.swt.layout.FillLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Text;
+import org.eclipse.swt.widgets.ToolBar;
+import org.eclipse.swt.widgets.ToolItem;
+import org.eclipse.swt.widgets.Tree;
+
+/**
+ * Measures applying a dark workbench theme to a workbench sized widget tree.
+ *
+ * @since 3.8
+ */
+public class ThemePerformanceTest extends BasicPerformanceTest {
+
+	/**
+	 * A condensed version of the workbench dark theme: type, class, id,
+	 * descendant and pseudo-class selectors in roughly the same proportions.
+	 */
+	private static final String DARK_THEME = "Shell, Composite, SashForm { background-color: #2F2F2F; color: #CCCCCC; }\n"
+			+ ".MTrimmedWindow { background-color: #161616; }\n"
+			+ ".MTrimBar { background-color: #3F3F3F; color: #CCCCCC; }\n"
+			+ ".MTrimBar#org-eclipse-ui-main-toolbar { background-color: #404040; }\n"
+			+ "CTabFolder { background-color: #2F2F2F; color: #DDDDDD; }\n"
+			+ "CTabFolder.active { background-color: #505050; }\n"
+			+ "CTabItem { color: #DDDDDD; }\n"
+			+ "CTabItem:selected { color: #FFFFFF; }\n"
+			+ ".MPartStack.active CTabItem:selected { color: #FFFFFF; }\n"
+			+ "ToolBar { background-color: #3F3F3F; }\n"
+			+ ".MToolBar ToolBar { background-color: #3F3F3F; }\n"
+			+ "Tree, Table { background-color: #2F2F2F; color: #CCCCCC; }\n"
+			+ "Text { background-color: #262626; color: #CCCCCC; }\n"
+			+ "Label { color: #CCCCCC; }\n"
+			+ "Button { background-color: #2F2F2F; }\n"
+			+ "#org-eclipse-ui-editorss { background-color: #262626; }\n"
+			+ ".MPart Composite { background-color: #2F2F2F; }\n"
+			+ ".MPart Label { color: #BBBBBB; }\n";
+
+	private static final int STACKS = 12;
+
+	private static final int PARTS_PER_STACK = 8;
+
+	private static final int WIDGETS_PER_PART = 20;
+
+	private static final int RUNS = 10;
+
+	public ThemePerformanceTest(String testName) {
+		super(testName);
+	}
+
+	private CSSEngine createEngine(Display display) throws Exception {
+		CSSEngine engine = new CSSSWTEngineImpl(display);
+		engine.setErrorHandler(new CSSErrorHandler() {
+			public void error(Exception e) {
+				fail(e.getMessage());
+			}
+		});
+		engine.parseStyleSheet(new StringReader(DARK_THEME));
+		return engine;
+	}
+
+	private Shell createWorkbenchTree(Display display) {
+		Shell shell = new Shell(display, SWT.SHELL_TRIM);
+		WidgetElement.setCSSClass(shell, "MTrimmedWindow");
+		shell.setLayout(new FillLayout(SWT.VERTICAL));
+
+		Composite trimBar = new Composite(shell, SWT.NONE);
+		WidgetElement.setCSSClass(trimBar, "MTrimBar");
+		WidgetElement.setID(trimBar, "org-eclipse-ui-main-toolbar");
+		trimBar.setLayout(new FillLayout());
+		for (int i = 0; i < 10; i++) {
+			ToolBar toolBar = new ToolBar(trimBar, SWT.FLAT);
+			WidgetElement.setCSSClass(toolBar, "MToolBar");
+			for (int j = 0; j < 6; j++) {
+				new ToolItem(toolBar, SWT.PUSH).setText("item" + j);
+			}
+		}
+
+		SashForm sash = new SashForm(shell, SWT.HORIZONTAL);
+		for (int s = 0; s < STACKS; s++) {
+			CTabFolder folder = new CTabFolder(sash, SWT.BORDER);
+			WidgetElement.setCSSClass(folder, s == 0 ? "MPartStack active"
+					: "MPartStack");
+			for (int p = 0; p < PARTS_PER_STACK; p++) {
+				CTabItem item = new CTabItem(folder, SWT.CLOSE);
+				item.setText("Part " + s + '.' + p);
+				Composite part = new Composite(folder, SWT.NONE);
+				WidgetElement.setCSSClass(part, "MPart");
+				part.setLayout(new FillLayout(SWT.VERTICAL));
+				item.setControl(part);
+				new Tree(part, SWT.NONE);
+				for (int w = 0; w < WIDGETS_PER_PART; w++) {
+					switch (w % 3) {
+					case 0:
+						new Label(part, SWT.NONE).setText("label" + w);
+						break;
+					case 1:
+						new Text(part, SWT.BORDER);
+						break;
+					default:
+						new Button(part, SWT.PUSH).setText("button" + w);
+					}
+				}
+			}
+			folder.setSelection(0);
+		}
+		return shell;
+	}
+
+	public void testApplyDarkTheme() throws Exception {
+		Display display = Display.getDefault();
+		CSSEngine engine = createEngine(display);
+		Shell shell = createWorkbenchTree(display);
+		try {
+			// warm up
+			engine.applyStyles(shell, true);
+
+			for (int i = 0; i < RUNS; i++) {
+				startMeasuring();
+				engine.applyStyles(shell, true);
+				stopMeasuring();
+			}
+			commitMeasurements();
+			assertPerformance();
+		} finally {
+			shell.dispose();
+			engine.dispose();
+		}
+	}
+}
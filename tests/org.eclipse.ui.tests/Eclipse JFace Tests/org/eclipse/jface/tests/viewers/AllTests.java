@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -66,5 +66,8 @@ public class AllTests extends TestSuite {
 		addTestSuite(Bug287765Test.class);
 		addTestSuite(StyledStringBuilderTest.class);
 		addTestSuite(TreeManagerTest.class);
+		addTestSuite(TreeViewerRefinedFilterTest.class);
+		addTestSuite(TreeViewerBackgroundChildrenTest.class);
+		addTestSuite(TreeViewerElementMapTest.class);
 	}
 }
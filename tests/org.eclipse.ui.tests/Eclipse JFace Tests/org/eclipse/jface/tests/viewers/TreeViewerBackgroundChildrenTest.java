@@ -0,0 +1,261 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jface.tests.viewers;
+
+import org.eclipse.jface.viewers.ITreeContentProvider;
+import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.StructuredViewer;
+import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerComparator;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Tree;
+import org.eclipse.swt.widgets.TreeItem;
+
+/**
+ * Tests computing the children of expanded items in the background.
+ *
+ * @since 3.9
+ */
+public class TreeViewerBackgroundChildrenTest extends ViewerTestCase {
+
+	private static final int PARENTS = 10;
+
+	private static final int CHILDREN = 1000;
+
+	private static final long TIMEOUT = 10000;
+
+	private static final String ROOT = "root";
+
+	private final Object gate = new Object();
+
+	private boolean blocked;
+
+	private class ContentProvider implements ITreeContentProvider {
+		public Object[] getElements(Object inputElement) {
+			Object[] parents = new Object[PARENTS];
+			for (int i = 0; i < PARENTS; i++) {
+				parents[i] = "parent" + i;
+			}
+			return parents;
+		}
+
+		public Object[] getChildren(Object parentElement) {
+			synchronized (gate) {
+				long end = System.currentTimeMillis() + TIMEOUT;
+				while (blocked && System.currentTimeMillis() < end) {
+					try {
+						gate.wait(100);
+					} catch (InterruptedException e) {
+						break;
+					}
+				}
+			}
+			if (!((String) parentElement).startsWith("parent")) {
+				return new Object[0];
+			}
+			Object[] children = new Object[CHILDREN];
+			for (int i = 0; i < CHILDREN; i++) {
+				children[i] = parentElement + "." + (10000 + i);
+			}
+			return children;
+		}
+
+		public Object getParent(Object element) {
+			return null;
+		}
+
+		public boolean hasChildren(Object element) {
+			return ((String) element).startsWith("parent");
+		}
+
+		public void dispose() {
+		}
+
+		public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+		}
+	}
+
+	public TreeViewerBackgroundChildrenTest(String name) {
+		super(name);
+	}
+
+	protected StructuredViewer createViewer(Composite parent) {
+		TreeViewer viewer = new TreeViewer(parent);
+		viewer.setContentProvider(new ContentProvider());
+		viewer.setLabelProvider(new LabelProvider());
+		// sort the children in reverse order
+		viewer.setComparator(new ViewerComparator() {
+			public int compare(Viewer viewer, Object e1, Object e2) {
+				return ((String) e2).compareTo((String) e1);
+			}
+		});
+		viewer.setUseBackgroundChildren(true);
+		return viewer;
+	}
+
+	protected void setInput() {
+		fViewer.setInput(ROOT);
+	}
+
+	public void tearDown() {
+		setBlocked(false);
+		super.tearDown();
+	}
+
+	private TreeViewer getTreeViewer() {
+		return (TreeViewer) fViewer;
+	}
+
+	private void setBlocked(boolean blocked) {
+		synchronized (gate) {
+			this.blocked = blocked;
+			gate.notifyAll();
+		}
+	}
+
+	private TreeItem getParentItem(int index) {
+		return getTreeViewer().getTree().getItem(index);
+	}
+
+	/*
+	 * Expands the item the way the user does.
+	 */
+	private void expand(TreeItem item, boolean expand) {
+		Tree tree = item.getParent();
+		item.setExpanded(expand);
+		Event event = new Event();
+		event.item = item;
+		event.type = expand ? SWT.Expand : SWT.Collapse;
+		tree.notifyListeners(event.type, event);
+	}
+
+	private void waitForChildren(TreeItem item) {
+		waitForChildren(item, CHILDREN);
+	}
+
+	private void waitForChildren(TreeItem item, int count) {
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (item.getItemCount() != count
+				|| item.getItem(0).getData() == null) {
+			if (System.currentTimeMillis() > end) {
+				fail("children not created");
+			}
+			processEvents();
+			sleep(10);
+		}
+	}
+
+	private void processEventsFor(long millis) {
+		long end = System.currentTimeMillis() + millis;
+		while (System.currentTimeMillis() < end) {
+			processEvents();
+			sleep(10);
+		}
+	}
+
+	public void testExpand() {
+		setBlocked(true);
+		TreeItem item = getParentItem(3);
+		expand(item, true);
+		assertEquals(1, item.getItemCount());
+		assertNull(item.getItem(0).getData());
+		assertTrue(item.getItem(0).getText().length() > 0);
+
+		setBlocked(false);
+		waitForChildren(item);
+		assertEquals("parent3." + (10000 + CHILDREN - 1), item.getItem(0)
+				.getData());
+		assertEquals("parent3.10000", item.getItem(CHILDREN - 1).getData());
+		assertNotNull(fViewer.testFindItem("parent3.10500"));
+	}
+
+	public void testCollapseCancels() {
+		setBlocked(true);
+		TreeItem item = getParentItem(1);
+		expand(item, true);
+		expand(item, false);
+		setBlocked(false);
+		processEventsFor(500);
+		assertEquals(1, item.getItemCount());
+		assertNull(item.getItem(0).getData());
+		assertEquals("", item.getItem(0).getText());
+
+		expand(item, true);
+		waitForChildren(item);
+	}
+
+	public void testSetInputCancels() {
+		setBlocked(true);
+		expand(getParentItem(2), true);
+		fViewer.setInput(null);
+		setBlocked(false);
+		processEventsFor(500);
+		assertEquals(0, getTreeViewer().getTree().getItemCount());
+	}
+
+	public void testExpandToLevelIsSynchronous() {
+		setBlocked(true);
+		TreeItem item = getParentItem(4);
+		expand(item, true);
+		setBlocked(false);
+		getTreeViewer().expandToLevel("parent4", 1);
+		assertEquals(CHILDREN, item.getItemCount());
+		assertNotNull(fViewer.testFindItem("parent4.10999"));
+		processEventsFor(500);
+		assertEquals(CHILDREN, item.getItemCount());
+	}
+
+	public void testRefreshWhilePending() {
+		setBlocked(true);
+		TreeItem item = getParentItem(5);
+		expand(item, true);
+		setBlocked(false);
+		fViewer.refresh();
+		processEventsFor(500);
+		assertEquals(CHILDREN, item.getItemCount());
+		assertEquals(1, fViewer.testFindItems("parent5.10999").length);
+	}
+
+	public void testDisable() {
+		setBlocked(true);
+		TreeItem item = getParentItem(6);
+		expand(item, true);
+		setBlocked(false);
+		getTreeViewer().setUseBackgroundChildren(false);
+		assertFalse(getTreeViewer().getUseBackgroundChildren());
+		assertEquals(CHILDREN, item.getItemCount());
+		processEventsFor(500);
+		assertEquals(CHILDREN, item.getItemCount());
+	}
+
+	public void testRemoveWhilePending() {
+		setBlocked(true);
+		TreeItem item = getParentItem(7);
+		TreeItem otherItem = getParentItem(8);
+		expand(item, true);
+		expand(otherItem, true);
+		// the content provider does not know about the removal
+		getTreeViewer().remove("parent7.10500");
+		getTreeViewer().remove("parent7", new Object[] { "parent7.10400",
+				"parent8.10400" });
+		setBlocked(false);
+		waitForChildren(item, CHILDREN - 2);
+		assertNull(fViewer.testFindItem("parent7.10500"));
+		assertNull(fViewer.testFindItem("parent7.10400"));
+		assertNotNull(fViewer.testFindItem("parent7.10401"));
+		waitForChildren(otherItem);
+		assertNotNull(fViewer.testFindItem("parent8.10400"));
+	}
+}
@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jface.tests.viewers;
+
+import org.eclipse.jface.viewers.IElementComparer;
+import org.eclipse.jface.viewers.ITreeContentProvider;
+import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.StructuredViewer;
+import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Widget;
+
+/**
+ * Tests the element map of a tree viewer with 10,000 mapped items, while the
+ * items are refreshed, removed and mapped again.
+ *
+ * @since 3.8
+ */
+public class TreeViewerElementMapTest extends ViewerTestCase {
+
+	private static final int PARENTS = 50;
+
+	private static final int CHILDREN = 200;
+
+	private static final String ROOT = "root";
+
+	private static class Node {
+		final int parent;
+
+		final int child;
+
+		Node(int parent, int child) {
+			this.parent = parent;
+			this.child = child;
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Node)) {
+				return false;
+			}
+			Node other = (Node) obj;
+			return parent == other.parent && child == other.child;
+		}
+
+		public int hashCode() {
+			return parent * 31 + child;
+		}
+
+		public String toString() {
+			return parent + "." + child;
+		}
+	}
+
+	private static class ContentProvider implements ITreeContentProvider {
+		public Object[] getElements(Object inputElement) {
+			return getChildren(inputElement);
+		}
+
+		public Object[] getChildren(Object parentElement) {
+			if (parentElement == ROOT) {
+				Object[] parents = new Object[PARENTS];
+				for (int i = 0; i < PARENTS; i++) {
+					parents[i] = new Node(i, -1);
+				}
+				return parents;
+			}
+			Node node = (Node) parentElement;
+			if (node.child != -1) {
+				return new Object[0];
+			}
+			Object[] children = new Object[CHILDREN];
+			for (int i = 0; i < CHILDREN; i++) {
+				children[i] = new Node(node.parent, i);
+			}
+			return children;
+		}
+
+		public Object getParent(Object element) {
+			Node node = (Node) element;
+			return node.child == -1 ? ROOT : new Node(node.parent, -1);
+		}
+
+		public boolean hasChildren(Object element) {
+			return element == ROOT || ((Node) element).child == -1;
+		}
+
+		public void dispose() {
+		}
+
+		public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+		}
+	}
+
+	public TreeViewerElementMapTest(String name) {
+		super(name);
+	}
+
+	protected StructuredViewer createViewer(Composite parent) {
+		TreeViewer viewer = new TreeViewer(parent);
+		viewer.setContentProvider(new ContentProvider());
+		viewer.setLabelProvider(new LabelProvider());
+		return viewer;
+	}
+
+	protected void setInput() {
+		fViewer.setInput(ROOT);
+	}
+
+	private TreeViewer getTreeViewer() {
+		return (TreeViewer) fViewer;
+	}
+
+	private void assertMapped(int parent, int child) {
+		Widget item = fViewer.testFindItem(new Node(parent, child));
+		assertNotNull("Not mapped: " + parent + "." + child, item);
+		assertEquals(new Node(parent, child), item.getData());
+	}
+
+	public void testRefresh() {
+		getTreeViewer().expandAll();
+		assertMapped(PARENTS - 1, CHILDREN - 1);
+
+		fViewer.refresh();
+		for (int p = 0; p < PARENTS; p += 10) {
+			for (int c = 0; c < CHILDREN; c += 20) {
+				assertMapped(p, c);
+			}
+		}
+	}
+
+	public void testRemove() {
+		getTreeViewer().expandAll();
+
+		// unmap all but the first child of each parent
+		for (int p = 0; p < PARENTS; p++) {
+			Object[] children = new Object[CHILDREN - 1];
+			for (int c = 1; c < CHILDREN; c++) {
+				children[c - 1] = new Node(p, c);
+			}
+			getTreeViewer().remove(children);
+		}
+		for (int p = 0; p < PARENTS; p++) {
+			assertMapped(p, -1);
+			assertMapped(p, 0);
+			assertNull(fViewer.testFindItem(new Node(p, 1)));
+			assertNull(fViewer.testFindItem(new Node(p, CHILDREN - 1)));
+		}
+
+		// and map them again
+		fViewer.refresh();
+		getTreeViewer().expandAll();
+		assertMapped(0, CHILDREN - 1);
+		assertMapped(PARENTS - 1, CHILDREN - 1);
+	}
+
+	public void testSetInputAgain() {
+		getTreeViewer().expandAll();
+		assertMapped(PARENTS - 1, CHILDREN - 1);
+		fViewer.setInput(null);
+		assertNull(fViewer.testFindItem(new Node(0, -1)));
+		assertNull(fViewer.testFindItem(new Node(PARENTS - 1, CHILDREN - 1)));
+
+		fViewer.setInput(ROOT);
+		getTreeViewer().expandToLevel(new Node(1, -1), 1);
+		assertMapped(1, CHILDREN - 1);
+		assertNull(fViewer.testFindItem(new Node(2, 0)));
+		getTreeViewer().expandAll();
+		assertMapped(PARENTS - 1, CHILDREN - 1);
+	}
+
+	public void testSetInputAndComparer() {
+		getTreeViewer().expandToLevel(new Node(0, -1), 1);
+		assertNotNull(fViewer.testFindItem(new Node(0, 0)));
+		fViewer.setInput(null);
+		assertNull(fViewer.testFindItem(new Node(0, 0)));
+
+		fViewer.setInput(ROOT);
+		getTreeViewer().expandToLevel(new Node(3, -1), 1);
+		assertNotNull(fViewer.testFindItem(new Node(3, 7)));
+
+		// a comparer with colliding hash codes
+		fViewer.setComparer(new IElementComparer() {
+			public boolean equals(Object a, Object b) {
+				return a.equals(b);
+			}
+
+			public int hashCode(Object element) {
+				return ((Node) element).parent;
+			}
+		});
+		assertEquals(new Node(3, 7), fViewer.testFindItem(new Node(3, 7)).getData());
+		fViewer.refresh();
+		assertEquals(1, fViewer.testFindItems(new Node(3, 7)).length);
+		fViewer.setComparer(null);
+		assertNotNull(fViewer.testFindItem(new Node(3, 7)));
+		assertNotNull(fViewer.testFindItem(new Node(3, 8)));
+	}
+}
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jface.tests.viewers;
+
+import org.eclipse.jface.viewers.ITreeContentProvider;
+import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.StructuredViewer;
+import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerFilter;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.TreeItem;
+import org.eclipse.ui.dialogs.PatternFilter;
+
+/**
+ * Tests refreshing a tree viewer after a filter was refined.
+ *
+ * @since 3.9
+ */
+public class TreeViewerRefinedFilterTest extends ViewerTestCase {
+
+	private static final int PARENTS = 10;
+
+	private static final int CHILDREN = 1000;
+
+	private static final String ROOT = "root";
+
+	/**
+	 * Selects the children starting with a prefix, and all parents.
+	 */
+	private static class PrefixFilter extends ViewerFilter {
+		String prefix = "";
+
+		int selectCount;
+
+		void setPrefix(String prefix) {
+			boolean refinement = prefix.startsWith(this.prefix);
+			this.prefix = prefix;
+			stateChanged(refinement);
+		}
+
+		public boolean select(Viewer viewer, Object parentElement,
+				Object element) {
+			selectCount++;
+			String name = (String) element;
+			return name.startsWith("parent") || name.startsWith(prefix);
+		}
+	}
+
+	private static class ContentProvider implements ITreeContentProvider {
+		int elementsCount;
+
+		public Object[] getElements(Object inputElement) {
+			elementsCount++;
+			Object[] parents = new Object[PARENTS];
+			for (int i = 0; i < PARENTS; i++) {
+				parents[i] = "parent" + i;
+			}
+			return parents;
+		}
+
+		public Object[] getChildren(Object parentElement) {
+			String parent = (String) parentElement;
+			if (!parent.startsWith("parent")) {
+				return new Object[0];
+			}
+			Object[] children = new Object[CHILDREN];
+			for (int i = 0; i < CHILDREN; i++) {
+				children[i] = "c" + i + " of " + parent;
+			}
+			return children;
+		}
+
+		public Object getParent(Object element) {
+			return null;
+		}
+
+		public boolean hasChildren(Object element) {
+			return ((String) element).startsWith("parent");
+		}
+
+		public void dispose() {
+		}
+
+		public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+		}
+	}
+
+	private PrefixFilter filter;
+
+	private ContentProvider contentProvider;
+
+	public TreeViewerRefinedFilterTest(String name) {
+		super(name);
+	}
+
+	protected StructuredViewer createViewer(Composite parent) {
+		TreeViewer viewer = new TreeViewer(parent);
+		contentProvider = new ContentProvider();
+		viewer.setContentProvider(contentProvider);
+		viewer.setLabelProvider(new LabelProvider());
+		filter = new PrefixFilter();
+		viewer.addFilter(filter);
+		return viewer;
+	}
+
+	protected void setInput() {
+		fViewer.setInput(ROOT);
+	}
+
+	private TreeViewer getTreeViewer() {
+		return (TreeViewer) fViewer;
+	}
+
+	private int countChildItems() {
+		TreeItem[] parents = getTreeViewer().getTree().getItems();
+		int count = 0;
+		for (int i = 0; i < parents.length; i++) {
+			count += parents[i].getItemCount();
+		}
+		return count;
+	}
+
+	private void setPrefix(String prefix) {
+		filter.setPrefix(prefix);
+		filter.selectCount = 0;
+		fViewer.refresh();
+	}
+
+	public void testRefinedFilterOnlyChecksShownElements() {
+		getTreeViewer().expandAll();
+		assertEquals(PARENTS * CHILDREN, countChildItems());
+
+		// 111 of 1000 children start with "c1"
+		setPrefix("c1");
+		assertEquals(PARENTS * 111, countChildItems());
+		assertEquals(PARENTS + PARENTS * CHILDREN, filter.selectCount);
+
+		// 11 of them start with "c12"
+		setPrefix("c12");
+		assertEquals(PARENTS * 11, countChildItems());
+		assertEquals(PARENTS + PARENTS * 111, filter.selectCount);
+		assertNotNull(fViewer.testFindItem("c125 of parent3"));
+		assertNull(fViewer.testFindItem("c135 of parent3"));
+		assertNull(fViewer.testFindItem("c1 of parent3"));
+
+		setPrefix("c123");
+		assertEquals(PARENTS, countChildItems());
+		assertEquals(PARENTS + PARENTS * 11, filter.selectCount);
+	}
+
+	public void testBroadenedFilterRefreshesFully() {
+		getTreeViewer().expandAll();
+		setPrefix("c12");
+		assertEquals(PARENTS * 11, countChildItems());
+
+		setPrefix("c1");
+		assertEquals(PARENTS * 111, countChildItems());
+		assertNotNull(fViewer.testFindItem("c135 of parent3"));
+	}
+
+	public void testRefinedFilterWithCollapsedItems() {
+		getTreeViewer().expandToLevel("parent2", 1);
+		setPrefix("c9");
+		assertEquals(111, countChildItems());
+
+		// collapsed parents get their children filtered when expanded
+		getTreeViewer().expandToLevel("parent5", 1);
+		assertNotNull(fViewer.testFindItem("c99 of parent5"));
+		assertNull(fViewer.testFindItem("c89 of parent5"));
+	}
+
+	public void testAddedFilterRefreshesFully() {
+		getTreeViewer().expandAll();
+		setPrefix("c12");
+		fViewer.addFilter(new ViewerFilter() {
+			public boolean select(Viewer viewer, Object parentElement,
+					Object element) {
+				return !"parent4".equals(element);
+			}
+		});
+		assertEquals((PARENTS - 1) * 11, countChildItems());
+		fViewer.resetFilters();
+		assertEquals(PARENTS * CHILDREN, countChildItems());
+	}
+
+	public void testPatternFilterRefreshesFully() {
+		fViewer.resetFilters();
+		PatternFilter patternFilter = new PatternFilter();
+		fViewer.addFilter(patternFilter);
+		getTreeViewer().expandAll();
+		patternFilter.setPattern("c1");
+		fViewer.refresh();
+
+		// outside of a filtered tree the model may have changed
+		contentProvider.elementsCount = 0;
+		patternFilter.setPattern("c12");
+		fViewer.refresh();
+		assertTrue(contentProvider.elementsCount > 0);
+	}
+}
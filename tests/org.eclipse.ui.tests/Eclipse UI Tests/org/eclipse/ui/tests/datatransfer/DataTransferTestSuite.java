@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2007 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -35,6 +35,7 @@ public class DataTransferTestSuite extends TestSuite {
         addTest(new TestSuite(ExportFileSystemOperationTest.class));
         addTest(new TestSuite(ExportArchiveFileOperationTest.class));
         addTest(ImportExistingProjectsWizardTest.suite());
+        addTest(new TestSuite(ProjectDirectoryWalkerTest.class));
         addTest(new TestSuite(ImportExportWizardsCategoryTests.class));
     }
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2011 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,19 +11,25 @@
 package org.eclipse.ui.tests.datatransfer;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.zip.CRC32;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
@@ -38,6 +44,7 @@ import org.eclipse.ui.internal.wizards.datatransfer.ArchiveFileExportOperation;
 import org.eclipse.ui.internal.wizards.datatransfer.TarEntry;
 import org.eclipse.ui.internal.wizards.datatransfer.TarException;
 import org.eclipse.ui.internal.wizards.datatransfer.TarFile;
+import org.eclipse.ui.internal.wizards.datatransfer.ZipArchiveWriter;
 import org.eclipse.ui.tests.harness.util.FileUtil;
 import org.eclipse.ui.tests.harness.util.UITestCase;
 
@@ -50,6 +57,9 @@ public class ExportArchiveFileOperationTest extends UITestCase implements
     private static final String[] directoryNames = { "dir1", "dir2" };
     private static final String[] emptyDirectoryNames = { "dir3" };
     private static final String[] fileNames = { "file1.txt", "file2.txt" };
+    // larger than the files the export pipeline buffers (8 MB), so that it is streamed
+    private static final int LARGE_FILE_SIZE = 9 * 1024 * 1024;
+    private static final String LARGE_FILE_NAME = "large.bin";
     
     private String localDirectory;
     
@@ -274,6 +284,233 @@ public class ExportArchiveFileOperationTest extends UITestCase implements
 		
 	}
 
+	public void testExportZipPipelined() throws Exception {
+		filePath = localDirectory + "/" + FILE_NAME + "." + ZIP_FILE_EXT;
+		List resources = new ArrayList();
+		resources.add(project);
+        ArchiveFileExportOperation operation = 
+        	new ArchiveFileExportOperation(resources, filePath);
+
+        operation.setUseCompression(false);
+        operation.setUseTarFormat(false);
+        operation.setUsePipeline(true);
+        operation.run(new NullProgressMonitor());
+
+        assertTrue(operation.getStatus().isOK());
+        verifyFolders(directoryNames.length + emptyDirectoryNames.length, ZIP_FILE_EXT);
+        verifyContents(ZIP_FILE_EXT);
+	}
+
+	public void testExportZipCompressedPipelined() throws Exception {
+		filePath = localDirectory + "/" + FILE_NAME + "." + ZIP_FILE_EXT;
+		List resources = new ArrayList();
+		resources.add(project);
+        ArchiveFileExportOperation operation = 
+        	new ArchiveFileExportOperation(resources, filePath);
+
+        operation.setUseCompression(true);
+        operation.setUseTarFormat(false);
+        operation.setUsePipeline(true);
+        operation.run(new NullProgressMonitor());
+
+        assertTrue(operation.getStatus().isOK());
+		verifyCompressed(ZIP_FILE_EXT);
+        verifyFolders(directoryNames.length + emptyDirectoryNames.length, ZIP_FILE_EXT);
+        verifyContents(ZIP_FILE_EXT);
+	}
+
+	public void testExportTarPipelined() throws Exception {
+		filePath = localDirectory + "/" + FILE_NAME + "." + TAR_FILE_EXT;
+		List resources = new ArrayList();
+		resources.add(project);
+        ArchiveFileExportOperation operation = 
+        	new ArchiveFileExportOperation(resources, filePath);
+
+        operation.setUseTarFormat(true);
+        operation.setUseCompression(false);
+        operation.setUsePipeline(true);
+        operation.run(new NullProgressMonitor());
+
+        assertTrue(operation.getStatus().isOK());
+        verifyFolders(directoryNames.length + emptyDirectoryNames.length, TAR_FILE_EXT);
+        verifyContents(TAR_FILE_EXT);
+	}
+
+	public void testExportTarCompressedPipelined() throws Exception {
+		filePath = localDirectory + "/" + FILE_NAME + "." + TAR_FILE_EXT;
+		List resources = new ArrayList();
+		resources.add(project);
+        ArchiveFileExportOperation operation = 
+        	new ArchiveFileExportOperation(resources, filePath);
+
+        operation.setUseTarFormat(true);
+        operation.setUseCompression(true);
+        operation.setUsePipeline(true);
+        operation.run(new NullProgressMonitor());
+
+        assertTrue(operation.getStatus().isOK());
+		verifyCompressed(TAR_FILE_EXT);
+        verifyContents(TAR_FILE_EXT);
+	}
+
+	public void testExportZipLargeFilePipelined() throws Exception {
+		verifyLargeFileExport(false);
+	}
+
+	public void testExportZipCompressedLargeFilePipelined() throws Exception {
+		verifyLargeFileExport(true);
+	}
+
+	public void testZip64LocalHeader() throws Exception {
+		filePath = localDirectory + "/" + FILE_NAME + "." + ZIP_FILE_EXT;
+		byte[] contents = createContents(1000);
+		ZipArchiveWriter writer = new ZipArchiveWriter(filePath);
+		// an expected size that requires zip64 sizes in the local header
+		writer.putEntry("big", 0, false, new ByteArrayInputStream(contents),
+				0xFFFFFFFFL);
+		writer.putEntry("small", 0, true, new ByteArrayInputStream(contents),
+				contents.length);
+		writer.close();
+
+		byte[] header = new byte[50];
+		RandomAccessFile file = new RandomAccessFile(filePath, "r");
+		try {
+			file.readFully(header);
+		} finally {
+			file.close();
+		}
+		assertEquals(45, getShort(header, 4));
+		assertEquals(getCRC(contents), getInt(header, 14) & 0xFFFFFFFFL);
+		assertEquals(-1, getInt(header, 18));
+		assertEquals(-1, getInt(header, 22));
+		assertEquals(3, getShort(header, 26));
+		assertEquals(20, getShort(header, 28));
+		// the zip64 extra field holds the sizes
+		assertEquals(1, getShort(header, 33));
+		assertEquals(16, getShort(header, 35));
+		assertEquals(contents.length, getInt(header, 37));
+		assertEquals(0, getInt(header, 41));
+		assertEquals(contents.length, getInt(header, 45));
+
+		ZipFile zipFile = new ZipFile(filePath);
+		try {
+			ZipEntry entry = zipFile.getEntry("big");
+			assertEquals(contents.length, entry.getSize());
+			assertContents(contents, zipFile.getInputStream(entry));
+			assertContents(contents, zipFile.getInputStream(zipFile.getEntry("small")));
+		} finally {
+			zipFile.close();
+		}
+	}
+
+	private void verifyLargeFileExport(boolean compress) throws Exception {
+		// half random, half repeated, so that compression has some effect
+		byte[] contents = createContents(LARGE_FILE_SIZE);
+		System.arraycopy(contents, 0, contents, LARGE_FILE_SIZE / 2, LARGE_FILE_SIZE / 2);
+		IFile largeFile = project.getFile(LARGE_FILE_NAME);
+		largeFile.create(new ByteArrayInputStream(contents), true, new NullProgressMonitor());
+
+		filePath = localDirectory + "/" + FILE_NAME + "." + ZIP_FILE_EXT;
+		List resources = new ArrayList();
+		resources.add(project);
+        ArchiveFileExportOperation operation = 
+        	new ArchiveFileExportOperation(resources, filePath);
+
+        operation.setUseCompression(compress);
+        operation.setUseTarFormat(false);
+        operation.setUsePipeline(true);
+        operation.run(new NullProgressMonitor());
+        assertTrue(operation.getStatus().isOK());
+
+        // the central directory
+        ZipFile zipFile = new ZipFile(filePath);
+        try {
+        	ZipEntry entry = zipFile.getEntry(project.getName() + "/" + LARGE_FILE_NAME);
+        	assertNotNull(entry);
+        	assertEquals(LARGE_FILE_SIZE, entry.getSize());
+        	assertEquals(getCRC(contents), entry.getCrc());
+        	assertEquals(compress ? ZipEntry.DEFLATED : ZipEntry.STORED, entry.getMethod());
+        	if (compress)
+        		assertTrue(entry.getCompressedSize() < LARGE_FILE_SIZE);
+        	assertContents(contents, zipFile.getInputStream(entry));
+        } finally {
+        	zipFile.close();
+        }
+        verifyContents(ZIP_FILE_EXT);
+
+        // the local headers, which are completed after the data of the large file
+        int count = 0;
+        ZipInputStream in = new ZipInputStream(new FileInputStream(filePath));
+        try {
+        	ZipEntry entry;
+        	while ((entry = in.getNextEntry()) != null) {
+        		if (entry.getName().endsWith("/" + LARGE_FILE_NAME))
+        			assertContents(contents, in);
+        		else if (verifyContents(entry.getName(), new NonClosingInputStream(in)))
+        			count++;
+        		else
+        			drain(in);
+        	}
+        } finally {
+        	in.close();
+        }
+        assertEquals(directoryNames.length * fileNames.length, count);
+	}
+
+	private static byte[] createContents(int size) {
+		byte[] contents = new byte[size];
+		new Random(size).nextBytes(contents);
+		return contents;
+	}
+
+	private static long getCRC(byte[] contents) {
+		CRC32 crc = new CRC32();
+		crc.update(contents);
+		return crc.getValue();
+	}
+
+	private static int getShort(byte[] b, int off) {
+		return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8;
+	}
+
+	private static int getInt(byte[] b, int off) {
+		return getShort(b, off) | getShort(b, off + 2) << 16;
+	}
+
+	private static void drain(InputStream in) throws IOException {
+		byte[] buffer = new byte[4096];
+		while (in.read(buffer) > 0) {
+			// skip
+		}
+	}
+
+	private static void assertContents(byte[] expected, InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(expected.length);
+		byte[] buffer = new byte[64 * 1024];
+		int n;
+		while ((n = in.read(buffer)) > 0)
+			out.write(buffer, 0, n);
+		byte[] actual = out.toByteArray();
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			if (expected[i] != actual[i])
+				fail("Contents differ at offset " + i);
+		}
+	}
+
+	/**
+	 * Leaves the zip stream open when the contents of an entry are verified.
+	 */
+	private static class NonClosingInputStream extends FilterInputStream {
+		NonClosingInputStream(InputStream in) {
+			super(in);
+		}
+
+		public void close() {
+			// the zip stream is closed by the caller
+		}
+	}
+
     protected void doSetUp() throws Exception {
 		super.doSetUp();
 		project = FileUtil.createProject("Export" + getName());
@@ -406,6 +643,53 @@ public class ExportArchiveFileOperationTest extends UITestCase implements
     	}
     }
     
+    private void verifyContents(String type) throws Exception {
+    	int count = 0;
+    	if (ZIP_FILE_EXT.equals(type)){
+    		ZipFile zipFile = new ZipFile(filePath);
+    		Enumeration entries = zipFile.entries();
+    		while (entries.hasMoreElements()){
+    			ZipEntry entry = (ZipEntry)entries.nextElement();
+    			if (verifyContents(entry.getName(), zipFile.getInputStream(entry)))
+    				count++;
+    		}
+    		zipFile.close();
+    	}
+    	else{
+    		TarFile tarFile = new TarFile(filePath);
+    		Enumeration entries = tarFile.entries();
+    		while (entries.hasMoreElements()){
+    			TarEntry entry = (TarEntry)entries.nextElement();
+    			if (verifyContents(entry.getName(), tarFile.getInputStream(entry)))
+    				count++;
+    		}
+    		tarFile.close();
+    	}
+    	assertEquals(directoryNames.length * fileNames.length, count);
+    }
+
+    private boolean verifyContents(String entryName, InputStream in) throws IOException {
+    	try {
+    		for (int i = 0; i < directoryNames.length; i++){
+    			for (int k = 0; k < fileNames.length; k++){
+    				if (entryName.endsWith(directoryNames[i] + "/" + fileNames[k])){
+    					ByteArrayOutputStream out = new ByteArrayOutputStream();
+    					byte[] buffer = new byte[4096];
+    					int n;
+    					while ((n = in.read(buffer)) > 0)
+    						out.write(buffer, 0, n);
+    					assertEquals(directoryNames[i] + ", " + fileNames[k], out.toString());
+    					return true;
+    				}
+    			}
+    		}
+    		return false;
+    	}
+    	finally {
+    		in.close();
+    	}
+    }
+
     private void verifyArchive(int folderCount, List entries){
     	int count = 0;
     	Set folderNames = new HashSet();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2006 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,7 @@
  *******************************************************************************/
 package org.eclipse.ui.tests.datatransfer;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -30,6 +31,7 @@ import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.ui.dialogs.IOverwriteQuery;
+import org.eclipse.ui.internal.wizards.datatransfer.TarEntry;
 import org.eclipse.ui.internal.wizards.datatransfer.TarFile;
 import org.eclipse.ui.internal.wizards.datatransfer.TarLeveledStructureProvider;
 import org.eclipse.ui.internal.wizards.datatransfer.ZipLeveledStructureProvider;
@@ -277,6 +279,49 @@ public class ImportArchiveOperationTest extends UITestCase implements IOverwrite
         verifyFiles(directoryNames.length, true);
     
     }
+
+    public void testTarEntriesIndexed() throws Exception {
+    	setup(ARCHIVE_SOURCE_PROPERTY);
+        project = FileUtil.createProject("TarEntriesIndexed");
+        TarFile tarFile = new TarFile(tarFileURL.getPath());
+
+        // read the contents of each entry while it is enumerated
+	    Enumeration tarEntries = tarFile.entries();
+	    List entries = new ArrayList();
+	    List contents = new ArrayList();
+	    while (tarEntries.hasMoreElements()){
+	    	TarEntry entry = (TarEntry) tarEntries.nextElement();
+	    	entries.add(entry);
+	    	contents.add(readContents(tarFile.getInputStream(entry)));
+	    }
+	    assertFalse("No entries", entries.isEmpty());
+
+	    // a second enumeration replays the entries read before
+	    tarEntries = tarFile.entries();
+	    for (int i = 0; i < entries.size(); i++) {
+	    	assertTrue("Entry missing", tarEntries.hasMoreElements());
+	    	assertSame(entries.get(i), tarEntries.nextElement());
+	    }
+	    assertFalse("Extra entry", tarEntries.hasMoreElements());
+
+	    // the contents are the same when read out of order
+	    for (int i = entries.size() - 1; i >= 0; i--) {
+	    	TarEntry entry = (TarEntry) entries.get(i);
+	    	assertEquals("Contents differ for " + entry.getName(), contents
+	    			.get(i), readContents(tarFile.getInputStream(entry)));
+	    }
+	    tarFile.close();
+    }
+
+    private String readContents(InputStream stream) throws IOException {
+    	ByteArrayOutputStream contents = new ByteArrayOutputStream();
+    	byte[] buffer = new byte[4096];
+    	int n;
+    	while ((n = stream.read(buffer)) > 0) {
+    		contents.write(buffer, 0, n);
+    	}
+    	return contents.toString("ISO-8859-1");
+    }
     
     /**
      * Verifies that all files were imported.
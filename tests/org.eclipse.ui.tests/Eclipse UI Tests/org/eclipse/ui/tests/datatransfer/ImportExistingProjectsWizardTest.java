@@ -83,6 +83,7 @@ public class ImportExistingProjectsWizardTest extends UITestCase {
 		ts.addTest(new ImportExistingProjectsWizardTest("testFindSingleTar"));
 		ts.addTest(new ImportExistingProjectsWizardTest("testFindSingleDirectory"));
 		ts.addTest(new ImportExistingProjectsWizardTest("testDoNotShowProjectWithSameName"));
+		ts.addTest(new ImportExistingProjectsWizardTest("testDoNotCheckProjectWithSameName"));
 		ts.addTest(new ImportExistingProjectsWizardTest("testImportSingleZip"));
 		ts.addTest(new ImportExistingProjectsWizardTest("testImportZipWithEmptyFolder"));
 		ts.addTest(new ImportExistingProjectsWizardTest("testImportSingleTar"));
@@ -273,6 +274,39 @@ public class ImportExistingProjectsWizardTest extends UITestCase {
 		}
 	}
 
+	public void testDoNotCheckProjectWithSameName() {
+		try {
+			dataLocation = copyDataLocation(WS_DATA_LOCATION);
+			IPath wsPath = new Path(dataLocation);
+
+			FileUtil.createProject("HelloWorld");
+
+			WizardProjectsImportPage wpip = getNewWizard();
+			// We're importing a directory
+			wpip.getProjectFromDirectoryRadio().setSelection((true));
+			wpip.updateProjectsList(wsPath.toOSString());
+
+			CheckboxTreeViewer projectsList = wpip.getProjectsList();
+			ProjectRecord[] selectedProjects = wpip.getProjectRecords();
+			boolean found = false;
+			for (int i = 0; i < selectedProjects.length; i++) {
+				boolean conflicts = selectedProjects[i].hasConflicts();
+				if (selectedProjects[i].getProjectName().equals("HelloWorld")) {
+					assertTrue(conflicts);
+					found = true;
+				}
+				assertEquals(!conflicts, projectsList
+						.getChecked(selectedProjects[i]));
+				assertEquals(conflicts, projectsList
+						.getGrayed(selectedProjects[i]));
+			}
+			assertTrue("HelloWorld was not found", found);
+
+		} catch (Exception e) {
+			fail(e.toString());
+		}
+	}
+
 	public void testImportSingleZip() {
 		try {
 			IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.ui.tests.datatransfer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.tests.harness.FileSystemHelper;
+import org.eclipse.ui.internal.wizards.datatransfer.ProjectDirectoryWalker;
+
+/**
+ * Tests the parallel search for project description files.
+ */
+public class ProjectDirectoryWalkerTest extends TestCase {
+
+	private File root;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		root = new File(FileSystemHelper.getRandomLocation(
+				FileSystemHelper.getTempDir()).toOSString());
+		createProject("a");
+		createProject("a/nested");
+		createProject("b/c");
+		createProject("b/d/e");
+		createProject(".metadata/f");
+		for (int i = 0; i < 50; i++) {
+			createProject("many/" + i + "/project");
+		}
+		new File(root, "empty/folder").mkdirs();
+	}
+
+	protected void tearDown() throws Exception {
+		FileSystemHelper.clear(root);
+		super.tearDown();
+	}
+
+	private void createProject(String path) throws IOException {
+		File directory = new File(root, path);
+		directory.mkdirs();
+		new File(directory, ".project").createNewFile();
+		new File(directory, "file.txt").createNewFile();
+	}
+
+	private Set walk(boolean nestedProjects, int threadCount) {
+		final Set found = new HashSet();
+		ProjectDirectoryWalker walker = new ProjectDirectoryWalker(
+				nestedProjects, threadCount) {
+			protected void projectFound(File file) {
+				synchronized (found) {
+					assertTrue("Project found twice: " + file, found.add(file
+							.getParentFile().getAbsolutePath()));
+				}
+			}
+		};
+		assertTrue(walker.walk(root, new NullProgressMonitor()));
+		return found;
+	}
+
+	private Set expected(boolean nestedProjects) {
+		Set expected = new HashSet();
+		expected.add(new File(root, "a").getAbsolutePath());
+		if (nestedProjects) {
+			expected.add(new File(root, "a/nested").getAbsolutePath());
+		}
+		expected.add(new File(root, "b/c").getAbsolutePath());
+		expected.add(new File(root, "b/d/e").getAbsolutePath());
+		for (int i = 0; i < 50; i++) {
+			expected.add(new File(root, "many/" + i + "/project")
+					.getAbsolutePath());
+		}
+		return expected;
+	}
+
+	public void testFindProjects() {
+		assertEquals(expected(false), walk(false, 4));
+	}
+
+	public void testFindNestedProjects() {
+		assertEquals(expected(true), walk(true, 4));
+	}
+
+	public void testSingleThread() {
+		assertEquals(expected(true), walk(true, 1));
+	}
+
+	public void testCanceled() {
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		monitor.setCanceled(true);
+		ProjectDirectoryWalker walker = new ProjectDirectoryWalker(false, 4) {
+			protected void projectFound(File file) {
+				fail("Canceled search found " + file);
+			}
+		};
+		assertFalse(walker.walk(root, monitor));
+	}
+}
@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.tests.decorators;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.viewers.DecorationContext;
+import org.eclipse.jface.viewers.IDecorationContext;
+import org.eclipse.jface.viewers.LabelProviderChangedEvent;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.ui.internal.decorators.DecorationResult;
+import org.eclipse.ui.internal.decorators.DecorationScheduler;
+import org.eclipse.ui.internal.decorators.DecoratorManager;
+
+/**
+ * Tests the decoration of elements requested from several threads by the
+ * decoration jobs, and the bound of the cache of decoration results.
+ *
+ * @since 3.8
+ */
+public class DecorationSchedulerTest extends DecoratorEnablementTestCase {
+
+	private static final int ELEMENT_COUNT = 200;
+
+	private static final int THREAD_COUNT = 4;
+
+	private static final long TIMEOUT = 30000;
+
+	private Set decorated = Collections.synchronizedSet(new HashSet());
+
+	/**
+	 * Create an instance of the receiver.
+	 *
+	 * @param testName
+	 */
+	public DecorationSchedulerTest(String testName) {
+		super(testName);
+	}
+
+	protected void doTearDown() throws Exception {
+		definition.setEnabled(false);
+		getDecoratorManager().updateForEnablementChange();
+		super.doTearDown();
+	}
+
+	/**
+	 * Request the decoration of the same elements from several threads at
+	 * once and check that each of them is decorated and delivered to the
+	 * listeners, and that an element is never decorated on two threads at
+	 * once.
+	 */
+	public void testConcurrentDecoration() throws Exception {
+		getDecoratorManager().clearCaches();
+		definition.setEnabled(true);
+		getDecoratorManager().updateForEnablementChange();
+		waitForDecorations(Collections.EMPTY_SET);
+		decorated.clear();
+		if (TestLightweightDecoratorContributor.contributor != null) {
+			TestLightweightDecoratorContributor.contributor.resetOverlapped();
+		}
+
+		final IResource[] elements = new IResource[ELEMENT_COUNT];
+		Set expected = new HashSet();
+		for (int i = 0; i < elements.length; i++) {
+			elements[i] = testFolder.getFile("file" + i + ".txt");
+			expected.add(elements[i]);
+		}
+
+		Thread[] threads = new Thread[THREAD_COUNT];
+		for (int i = 0; i < threads.length; i++) {
+			final int offset = i * ELEMENT_COUNT / THREAD_COUNT;
+			threads[i] = new Thread("Decoration request " + i) {
+				public void run() {
+					for (int j = 0; j < elements.length; j++) {
+						IResource element = elements[(offset + j)
+								% elements.length];
+						getDecoratorManager().decorateText(element.getName(),
+								element);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (int i = 0; i < threads.length; i++) {
+			threads[i].join();
+		}
+
+		waitForDecorations(expected);
+		assertTrue("Not all elements were decorated", decorated
+				.containsAll(expected));
+		assertNotNull(TestLightweightDecoratorContributor.contributor);
+		assertFalse("An element was decorated on several threads at once",
+				TestLightweightDecoratorContributor.contributor
+						.resetOverlapped());
+	}
+
+	/**
+	 * Fill the results of a decoration context beyond the cache size and check
+	 * that the results are kept until they are read, and that the least
+	 * recently used of the read results are dropped.
+	 */
+	public void testResultCacheEviction() {
+		DecorationScheduler scheduler = new DecorationScheduler(
+				getDecoratorManager());
+		try {
+			int cacheSize = DecorationScheduler.getCacheSize();
+			IDecorationContext context = new DecorationContext();
+			IDecorationContext otherContext = new DecorationContext();
+			putResult(scheduler, "other", otherContext);
+			readResult(scheduler, "other", otherContext);
+			for (int i = 0; i < cacheSize; i++) {
+				putResult(scheduler, new Integer(i), context);
+				readResult(scheduler, new Integer(i), context);
+			}
+			for (int i = 0; i < cacheSize; i++) {
+				assertTrue("Result " + i + " dropped", scheduler
+						.isDecorationReady(new Integer(i), context));
+			}
+
+			// the first result is used again, the second is now the eldest
+			readResult(scheduler, new Integer(0), context);
+			putResult(scheduler, new Integer(cacheSize), context);
+			assertTrue("Result dropped before the new one was read",
+					scheduler.isDecorationReady(new Integer(1), context));
+			readResult(scheduler, new Integer(cacheSize), context);
+			assertTrue("Recently used result dropped", scheduler
+					.isDecorationReady(new Integer(0), context));
+			assertFalse("Eldest result kept", scheduler.isDecorationReady(
+					new Integer(1), context));
+			assertTrue(scheduler.isDecorationReady(new Integer(cacheSize),
+					context));
+
+			putResult(scheduler, new Integer(cacheSize + 1), context);
+			readResult(scheduler, new Integer(cacheSize + 1), context);
+			assertFalse("Eldest result kept", scheduler.isDecorationReady(
+					new Integer(2), context));
+			assertTrue(scheduler.isDecorationReady(new Integer(0), context));
+
+			// each context has its own results
+			assertTrue("Result of another context dropped", scheduler
+					.isDecorationReady("other", otherContext));
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	/**
+	 * Cache more results than the cache size before the viewers read them
+	 * and check that none is dropped until it is read.
+	 */
+	public void testUnreadResultsKept() {
+		DecorationScheduler scheduler = new DecorationScheduler(
+				getDecoratorManager());
+		try {
+			int cacheSize = DecorationScheduler.getCacheSize();
+			IDecorationContext context = new DecorationContext();
+			for (int i = 0; i <= cacheSize; i++) {
+				putResult(scheduler, new Integer(i), context);
+			}
+			for (int i = 0; i <= cacheSize; i++) {
+				assertTrue("Unread result " + i + " dropped", scheduler
+						.isDecorationReady(new Integer(i), context));
+			}
+
+			// once all of them are read the eldest is dropped
+			for (int i = 0; i <= cacheSize; i++) {
+				readResult(scheduler, new Integer(i), context);
+			}
+			assertFalse("Eldest result kept", scheduler.isDecorationReady(
+					new Integer(0), context));
+			assertTrue(scheduler.isDecorationReady(new Integer(cacheSize),
+					context));
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	private void putResult(DecorationScheduler scheduler, Object element,
+			IDecorationContext context) {
+		DecorationResult result = getDecoratorManager().getLightweightManager()
+				.getDecorationResult(element);
+		scheduler.internalPutResult(element, context, result);
+	}
+
+	/**
+	 * Read the result of element as a viewer labelling it does.
+	 */
+	private void readResult(DecorationScheduler scheduler, Object element,
+			IDecorationContext context) {
+		assertEquals("text", scheduler.decorateWithText("text", element, null,
+				context));
+	}
+
+	/**
+	 * Run the event loop until the expected elements have been decorated and
+	 * the decoration jobs are done.
+	 *
+	 * @param expected
+	 */
+	private void waitForDecorations(Set expected) {
+		Display display = Display.getCurrent();
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (System.currentTimeMillis() < end) {
+			if (decorated.containsAll(expected)
+					&& Job.getJobManager().find(
+							DecoratorManager.FAMILY_DECORATE).length == 0) {
+				return;
+			}
+			if (!display.readAndDispatch()) {
+				try {
+					Thread.sleep(10);
+				} catch (InterruptedException e) {
+					// check again
+				}
+			}
+		}
+	}
+
+	/*
+	 * Record the elements delivered with their decoration, as a viewer would
+	 * label them.
+	 *
+	 * @see org.eclipse.ui.tests.decorators.DecoratorEnablementTestCase#labelProviderChanged(org.eclipse.jface.viewers.LabelProviderChangedEvent)
+	 */
+	public void labelProviderChanged(LabelProviderChangedEvent event) {
+		super.labelProviderChanged(event);
+		Object[] elements = event.getElements();
+		if (elements == null) {
+			return;
+		}
+		for (int i = 0; i < elements.length; i++) {
+			if (!(elements[i] instanceof IResource)) {
+				continue;
+			}
+			IResource resource = (IResource) elements[i];
+			String text = getDecoratorManager().decorateText(
+					resource.getName(), resource);
+			if (text != null
+					&& text
+							.startsWith(TestLightweightDecoratorContributor.DECORATOR_PREFIX)) {
+				decorated.add(resource);
+			}
+		}
+	}
+}
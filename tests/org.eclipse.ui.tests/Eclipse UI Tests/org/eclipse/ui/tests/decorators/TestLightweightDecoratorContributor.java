@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2004, 2006 IBM Corporation and others.
+ * Copyright (c) 2004, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -38,6 +38,10 @@ public class TestLightweightDecoratorContributor implements
 
     private ImageDescriptor descriptor;
 
+    private Set decorating = new HashSet();
+
+    private boolean overlapped;
+
     public TestLightweightDecoratorContributor() {
         contributor = this;
     }
@@ -109,9 +113,34 @@ public class TestLightweightDecoratorContributor implements
      * @see org.eclipse.jface.viewers.ILightweightLabelDecorator#decorate(java.lang.Object, org.eclipse.jface.viewers.IDecoration)
      */
     public void decorate(Object element, IDecoration decoration) {
-        decoration.addOverlay(getOverlay(element));
-        decoration.addPrefix(DECORATOR_PREFIX);
-        decoration.addSuffix(DECORATOR_SUFFIX);
+        boolean added;
+        synchronized (this) {
+            added = decorating.add(element);
+            overlapped |= !added;
+        }
+        try {
+            decoration.addOverlay(getOverlay(element));
+            decoration.addPrefix(DECORATOR_PREFIX);
+            decoration.addSuffix(DECORATOR_SUFFIX);
+        } finally {
+            if (added) {
+                synchronized (this) {
+                    decorating.remove(element);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return whether the receiver decorated an element on several threads at
+     * once since the last call, and reset it.
+     * 
+     * @return boolean
+     */
+    public synchronized boolean resetOverlapped() {
+        boolean result = overlapped;
+        overlapped = false;
+        return result;
     }
 
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2007 IBM Corporation and others.
+ * Copyright (c) 2006, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,6 +13,7 @@ package org.eclipse.ui.tests.dialogs;
 
 import java.util.*;
 import org.eclipse.core.resources.*;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.swt.events.ShellAdapter;
 import org.eclipse.swt.events.ShellEvent;
 import org.eclipse.swt.graphics.Point;
@@ -20,6 +21,9 @@ import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.IWorkbenchWindow;
 import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.dialogs.FilteredResourcesSelectionDialog;
+import org.eclipse.ui.dialogs.SearchPattern;
+import org.eclipse.ui.internal.ide.IDEWorkbenchPlugin;
+import org.eclipse.ui.internal.ide.dialogs.ResourceNameIndex;
 
 public class UIFilteredResourcesSelectionDialogAuto extends
 		UIAbstractFilteredResourcesSelectionDialog {
@@ -46,6 +50,54 @@ public class UIFilteredResourcesSelectionDialogAuto extends
 
 		closeDialog(dialog);
 	}
+
+	/**
+	 * Checks that the resource name index finds resources by prefix, pattern
+	 * and camel case, and follows the changes of the workspace.
+	 * 
+	 * @throws Exception
+	 */
+	public void testResourceNameIndex() throws Exception {
+		ResourceNameIndex index = IDEWorkbenchPlugin.getDefault()
+				.getResourceNameIndex();
+		for (int i = 0; i < 300 && !index.isReady(); i++) {
+			Thread.sleep(100);
+		}
+		assertTrue("Index not ready", index.isReady());
+
+		IResource[] found = find(index, "afile4");
+		assertEquals(2, found.length);
+		assertEquals("afile4.txt", found[0].getName());
+		assertEquals("afile4H.txt", found[1].getName());
+
+		found = find(index, "*File4*");
+		Set names = new HashSet();
+		for (int i = 0; i < found.length; i++) {
+			names.add(found[i].getName());
+		}
+		assertEquals(new HashSet(Arrays.asList(new String[] { "_FiLe4.java",
+				"_FiLe4H.java", "afile4.txt", "afile4H.txt" })), names);
+
+		IFile file = project.getFile("FooBarBaz.txt");
+		file.create(null, false, null);
+		found = find(index, "FBB");
+		assertEquals(1, found.length);
+		assertEquals(file, found[0]);
+
+		file.delete(true, null);
+		assertEquals(0, find(index, "FBB").length);
+	}
+
+	private static IResource[] find(ResourceNameIndex index, String text) {
+		final SearchPattern pattern = new SearchPattern();
+		pattern.setPattern(text);
+		return index.find(ResourceNameIndex.getNamePrefix(pattern), pattern
+				.getPattern(), new ResourceNameIndex.NameMatcher() {
+			public boolean matches(String name) {
+				return pattern.matches(name);
+			}
+		}, new NullProgressMonitor());
+	}
 	
 	private static MockedFilteredResourcesSelectionDialog createDialog() {
 		final IWorkbenchWindow window = PlatformUI.getWorkbench()
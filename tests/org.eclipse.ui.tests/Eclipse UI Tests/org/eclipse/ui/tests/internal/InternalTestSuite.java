@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -17,10 +17,12 @@ import org.eclipse.ui.tests.api.TrimLayoutTest;
 import org.eclipse.ui.tests.markers.Bug75909Test;
 import org.eclipse.ui.tests.markers.DeclarativeFilterActivityTest;
 import org.eclipse.ui.tests.markers.DeclarativeFilterDeclarationTest;
+import org.eclipse.ui.tests.markers.MarkerAttributeSnapshotTest;
 import org.eclipse.ui.tests.markers.MarkerSortUtilTest;
 import org.eclipse.ui.tests.markers.MarkerSupportRegistryTests;
 import org.eclipse.ui.tests.markers.MarkerTesterTest;
 import org.eclipse.ui.tests.markers.MarkerViewTests;
+import org.eclipse.ui.tests.markers.MarkersIncrementalUpdateTest;
 import org.eclipse.ui.tests.markers.ResourceMappingMarkersTest;
 
 /**
@@ -51,8 +53,10 @@ public class InternalTestSuite extends TestSuite {
         addTest(new TestSuite(DeclarativeFilterActivityTest.class));
         addTest(new TestSuite(DeclarativeFilterDeclarationTest.class));
         addTest(new TestSuite(ResourceMappingMarkersTest.class));
+        addTest(new TestSuite(MarkersIncrementalUpdateTest.class));
         addTest(new TestSuite(MarkerSupportRegistryTests.class));
         addTest(new TestSuite(MarkerSortUtilTest.class));       
+        addTest(new TestSuite(MarkerAttributeSnapshotTest.class));
         addTest(new TestSuite(MarkerViewTests.class));
         addTest(Bug99858Test.suite());
         addTest(new TestSuite(WorkbenchWindowSubordinateSourcesTests.class));
@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.tests.markers;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.ui.internal.views.markers.MarkerAttributeSnapshotTester;
+import org.eclipse.ui.internal.views.markers.MarkerSupportInternalUtilities;
+import org.eclipse.ui.tests.navigator.AbstractNavigatorTest;
+import org.eclipse.ui.views.markers.MarkerItem;
+import org.eclipse.ui.views.markers.MarkerViewUtil;
+
+/**
+ * Tests the attributes the marker entries read into a snapshot when the
+ * markers are gathered, and read again on the changes of the markers.
+ *
+ * @since 3.8
+ */
+public class MarkerAttributeSnapshotTest extends AbstractNavigatorTest {
+
+	private MarkerAttributeSnapshotTester snapshot;
+
+	/**
+	 * Create an instance of the receiver.
+	 *
+	 * @param testName
+	 */
+	public MarkerAttributeSnapshotTest(String testName) {
+		super(testName);
+	}
+
+	protected void doSetUp() throws Exception {
+		super.doSetUp();
+		createTestFile();
+		// grown while the entries are added
+		snapshot = new MarkerAttributeSnapshotTester(1);
+	}
+
+	protected void doTearDown() throws Exception {
+		snapshot = null;
+		super.doTearDown();
+	}
+
+	public void testAttributes() throws CoreException {
+		IMarker marker = createMarker(testFile, "Message",
+				IMarker.SEVERITY_WARNING);
+		marker.setAttributes(new String[] { IMarker.LINE_NUMBER,
+				IMarker.LOCATION }, new Object[] { new Integer(12), "line 12" });
+		MarkerItem entry = snapshot.createEntry(marker);
+		snapshot.trimToSize();
+
+		assertFalse(snapshot.isStale(entry));
+		assertEquals("Message", entry.getAttributeValue(IMarker.MESSAGE, ""));
+		assertEquals(IMarker.SEVERITY_WARNING, entry.getAttributeValue(
+				IMarker.SEVERITY, -1));
+		assertEquals(12, entry.getAttributeValue(IMarker.LINE_NUMBER, -1));
+		assertEquals("line 12", entry.getLocation());
+		assertEquals(testFolder.getFullPath().toString(), entry.getPath());
+		assertEquals(snapshot.createUnreadEntry(marker).getPath(), entry
+				.getPath());
+	}
+
+	public void testNoValueDefaults() throws CoreException {
+		IMarker marker = testFile.createMarker(IMarker.PROBLEM);
+		MarkerItem entry = snapshot.createEntry(marker);
+
+		assertEquals(7, entry.getAttributeValue(IMarker.SEVERITY, 7));
+		assertEquals(-1, entry.getAttributeValue(IMarker.PRIORITY, -1));
+		assertEquals(-1, entry.getAttributeValue(IMarker.LINE_NUMBER, -1));
+		assertEquals("default", entry.getAttributeValue(IMarker.MESSAGE,
+				"default"));
+
+		// set after the marker was read
+		marker.setAttribute(IMarker.LINE_NUMBER, 0);
+		snapshot.readAttributes(entry);
+		assertEquals(0, entry.getAttributeValue(IMarker.LINE_NUMBER, -1));
+	}
+
+	public void testProjectPath() throws CoreException {
+		IMarker marker = createMarker(testProject, "On the project",
+				IMarker.SEVERITY_ERROR);
+		MarkerItem entry = snapshot.createEntry(marker);
+
+		assertEquals(MarkerSupportInternalUtilities.EMPTY_STRING, entry
+				.getPath());
+		assertEquals(snapshot.createUnreadEntry(marker).getPath(), entry
+				.getPath());
+	}
+
+	public void testRemoveLastAfterFilteredOut() throws CoreException {
+		IMarker first = createMarker(testFile, "First", IMarker.SEVERITY_ERROR);
+		IMarker filtered = createMarker(testFile, "Filtered",
+				IMarker.SEVERITY_WARNING);
+		filtered.setAttribute(IMarker.LINE_NUMBER, 3);
+		IMarker next = createMarker(testProject, "Next", IMarker.SEVERITY_INFO);
+
+		MarkerItem firstEntry = snapshot.createEntry(first);
+		MarkerItem filteredEntry = snapshot.createEntry(filtered);
+		// the filter may have sorted on the message
+		snapshot.getMessageKey(filteredEntry);
+		snapshot.removeLast();
+		MarkerItem nextEntry = snapshot.createEntry(next);
+		snapshot.trimToSize();
+
+		// the row of the filtered marker is reused, with nothing left of it
+		assertEquals("Next", nextEntry.getAttributeValue(IMarker.MESSAGE, ""));
+		assertEquals(IMarker.SEVERITY_INFO, nextEntry.getAttributeValue(
+				IMarker.SEVERITY, -1));
+		assertEquals(-1, nextEntry.getAttributeValue(IMarker.LINE_NUMBER, -1));
+		assertEquals(MarkerSupportInternalUtilities.EMPTY_STRING, nextEntry
+				.getPath());
+		assertEquals(0, ((Comparable) snapshot.getMessageKey(nextEntry))
+				.compareTo(MarkerAttributeSnapshotTester
+				.createMessageKey("Next")));
+
+		assertEquals("First", firstEntry.getAttributeValue(IMarker.MESSAGE, ""));
+		assertEquals(IMarker.SEVERITY_ERROR, firstEntry.getAttributeValue(
+				IMarker.SEVERITY, -1));
+	}
+
+	public void testReadAfterChange() throws CoreException {
+		IMarker marker = createMarker(testFile, "Before",
+				IMarker.SEVERITY_ERROR);
+		IMarker other = createMarker(testFile, "Other",
+				IMarker.SEVERITY_WARNING);
+		MarkerItem entry = snapshot.createEntry(marker);
+		MarkerItem otherEntry = snapshot.createEntry(other);
+		snapshot.trimToSize();
+		Object before = snapshot.getMessageKey(entry);
+
+		marker.setAttributes(new String[] { IMarker.MESSAGE, IMarker.SEVERITY,
+				MarkerViewUtil.PATH_ATTRIBUTE }, new Object[] { "After",
+				new Integer(IMarker.SEVERITY_INFO), "/Somewhere" });
+		snapshot.readAttributes(entry);
+
+		// read into the same row, the other row is left alone
+		assertFalse(snapshot.isStale(entry));
+		assertEquals("After", entry.getAttributeValue(IMarker.MESSAGE, ""));
+		assertEquals(IMarker.SEVERITY_INFO, entry.getAttributeValue(
+				IMarker.SEVERITY, -1));
+		assertEquals("/Somewhere", entry.getPath());
+		Object after = snapshot.getMessageKey(entry);
+		assertNotSame(before, after);
+		assertEquals(0, ((Comparable) after).compareTo(
+				MarkerAttributeSnapshotTester.createMessageKey("After")));
+		assertEquals("Other", otherEntry.getAttributeValue(IMarker.MESSAGE, ""));
+		assertEquals(IMarker.SEVERITY_WARNING, otherEntry.getAttributeValue(
+				IMarker.SEVERITY, -1));
+	}
+
+	public void testStaleRows() throws CoreException {
+		IMarker deleted = createMarker(testFile, "Deleted",
+				IMarker.SEVERITY_ERROR);
+		deleted.delete();
+		MarkerItem entry = snapshot.createEntry(deleted);
+
+		assertTrue(snapshot.isStale(entry));
+		assertEquals(-1, entry.getAttributeValue(IMarker.SEVERITY, -1));
+		assertEquals("", entry.getAttributeValue(IMarker.MESSAGE, ""));
+		assertEquals(MarkerSupportInternalUtilities.UNKNOWN_ATRRIBTE_VALUE_STRING,
+				entry.getPath());
+
+		// a marker deleted after it was read
+		IMarker marker = createMarker(testFile, "Message",
+				IMarker.SEVERITY_WARNING);
+		MarkerItem readEntry = snapshot.createEntry(marker);
+		assertFalse(snapshot.isStale(readEntry));
+		marker.delete();
+		snapshot.readAttributes(readEntry);
+		assertTrue(snapshot.isStale(readEntry));
+		assertEquals(-1, readEntry.getAttributeValue(IMarker.SEVERITY, -1));
+		assertEquals(MarkerSupportInternalUtilities.UNKNOWN_ATRRIBTE_VALUE_STRING,
+				readEntry.getPath());
+	}
+
+	public void testCollationKeySharing() throws CoreException {
+		MarkerItem first = snapshot.createEntry(createMarker(testFile, "Same",
+				IMarker.SEVERITY_ERROR));
+		MarkerItem second = snapshot.createEntry(createMarker(testProject,
+				"Same", IMarker.SEVERITY_WARNING));
+		MarkerItem third = snapshot.createEntry(createMarker(testFile,
+				"Different", IMarker.SEVERITY_ERROR));
+		MarkerItem empty = snapshot.createEntry(createMarker(testFile, "",
+				IMarker.SEVERITY_ERROR));
+		snapshot.trimToSize();
+
+		// the keys are created when sorting, after the gathering
+		Object key = snapshot.getMessageKey(first);
+		assertSame(key, snapshot.getMessageKey(second));
+		assertSame(key, snapshot.getMessageKey(first));
+		assertNotSame(key, snapshot.getMessageKey(third));
+		assertSame(MarkerAttributeSnapshotTester.createMessageKey(""),
+				snapshot.getMessageKey(empty));
+
+		// every row has its key, the keys by message are not kept
+		snapshot.readAttributes(second);
+		Object read = snapshot.getMessageKey(second);
+		assertNotSame(key, read);
+		assertEquals(0, ((Comparable) key).compareTo(read));
+		assertSame(key, snapshot.getMessageKey(first));
+	}
+
+	private IMarker createMarker(IResource resource, String message,
+			int severity) throws CoreException {
+		IMarker marker = resource.createMarker(IMarker.PROBLEM);
+		marker.setAttributes(new String[] { IMarker.MESSAGE,
+				IMarker.SEVERITY }, new Object[] { message,
+				new Integer(severity) });
+		return marker;
+	}
+}
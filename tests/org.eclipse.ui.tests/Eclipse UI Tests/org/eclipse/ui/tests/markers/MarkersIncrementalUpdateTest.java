@@ -0,0 +1,421 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.tests.markers;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.ui.IWorkbenchPage;
+import org.eclipse.ui.PlatformUI;
+import org.eclipse.ui.internal.views.markers.MarkerContentGenerator;
+import org.eclipse.ui.tests.navigator.AbstractNavigatorTest;
+import org.eclipse.ui.views.markers.MarkerItem;
+import org.eclipse.ui.views.markers.internal.MarkerGroup;
+
+/**
+ * Tests that the markers patched by the incremental updates of the markers
+ * view are filtered, grouped and sorted as the markers gathered from scratch:
+ * after each batch of additions, changes and removals the entries and
+ * categories are compared to the ones of a clean update.
+ *
+ * @since 3.8
+ */
+public class MarkersIncrementalUpdateTest extends AbstractNavigatorTest {
+
+	private static final int MARKER_COUNT = 12;
+
+	private static final int LIMIT = 3;
+
+	private MarkersTestMarkersView problemView;
+
+	private Object builder;
+
+	private MarkerContentGenerator generator;
+
+	private MarkerGroup categoryGroup;
+
+	private boolean limitsEnabled;
+
+	private int limits;
+
+	/**
+	 * Create an instance of the receiver.
+	 *
+	 * @param testName
+	 */
+	public MarkersIncrementalUpdateTest(String testName) {
+		super(testName);
+	}
+
+	protected void doSetUp() throws Exception {
+		super.doSetUp();
+		createTestFile();
+		IWorkbenchPage page = PlatformUI.getWorkbench()
+				.getActiveWorkbenchWindow().getActivePage();
+		problemView = (MarkersTestMarkersView) page
+				.showView("org.eclipse.ui.tests.markerTests");
+		builder = invoke(problemView, "getBuilder", new Class[0],
+				new Object[0]);
+		generator = (MarkerContentGenerator) invoke(problemView,
+				"getGenerator", new Class[0], new Object[0]);
+		categoryGroup = getCategoryGroup();
+		limitsEnabled = generator.isMarkerLimitsEnabled();
+		limits = generator.getMarkerLimits();
+		waitForUpdates();
+	}
+
+	protected void doTearDown() throws Exception {
+		generator.setMarkerLimits(limits);
+		generator.setMarkerLimitsEnabled(limitsEnabled);
+		setCategoryGroup(categoryGroup);
+		super.doTearDown();
+		waitForUpdates();
+		problemView = null;
+		builder = null;
+		generator = null;
+	}
+
+	public void testGroupedUpdates() throws Exception {
+		assertNotNull("The problems are not grouped", categoryGroup);
+		generator.setMarkerLimitsEnabled(false);
+		checkUpdates();
+	}
+
+	public void testUngroupedUpdates() throws Exception {
+		generator.setMarkerLimitsEnabled(false);
+		setCategoryGroup(null);
+		checkUpdates();
+	}
+
+	public void testGroupedUpdatesWithLimit() throws Exception {
+		assertNotNull("The problems are not grouped", categoryGroup);
+		generator.setMarkerLimits(LIMIT);
+		generator.setMarkerLimitsEnabled(true);
+		checkUpdates();
+	}
+
+	public void testUngroupedUpdatesWithLimit() throws Exception {
+		generator.setMarkerLimits(LIMIT);
+		generator.setMarkerLimitsEnabled(true);
+		setCategoryGroup(null);
+		checkUpdates();
+	}
+
+	/**
+	 * Add, change and remove markers in batches, checking the markers of the
+	 * view after each of them.
+	 *
+	 * @throws Exception
+	 */
+	private void checkUpdates() throws Exception {
+		// start from a clean update with the settings of the test
+		setCategoryGroup(getCategoryGroup());
+		waitForUpdates();
+
+		// errors and warnings
+		final IMarker[] markers = new IMarker[MARKER_COUNT * 2];
+		run(new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				for (int i = 0; i < MARKER_COUNT; i++) {
+					markers[i] = createMarker("Marker " + (10 + i * 2),
+							i % 2 == 0 ? IMarker.SEVERITY_ERROR
+									: IMarker.SEVERITY_WARNING);
+				}
+			}
+		});
+		checkMarkers();
+
+		// a new category and markers sorting between the present ones
+		run(new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				for (int i = 0; i < MARKER_COUNT; i++) {
+					markers[MARKER_COUNT + i] = createMarker("Marker "
+							+ (11 + i * 2), i % 3 == 0 ? IMarker.SEVERITY_INFO
+							: IMarker.SEVERITY_ERROR);
+				}
+			}
+		});
+		checkMarkers();
+
+		// markers moving within and between the categories
+		run(new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				markers[0].setAttribute(IMarker.MESSAGE, "Marker 99");
+				markers[1].setAttribute(IMarker.SEVERITY,
+						IMarker.SEVERITY_ERROR);
+				markers[2].setAttributes(new String[] { IMarker.MESSAGE,
+						IMarker.SEVERITY }, new Object[] { "Marker 00",
+						new Integer(IMarker.SEVERITY_INFO) });
+				markers[MARKER_COUNT + 1].setAttribute(IMarker.MESSAGE,
+						"Marker 01");
+			}
+		});
+		checkMarkers();
+
+		// the first of the sorted markers and a whole category
+		run(new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				markers[2].delete();
+				markers[MARKER_COUNT + 1].delete();
+				for (int i = 0; i < MARKER_COUNT; i++) {
+					if (i % 2 != 0 && i != 1) {
+						markers[i].delete();
+					}
+				}
+			}
+		});
+		checkMarkers();
+
+		// all of them
+		run(new IWorkspaceRunnable() {
+			public void run(IProgressMonitor monitor) throws CoreException {
+				for (int i = 0; i < markers.length; i++) {
+					if (markers[i].exists()) {
+						markers[i].delete();
+					}
+				}
+			}
+		});
+		checkMarkers();
+	}
+
+	private IMarker createMarker(String message, int severity)
+			throws CoreException {
+		IMarker marker = testFile.createMarker(IMarker.PROBLEM);
+		marker.setAttributes(new String[] { IMarker.MESSAGE,
+				IMarker.SEVERITY }, new Object[] { message,
+				new Integer(severity) });
+		return marker;
+	}
+
+	private void run(IWorkspaceRunnable runnable) throws CoreException {
+		ResourcesPlugin.getWorkspace().run(runnable, null);
+	}
+
+	/**
+	 * Check the markers patched by the incremental update against the ones
+	 * of a clean update.
+	 *
+	 * @throws Exception
+	 */
+	private void checkMarkers() throws Exception {
+		waitForUpdates();
+		Snapshot updated = new Snapshot();
+		updated.check();
+
+		setCategoryGroup(getCategoryGroup());
+		waitForUpdates();
+		Snapshot gathered = new Snapshot();
+		gathered.check();
+
+		assertEquals("Categories differ", gathered.names.size(),
+				updated.names.size());
+		for (int i = 0; i < gathered.names.size(); i++) {
+			assertEquals("Category name differs", gathered.names.get(i),
+					updated.names.get(i));
+			assertEquals("Category start differs", gathered.starts[i],
+					updated.starts[i]);
+			assertEquals("Category end differs", gathered.ends[i],
+					updated.ends[i]);
+		}
+		assertEquals("Entries differ", gathered.getMarkers(), updated
+				.getMarkers());
+		assertEquals("Counts differ", gathered.counts, updated.counts);
+		Comparator comparator = getEntryComparator();
+		for (int i = 0; i < gathered.starts.length; i++) {
+			int sorted = getSortedCount(gathered.ends[i] - gathered.starts[i]
+					+ 1);
+			for (int j = gathered.starts[i]; j < gathered.starts[i] + sorted; j++) {
+				assertEquals("Sorted entries differ at " + j, 0, comparator
+						.compare(gathered.entries[j], updated.entries[j]));
+			}
+		}
+	}
+
+	/**
+	 * The entries and categories of the markers of the view.
+	 */
+	private class Snapshot {
+
+		Object[] entries;
+
+		int[] starts;
+
+		int[] ends;
+
+		List names = new ArrayList();
+
+		List counts;
+
+		Snapshot() throws Exception {
+			Object markers = invoke(builder, "getMarkers", new Class[0],
+					new Object[0]);
+			entries = (Object[]) invoke(markers, "getMarkerEntryArray",
+					new Class[0], new Object[0]);
+			counts = Arrays.asList((Object[]) invoke(markers,
+					"getMarkerCounts", new Class[0], new Object[0]));
+			if (getCategoryGroup() == null) {
+				starts = new int[] { 0 };
+				ends = new int[] { entries.length - 1 };
+				return;
+			}
+			Object[] categories = (Object[]) invoke(markers, "getCategories",
+					new Class[0], new Object[0]);
+			starts = new int[categories.length];
+			ends = new int[categories.length];
+			for (int i = 0; i < categories.length; i++) {
+				starts[i] = getField(categories[i], "start").getInt(
+						categories[i]);
+				ends[i] = getField(categories[i], "end").getInt(categories[i]);
+				names.add(invoke(categories[i], "getName", new Class[0],
+						new Object[0]));
+			}
+		}
+
+		/**
+		 * Check that the categories cover the entries one after the other,
+		 * hold the entries of their group, and that the first entries of each
+		 * category up to the limit are sorted and not greater than the
+		 * others.
+		 */
+		void check() throws Exception {
+			MarkerGroup group = getCategoryGroup();
+			Comparator comparator = getEntryComparator();
+			int next = 0;
+			for (int i = 0; i < starts.length; i++) {
+				assertEquals("Categories not adjacent", next, starts[i]);
+				next = ends[i] + 1;
+				if (group != null) {
+					assertTrue("Empty category", ends[i] >= starts[i]);
+					assertFalse("Category repeated", names.subList(0, i)
+							.contains(names.get(i)));
+					for (int j = starts[i]; j <= ends[i]; j++) {
+						assertEquals("Entry in the wrong category", names
+								.get(i), group.getMarkerField().getValue(
+								(MarkerItem) entries[j]));
+					}
+				}
+				int sorted = getSortedCount(ends[i] - starts[i] + 1);
+				int sortedEnd = starts[i] + sorted;
+				for (int j = starts[i] + 1; j < sortedEnd; j++) {
+					assertTrue("Entries not sorted at " + j, comparator
+							.compare(entries[j - 1], entries[j]) <= 0);
+				}
+				if (sorted > 0) {
+					for (int j = sortedEnd; j <= ends[i]; j++) {
+						assertTrue("Entry sorted after the limit at " + j,
+								comparator.compare(entries[sortedEnd - 1],
+										entries[j]) <= 0);
+					}
+				}
+			}
+			assertEquals("Categories do not cover the entries",
+					entries.length, next);
+		}
+
+		Set getMarkers() {
+			Set markers = new HashSet();
+			for (int i = 0; i < entries.length; i++) {
+				markers.add(((MarkerItem) entries[i]).getMarker());
+			}
+			return markers;
+		}
+	}
+
+	/**
+	 * Return the number of entries of a category of the given size that are
+	 * shown, and so are sorted.
+	 */
+	private int getSortedCount(int size) {
+		if (generator.isMarkerLimitsEnabled()
+				&& generator.getMarkerLimits() > 0) {
+			return Math.min(size, generator.getMarkerLimits());
+		}
+		return size;
+	}
+
+	private Comparator getEntryComparator() throws Exception {
+		Object comparator = invoke(builder, "getComparator", new Class[0],
+				new Object[0]);
+		if (getCategoryGroup() == null) {
+			return (Comparator) comparator;
+		}
+		return (Comparator) invoke(comparator, "getFieldsComparator",
+				new Class[0], new Object[0]);
+	}
+
+	private MarkerGroup getCategoryGroup() throws Exception {
+		return (MarkerGroup) invoke(builder, "getCategoryGroup", new Class[0],
+				new Object[0]);
+	}
+
+	/**
+	 * Set the category group of the view, which gathers the markers again.
+	 */
+	private void setCategoryGroup(MarkerGroup group) throws Exception {
+		invoke(builder, "setCategoryGroup", new Class[] { MarkerGroup.class },
+				new Object[] { group });
+	}
+
+	private void waitForUpdates() {
+		try {
+			Job.getJobManager().join(
+					problemView.MARKERSVIEW_UPDATE_JOB_FAMILY,
+					new NullProgressMonitor());
+		} catch (OperationCanceledException e) {
+		} catch (InterruptedException e) {
+		}
+	}
+
+	private static Object invoke(Object target, String name, Class[] types,
+			Object[] args) throws Exception {
+		for (Class type = target.getClass(); type != null; type = type
+				.getSuperclass()) {
+			try {
+				Method method = type.getDeclaredMethod(name, types);
+				method.setAccessible(true);
+				return method.invoke(target, args);
+			} catch (NoSuchMethodException e) {
+				// look in the superclass
+			}
+		}
+		throw new NoSuchMethodException(name);
+	}
+
+	private static Field getField(Object target, String name)
+			throws Exception {
+		for (Class type = target.getClass(); type != null; type = type
+				.getSuperclass()) {
+			try {
+				Field field = type.getDeclaredField(name);
+				field.setAccessible(true);
+				return field;
+			} catch (NoSuchFieldException e) {
+				// look in the superclass
+			}
+		}
+		throw new NoSuchFieldException(name);
+	}
+}
@@ -11,6 +11,7 @@
 package org.eclipse.ui.tests.markers;
 
 import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.jobs.Job;
@@ -84,4 +85,54 @@ public class ResourceMappingMarkersTest extends AbstractNavigatorTest {
 		}
 		assertTrue("No markers generated",markerFound);
 	}
+
+	public void testMarkerRemoval() throws CoreException {
+		IWorkbenchWindow window = PlatformUI.getWorkbench()
+				.getActiveWorkbenchWindow();
+		IWorkbenchPage page = window.getActivePage();
+		ResourceMappingTestView view;
+		MarkersTestMarkersView problemView;
+		try {
+			view = (ResourceMappingTestView) page
+					.showView("org.eclipse.ui.tests.resourceMappingView");
+			problemView = (MarkersTestMarkersView) page
+					.showView("org.eclipse.ui.tests.markerTests");
+		} catch (PartInitException e) {
+			assertTrue(e.getLocalizedMessage(), false);
+			return;
+		}
+
+		IMarker marker = view.addMarkerToFirstProject();
+		assertNotNull("Marker creation failed", marker);
+		waitForUpdates(problemView);
+		assertTrue("Marker not shown", isShown(problemView, marker));
+
+		marker.setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_WARNING);
+		waitForUpdates(problemView);
+		assertTrue("Changed marker not shown", isShown(problemView, marker));
+
+		marker.delete();
+		waitForUpdates(problemView);
+		assertFalse("Deleted marker still shown", isShown(problemView, marker));
+	}
+
+	private void waitForUpdates(MarkersTestMarkersView problemView) {
+		try {
+			Job.getJobManager().join(
+					problemView.MARKERSVIEW_UPDATE_JOB_FAMILY,
+					new NullProgressMonitor());
+		} catch (OperationCanceledException e) {
+		} catch (InterruptedException e) {
+		}
+	}
+
+	private boolean isShown(MarkersTestMarkersView problemView, IMarker marker) {
+		IMarker[] markers = problemView.getCurrentMarkers();
+		for (int i = 0; i < markers.length; i++) {
+			if (markers[i].equals(marker)) {
+				return true;
+			}
+		}
+		return false;
+	}
 }
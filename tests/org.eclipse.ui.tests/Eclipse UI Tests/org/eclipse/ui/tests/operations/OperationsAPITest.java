@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2006 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -796,4 +796,34 @@ public class OperationsAPITest extends TestCase {
 		history.removeOperationApprover(approver);
 	}
 
+	public void testContextChangesInHistory() throws ExecutionException {
+		// contexts added and removed after the operations were added
+		op3.addContext(contextA);
+		IUndoableOperation[] ops = history.getUndoHistory(contextA);
+		assertEquals("wrong undo history size", 4, ops.length);
+		assertSame("wrong order", op3, ops[1]);
+		op6.removeContext(contextA);
+		assertSame("removed context should not be in history", op4, history.getUndoOperation(contextA));
+		assertEquals("wrong undo history size", 3, history.getUndoHistory(contextA).length);
+
+		// matching contexts added after the operations were added
+		ObjectUndoContext contextD = new ObjectUndoContext("D");
+		assertFalse("new context should have no history", history.canUndo(contextD));
+		contextB.addMatch(contextD);
+		assertSame("matching context should share history", op5, history.getUndoOperation(contextD));
+		assertEquals("wrong undo history size", 2, history.getUndoHistory(contextD).length);
+
+		// limits apply to the changed contexts
+		history.setLimit(contextA, 2);
+		ops = history.getUndoHistory(contextA);
+		assertEquals("wrong undo history size", 2, ops.length);
+		assertSame("oldest operation should be removed", op3, ops[0]);
+		assertSame("wrong operation", op4, ops[1]);
+
+		// undone operations move with their contexts
+		history.undo(contextA, null, null);
+		assertSame("wrong redo operation", op4, history.getRedoOperation(contextA));
+		assertSame("wrong undo operation", op3, history.getUndoOperation(contextA));
+	}
+
 }